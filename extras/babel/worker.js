@@ -0,0 +1,30 @@
+// Long-lived Babel worker used by TAJS (see dk.brics.tajs.preprocessing.BabelWorker).
+//
+// Usage: node worker.js <comma-separated plugin names>
+//
+// Writes a line {"version": ...} when Babel has been loaded, then reads one JSON request {"filename": ..., "code": ...} per line from stdin
+// and writes one JSON response {"code": ...} or {"error": ...} per line to stdout, in the same order.
+var path = require('path');
+var readline = require('readline');
+var babel = require('@babel/core');
+
+var plugins = process.argv[2] ? process.argv[2].split(',') : [];
+var options = {
+    configFile: path.join(__dirname, 'babel.config.js'),
+    cwd: __dirname,
+    plugins: plugins
+};
+
+process.stdout.write(JSON.stringify({version: babel.version}) + '\n');
+
+readline.createInterface({input: process.stdin, terminal: false}).on('line', function (line) {
+    var response;
+    try {
+        var request = JSON.parse(line);
+        var result = babel.transformSync(request.code, Object.assign({filename: request.filename}, options));
+        response = {code: result.code};
+    } catch (e) {
+        response = {error: String(e && e.stack || e)};
+    }
+    process.stdout.write(JSON.stringify(response) + '\n');
+});
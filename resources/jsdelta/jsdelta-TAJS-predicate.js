@@ -4,6 +4,52 @@ function logTestEnd(success, indentation) {
     }
 }
 
+/**
+ * Memoizes the verdicts of a predicate by a hash of the contents of the candidate.
+ * JSDelta frequently tests candidates that are identical to previously tested ones, for example when a reduction is undone.
+ *
+ * The candidate is the directory 'depth' levels above the file given to the predicate (depth 0 is the file itself),
+ * such that all the files of a multi-file reduction are taken into account.
+ */
+function makeCachedPredicate(predicate, depth) {
+    var crypto = require("crypto"),
+        fs = require("fs"),
+        path = require("path");
+    var verdicts = Object.create(null);
+
+    function hash(file, h) {
+        if (fs.statSync(file).isDirectory()) {
+            fs.readdirSync(file).sort().forEach(function (name) {
+                h.update(name + "\0");
+                hash(path.join(file, name), h);
+            });
+        } else {
+            h.update(fs.readFileSync(file));
+        }
+        h.update("\0");
+        return h;
+    }
+
+    return function (file, indentation) {
+        var root = file;
+        for (var i = 0; i < depth; i++) {
+            root = path.dirname(root);
+        }
+        var key;
+        try {
+            key = hash(root, crypto.createHash("sha256")).digest("hex");
+        } catch (e) {
+            return predicate(file, indentation);
+        }
+        if (key in verdicts) {
+            logTestEnd(verdicts[key], indentation);
+        } else {
+            verdicts[key] = predicate(file, indentation);
+        }
+        return verdicts[key];
+    };
+}
+
 /**
  * Predicate that spawns a JVM instance for each query.
  */
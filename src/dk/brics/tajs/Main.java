@@ -21,6 +21,7 @@ import dk.brics.tajs.analysis.InitialStateBuilder;
 import dk.brics.tajs.analysis.Transfer;
 import dk.brics.tajs.analysis.nativeobjects.NodeJSRequire;
 import dk.brics.tajs.blendedanalysis.BlendedAnalysisOptions;
+import dk.brics.tajs.flowgraph.BasicBlock;
 import dk.brics.tajs.flowgraph.FlowGraph;
 import dk.brics.tajs.flowgraph.HostEnvSources;
 import dk.brics.tajs.flowgraph.JavaScriptSource;
@@ -31,19 +32,24 @@ import dk.brics.tajs.js2flowgraph.HTMLParser;
 import dk.brics.tajs.lattice.Context;
 import dk.brics.tajs.lattice.Obj;
 import dk.brics.tajs.lattice.ObjectLabel;
+import dk.brics.tajs.lattice.PartitionedValue;
 import dk.brics.tajs.lattice.PropertyKey;
 import dk.brics.tajs.lattice.ScopeChain;
 import dk.brics.tajs.lattice.State;
 import dk.brics.tajs.lattice.Value;
 import dk.brics.tajs.monitoring.AnalysisMonitor;
 import dk.brics.tajs.monitoring.AnalysisPhase;
+import dk.brics.tajs.monitoring.AdaptiveBudgetMonitor;
 import dk.brics.tajs.monitoring.AnalysisTimeLimiter;
 import dk.brics.tajs.monitoring.CompositeMonitor;
 import dk.brics.tajs.monitoring.IAnalysisMonitoring;
+import dk.brics.tajs.monitoring.HeapSamplingMonitor;
 import dk.brics.tajs.monitoring.MaxMemoryUsageMonitor;
 import dk.brics.tajs.monitoring.MemoryUsageDiagnosisMonitor;
 import dk.brics.tajs.monitoring.ProgramExitReachabilityChecker;
 import dk.brics.tajs.monitoring.ProgressMonitor;
+import dk.brics.tajs.monitoring.QueryMonitor;
+import dk.brics.tajs.monitoring.ResultsStreamMonitor;
 import dk.brics.tajs.monitoring.TAJSAssertionReachabilityCheckerMonitor;
 import dk.brics.tajs.monitoring.inspector.datacollection.InspectorFactory;
 import dk.brics.tajs.monitoring.soundness.SoundnessTesterMonitor;
@@ -75,6 +81,7 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
@@ -90,6 +97,8 @@ public class Main {
 
     private static Logger log = Logger.getLogger(Main.class);
 
+    private static List<QueryMonitor.Query> queries; // parsed from the -query option, null if not set
+
     private Main() {
     }
 
@@ -125,6 +134,7 @@ public class Main {
         Options.reset();
         State.reset();
         Value.reset();
+        PartitionedValue.reset();
         Obj.reset();
         Strings.reset();
         ScopeChain.reset();
@@ -132,8 +142,10 @@ public class Main {
         PathAndURLUtils.reset();
         PropertyKey.StringPropertyKey.reset();
         ObjectLabel.reset();
+        Context.reset();
         InitialStateBuilder.reset();
         BlendedAnalysisOptions.reset();
+        queries = null;
     }
 
     /**
@@ -312,8 +324,10 @@ public class Main {
         // Analysis timeout monitor
         int timeLimit = Options.get().getAnalysisTimeLimit();
         int transferLimit = Options.get().getAnalysisTransferLimit();
-        AnalysisTimeLimiter timeLimiter = new AnalysisTimeLimiter(timeLimit, transferLimit);
-        extraMonitors.add(timeLimiter);
+        if (Options.get().isAdaptiveBudgetEnabled() && (timeLimit != -1 || transferLimit != -1))
+            extraMonitors.add(new AdaptiveBudgetMonitor(timeLimit, transferLimit));
+        else
+            extraMonitors.add(new AnalysisTimeLimiter(timeLimit, transferLimit));
 
         // Analysis result measuring monitors
         if (Options.get().isMemoryMeasurementEnabled()) {
@@ -322,6 +336,23 @@ public class Main {
             }
             extraMonitors.add(new MaxMemoryUsageMonitor());
         }
+        if (Options.get().isMemorySamplingEnabled())
+            extraMonitors.add(new HeapSamplingMonitor());
+
+        // Streaming results output
+        if (Options.get().getResultsJSONLinesFile() != null) {
+            extraMonitors.add(new ResultsStreamMonitor(Paths.get(Options.get().getResultsJSONLinesFile()),
+                    monitoring instanceof AnalysisMonitor ? (AnalysisMonitor) monitoring : null));
+        }
+
+        // Query results
+        queries = null;
+        if (Options.get().getQueries() != null) {
+            queries = QueryMonitor.Query.parseAll(Options.get().getQueries());
+            if (Options.get().isTestEnabled())
+                log.warn("-query is combined with -test, only messages at the query locations are checked");
+            extraMonitors.add(new QueryMonitor(queries));
+        }
 
         // Analysis results checking monitors
         // Note: the first one to throw an exception will prevent the others from reporting errors
@@ -376,9 +407,17 @@ public class Main {
 
         long time = System.currentTimeMillis();
 
+        if (queries != null) { // stop the fixpoint iteration when the query locations cannot change any more
+            FlowGraph fg = analysis.getSolver().getFlowGraph();
+            if (queries.stream().allMatch(q -> !QueryMonitor.findBlocks(fg, Collections.singletonList(q)).isEmpty())) // otherwise the location may be in code that is loaded later
+                analysis.getSolver().setDemandedBlocks(QueryMonitor.findBlocks(fg, queries));
+        }
+
         enterPhase(AnalysisPhase.ANALYSIS, monitoring);
         try {
             boolean completed = analysis.getSolver().solve();
+            if (completed && !analysis.getSolver().isPartial())
+                analysis.getFunctionSummaries().store(analysis.getSolver().getAnalysisLatticeElement());
             if (!completed && Options.get().isTestEnabled() && !Options.get().isInspectorEnabled() && !Options.get().isAnalysisLimitationWarnOnly())
                 return; // skip scan phase if not reached fixpoint, unless in test mode (unless inspector enabled or warn-only)
         } finally {
@@ -393,7 +432,14 @@ public class Main {
             dumpFlowGraph(analysis.getSolver().getFlowGraph(), true);
 
         enterPhase(AnalysisPhase.SCAN, monitoring);
-        analysis.getSolver().scan();
+        if (queries != null) {
+            // only scan the blocks at the query locations
+            Set<BasicBlock> blocks = QueryMonitor.findBlocks(analysis.getSolver().getFlowGraph(), queries);
+            if (blocks.isEmpty())
+                log.warn("No code found at the query locations " + Options.get().getQueries());
+            analysis.getSolver().scan(blocks);
+        } else
+            analysis.getSolver().scan();
         leavePhase(AnalysisPhase.SCAN, monitoring);
     }
 
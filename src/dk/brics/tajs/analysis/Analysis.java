@@ -17,6 +17,7 @@
 package dk.brics.tajs.analysis;
 
 import dk.brics.tajs.analysis.js.Filtering;
+import dk.brics.tajs.analysis.js.FunctionSummaries;
 import dk.brics.tajs.blendedanalysis.solver.BlendedAnalysisManager;
 import dk.brics.tajs.flowgraph.FlowGraph;
 import dk.brics.tajs.lattice.AnalysisLatticeElement;
@@ -47,6 +48,8 @@ public final class Analysis implements IAnalysis<State, Context, CallEdge, IAnal
 
     private final EvalCache eval_cache;
 
+    private final FunctionSummaries function_summaries;
+
     private final Unsoundness unsoundness;
 
     private CustomContextSensitivityStrategy context_sensitivity_strategy;
@@ -69,6 +72,7 @@ public final class Analysis implements IAnalysis<State, Context, CallEdge, IAnal
         this.transfer = transfer;
         this.ttr = ttr;
         eval_cache = new EvalCache();
+        function_summaries = new FunctionSummaries();
         solver = new Solver(this, sync);
         state_util = new PropVarOperations(unsoundness);
         filtering = new Filtering();
@@ -85,7 +89,7 @@ public final class Analysis implements IAnalysis<State, Context, CallEdge, IAnal
 
     @Override
     public AnalysisLatticeElement makeAnalysisLattice(FlowGraph fg) {
-        return new AnalysisLatticeElement(fg);
+        return new AnalysisLatticeElement();
     }
 
     /**
@@ -156,6 +160,13 @@ public final class Analysis implements IAnalysis<State, Context, CallEdge, IAnal
         return eval_cache;
     }
 
+    /**
+     * Returns the function summaries.
+     */
+    public FunctionSummaries getFunctionSummaries() {
+        return function_summaries;
+    }
+
     @Override
     public CallEdge cloneCallEdge(CallEdge edge) {
         return new CallEdge(edge.getState().clone(), edge.getFunctionTypeSignatures());
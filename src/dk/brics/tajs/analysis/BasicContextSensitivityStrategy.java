@@ -26,6 +26,7 @@ import dk.brics.tajs.lattice.ObjectLabel;
 import dk.brics.tajs.lattice.State;
 import dk.brics.tajs.lattice.Value;
 import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.AnalysisBudget.Feature;
 import dk.brics.tajs.util.Collections;
 import org.apache.log4j.Logger;
 
@@ -68,7 +69,7 @@ public class BasicContextSensitivityStrategy implements IContextSensitivityStrat
      */
     @Override
     public Context makeActivationAndArgumentsHeapContext(State state, ObjectLabel function, FunctionCalls.CallInfo callInfo, Solver.SolverInterface c) {
-        return makeHeapContext(makeContextArgumentsForCall(function, state, callInfo));
+        return makeHeapContext(makeContextArgumentsForCall(function, state, callInfo, c));
     }
 
     /**
@@ -79,7 +80,7 @@ public class BasicContextSensitivityStrategy implements IContextSensitivityStrat
      */
     @Override
     public Context makeConstructorHeapContext(State state, ObjectLabel function, FunctionCalls.CallInfo callInfo, Solver.SolverInterface c) {
-        return makeHeapContext(makeContextArgumentsForCall(function, state, callInfo));
+        return makeHeapContext(makeContextArgumentsForCall(function, state, callInfo, c));
     }
 
     /**
@@ -125,10 +126,10 @@ public class BasicContextSensitivityStrategy implements IContextSensitivityStrat
 
     /**
      * Creates a context for parameter sensitivity (according to hints from TAJS_addContextSensitivity and Unevalizer).
-     * If -parameter-sensitivity is disabled, it returns the empty context.
+     * If -parameter-sensitivity is disabled, or the analysis budget no longer permits it for the function, it returns the empty context.
      */
-    private Context makeContextArgumentsForCall(ObjectLabel obj_f, State edge_state, FunctionCalls.CallInfo callInfo) {
-        if (!Options.get().isParameterSensitivityEnabled()) {
+    private Context makeContextArgumentsForCall(ObjectLabel obj_f, State edge_state, FunctionCalls.CallInfo callInfo, Solver.SolverInterface c) {
+        if (!Options.get().isParameterSensitivityEnabled() || !c.getBudget().isEnabled(Feature.PARAMETER_SENSITIVITY, obj_f.getFunction())) {
             return null;
         }
         Function f = obj_f.getFunction();
@@ -182,7 +183,7 @@ public class BasicContextSensitivityStrategy implements IContextSensitivityStrat
                 thisval = state.readThis();
             }
         }
-        Context functionContext = makeContextArgumentsForCall(function, state, callInfo);
+        Context functionContext = makeContextArgumentsForCall(function, state, callInfo, c);
         // note: c.loopUnrolling and c.contextAtEntry are null by default, which will kill unrollings across calls
         Context context = functionContext != null ? Context.make(thisval, null, null, null, null, functionContext.getUnknownArg(), functionContext.getParameterNames(), functionContext.getArguments(), functionContext.getFreeVariables(), callInfo.getFunctionPartitions(function)) : Context.makeThisVal(thisval, callInfo.getFunctionPartitions(function));
         if (log.isDebugEnabled())
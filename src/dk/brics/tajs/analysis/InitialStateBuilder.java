@@ -17,6 +17,7 @@
 package dk.brics.tajs.analysis;
 
 import dk.brics.tajs.analysis.dom.DOMBuilder;
+import dk.brics.tajs.analysis.dom.SharedDOMModel;
 import dk.brics.tajs.analysis.nativeobjects.ECMAScriptObjects;
 import dk.brics.tajs.flowgraph.BasicBlock;
 import dk.brics.tajs.lattice.CallEdge;
@@ -216,9 +217,22 @@ public class InitialStateBuilder implements IInitialStateBuilder<State, Context,
 
         // add to the state
         c.withState(initialState, () -> {
-            buildECMAInitialState(c);
-            if (Options.get().isDOMEnabled()) {
-                DOMBuilder.build(document, c);
+            if (Options.get().isDOMEnabled() && Options.get().isSharedDOMModelEnabled()) {
+                if (SharedDOMModel.install(initialState)) {
+                    setGlobalExecutionContext(initialState);
+                } else {
+                    buildECMAInitialState(c);
+                    DOMBuilder.buildModel(c);
+                    SharedDOMModel.record(initialState);
+                }
+                if (document != null) {
+                    DOMBuilder.registerHTML(document, c);
+                }
+            } else {
+                buildECMAInitialState(c);
+                if (Options.get().isDOMEnabled()) {
+                    DOMBuilder.build(document, c);
+                }
             }
         });
 
@@ -233,7 +247,7 @@ public class InitialStateBuilder implements IInitialStateBuilder<State, Context,
         PropVarOperations pv = c.getAnalysis().getPropVarOperations();
         ObjectLabel global = GLOBAL; // same as DOMBuilder.WINDOW
         s.newObject(global);
-        s.setExecutionContext(new ExecutionContext(ScopeChain.make(global), singleton(global), Value.makeObject(global)));
+        setGlobalExecutionContext(s);
 
         ObjectLabel lObject = ObjectLabel.make(ECMAScriptObjects.OBJECT, Kind.FUNCTION);
         s.newObject(lObject);
@@ -727,6 +741,13 @@ public class InitialStateBuilder implements IInitialStateBuilder<State, Context,
         createPrimitiveFunction(lDateProto, lFunProto, ECMAScriptObjects.DATE_TOGMTSTRING, "toGMTString", 0, c);
     }
 
+    /**
+     * Sets the execution context of the given state to the global execution context.
+     */
+    private static void setGlobalExecutionContext(State s) {
+        s.setExecutionContext(new ExecutionContext(ScopeChain.make(GLOBAL), singleton(GLOBAL), Value.makeObject(GLOBAL)));
+    }
+
     /**
      * Utility method for maybe writing a (non-standard, but common) property
      */
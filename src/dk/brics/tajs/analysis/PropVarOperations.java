@@ -20,6 +20,7 @@ import dk.brics.tajs.analysis.dom.DOMObjects;
 import dk.brics.tajs.analysis.js.UserFunctionCalls;
 import dk.brics.tajs.flowgraph.AbstractNode;
 import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
 import dk.brics.tajs.lattice.Bool;
 import dk.brics.tajs.lattice.ExecutionContext;
 import dk.brics.tajs.lattice.FunctionPartitions;
@@ -48,6 +49,7 @@ import org.apache.log4j.Logger;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import static dk.brics.tajs.analysis.InitialStateBuilder.GLOBAL;
@@ -68,6 +70,8 @@ public class PropVarOperations {
 
     private Solver.SolverInterface c;
 
+    private final PropertyReadCache property_read_cache = new PropertyReadCache();
+
     /**
      * Constructs a new PropVarOperations object.
      */
@@ -175,6 +179,19 @@ public class PropVarOperations {
      * @param collect if non-null, collect the objects where the property may be found
      */
     private Value readPropertyRaw(Collection<ObjectLabel> objlabels, StringOrSymbol propertystr, boolean only_attributes, boolean no_call_getters, Set<ObjectLabel> collect) {
+        // only single property names are cached, for fuzzy property names the unsoundness options may depend on the current node
+        PropertyReadCache.Key key = null;
+        if (objlabels instanceof Set && propertystr.isMaybeSingleStr() && !propertystr.isMaybeSymbol()) {
+            key = new PropertyReadCache.Key((Set<ObjectLabel>) objlabels, propertystr.getStr(), only_attributes);
+            PropertyReadCache.Entry e = property_read_cache.get(key, c.getState());
+            if (e != null) {
+                if (collect != null)
+                    collect.addAll(e.getFound());
+                return e.getValue();
+            }
+        }
+        Set<ObjectLabel> found = key != null ? newSet() : collect;
+        boolean cacheable = key != null; // getters and polymorphic values depend on more than the objects on the prototype chains
         Collection<Value> values = newList();
         Set<ObjectLabel> visited = newSet();
         BasicBlock implicitAfterCall = null;
@@ -192,8 +209,10 @@ public class PropVarOperations {
                         } else {
                             v = readPropertyDirect(l, propertystr);
                         }
-                        if (collect != null && v.isMaybePresent())
-                            collect.add(l);
+                        if (found != null && v.isMaybePresent())
+                            found.add(l);
+                        if (cacheable && (v.isPolymorphic() || v.isMaybePresentAccessor()))
+                            cacheable = false;
                         if (!no_call_getters) {
                             if (v.isMaybePresentAccessor())
                                 v = UnknownValueResolver.getRealValue(v, c.getState());
@@ -228,7 +247,14 @@ public class PropVarOperations {
                 ol = ol2;
             }
         }
-        return UserFunctionCalls.implicitUserFunctionReturn(values, !values.isEmpty() || no_call_getters, implicitAfterCall, c);
+        Value result = UserFunctionCalls.implicitUserFunctionReturn(values, !values.isEmpty() || no_call_getters, implicitAfterCall, c);
+        if (key != null) {
+            if (collect != null)
+                collect.addAll(found);
+            if (cacheable) // without getters, the result is the same whether or not getters are to be called
+                property_read_cache.put(key, visited, found, result, c.getState());
+        }
+        return result;
     }
 
     /**
@@ -991,7 +1017,16 @@ public class PropVarOperations {
      *         and a boolean indicating whether the write was definitely performed
      */
     public Pair<Set<ObjectLabel>, Boolean> writeVariable(String varname, Value value, boolean set_modified, boolean not_invoke_setters) {
-        State state = c.getState();
+        return writeVariable(varname, null, value, set_modified, not_invoke_setters);
+    }
+
+    /**
+     * Assigns the given value to the given variable, skipping the given leading scope chain levels where possible.
+     *
+     * @param skipped_scopes functions whose activation objects statically do not declare the variable (see {@link #skipScopes(List)}), or null
+     * @see #writeVariable(String, Value, boolean, boolean)
+     */
+    public Pair<Set<ObjectLabel>, Boolean> writeVariable(String varname, List<Function> skipped_scopes, Value value, boolean set_modified, boolean not_invoke_setters) {
         value.assertNonEmpty();
         // 10.1.4 Identifier Resolution
         // 1. Get the next object in the scope chain. If there isn't one, go to step 5.
@@ -1002,7 +1037,7 @@ public class PropVarOperations {
         ParallelTransfer pf = new ParallelTransfer(c);
         Set<ObjectLabel> objlabels = newSet();
         boolean definitely_found = false;
-        for (Iterator<Set<ObjectLabel>> it = ScopeChain.iterable(state.getExecutionContext().getScopeChain()).iterator(); it.hasNext(); ) {
+        for (Iterator<Set<ObjectLabel>> it = ScopeChain.iterable(skipScopes(skipped_scopes)).iterator(); it.hasNext(); ) {
             Set<ObjectLabel> sc = it.next();
             definitely_found = true;
             for (ObjectLabel objlabel : sc) {
@@ -1073,9 +1108,19 @@ public class PropVarOperations {
      * @param preserve_attributes if set, do not reset property data
      */
     public Value readVariable(String varname, Collection<ObjectLabel> base_objs, boolean not_invoke_getters, boolean preserve_attributes) {
+        return readVariable(varname, null, base_objs, not_invoke_getters, preserve_attributes);
+    }
+
+    /**
+     * Returns the value of the given variable, skipping the given leading scope chain levels where possible.
+     *
+     * @param skipped_scopes functions whose activation objects statically do not declare the variable (see {@link #skipScopes(List)}), or null
+     * @see #readVariable(String, Collection, boolean, boolean)
+     */
+    public Value readVariable(String varname, List<Function> skipped_scopes, Collection<ObjectLabel> base_objs, boolean not_invoke_getters, boolean preserve_attributes) {
         Collection<Value> values = newList();
         boolean definitely_found_at_some_level = false;
-        for (Set<ObjectLabel> scope_chain : ScopeChain.iterable(c.getState().getExecutionContext().getScopeChain())) {
+        for (Set<ObjectLabel> scope_chain : ScopeChain.iterable(skipScopes(skipped_scopes))) {
             boolean definitely_found_at_current_level = true;
             for (ObjectLabel scope : scope_chain) {
 
@@ -1105,6 +1150,29 @@ public class PropVarOperations {
         return res;
     }
 
+    /**
+     * Returns the scope chain of the current execution context, without the leading levels that consist of
+     * activation objects of the given functions (as found by the static resolution in the flow graph builder).
+     * The full scope chain is returned if the leading levels are not as expected, for example
+     * if there are 'with' or 'catch' scope objects, or if a function has been instantiated in another scope.
+     */
+    private ScopeChain skipScopes(List<Function> skipped_scopes) {
+        ScopeChain sc = c.getState().getExecutionContext().getScopeChain();
+        if (skipped_scopes == null)
+            return sc;
+        ScopeChain rest = sc;
+        for (Function f : skipped_scopes) {
+            if (rest == null)
+                return sc;
+            AbstractNode entry = f.getEntry().getFirstNode();
+            for (ObjectLabel objlabel : rest.getObject())
+                if (objlabel.getKind() != ObjectLabel.Kind.ACTIVATION || objlabel.getNode() != entry)
+                    return sc;
+            rest = rest.next();
+        }
+        return rest != null ? rest : sc;
+    }
+
     /**
      * Deletes the given variable.
      *
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.analysis;
+
+import dk.brics.tajs.lattice.Obj;
+import dk.brics.tajs.lattice.ObjectLabel;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.lattice.Value;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+
+/**
+ * Memoization of property reads along prototype chains.
+ * <p>
+ * An entry records the objects that were involved in the read (the objects on the prototype chains that were visited).
+ * Entries are only made when all those objects are non-writable, and an entry is only used if the current state
+ * contains the very same objects. Since non-writable objects are immutable, any write to an involved object
+ * (including a change of its internal prototype) makes the entry inapplicable.
+ * Non-writable objects are shared between states, so entries can be used across states and blocks.
+ */
+class PropertyReadCache {
+
+    /**
+     * Number of entries before the cache is cleared.
+     */
+    private static final int MAX_ENTRIES = 10000;
+
+    private final Map<Key, Entry> cache = newMap();
+
+    /**
+     * Returns the cached result of reading the given property from the given objects, or null if not available in the given state.
+     */
+    Entry get(Key key, State state) {
+        Entry e = cache.get(key);
+        if (e != null && e.isValid(state))
+            return e;
+        return null;
+    }
+
+    /**
+     * Records the result of a property read.
+     * Nothing is recorded if some of the involved objects are writable in the given state.
+     *
+     * @param involved the objects on the prototype chains that were visited
+     * @param found    the objects where the property may be found
+     */
+    void put(Key key, Set<ObjectLabel> involved, Set<ObjectLabel> found, Value value, State state) {
+        ObjectLabel[] labels = new ObjectLabel[involved.size()];
+        Obj[] objs = new Obj[labels.length];
+        int i = 0;
+        for (ObjectLabel l : involved) {
+            Obj obj = state.getObject(l, false);
+            if (obj.isWritable())
+                return;
+            labels[i] = l;
+            objs[i++] = obj;
+        }
+        if (cache.size() >= MAX_ENTRIES)
+            cache.clear();
+        cache.put(key.freeze(), new Entry(labels, objs, found, value));
+    }
+
+    /**
+     * Cache key consisting of the base objects, the (string) property name, and whether only attributes are considered.
+     */
+    static final class Key {
+
+        private Set<ObjectLabel> objlabels;
+
+        private final String propertyname;
+
+        private final boolean only_attributes;
+
+        private final int hashcode;
+
+        Key(Set<ObjectLabel> objlabels, String propertyname, boolean only_attributes) {
+            this.objlabels = objlabels;
+            this.propertyname = propertyname;
+            this.only_attributes = only_attributes;
+            hashcode = objlabels.hashCode() * 31 + propertyname.hashCode() * 3 + (only_attributes ? 1 : 0);
+        }
+
+        /**
+         * Copies the object labels, which may be owned by the caller.
+         */
+        private Key freeze() {
+            objlabels = newSet(objlabels);
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key k = (Key) obj;
+            return hashcode == k.hashcode && only_attributes == k.only_attributes && propertyname.equals(k.propertyname) && objlabels.equals(k.objlabels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashcode;
+        }
+    }
+
+    /**
+     * Cached result of a property read.
+     */
+    static final class Entry {
+
+        private final ObjectLabel[] labels;
+
+        private final Obj[] objs;
+
+        private final Set<ObjectLabel> found;
+
+        private final Value value;
+
+        private Entry(ObjectLabel[] labels, Obj[] objs, Set<ObjectLabel> found, Value value) {
+            this.labels = labels;
+            this.objs = objs;
+            this.found = found;
+            this.value = value;
+        }
+
+        /**
+         * Checks whether the given state contains the objects that were involved in the read.
+         */
+        private boolean isValid(State state) {
+            for (int i = 0; i < labels.length; i++)
+                if (state.getObject(labels[i], false) != objs[i])
+                    return false;
+            return true;
+        }
+
+        /**
+         * Returns the objects where the property may be found.
+         */
+        Collection<ObjectLabel> getFound() {
+            return found;
+        }
+
+        /**
+         * Returns the value that was read.
+         */
+        Value getValue() {
+            return value;
+        }
+    }
+}
@@ -116,12 +116,30 @@ public class DOMBuilder {
 
     private static boolean isDoneBuildingHTMLObjectLabels = false;
 
+    /**
+     * Number of times {@link #buildModel} has been invoked (in this JVM).
+     */
+    private static int number_of_model_builds = 0;
+
     /**
      * Construct the initial DOM objects.
      * Its assumed that WINDOW is added to the state somewhere else before this function is invoked since its the
      * global objects when running in DOM mode.
      */
     public static void build(Source document, Solver.SolverInterface c) {
+        buildModel(c);
+        if (document != null) {
+            registerHTML(document, c);
+        }
+    }
+
+    /**
+     * Constructs the initial DOM objects that do not depend on the HTML page.
+     * The resulting objects and the DOM object labels registered in static fields are
+     * the same for all analyses with the same options (see {@link SharedDOMModel}).
+     */
+    public static void buildModel(Solver.SolverInterface c) {
+        number_of_model_builds++;
         isDoneBuildingHTMLObjectLabels = false;
         // Reset DOM Registry
         DOMRegistry.reset();
@@ -275,9 +293,14 @@ public class DOMBuilder {
         writeEventListenerProperties(eventNameContainers, c.getAnalysis().getPropVarOperations());
 
         c.getAnalysis().getPropVarOperations().writeProperty(singleton(DOMNodeList.INSTANCES), Value.makeAnyStrUInt(), nodesProperty);
-        if (document != null) {
-            registerHTML(document, c);
-        }
+    }
+
+    /**
+     * Returns the number of times the DOM model has been built.
+     * The static DOM object labels belong to the most recent build.
+     */
+    public static int getNumberOfModelBuilds() {
+        return number_of_model_builds;
     }
 
     private static Set<ObjectLabel> getAllDOMNodes() {
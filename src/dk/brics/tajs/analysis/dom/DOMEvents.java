@@ -33,6 +33,7 @@ import dk.brics.tajs.util.AnalysisException;
 import dk.brics.tajs.util.Collections;
 import org.apache.log4j.Logger;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -84,6 +85,13 @@ public class DOMEvents {
         }
     }
 
+    /**
+     * Returns the event values created by {@link #build()}.
+     */
+    static List<Value> getEventValues() {
+        return newList(Arrays.asList(anyEvent, domContentLoadedEvent, loadEvent, timeoutEvent, unloadEvent, keyboardEvent, mouseEvent, ajaxEvent));
+    }
+
     /**
      * Create generic Keyboard Event.
      */
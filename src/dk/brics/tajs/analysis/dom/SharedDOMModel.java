@@ -0,0 +1,160 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.analysis.dom;
+
+import dk.brics.tajs.lattice.Obj;
+import dk.brics.tajs.lattice.ObjectLabel;
+import dk.brics.tajs.lattice.PropertyKey;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.lattice.Value;
+import dk.brics.tajs.options.OptionValues;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.util.Canonicalizer;
+import dk.brics.tajs.util.DeepImmutable;
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.Set;
+
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+
+/**
+ * JVM-wide read-only model of the initial host environment (ECMAScript and DOM objects, but not the HTML page contents).
+ * <p>
+ * The model is recorded the first time the initial state is built with <code>-shared-dom-model</code>.
+ * Subsequent analyses with the same options install the recorded objects directly instead of running
+ * {@link DOMBuilder#buildModel}. The objects are frozen, so each analysis overlays its own modifications
+ * using the usual copy-on-write mechanism of {@link State}.
+ * <p>
+ * Only the store is shared. The other parts of the initial state are not recorded:
+ * the execution context is always the global one and is set by the initial state builder,
+ * and the remaining parts (registers, state extras, stacked objects and functions, must-equals and must-reaching-definitions information,
+ * renamings and partitioning information) are empty after building the model.
+ * If the state extras are not empty when the model is to be recorded, nothing is recorded and the model is rebuilt for every analysis.
+ * <p>
+ * Object labels and values are canonicalized, so the canonical instances that appear in the model
+ * are retained across {@link Canonicalizer#reset()}. The DOM object labels that are stored in static fields
+ * (for example by {@link DOMRegistry}) are thereby still valid when the model is reused.
+ */
+public class SharedDOMModel {
+
+    private static final Logger log = Logger.getLogger(SharedDOMModel.class);
+
+    /**
+     * Options that were used when the model was recorded (excluding the input files), or null if no model.
+     */
+    private static OptionValues model_options;
+
+    /**
+     * The recorded objects. The objects are frozen and must never be modified.
+     */
+    private static Map<ObjectLabel, Obj> model_store;
+
+    /**
+     * The DOM model build that the static DOM object labels belong to when the model was recorded.
+     */
+    private static int model_build;
+
+    private SharedDOMModel() { }
+
+    /**
+     * Installs the recorded model in the given state if it has been built with the current options.
+     *
+     * @return true if the model was installed, false if the model must be built and recorded
+     */
+    public static boolean install(State s) {
+        if (model_store == null || model_build != DOMBuilder.getNumberOfModelBuilds() || !model_options.equals(getModelOptions()))
+            return false;
+        for (Map.Entry<ObjectLabel, Obj> me : model_store.entrySet())
+            s.putObject(me.getKey(), me.getValue());
+        if (log.isDebugEnabled())
+            log.debug("Installed shared DOM model with " + model_store.size() + " objects");
+        return true;
+    }
+
+    /**
+     * Records the objects of the given state as the model for the current options.
+     * The objects are frozen, so the state continues with copy-on-write for these objects.
+     * Only the store is recorded (see the class comment).
+     */
+    public static void record(State s) {
+        if (!s.getExtras().isEmpty()) {
+            log.warn("Not recording shared DOM model, the initial state extras are not empty");
+            return;
+        }
+        Map<ObjectLabel, Obj> store = newMap();
+        Set<DeepImmutable> canonical = newSet();
+        for (Map.Entry<ObjectLabel, Obj> me : s.getStore().entrySet()) {
+            Obj obj = me.getValue().freeze();
+            store.put(me.getKey(), obj);
+            addLabel(me.getKey(), canonical);
+            for (Map.Entry<PropertyKey, Value> p : obj.getProperties().entrySet()) {
+                addPropertyKey(p.getKey(), canonical);
+                addValue(p.getValue(), canonical);
+            }
+            addValue(obj.getDefaultNumericProperty(), canonical);
+            addValue(obj.getDefaultOtherProperty(), canonical);
+            addValue(obj.getInternalPrototype(), canonical);
+            addValue(obj.getInternalValue(), canonical);
+        }
+        for (Value v : DOMEvents.getEventValues())
+            addValue(v, canonical);
+        model_store = store;
+        model_options = getModelOptions();
+        model_build = DOMBuilder.getNumberOfModelBuilds();
+        Canonicalizer.setRetained(canonical);
+        if (log.isDebugEnabled())
+            log.debug("Recorded shared DOM model with " + store.size() + " objects and " + canonical.size() + " canonical instances");
+    }
+
+    /**
+     * Discards the recorded model.
+     */
+    public static void clear() {
+        model_store = null;
+        model_options = null;
+        Canonicalizer.setRetained(null);
+    }
+
+    /**
+     * Returns the current options, excluding the input files.
+     */
+    private static OptionValues getModelOptions() {
+        OptionValues options = Options.get().clone();
+        options.getArguments().clear();
+        return options;
+    }
+
+    private static void addValue(Value v, Set<DeepImmutable> canonical) {
+        if (v == null || !canonical.add(v))
+            return;
+        for (ObjectLabel l : v.getAllObjectLabels())
+            addLabel(l, canonical);
+    }
+
+    private static void addPropertyKey(PropertyKey k, Set<DeepImmutable> canonical) {
+        if (!canonical.add(k))
+            return;
+        if (k instanceof PropertyKey.SymbolPKey)
+            addLabel(((PropertyKey.SymbolPKey) k).getObjectLabel(), canonical);
+    }
+
+    private static void addLabel(ObjectLabel l, Set<DeepImmutable> canonical) {
+        canonical.add(l);
+    }
+}
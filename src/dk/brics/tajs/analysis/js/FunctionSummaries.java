@@ -0,0 +1,313 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.analysis.js;
+
+import dk.brics.tajs.analysis.FunctionCalls;
+import dk.brics.tajs.analysis.FunctionCalls.CallInfo;
+import dk.brics.tajs.analysis.Solver;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.CFunction;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.BeginLoopNode;
+import dk.brics.tajs.flowgraph.jsnodes.BinaryOperatorNode;
+import dk.brics.tajs.flowgraph.jsnodes.ConstantNode;
+import dk.brics.tajs.flowgraph.jsnodes.DeclareVariableNode;
+import dk.brics.tajs.flowgraph.jsnodes.EndLoopNode;
+import dk.brics.tajs.flowgraph.jsnodes.ExceptionalReturnNode;
+import dk.brics.tajs.flowgraph.jsnodes.IfNode;
+import dk.brics.tajs.flowgraph.jsnodes.NopNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReturnNode;
+import dk.brics.tajs.flowgraph.jsnodes.UnaryOperatorNode;
+import dk.brics.tajs.flowgraph.jsnodes.WriteVariableNode;
+import dk.brics.tajs.lattice.CallEdge;
+import dk.brics.tajs.lattice.Context;
+import dk.brics.tajs.lattice.PartitionedValue;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.lattice.UnknownValueResolver;
+import dk.brics.tajs.lattice.Value;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.BlockAndContext;
+import dk.brics.tajs.solver.IAnalysisLatticeElement;
+import dk.brics.tajs.util.Strings;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+
+/**
+ * Summaries of functions that only compute with primitive values, reused across analyses in the same JVM (option -function-summaries).
+ * <p>
+ * A function is summarizable if its body only consists of primitive constants, operators, reads and writes of its own
+ * parameters and local variables, branches, loops and returns.
+ * Such a function does not read or modify the heap, so its effect is described by the values of its parameters at
+ * the entry and the return value at the exit.
+ * During the analysis, the parameter values are recorded for each entry context of a summarizable function.
+ * When the analysis reaches its fixpoint, the return value for each entry context that cannot throw exceptions is stored
+ * together with the parameter values, keyed by the function source and the analysis options.
+ * A later analysis that calls a function with the same source under the same options with exactly the stored parameter
+ * values uses the stored return value instead of entering the function.
+ * All other calls are analyzed as usual and recorded in turn.
+ * <p>
+ * The bodies of summarized calls are neither analyzed nor scanned, so no messages are reported for them,
+ * and a function whose calls are all summarized is reported as unreachable.
+ */
+public class FunctionSummaries {
+
+    private static final Logger log = Logger.getLogger(FunctionSummaries.class);
+
+    /**
+     * Maximal number of summaries kept for each function.
+     */
+    private static final int MAX_SUMMARIES_PER_FUNCTION = 10;
+
+    /**
+     * Stored summaries, shared by all analyses in the JVM.
+     */
+    private static final Map<String, List<Summary>> summaries = newMap();
+
+    /**
+     * Cache for {@link #isSummarizable(Function)}.
+     */
+    private final Map<Function, Boolean> summarizable = newMap();
+
+    /**
+     * Summary keys of the functions.
+     */
+    private final Map<Function, String> keys = newMap();
+
+    /**
+     * Joined parameter values of the recorded calls, for each function entry and entry context.
+     */
+    private final Map<BlockAndContext<Context>, List<Value>> calls = newMap();
+
+    /**
+     * Function entries and entry contexts that have been reached by calls that cannot be summarized.
+     */
+    private final Set<BlockAndContext<Context>> unsummarizable = newSet();
+
+    private String options_key;
+
+    private int applied;
+
+    /**
+     * Summary of a function for given parameter values.
+     */
+    private static final class Summary {
+
+        /**
+         * Parameter values, canonicalized in the analysis that made the summary.
+         */
+        private final List<Value> parameters;
+
+        /**
+         * Return value, canonicalized in the analysis that made the summary.
+         */
+        private final Value result;
+
+        private Summary(List<Value> parameters, Value result) {
+            this.parameters = parameters;
+            this.result = result;
+        }
+
+        /**
+         * Checks whether the summary is for the given parameter values of the current analysis.
+         */
+        private boolean matches(List<Value> params) {
+            if (params.size() != parameters.size())
+                return false;
+            for (int i = 0; i < params.size(); i++)
+                if (!parameters.get(i).recanonicalize().equals(params.get(i)))
+                    return false;
+            return true;
+        }
+    }
+
+    /**
+     * Constructs a new, empty collection of recorded calls.
+     */
+    public FunctionSummaries() {}
+
+    /**
+     * Discards all stored summaries.
+     */
+    public static void clear() {
+        summaries.clear();
+    }
+
+    /**
+     * Returns the number of calls that have been summarized in this analysis.
+     */
+    public int getNumberOfApplied() {
+        return applied;
+    }
+
+    /**
+     * Applies a stored summary to a call of a user-defined function, if one matches the parameter values.
+     * The result value is then propagated directly to the successor of the call node.
+     *
+     * @return true if a summary was applied, false if the function must be entered as usual
+     */
+    public boolean apply(Function f, CallInfo call, boolean implicit, Solver.SolverInterface c) {
+        if (!Options.get().isFunctionSummariesEnabled() || c.isScanning() || !isSummarizable(f))
+            return false;
+        List<Summary> ss = summaries.get(getKey(f));
+        if (ss == null)
+            return false;
+        List<Value> params = getParameters(f, call, implicit, c.getState());
+        if (params == null)
+            return false;
+        for (Summary s : ss)
+            if (s.matches(params)) {
+                if (log.isDebugEnabled())
+                    log.debug("Applying summary of " + f + " at " + f.getSourceLocation() + " for " + params);
+                State state = c.getState().clone();
+                if (call.getResultRegister() != AbstractNode.NO_VALUE) {
+                    state.writeRegister(call.getResultRegister(), s.result.recanonicalize());
+                    state.getMustReachingDefs().addReachingDef(call.getResultRegister(), call.getSourceNode());
+                }
+                c.propagateToBasicBlock(state, call.getSourceNode().getBlock().getSingleSuccessor(), state.getContext());
+                applied++;
+                return true;
+            }
+        return false;
+    }
+
+    /**
+     * Records the parameter values of a call of a user-defined function in the given entry context.
+     */
+    public void recordCall(Function f, Context entry_context, CallInfo call, boolean implicit, State caller_state) {
+        if (!Options.get().isFunctionSummariesEnabled() || !isSummarizable(f))
+            return;
+        BlockAndContext<Context> bc = new BlockAndContext<>(f.getEntry(), entry_context);
+        if (unsummarizable.contains(bc))
+            return;
+        List<Value> params = getParameters(f, call, implicit, caller_state);
+        if (params == null) {
+            unsummarizable.add(bc);
+            calls.remove(bc);
+            return;
+        }
+        List<Value> old = calls.get(bc);
+        if (old != null)
+            for (int i = 0; i < params.size(); i++)
+                params.set(i, old.get(i).join(params.get(i)));
+        calls.put(bc, params);
+    }
+
+    /**
+     * Stores summaries for the recorded calls, using the return values in the given fixpoint.
+     */
+    public void store(IAnalysisLatticeElement<State, Context, CallEdge> e) {
+        if (!Options.get().isFunctionSummariesEnabled())
+            return;
+        for (Map.Entry<BlockAndContext<Context>, List<Value>> me : calls.entrySet()) {
+            Function f = me.getKey().getBlock().getFunction();
+            Context entry_context = me.getKey().getContext();
+            if (!e.getStatesWithEntryContext(f.getExceptionalExit(), entry_context).isEmpty())
+                continue; // may throw exceptions
+            int reg = ((ReturnNode) f.getOrdinaryExit().getFirstNode()).getReturnValueRegister();
+            Value result = Value.makeNone();
+            for (State s : e.getStatesWithEntryContext(f.getOrdinaryExit(), entry_context))
+                result = result.join(reg != AbstractNode.NO_VALUE ? UnknownValueResolver.getRealValue(s.readRegister(reg), s) : Value.makeUndef());
+            if (result.isNone() || !isPrimitive(result))
+                continue; // does not return, or the return value cannot be kept across analyses
+            List<Summary> ss = summaries.computeIfAbsent(getKey(f), k -> newList());
+            if (ss.size() < MAX_SUMMARIES_PER_FUNCTION && ss.stream().noneMatch(s -> s.matches(me.getValue())))
+                ss.add(new Summary(me.getValue(), result));
+        }
+    }
+
+    /**
+     * Returns the parameter values of a call, or null if the call cannot be summarized.
+     * Absent values are converted to undefined, as when entering the function.
+     */
+    private static List<Value> getParameters(Function f, CallInfo call, boolean implicit, State caller_state) {
+        if (implicit || !(call instanceof FunctionCalls.OrdinaryCallInfo) || call.isConstructorCall() || call.isUnknownNumberOfArgs() || call.assumeFunction())
+            return null;
+        List<Value> params = newList();
+        for (int i = 0; i < f.getParameterNames().size(); i++) {
+            Value v = FunctionCalls.readParameter(call, caller_state, i);
+            if (v.isNone() || !isPrimitive(v))
+                return null;
+            params.add(v);
+        }
+        return params;
+    }
+
+    /**
+     * Checks whether the given value only consists of primitive values and can therefore be kept across analyses.
+     */
+    private static boolean isPrimitive(Value v) {
+        return !(v instanceof PartitionedValue) && !v.isPolymorphicOrUnknown() && !v.isMaybeObjectOrSymbol() && !v.isMaybeGetterOrSetter()
+                && v.getFunctionPartitions() == null && v.getFunctionTypeSignatures() == null;
+    }
+
+    /**
+     * Returns the key of the stored summaries of the given function.
+     */
+    private String getKey(Function f) {
+        if (options_key == null)
+            options_key = Options.get().getOptionValues() + " " + Options.get().getUnsoundness();
+        return keys.computeIfAbsent(f, g -> Strings.sha256(options_key + "\n" + g.isStrict() + "\n" + g.getParameterNames() + "\n" + g.getSource()));
+    }
+
+    /**
+     * Checks whether the given function only computes with primitive values.
+     */
+    private boolean isSummarizable(Function f) {
+        return summarizable.computeIfAbsent(f, FunctionSummaries::checkSummarizable);
+    }
+
+    private static boolean checkSummarizable(Function f) {
+        if (f.isMain() || f instanceof CFunction || f.getSource() == null || !(f.getOrdinaryExit().getFirstNode() instanceof ReturnNode))
+            return false;
+        Set<String> locals = newSet(f.getParameterNames());
+        locals.addAll(f.getVariableNames());
+        locals.remove("arguments");
+        locals.remove("this");
+        if (f.getName() != null)
+            locals.remove(f.getName());
+        for (BasicBlock b : f.getBlocks())
+            for (AbstractNode n : b.getNodes()) {
+                boolean ok;
+                if (n instanceof ConstantNode || n instanceof UnaryOperatorNode || n instanceof IfNode || n instanceof NopNode
+                        || n instanceof ReturnNode || n instanceof ExceptionalReturnNode || n instanceof BeginLoopNode || n instanceof EndLoopNode)
+                    ok = true;
+                else if (n instanceof BinaryOperatorNode) {
+                    BinaryOperatorNode.Op op = ((BinaryOperatorNode) n).getOperator();
+                    ok = op != BinaryOperatorNode.Op.IN && op != BinaryOperatorNode.Op.INSTANCEOF;
+                } else if (n instanceof ReadVariableNode)
+                    ok = locals.contains(((ReadVariableNode) n).getVariableName()) && ((ReadVariableNode) n).getResultBaseRegister() == AbstractNode.NO_VALUE;
+                else if (n instanceof WriteVariableNode)
+                    ok = locals.contains(((WriteVariableNode) n).getVariableName());
+                else if (n instanceof DeclareVariableNode)
+                    ok = locals.contains(((DeclareVariableNode) n).getVariableName());
+                else
+                    ok = false;
+                if (!ok)
+                    return false;
+            }
+        return true;
+    }
+}
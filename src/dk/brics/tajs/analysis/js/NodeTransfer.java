@@ -76,6 +76,7 @@ import dk.brics.tajs.lattice.UnknownValueResolver;
 import dk.brics.tajs.lattice.Value;
 import dk.brics.tajs.monitoring.IAnalysisMonitoring;
 import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.AnalysisBudget.Feature;
 import dk.brics.tajs.solver.BlockAndContext;
 import dk.brics.tajs.solver.CallDependencies;
 import dk.brics.tajs.solver.CallGraph;
@@ -374,7 +375,7 @@ public class NodeTransfer implements NodeVisitor {
             int result_base_reg = node.getResultBaseRegister();
             base_objs = newSet();
             // readVariable have side effect, base_objs now is filled with activatioin objects or global that possibly store the variable in the scope chain.
-            value = pv.readVariable(varname, base_objs);
+            value = pv.readVariable(varname, node.getSkippedScopes(), base_objs, false, false);
 
             if (Options.get().isBlendedAnalysisEnabled()) {
                 value = c.getAnalysis().getBlendedAnalysis().getVariableValue(value, node, c.getState());
@@ -426,7 +427,7 @@ public class NodeTransfer implements NodeVisitor {
                 return;
             }
         }
-        Pair<Set<ObjectLabel>,Boolean> objsDef = pv.writeVariable(n.getVariableName(), v, true);
+        Pair<Set<ObjectLabel>,Boolean> objsDef = pv.writeVariable(n.getVariableName(), n.getSkippedScopes(), v, true, false);
         Function f = n.getBlock().getFunction();
         if (f.getParameterNames().contains(n.getVariableName())) { // TODO: review
             ObjectLabel arguments_obj = ObjectLabel.make(f.getEntry().getFirstNode(), Kind.ARGUMENTS);
@@ -502,7 +503,7 @@ public class NodeTransfer implements NodeVisitor {
                     m.visitReadProperty(n, objlabels, propertystr, true, c.getState(), pv.readPropertyWithAttributes(objlabels, propertystr), InitialStateBuilder.GLOBAL);
                 m.visitPropertyRead(n, objlabels, propertystr, c.getState(), true);
             }
-            if (Options.get().isNoPropNamePartitioning() || !propertystr.isMaybeFuzzyStr() || propertystr.restrictToNotStrOtherNum().restrictToNotStrUInt().isNone()) {
+            if (Options.get().isNoPropNamePartitioning() || !c.getBudget().isEnabled(Feature.PROPERTY_NAME_PARTITIONING, n) || !propertystr.isMaybeFuzzyStr() || propertystr.restrictToNotStrOtherNum().restrictToNotStrUInt().isNone()) {
                 // don't use value partitioning (if not enabled, if not fuzzy string, or if only numeric)
                 value = pv.readPropertyValue(objlabels, propertystr, base_objs);
             } else { // potentially use value partitioning
@@ -1137,7 +1138,7 @@ public class NodeTransfer implements NodeVisitor {
 
         Value v = c.getState().readRegister(n.getIfNode().getConditionRegister());
         v = Conversion.toBoolean(UnknownValueResolver.getRealValue(v, c.getState()));
-        if (v.isMaybeTrueButNotFalse() || v.isMaybeFalseButNotTrue()) {
+        if ((v.isMaybeTrueButNotFalse() || v.isMaybeFalseButNotTrue()) && c.getBudget().isEnabled(Feature.LOOP_UNROLLING, n)) {
             // branch condition is determinate, switch context and propagate only to specialized successor
             Context specializedContext = c.getAnalysis().getContextSensitivityStrategy().makeNextLoopUnrollingContext(c.getState().getContext(), n);
             c.propagateToBasicBlock(c.getState().clone(), c.getState().getBasicBlock().getSingleSuccessor(), specializedContext);
@@ -42,6 +42,7 @@ import dk.brics.tajs.lattice.State;
 import dk.brics.tajs.lattice.UnknownValueResolver;
 import dk.brics.tajs.lattice.Value;
 import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.AnalysisBudget.Feature;
 import dk.brics.tajs.util.AnalysisException;
 import dk.brics.tajs.util.Collectors;
 import dk.brics.tajs.util.Pair;
@@ -485,7 +486,7 @@ public class Partitioning {
      * Applies type partitioning for the given call node.
      */
     public static void applyTypePartitioning(CallNode n, Solver.SolverInterface c) {
-        if (!Options.get().isNoTypePartitioningEnabled() && n.getNumberOfArgs() == 1 && !n.isConstructorCall()) {
+        if (!Options.get().isNoTypePartitioningEnabled() && c.getBudget().isEnabled(Feature.TYPE_PARTITIONING, n) && n.getNumberOfArgs() == 1 && !n.isConstructorCall()) {
             // Apply type partitioning, when calling a function with one argument
             Value typePartitionedArg = typePartition(n, UnknownValueResolver.getRealValue(c.getState().readRegister(n.getArgRegister(0)), c.getState()), c.getState());
             if (typePartitionedArg instanceof PartitionedValue) {
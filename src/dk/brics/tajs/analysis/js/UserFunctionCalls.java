@@ -50,6 +50,7 @@ import dk.brics.tajs.lattice.State;
 import dk.brics.tajs.lattice.UnknownValueResolver;
 import dk.brics.tajs.lattice.Value;
 import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.AnalysisBudget.Feature;
 import dk.brics.tajs.solver.BlockAndContext;
 import dk.brics.tajs.solver.CallGraph;
 import dk.brics.tajs.solver.CallKind;
@@ -193,6 +194,9 @@ public class UserFunctionCalls {
         Function f = obj_f.getFunction();
         AbstractNode n = call.getSourceNode();
 
+        if (c.getAnalysis().getFunctionSummaries().apply(f, call, implicit, c))
+            return; // the result of an earlier analysis of the function is reused
+
         if (log.isDebugEnabled())
             log.debug("enterUserFunction " + (implicit ? "(implicit)" : "") + "from node " + n.getIndex() + " at " + n.getSourceLocation()
                     + " to " + f + " at " + f.getSourceLocation());
@@ -306,6 +310,7 @@ public class UserFunctionCalls {
 
             if (thisVal.getObjectLabels().size() > 1
                     && (Options.get().isContextSpecializationEnabled()
+                    && c.getBudget().isEnabled(Feature.CONTEXT_SPECIALIZATION, obj_f.getFunction())
                     && thisVal.getObjectLabels().size() < Options.Constants.MAX_CONTEXT_SPECIALIZATION)) {
                 // specialize edge_state such that 'this' becomes a singleton
                 if (log.isDebugEnabled())
@@ -324,6 +329,7 @@ public class UserFunctionCalls {
     private static void propagateToFunctionEntry(CallEdge edge, AbstractNode n, ObjectLabel obj_f, CallInfo call, boolean implicit, Solver.SolverInterface c) {
         Context edge_context = c.getAnalysis().getContextSensitivityStrategy().makeFunctionEntryContext(edge.getState(), obj_f, call, c);
         CallKind callKind = !implicit ? CallKind.ORDINARY : call.isConstructorCall() ? CallKind.IMPLICIT_CONSTRUCTOR : CallKind.IMPLICIT;
+        c.getAnalysis().getFunctionSummaries().recordCall(obj_f.getFunction(), edge_context, call, implicit, edge.getState());
         c.propagateToFunctionEntry(n, edge.getState().getContext(), edge, edge_context, obj_f.getFunction().getEntry(), callKind);
     }
 
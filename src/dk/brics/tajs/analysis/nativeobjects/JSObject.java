@@ -47,6 +47,7 @@ import dk.brics.tajs.lattice.UnknownValueResolver;
 import dk.brics.tajs.lattice.Value;
 import dk.brics.tajs.monitoring.IAnalysisMonitoring;
 import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.AnalysisBudget.Feature;
 import dk.brics.tajs.solver.GenericSolver;
 import dk.brics.tajs.solver.Message;
 import dk.brics.tajs.util.AnalysisException;
@@ -239,7 +240,7 @@ public class JSObject {
                 Value name = FunctionCalls.readParameter(call, state, 1);
                 Value nameStr = Conversion.toString(name, c);
                 c.getMonitoring().visitPropertyRead(c.getNode(), receivers, nameStr, c.getState(), true);
-                if (!Options.get().isNoPropNamePartitioning() && nameStr.isMaybeFuzzyStrOrSymbol()) {
+                if (!Options.get().isNoPropNamePartitioning() && c.getBudget().isEnabled(Feature.PROPERTY_NAME_PARTITIONING, c.getNode()) && nameStr.isMaybeFuzzyStrOrSymbol()) {
                     // partition the property name
                     PartitionedValue property = Partitioning.partitionPropValue(c.getNode(), ((CallNode) call.getJSSourceNode()).getArgRegister(1), receivers, name, nameStr, newSet(), false, c);
                     // partition the resulting value
@@ -21,6 +21,8 @@ import dk.brics.tajs.options.Options;
 import dk.brics.tajs.util.AnalysisException;
 import dk.brics.tajs.util.Strings;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.Arrays;
@@ -174,6 +176,14 @@ public class Function implements Serializable {
         this.index = index;
     }
 
+    /**
+     * Resets the function index when deserialized, since the function does not yet belong to a flow graph.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        index = -1;
+    }
+
     /**
      * Returns the function index.
      * The function index uniquely identifies the function within the flow graph.
@@ -67,7 +67,7 @@ public class SourceLocation implements DeepImmutable, Serializable {
 
     private final int endColumnNumber;
 
-    private final int hashCode;
+    private transient int hashCode;
 
     /**
      * Constructs a new source location.
@@ -87,6 +87,15 @@ public class SourceLocation implements DeepImmutable, Serializable {
         this.hashCode = computeHashCode();
     }
 
+    /**
+     * Canonicalizes deserialized source locations.
+     * The hash code is recomputed, since it depends on the hash code of the kind.
+     */
+    private Object readResolve() {
+        hashCode = computeHashCode();
+        return Canonicalizer.get().canonicalize(this);
+    }
+
     private static void checkNormalizedFileURL(URL location) {
         if (location != null && Options.get().isDebugOrTestEnabled()) {
             URL normalized = PathAndURLUtils.normalizeFileURL(location);
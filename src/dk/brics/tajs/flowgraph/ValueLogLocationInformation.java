@@ -16,6 +16,7 @@
 
 package dk.brics.tajs.flowgraph;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
@@ -26,7 +27,7 @@ import static dk.brics.tajs.util.Collections.newSet;
 /**
  * Log files from the value logger uses slightly different source location than TAJS for some syntactic constructs. This class contains information for mapping between the two domains.
  */
-public class ValueLogLocationInformation {
+public class ValueLogLocationInformation implements Serializable {
 
     private final Map<SourceLocation, Set<SourceLocation>> tajsLocation2jalangiLocation;
 
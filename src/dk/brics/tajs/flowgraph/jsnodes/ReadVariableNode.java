@@ -17,10 +17,13 @@
 package dk.brics.tajs.flowgraph.jsnodes;
 
 import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
 import dk.brics.tajs.flowgraph.SourceLocation;
 import dk.brics.tajs.util.AnalysisException;
 import dk.brics.tajs.util.Strings;
 
+import java.util.List;
+
 /**
  * Read variable node.
  * <p>
@@ -35,6 +38,8 @@ public class ReadVariableNode extends LoadNode {
 
     private boolean keep_absent; // used for 'typeof variable'
 
+    private List<Function> skipped_scopes;
+
     /**
      * Constructs a new read variable node.
      *
@@ -75,6 +80,23 @@ public class ReadVariableNode extends LoadNode {
         return keep_absent;
     }
 
+    /**
+     * Returns the functions, innermost first, whose activation objects are the first scope chain levels
+     * and statically do not declare the variable, or null if none.
+     */
+    public List<Function> getSkippedScopes() {
+        return skipped_scopes;
+    }
+
+    /**
+     * Sets the functions whose activation objects statically do not declare the variable.
+     *
+     * @see #getSkippedScopes()
+     */
+    public void setSkippedScopes(List<Function> skipped_scopes) {
+        this.skipped_scopes = skipped_scopes;
+    }
+
     @Override
     public String toString() {
         return "read-variable['" + Strings.escape(varname) + "'," +
@@ -17,10 +17,13 @@
 package dk.brics.tajs.flowgraph.jsnodes;
 
 import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
 import dk.brics.tajs.flowgraph.SourceLocation;
 import dk.brics.tajs.util.AnalysisException;
 import dk.brics.tajs.util.Strings;
 
+import java.util.List;
+
 /**
  * Write variable node.
  * <p>
@@ -32,6 +35,8 @@ public class WriteVariableNode extends Node {
 
     private int value_reg;
 
+    private List<Function> skipped_scopes;
+
     /**
      * Constructs a new write variable node.
      */
@@ -62,6 +67,23 @@ public class WriteVariableNode extends Node {
         this.value_reg = value_reg;
     }
 
+    /**
+     * Returns the functions, innermost first, whose activation objects are the first scope chain levels
+     * and statically do not declare the variable, or null if none.
+     */
+    public List<Function> getSkippedScopes() {
+        return skipped_scopes;
+    }
+
+    /**
+     * Sets the functions whose activation objects statically do not declare the variable.
+     *
+     * @see #getSkippedScopes()
+     */
+    public void setSkippedScopes(List<Function> skipped_scopes) {
+        this.skipped_scopes = skipped_scopes;
+    }
+
     @Override
     public String toString() {
         return "write-variable[v" + value_reg + ",'" + Strings.escape(varname) + "']";
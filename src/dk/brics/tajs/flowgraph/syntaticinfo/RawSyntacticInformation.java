@@ -23,6 +23,9 @@ import dk.brics.tajs.flowgraph.jsnodes.CallNode;
 import dk.brics.tajs.flowgraph.jsnodes.IfNode;
 import dk.brics.tajs.util.AnalysisException;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,8 +36,9 @@ import static dk.brics.tajs.util.Collections.newSet;
 
 /**
  * Syntactic information that eventually is used in {@link SyntacticQueries}.
+ * The information about parse trees is only used during flow graph construction and is not serialized.
  */
-public class RawSyntacticInformation {
+public class RawSyntacticInformation implements Serializable {
 
     private final Map<AbstractNode, Set<String>> variableDependencies;
 
@@ -48,9 +52,9 @@ public class RawSyntacticInformation {
 
     private final Map<AbstractNode, SyntacticReference> nodeWithBaseReferences;
 
-    private final Map<ParseTree, SyntacticReference> simpleReads;
+    private transient Map<ParseTree, SyntacticReference> simpleReads;
 
-    private final Map<ParseTree, Integer> expressionRegisters;
+    private transient Map<ParseTree, Integer> expressionRegisters;
 
     private final Map<IfNode, Set<String>> conditionRefined1ArgumentVariables;
 
@@ -81,6 +85,12 @@ public class RawSyntacticInformation {
         this.functionClosureVariablesTransitively = newMap();
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        simpleReads = newMap();
+        expressionRegisters = newMap();
+    }
+
     public Map<AbstractNode, Set<String>> getVariableDependencies() {
         return variableDependencies;
     }
@@ -308,6 +308,12 @@ public class FlowGraphBuilder {
             }
         } while (changed);
 
+        if (Options.get().isFlowGraphOptimizationEnabled()) {
+            int[] removed = FlowGraphOptimizer.optimize(blocksAndFunctions.getFirst(), blocksAndFunctions.getSecond());
+            if (log.isDebugEnabled())
+                log.debug("Flow graph optimization removed " + removed[0] + " blocks and " + removed[1] + " nodes");
+        }
+
         // add each non-empty basic block to the flow graph
         for (BasicBlock b : blocksAndFunctions.getSecond()) {
             if (!b.isEmpty()) {
@@ -333,23 +339,35 @@ public class FlowGraphBuilder {
             end.getBeginNode().getEndNodes().add(end);
         }
 
+        // resolve variable references statically where possible
+        LexicalAddressing.annotate(flowGraph, blocksAndFunctions.getFirst(), blocksAndFunctions.getSecond(), initialEnv.getFunction());
+
         // set block orders
         flowGraph.complete();
 
+        assignIndices(flowGraph, origNodeCount, origBlockCount);
+
+        return flowGraph;
+    }
+
+    /**
+     * Assigns indices to the nodes and blocks that do not have one.
+     *
+     * @param nodeCount  the first node index to use
+     * @param blockCount the first block index to use
+     */
+    static void assignIndices(FlowGraph flowGraph, int nodeCount, int blockCount) {
         // Avoid changes to block- & node-indexes due to a change in a hostenv-source.
         // (dynamically added code from eval et. al will still change)
         List<Function> sortedFunctions = newList(flowGraph.getFunctions());
-        FlowGraph finalFlowGraph = flowGraph;
         sortedFunctions.sort((f1, f2) -> {
-            boolean f1host = finalFlowGraph.isHostEnvironmentSource(f1.getSourceLocation());
-            boolean f2host = finalFlowGraph.isHostEnvironmentSource(f2.getSourceLocation());
+            boolean f1host = flowGraph.isHostEnvironmentSource(f1.getSourceLocation());
+            boolean f2host = flowGraph.isHostEnvironmentSource(f2.getSourceLocation());
             if (f1host != f2host) {
                 return f1host ? 1 : -1;
             }
             return SourceLocation.Comparator.compareStatic(f1.getSourceLocation(), f2.getSourceLocation());
         });
-        int nodeCount = origNodeCount;
-        int blockCount = origBlockCount;
         for (Function function : sortedFunctions) {
             List<BasicBlock> blocks = newList(function.getBlocks());
             blocks.sort(Comparator.comparingInt(BasicBlock::getTopologicalOrder));
@@ -364,8 +382,6 @@ public class FlowGraphBuilder {
                     }
             }
         }
-
-        return flowGraph;
     }
 
     /**
@@ -636,6 +652,20 @@ public class FlowGraphBuilder {
         return function;
     }
 
+    /**
+     * Returns the syntactic information collected by this builder.
+     */
+    RawSyntacticInformation getSyntacticInformation() {
+        return syntacticInformation;
+    }
+
+    /**
+     * Returns the value log location information collected by this builder.
+     */
+    ValueLogLocationInformation getValueLogLocationInformation() {
+        return valueLogMappingInformation;
+    }
+
     public static FlowGraphBuilder makeForMain(SourceLocationMaker sourceLocationMaker) {
         AstEnv env = AstEnv.makeInitial();
         Function main = new Function(null, null, null, sourceLocationMaker.makeUnspecifiedPosition());
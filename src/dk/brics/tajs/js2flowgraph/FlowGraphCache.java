@@ -0,0 +1,315 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.js2flowgraph;
+
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.SourceLocation;
+import dk.brics.tajs.flowgraph.SourceLocation.SourceLocationMaker;
+import dk.brics.tajs.flowgraph.ValueLogLocationInformation;
+import dk.brics.tajs.flowgraph.syntaticinfo.RawSyntacticInformation;
+import dk.brics.tajs.options.OptionValues;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.util.Strings;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newSet;
+import static org.apache.log4j.Logger.getLogger;
+
+/**
+ * Cache of the flow graphs of top-level functions loaded from files,
+ * see {@link FlowGraphMutator#extendFlowGraphWithTopLevelFunction(List, URL, boolean, FlowGraph, SourceLocationMaker)}.
+ * <p>
+ * Entries for host environment functions are kept in memory for the lifetime of the JVM, so that subsequent analyses
+ * (even after {@link dk.brics.tajs.Main#reset()}) need not parse and translate the host environment models again.
+ * All entries are also stored on disk if a cache directory is specified.
+ * <p>
+ * Entries are keyed by a hash of the source code, the source location, the parameter names, and the options that affect the translation
+ * (see {@link #getTranslationOptions()}).
+ * An entry contains the functions, basic blocks, nodes and syntactic information produced by the translation, stored using Java serialization.
+ * The main function is not stored but replaced by the main function of the flow graph being extended.
+ * Function, block and node indices are assigned anew when an entry is loaded.
+ * Entries that cannot be read, for example because they have been written by a different version of TAJS, are ignored and overwritten.
+ * <p>
+ * Only files that are loaded as separate top-level functions are cached, that is, the host environment models and polyfills,
+ * Node.js modules and other files loaded with <code>TAJS_load</code>. The files given on the command line are translated into
+ * the main function and are always parsed and translated anew.
+ */
+class FlowGraphCache {
+
+    private static final Logger log = getLogger(FlowGraphCache.class);
+
+    /**
+     * Version of the cache format, must be incremented when the translation changes without changing the serialized classes.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Serialized entries for host environment functions, shared by all analyses in the JVM.
+     */
+    private static final Map<String, byte[]> hostEnvironmentEntries = new ConcurrentHashMap<>();
+
+    private FlowGraphCache() { }
+
+    /**
+     * Returns the cache key for the given top-level function.
+     */
+    static String makeKey(List<String> parameterNames, URL sourceFile, String source, SourceLocationMaker sourceLocationMaker) {
+        SourceLocation location = sourceLocationMaker.makeUnspecifiedPosition();
+        StringBuilder b = new StringBuilder();
+        b.append(VERSION).append('\n');
+        b.append(FlowGraphCache.class.getPackage().getImplementationVersion()).append('\n');
+        b.append(getTranslationOptions()).append('\n');
+        b.append(sourceFile).append('\n');
+        b.append(location).append(' ').append(location.getLocation()).append('\n');
+        b.append(parameterNames).append('\n');
+        b.append(source);
+        return Strings.sha256(b.toString());
+    }
+
+    /**
+     * Returns a description of the options that are read while translating a top-level function.
+     * Every option that is read by {@link FunctionBuilder}, {@link FlowGraphBuilder} or {@link FlowGraphOptimizer}
+     * and affects the translated functions, blocks or nodes must be included here.
+     */
+    private static String getTranslationOptions() {
+        OptionValues options = Options.get();
+        return "no-strict=" + options.isNoStrictEnabled() +
+                " uneval=" + options.isUnevalizerEnabled() +
+                " flowgraph-optimization=" + options.isFlowGraphOptimizationEnabled() +
+                " test-soundness=" + options.getSoundnessTesterOptions().isTest() +
+                " for-in=" + options.isForInSpecializationEnabled();
+    }
+
+    /**
+     * Loads the cached flow graph for the given key into the given flow graph.
+     *
+     * @param hostEnvironment true if the function is part of the host environment
+     * @return the top-level function, or null if not in the cache
+     */
+    static Function load(String key, FlowGraph flowGraph, boolean hostEnvironment) {
+        byte[] bytes = hostEnvironment && isReuseEnabled() ? hostEnvironmentEntries.get(key) : null;
+        if (bytes == null && Options.get().isFlowGraphCacheEnabled()) {
+            Path file = getFile(key);
+            if (!Files.exists(file))
+                return null;
+            try {
+                bytes = Files.readAllBytes(file);
+            } catch (IOException e) {
+                log.debug("Ignoring flow graph cache entry " + file + ": " + e);
+                return null;
+            }
+            if (hostEnvironment && isReuseEnabled())
+                hostEnvironmentEntries.put(key, bytes);
+        }
+        if (bytes == null)
+            return null;
+        Entry entry;
+        try (ObjectInputStream in = new EntryInputStream(new ByteArrayInputStream(bytes), flowGraph.getMain())) {
+            entry = (Entry) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException | StackOverflowError e) {
+            log.debug("Ignoring flow graph cache entry " + key + ": " + e);
+            hostEnvironmentEntries.remove(key);
+            return null;
+        }
+        int origBlockCount = flowGraph.getNumberOfBlocks();
+        int origNodeCount = flowGraph.getNumberOfNodes();
+        flowGraph.addSyntacticInformation(entry.syntacticInformation, entry.valueLogLocationInformation);
+        for (Function f : entry.functions) {
+            List<BasicBlock> blocks = newList(f.getBlocks());
+            f.removeBlocks(blocks);
+            flowGraph.addFunction(f);
+            for (BasicBlock b : blocks) {
+                b.setIndex(-1);
+                for (AbstractNode n : b.getNodes())
+                    n.setIndex(-1);
+                flowGraph.addBlock(b);
+            }
+        }
+        // the cached nodes already have their for-in links and variable annotations, and the existing functions are unaffected
+        for (Function f : entry.functions)
+            f.complete();
+        FlowGraphBuilder.assignIndices(flowGraph, origNodeCount, origBlockCount);
+        log.debug("Loaded " + entry.function.getSourceLocation() + " from flow graph cache");
+        return entry.function;
+    }
+
+    /**
+     * Stores the flow graph of a newly translated top-level function.
+     * Failures are ignored, in which case the function is simply not cached.
+     *
+     * @param hostEnvironment true if the function is part of the host environment
+     * @param function        the top-level function
+     * @param functions       the top-level function and its inner functions
+     */
+    static void store(String key, boolean hostEnvironment, Function function, Collection<Function> functions, RawSyntacticInformation syntacticInformation, ValueLogLocationInformation valueLogLocationInformation) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new EntryOutputStream(bytes, functions)) {
+            out.writeObject(new Entry(function, newList(functions), syntacticInformation, valueLogLocationInformation));
+        } catch (IOException | StackOverflowError e) {
+            log.debug("Unable to store " + function.getSourceLocation() + " in flow graph cache: " + e);
+            return;
+        }
+        if (hostEnvironment && isReuseEnabled())
+            hostEnvironmentEntries.put(key, bytes.toByteArray());
+        if (!Options.get().isFlowGraphCacheEnabled())
+            return;
+        Path file = getFile(key);
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.write(tmp, bytes.toByteArray());
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+        } catch (IOException | StackOverflowError e) {
+            log.debug("Unable to store " + function.getSourceLocation() + " in flow graph cache: " + e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a function should be looked up in and stored in the cache.
+     */
+    static boolean isEnabled(boolean hostEnvironment) {
+        return Options.get().isFlowGraphCacheEnabled() || (hostEnvironment && isReuseEnabled());
+    }
+
+    private static boolean isReuseEnabled() {
+        return !Options.get().isNoFlowGraphReuseEnabled();
+    }
+
+    /**
+     * Returns the number of host environment functions kept in memory.
+     */
+    static int getNumberOfHostEnvironmentEntries() {
+        return hostEnvironmentEntries.size();
+    }
+
+    private static Path getFile(String key) {
+        return Paths.get(Options.get().getFlowGraphCacheDirectory()).resolve(key + ".fg");
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static final class Entry implements Serializable {
+
+        private final Function function;
+
+        private final List<Function> functions;
+
+        private final RawSyntacticInformation syntacticInformation;
+
+        private final ValueLogLocationInformation valueLogLocationInformation;
+
+        private Entry(Function function, List<Function> functions, RawSyntacticInformation syntacticInformation, ValueLogLocationInformation valueLogLocationInformation) {
+            this.function = function;
+            this.functions = functions;
+            this.syntacticInformation = syntacticInformation;
+            this.valueLogLocationInformation = valueLogLocationInformation;
+        }
+    }
+
+    /**
+     * Placeholder for the main function.
+     */
+    private static final class MainFunction implements Serializable {
+
+        private static final MainFunction INSTANCE = new MainFunction();
+    }
+
+    /**
+     * Replaces references to the main function by a placeholder.
+     */
+    private static final class EntryOutputStream extends ObjectOutputStream {
+
+        private final Set<Function> functions;
+
+        private EntryOutputStream(OutputStream out, Collection<Function> functions) throws IOException {
+            super(out);
+            this.functions = newSet(functions);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj instanceof Function && !functions.contains(obj)) {
+                if (((Function) obj).isMain())
+                    return MainFunction.INSTANCE;
+                throw new NotSerializableException("Reference to function outside the cache entry: " + ((Function) obj).getSourceLocation());
+            }
+            return obj;
+        }
+    }
+
+    /**
+     * Resolves the placeholder for the main function.
+     */
+    private static final class EntryInputStream extends ObjectInputStream {
+
+        private final Function main;
+
+        private EntryInputStream(InputStream in, Function main) throws IOException {
+            super(in);
+            this.main = main;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) {
+            if (obj instanceof MainFunction)
+                return main;
+            return obj;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import dk.brics.tajs.flowgraph.SourceLocation.SourceLocationMaker;
 import dk.brics.tajs.flowgraph.jsnodes.ConstantNode;
 import dk.brics.tajs.flowgraph.jsnodes.LoadNode;
 import dk.brics.tajs.js2flowgraph.FlowGraphBuilder.TripleForSetEntryBlocksWorklist;
+import dk.brics.tajs.options.Options;
 import dk.brics.tajs.util.AnalysisException;
 import dk.brics.tajs.util.Loader;
 import dk.brics.tajs.util.Pair;
@@ -148,7 +149,14 @@ public class FlowGraphMutator {
         if (!existingFlowgraph.getFunctionCache().containsKey(key)) {
             try {
                 String source = Loader.getString(sourceFile, Charset.forName("UTF-8"));
-                Function function = addTopLevelFunction(parameterNames, source, existingFlowgraph, sourceLocationMaker);
+                Function function;
+                if (FlowGraphCache.isEnabled(isHostEnvironment)) {
+                    String cacheKey = FlowGraphCache.makeKey(parameterNames, sourceFile, source, sourceLocationMaker);
+                    function = FlowGraphCache.load(cacheKey, existingFlowgraph, isHostEnvironment);
+                    if (function == null)
+                        function = addTopLevelFunction(parameterNames, source, existingFlowgraph, sourceLocationMaker, cacheKey, isHostEnvironment);
+                } else
+                    function = addTopLevelFunction(parameterNames, source, existingFlowgraph, sourceLocationMaker, null, false);
                 existingFlowgraph.getFunctionCache().put(key, function);
             } catch (IOException e) {
                 throw new AnalysisException(e);
@@ -165,7 +173,7 @@ public class FlowGraphMutator {
         SourceLocation location = sourceLocationMaker.makeUnspecifiedPosition();
         FlowGraph.FunctionDynamicSourceCacheKey key = new FlowGraph.FunctionDynamicSourceCacheKey(location, parameterNames, source);
         if (!existingFlowgraph.getFunctionCache().containsKey(key)) {
-            Function function = addTopLevelFunction(parameterNames, source, existingFlowgraph, sourceLocationMaker);
+            Function function = addTopLevelFunction(parameterNames, source, existingFlowgraph, sourceLocationMaker, null, false);
             existingFlowgraph.getFunctionCache().put(key, function);
         }
         return existingFlowgraph.getFunctionCache().get(key);
@@ -173,13 +181,19 @@ public class FlowGraphMutator {
 
     /**
      * Adds a new top level function with the given parameter names and body source.
+     *
+     * @param cacheKey          key for storing the new function in the flow graph cache, or null if not cached
+     * @param isHostEnvironment true if the function is part of the host environment
      */
-    private static Function addTopLevelFunction(List<String> parameterNames, String source, FlowGraph existingFlowgraph, SourceLocationMaker sourceLocationMaker) {
+    private static Function addTopLevelFunction(List<String> parameterNames, String source, FlowGraph existingFlowgraph, SourceLocationMaker sourceLocationMaker, String cacheKey, boolean isHostEnvironment) {
         BasicBlock standaloneBlock = new BasicBlock(existingFlowgraph.getMain());
         AstEnv env = AstEnv.makeInitial().makeEnclosingFunction(existingFlowgraph.getMain()).makeAppendBlock(standaloneBlock);
-        FlowGraphBuilder builder = new FlowGraphBuilder(env, new FunctionAndBlockManager());
+        FunctionAndBlockManager functionAndBlocksManager = new FunctionAndBlockManager();
+        FlowGraphBuilder builder = new FlowGraphBuilder(env, functionAndBlocksManager);
         Function function = builder.transformFunctionBody(source, parameterNames, sourceLocationMaker);
         builder.close(existingFlowgraph, null);
+        if (cacheKey != null)
+            FlowGraphCache.store(cacheKey, isHostEnvironment, function, functionAndBlocksManager.close().getFirst(), builder.getSyntacticInformation(), builder.getValueLogLocationInformation());
         return function;
     }
 }
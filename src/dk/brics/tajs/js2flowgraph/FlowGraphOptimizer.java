@@ -0,0 +1,403 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.js2flowgraph;
+
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.BeginForInNode;
+import dk.brics.tajs.flowgraph.jsnodes.BeginLoopNode;
+import dk.brics.tajs.flowgraph.jsnodes.BeginWithNode;
+import dk.brics.tajs.flowgraph.jsnodes.BinaryOperatorNode;
+import dk.brics.tajs.flowgraph.jsnodes.CallNode;
+import dk.brics.tajs.flowgraph.jsnodes.CatchNode;
+import dk.brics.tajs.flowgraph.jsnodes.ConstantNode;
+import dk.brics.tajs.flowgraph.jsnodes.DefaultNodeVisitor;
+import dk.brics.tajs.flowgraph.jsnodes.DeletePropertyNode;
+import dk.brics.tajs.flowgraph.jsnodes.EventDispatcherNode;
+import dk.brics.tajs.flowgraph.jsnodes.HasNextPropertyNode;
+import dk.brics.tajs.flowgraph.jsnodes.IfNode;
+import dk.brics.tajs.flowgraph.jsnodes.LoadNode;
+import dk.brics.tajs.flowgraph.jsnodes.NewObjectNode;
+import dk.brics.tajs.flowgraph.jsnodes.NextPropertyNode;
+import dk.brics.tajs.flowgraph.jsnodes.NopNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReadPropertyNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReturnNode;
+import dk.brics.tajs.flowgraph.jsnodes.ThrowNode;
+import dk.brics.tajs.flowgraph.jsnodes.UnaryOperatorNode;
+import dk.brics.tajs.flowgraph.jsnodes.WritePropertyNode;
+import dk.brics.tajs.flowgraph.jsnodes.WriteVariableNode;
+import dk.brics.tajs.options.Options;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+
+/**
+ * Simplifications of newly built functions, to reduce the number of node transfers and block states during the analysis
+ * (see <code>-flowgraph-optimization</code>).
+ * <p>
+ * The passes are:
+ * <ol>
+ * <li>merging of straight-line blocks, where a block has a single successor that has no other predecessors and the same
+ * exception handler and entry block, and that contains no nodes that may make implicit calls,</li>
+ * <li>folding of unary and binary operations on primitive constants in the same block,</li>
+ * <li>removal of nop nodes and of constant nodes whose registers are never read.</li>
+ * </ol>
+ * Nodes that remain keep their source locations, and a folded constant gets the location of the operation it replaces.
+ * The first node of each block is never removed, so block source locations and the nodes that identify
+ * activation objects (the first node of each function) are unchanged.
+ * Blocks are not merged when the soundness tester is enabled, since it inspects the abstract states at block entries.
+ */
+class FlowGraphOptimizer {
+
+    private int removed_nodes;
+
+    private int removed_blocks;
+
+    private FlowGraphOptimizer() { }
+
+    /**
+     * Optimizes the given functions.
+     *
+     * @param functions the functions to optimize (blocks of other functions are ignored)
+     * @param blocks    the blocks of the functions, empty blocks are ignored; merged blocks are emptied
+     * @return the number of removed blocks and nodes, in that order
+     */
+    static int[] optimize(Collection<Function> functions, Collection<BasicBlock> blocks) {
+        FlowGraphOptimizer opt = new FlowGraphOptimizer();
+        Set<Function> fs = newSet(functions);
+        Map<Function, List<BasicBlock>> function_blocks = newMap();
+        for (BasicBlock b : blocks)
+            if (!b.isEmpty() && fs.contains(b.getFunction()))
+                function_blocks.computeIfAbsent(b.getFunction(), k -> newList()).add(b);
+        for (List<BasicBlock> bs : function_blocks.values()) {
+            if (!Options.get().getSoundnessTesterOptions().isTest())
+                opt.mergeBlocks(bs);
+            for (BasicBlock b : bs)
+                if (!b.isEmpty())
+                    opt.foldConstants(b);
+            opt.removeNodes(bs);
+        }
+        return new int[]{opt.removed_blocks, opt.removed_nodes};
+    }
+
+    /**
+     * Merges each block with its successor if the successor has no other predecessors.
+     */
+    private void mergeBlocks(List<BasicBlock> bs) {
+        Map<BasicBlock, Integer> predecessors = newMap();
+        Set<BasicBlock> pinned = newSet(); // blocks that are referenced other than by ordinary edges
+        for (BasicBlock b : bs) {
+            for (BasicBlock s : b.getSuccessors())
+                predecessors.merge(s, 1, Integer::sum);
+            if (b.getExceptionHandler() != null)
+                pinned.add(b.getExceptionHandler());
+            if (b.getEntryPredecessorBlock() != null)
+                pinned.add(b.getEntryPredecessorBlock());
+        }
+        Function f = bs.get(0).getFunction();
+        pinned.add(f.getEntry());
+        pinned.add(f.getOrdinaryExit());
+        pinned.add(f.getExceptionalExit());
+        for (BasicBlock b : bs) {
+            while (!b.isEmpty() && b.getSuccessors().size() == 1) {
+                BasicBlock s = b.getSingleSuccessor();
+                if (s == b || s.isEmpty() || pinned.contains(s) || predecessors.get(s) != 1
+                        || s.getFunction() != f || s.getExceptionHandler() != b.getExceptionHandler()
+                        || s.getEntryBlock() != b.getEntryBlock() || s.getEntryBlock() == s
+                        || !mayContinueBlock(b.getLastNode()) || s.getFirstNode().isLoopEntryNode() || !mayJoinBlock(s))
+                    break;
+                for (AbstractNode n : s.getNodes())
+                    b.addNode(n);
+                s.getNodes().clear();
+                b.getSuccessors().clear();
+                for (BasicBlock ss : s.getSuccessors())
+                    b.addSuccessor(ss);
+                s.getSuccessors().clear();
+                removed_blocks++;
+            }
+        }
+    }
+
+    /**
+     * Checks whether nodes may follow the given node in its block.
+     * Control nodes propagate directly to the successor block, or must be alone in their block.
+     */
+    private static boolean mayContinueBlock(AbstractNode n) {
+        return !(FunctionBuilderHelper.requiresOwnBlock(n) || n instanceof IfNode || n instanceof EventDispatcherNode
+                || n instanceof BeginForInNode || n instanceof BeginLoopNode);
+    }
+
+    /**
+     * Checks whether the nodes of the given block may be appended to another block.
+     * This is only done if none of the nodes may make implicit calls (to getters, setters, valueOf, etc.),
+     * since the block containing such a node is processed again from its entry when an implicit call returns.
+     */
+    private static boolean mayJoinBlock(BasicBlock b) {
+        for (AbstractNode n : b.getNodes())
+            if (!(n instanceof ConstantNode || n instanceof NopNode || n instanceof IfNode || n instanceof NewObjectNode
+                    || n instanceof BeginLoopNode || n instanceof HasNextPropertyNode))
+                return false;
+        return true;
+    }
+
+    /**
+     * Replaces operations on constants defined earlier in the same block by constants.
+     */
+    private void foldConstants(BasicBlock b) {
+        Map<Integer, ConstantNode> constants = newMap();
+        List<AbstractNode> nodes = b.getNodes();
+        for (int i = 0; i < nodes.size(); i++) {
+            AbstractNode n = nodes.get(i);
+            ConstantNode folded = null;
+            if (n instanceof UnaryOperatorNode) {
+                UnaryOperatorNode u = (UnaryOperatorNode) n;
+                folded = fold(u, constants.get(u.getArgRegister()));
+            } else if (n instanceof BinaryOperatorNode) {
+                BinaryOperatorNode bn = (BinaryOperatorNode) n;
+                folded = fold(bn, constants.get(bn.getArg1Register()), constants.get(bn.getArg2Register()));
+            }
+            if (folded != null) {
+                if (n.isArtificial())
+                    folded.setArtificial();
+                folded.setDuplicateOf(n.getDuplicateOf());
+                folded.setIsLoopEntryNode(n.isLoopEntryNode());
+                folded.setBlock(b);
+                nodes.set(i, folded);
+                n = folded;
+            }
+            for (int reg : getRegisters(n))
+                constants.remove(reg);
+            if (n instanceof ConstantNode && ((ConstantNode) n).getResultRegister() != AbstractNode.NO_VALUE)
+                constants.put(((ConstantNode) n).getResultRegister(), (ConstantNode) n);
+        }
+    }
+
+    private static ConstantNode fold(UnaryOperatorNode n, ConstantNode c) {
+        if (c == null)
+            return null;
+        int reg = n.getResultRegister();
+        switch (n.getOperator()) {
+            case NOT:
+                return c.getType() == ConstantNode.Type.BOOLEAN ? ConstantNode.makeBoolean(!c.getBoolean(), reg, n.getSourceLocation()) : null;
+            case MINUS:
+                return c.getType() == ConstantNode.Type.NUMBER ? ConstantNode.makeNumber(-c.getNumber(), reg, n.getSourceLocation()) : null;
+            case PLUS:
+                return c.getType() == ConstantNode.Type.NUMBER ? ConstantNode.makeNumber(c.getNumber(), reg, n.getSourceLocation()) : null;
+            case TYPEOF:
+                String type;
+                switch (c.getType()) {
+                    case NUMBER:
+                        type = "number";
+                        break;
+                    case STRING:
+                        type = "string";
+                        break;
+                    case BOOLEAN:
+                        type = "boolean";
+                        break;
+                    case UNDEFINED:
+                        type = "undefined";
+                        break;
+                    default:
+                        type = "object";
+                }
+                return ConstantNode.makeString(type, reg, n.getSourceLocation());
+            default:
+                return null;
+        }
+    }
+
+    private static ConstantNode fold(BinaryOperatorNode n, ConstantNode c1, ConstantNode c2) {
+        if (c1 == null || c2 == null)
+            return null;
+        int reg = n.getResultRegister();
+        if (c1.getType() == ConstantNode.Type.STRING && c2.getType() == ConstantNode.Type.STRING)
+            return n.getOperator() == BinaryOperatorNode.Op.ADD ? ConstantNode.makeString(c1.getString() + c2.getString(), reg, n.getSourceLocation()) : null;
+        if (c1.getType() != ConstantNode.Type.NUMBER || c2.getType() != ConstantNode.Type.NUMBER)
+            return null;
+        double x = c1.getNumber(), y = c2.getNumber();
+        switch (n.getOperator()) {
+            case ADD:
+                return ConstantNode.makeNumber(x + y, reg, n.getSourceLocation());
+            case SUB:
+                return ConstantNode.makeNumber(x - y, reg, n.getSourceLocation());
+            case MUL:
+                return ConstantNode.makeNumber(x * y, reg, n.getSourceLocation());
+            case DIV:
+                return ConstantNode.makeNumber(x / y, reg, n.getSourceLocation());
+            case REM:
+                return ConstantNode.makeNumber(x % y, reg, n.getSourceLocation()); // same semantics as ECMAScript 11.5.3
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Removes nop nodes and constant nodes whose result registers are not read in the function.
+     * The first node of each block is kept.
+     */
+    private void removeNodes(List<BasicBlock> bs) {
+        Set<Integer> live = newSet();
+        for (BasicBlock b : bs)
+            for (AbstractNode n : b.getNodes())
+                if (!(n instanceof ConstantNode))
+                    live.addAll(getRegisters(n));
+        for (BasicBlock b : bs) {
+            if (b.isEmpty())
+                continue;
+            Iterator<AbstractNode> it = b.getNodes().iterator();
+            it.next();
+            while (it.hasNext()) {
+                AbstractNode n = it.next();
+                boolean dead;
+                if (n instanceof NopNode)
+                    dead = true;
+                else if (n instanceof ConstantNode) {
+                    int reg = ((ConstantNode) n).getResultRegister();
+                    dead = reg == AbstractNode.NO_VALUE || (reg >= AbstractNode.FIRST_ORDINARY_REG && !live.contains(reg));
+                } else
+                    dead = false;
+                if (dead && !n.isLoopEntryNode()) {
+                    it.remove();
+                    removed_nodes++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the registers that the given node reads or writes.
+     */
+    private static Set<Integer> getRegisters(AbstractNode n) {
+        RegisterCollector c = new RegisterCollector();
+        if (n instanceof LoadNode)
+            c.add(((LoadNode) n).getResultRegister());
+        n.visitBy(c);
+        return c.regs;
+    }
+
+    private static class RegisterCollector extends DefaultNodeVisitor {
+
+        private final Set<Integer> regs = newSet();
+
+        private void add(int reg) {
+            if (reg != AbstractNode.NO_VALUE)
+                regs.add(reg);
+        }
+
+        @Override
+        public void visit(BinaryOperatorNode n) {
+            add(n.getArg1Register());
+            add(n.getArg2Register());
+        }
+
+        @Override
+        public void visit(CallNode n) {
+            add(n.getBaseRegister());
+            add(n.getFunctionRegister());
+            add(n.getPropertyRegister());
+            for (int i = 0; i < n.getNumberOfArgs(); i++)
+                add(n.getArgRegister(i));
+        }
+
+        @Override
+        public void visit(CatchNode n) {
+            add(n.getScopeObjRegister());
+            add(n.getValueRegister());
+        }
+
+        @Override
+        public void visit(DeletePropertyNode n) {
+            add(n.getBaseRegister());
+            add(n.getPropertyRegister());
+        }
+
+        @Override
+        public void visit(BeginWithNode n) {
+            add(n.getObjectRegister());
+        }
+
+        @Override
+        public void visit(HasNextPropertyNode n) {
+            add(n.getPropertyListRegister());
+        }
+
+        @Override
+        public void visit(IfNode n) {
+            add(n.getConditionRegister());
+        }
+
+        @Override
+        public void visit(NextPropertyNode n) {
+            add(n.getPropertyListRegister());
+            add(n.getPropertyRegister());
+        }
+
+        @Override
+        public void visit(ReadPropertyNode n) {
+            add(n.getBaseRegister());
+            add(n.getPropertyRegister());
+        }
+
+        @Override
+        public void visit(ReadVariableNode n) {
+            add(n.getResultBaseRegister());
+        }
+
+        @Override
+        public void visit(ReturnNode n) {
+            add(n.getReturnValueRegister());
+        }
+
+        @Override
+        public void visit(ThrowNode n) {
+            add(n.getValueRegister());
+        }
+
+        @Override
+        public void visit(UnaryOperatorNode n) {
+            add(n.getArgRegister());
+        }
+
+        @Override
+        public void visit(WritePropertyNode n) {
+            add(n.getBaseRegister());
+            add(n.getPropertyRegister());
+            add(n.getValueRegister());
+        }
+
+        @Override
+        public void visit(WriteVariableNode n) {
+            add(n.getValueRegister());
+        }
+
+        @Override
+        public void visit(BeginForInNode n) {
+            add(n.getObjectRegister());
+            add(n.getPropertyListRegister());
+        }
+    }
+}
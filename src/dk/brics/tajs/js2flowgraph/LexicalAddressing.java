@@ -0,0 +1,146 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.js2flowgraph;
+
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.DeclareFunctionNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
+import dk.brics.tajs.flowgraph.jsnodes.WriteVariableNode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+
+/**
+ * Static resolution of variable reads and writes.
+ * <p>
+ * For each variable node, finds the enclosing functions, innermost first, whose activation objects do not declare the variable
+ * (as 'arguments', a parameter, a variable, an inner function declaration, or the name of a function expression).
+ * The main function is never included, since its variable object is the global object.
+ * The analysis skips those scope chain levels only after checking that they are indeed the activation objects of
+ * those functions, so scope objects from 'with' and 'catch', and functions that are instantiated in other scopes,
+ * fall back to the ordinary scope chain walk.
+ * <p>
+ * Only the nodes added by a flow graph builder are annotated when the flow graph is extended.
+ * Code added by eval may also declare new variables and functions in an existing function,
+ * in which case the nodes of that function and of the functions nested in it are annotated again.
+ */
+class LexicalAddressing {
+
+    private final Map<Function, Set<String>> declared_names = newMap();
+
+    private final Map<Function, Map<String, List<Function>>> resolved = newMap();
+
+    private LexicalAddressing() { }
+
+    /**
+     * Annotates the variable nodes that have been added to the given flow graph.
+     *
+     * @param functions the new functions
+     * @param blocks    the new blocks, in new or existing functions
+     * @param enclosing the function that the new code has been added to
+     */
+    static void annotate(FlowGraph fg, Collection<Function> functions, Collection<BasicBlock> blocks, Function enclosing) {
+        LexicalAddressing la = new LexicalAddressing();
+        Set<BasicBlock> todo = newSet(blocks);
+        for (Function f : functions)
+            todo.addAll(f.getBlocks());
+        // existing functions that may have new declarations
+        Set<Function> extended = newSet();
+        if (!functions.contains(enclosing))
+            extended.add(enclosing);
+        for (Function f : functions) {
+            DeclareFunctionNode n = f.getNode();
+            Function outer = f.getOuterFunction();
+            if (n != null && !n.isExpression() && outer != null && !functions.contains(outer))
+                extended.add(outer);
+        }
+        extended.removeIf(Function::isMain); // variables of the main function are never skipped
+        if (!extended.isEmpty())
+            for (Function f : fg.getFunctions())
+                for (Function g = f; g != null; g = g.getOuterFunction())
+                    if (extended.contains(g)) {
+                        todo.addAll(f.getBlocks());
+                        break;
+                    }
+        for (BasicBlock b : todo)
+            for (AbstractNode n : b.getNodes())
+                if (n instanceof ReadVariableNode) {
+                    ReadVariableNode rn = (ReadVariableNode) n;
+                    rn.setSkippedScopes(la.resolve(b.getFunction(), rn.getVariableName()));
+                } else if (n instanceof WriteVariableNode) {
+                    WriteVariableNode wn = (WriteVariableNode) n;
+                    wn.setSkippedScopes(la.resolve(b.getFunction(), wn.getVariableName()));
+                }
+    }
+
+    /**
+     * Returns the names declared in the activation object of the given function.
+     */
+    private Set<String> getDeclaredNames(Function f) {
+        Set<String> names = declared_names.get(f);
+        if (names == null) {
+            names = newSet();
+            names.add("arguments");
+            names.addAll(f.getParameterNames());
+            names.addAll(f.getVariableNames());
+            DeclareFunctionNode n = f.getNode();
+            if (n != null && n.isExpression() && f.getName() != null)
+                names.add(f.getName());
+            for (BasicBlock b : f.getBlocks())
+                for (AbstractNode m : b.getNodes())
+                    if (m instanceof DeclareFunctionNode) {
+                        DeclareFunctionNode d = (DeclareFunctionNode) m;
+                        if (!d.isExpression() && d.getFunction().getName() != null)
+                            names.add(d.getFunction().getName());
+                    }
+            declared_names.put(f, names);
+        }
+        return names;
+    }
+
+    /**
+     * Returns the functions whose activation objects can be skipped when looking up the given variable in the given function, or null if none.
+     * The lists are shared between nodes of the same function.
+     */
+    private List<Function> resolve(Function f, String varname) {
+        Map<String, List<Function>> m = resolved.computeIfAbsent(f, k -> newMap());
+        if (m.containsKey(varname))
+            return m.get(varname);
+        List<Function> skipped = null;
+        for (Function g = f; !g.isMain(); g = g.getOuterFunction()) {
+            if (getDeclaredNames(g).contains(varname))
+                break;
+            if (skipped == null)
+                skipped = newList();
+            skipped.add(g);
+        }
+        if (skipped != null)
+            skipped = Collections.unmodifiableList(skipped);
+        m.put(varname, skipped);
+        return skipped;
+    }
+}
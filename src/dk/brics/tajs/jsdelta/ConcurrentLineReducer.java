@@ -0,0 +1,177 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.jsdelta;
+
+import dk.brics.tajs.jsdelta.util.JSDeltaCommandLineInterfaceToJava;
+import dk.brics.tajs.options.TAJSEnvironmentConfig;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import static dk.brics.tajs.util.Collections.newList;
+
+/**
+ * Coarse reduction of a single file by removal of chunks of lines, where the candidates of each round are evaluated concurrently.
+ * <p>
+ * JSDelta evaluates its candidates one at a time, so this is done first, and JSDelta continues from the result.
+ * The rounds follow the ddmin algorithm: the lines are split into n chunks, and the n candidates that each lack one chunk
+ * are tested in parallel. The first candidate (by position) that satisfies the predicate is kept, so the result does not
+ * depend on the timing of the processes. If no candidate satisfies the predicate, the chunks are split further,
+ * until they are single lines.
+ * Unless another predicate is given, each candidate is tested in its own JVM, since the analysis uses global state.
+ */
+public class ConcurrentLineReducer {
+
+    private static final Logger log = Logger.getLogger(ConcurrentLineReducer.class);
+
+    private final Class<? extends RunPredicate> testerClass;
+
+    private final String testerArg;
+
+    private final Predicate<List<String>> tester;
+
+    private final int jobs;
+
+    private final Path dir;
+
+    private int candidates;
+
+    /**
+     * Constructs a new reducer that tests the candidates with the given RunPredicate, each in a child JVM.
+     *
+     * @param jobs number of candidates that are tested in parallel
+     */
+    ConcurrentLineReducer(Class<? extends RunPredicate> testerClass, String testerArg, int jobs) throws IOException {
+        this(testerClass, testerArg, null, jobs);
+    }
+
+    /**
+     * Constructs a new reducer that tests the lines of the candidates with the given predicate, which must be thread-safe.
+     *
+     * @param jobs number of candidates that are tested in parallel
+     */
+    public ConcurrentLineReducer(Predicate<List<String>> tester, int jobs) throws IOException {
+        this(null, null, tester, jobs);
+    }
+
+    private ConcurrentLineReducer(Class<? extends RunPredicate> testerClass, String testerArg, Predicate<List<String>> tester, int jobs) throws IOException {
+        this.testerClass = testerClass;
+        this.testerArg = testerArg;
+        this.tester = tester;
+        this.jobs = jobs;
+        this.dir = Files.createTempDirectory("jsdelta-lines");
+    }
+
+    /**
+     * Reduces the given file.
+     *
+     * @return a new file with the reduced contents, or the given file if no lines could be removed
+     */
+    public Path reduce(Path file) throws IOException, InterruptedException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        int original = lines.size();
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        try {
+            int n = 2;
+            while (lines.size() >= 2) {
+                int chunk = (lines.size() + n - 1) / n;
+                List<List<String>> round = newList();
+                for (int start = 0; start < lines.size(); start += chunk) {
+                    List<String> candidate = newList(lines.subList(0, start));
+                    candidate.addAll(lines.subList(Math.min(start + chunk, lines.size()), lines.size()));
+                    round.add(candidate);
+                }
+                List<Future<Boolean>> verdicts = newList();
+                for (List<String> candidate : round)
+                    verdicts.add(executor.submit(() -> test(file, candidate)));
+                int accepted = -1;
+                for (int i = 0; i < verdicts.size() && accepted == -1; i++) {
+                    try {
+                        if (verdicts.get(i).get())
+                            accepted = i;
+                    } catch (ExecutionException e) {
+                        throw new RuntimeException(e.getCause());
+                    }
+                }
+                verdicts.forEach(f -> f.cancel(true));
+                if (accepted != -1) {
+                    lines = round.get(accepted);
+                    n = Math.max(n - 1, 2);
+                } else if (chunk == 1) {
+                    break;
+                } else {
+                    n = Math.min(n * 2, lines.size());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info(String.format("Line reduction tested %d candidates using %d jobs: %d of %d lines left", candidates, jobs, lines.size(), original));
+        if (lines.size() == original)
+            return file;
+        Path reduced = Files.createDirectories(dir.resolve("reduced")).resolve(file.getFileName());
+        Files.write(reduced, lines, StandardCharsets.UTF_8);
+        return reduced;
+    }
+
+    /**
+     * Tests a candidate, in a child JVM unless another predicate has been given.
+     */
+    private boolean test(Path file, List<String> lines) throws IOException {
+        int index;
+        synchronized (this) {
+            index = candidates++;
+        }
+        if (tester != null)
+            return tester.test(lines);
+        Path candidateDir = Files.createDirectories(dir.resolve(String.valueOf(index)));
+        Path candidate = candidateDir.resolve(file.getFileName());
+        Path output = candidateDir.resolve("output.txt");
+        Files.write(candidate, lines, StandardCharsets.UTF_8);
+        List<String> command = newList();
+        command.add(TAJSEnvironmentConfig.get().getJava().toString());
+        command.add("-Xmx4G");
+        command.add("-ea");
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add(JSDeltaCommandLineInterfaceToJava.class.getName());
+        command.add(testerClass.getCanonicalName());
+        if (testerArg != null)
+            command.add(testerArg);
+        command.add(candidate.toString());
+        Process p = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(output.toFile()).start();
+        try {
+            return p.waitFor() == 0;
+        } catch (InterruptedException e) { // the verdict is no longer needed
+            p.destroyForcibly();
+            return false;
+        } finally {
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(candidate);
+            Files.deleteIfExists(candidateDir);
+        }
+    }
+}
@@ -42,6 +42,11 @@ public class DeltaMinimizer {
 
     private static final Logger log = Logger.getLogger(DeltaMinimizer.class);
 
+    /**
+     * Number of candidates tested in parallel by the line reduction that precedes JSDelta (each in a JVM with up to 4G heap).
+     */
+    private static final int LINE_REDUCTION_JOBS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     static {
         try (BufferedReader br = new BufferedReader(new InputStreamReader(DeltaMinimizer.class.getResourceAsStream("/jsdelta/jsdelta-TAJS-predicate.js")))) {
             StringBuilder sb = new StringBuilder();
@@ -125,16 +130,22 @@ public class DeltaMinimizer {
      * @param testerArg   as a string that should be passed to the testerClass constructor (useful for dynamically defined predicates)
      * @param dir         true if jsdelta should be invoked with the --dir flag
      * @param quick       true if jsdelta should be invoked with the --quick flag
-     * @param batchMode   true if stdout should be silent and if a parallel execution environment can be expected (prevents std. execution of TAJS)
+     * @param batchMode   true if stdout should be silent and if a parallel execution environment can be expected (prevents std. execution of TAJS,
+     *                    and the concurrent line reduction that otherwise precedes JSDelta for single files, see {@link ConcurrentLineReducer})
      */
     public static Path reduce(final Path rootDir, Path mainFile, Class<? extends RunPredicate> testerClass, String testerArg, boolean dir, boolean quick, boolean batchMode) {
         log.info("Initializing and sanity-checking minimization...");
         performSanityChecks(rootDir, mainFile, testerClass, testerArg, batchMode);
 
         try (DeltaMinimizerServer server = new DeltaMinimizerServer()) {
-            Path predicateFile = writePredicateFile(testerArg, testerClass, server);
+            int depth = dir ? rootDir.relativize(mainFile).getNameCount() : 0;
+            Path predicateFile = writePredicateFile(testerArg, testerClass, depth, server);
             log.info("Starting minimization...");
-            Path minimized = JavaInterfaceForJSDelta.run(mainFile, predicateFile, dir ? rootDir : null, quick, batchMode);
+            Path target = mainFile;
+            if (!dir && !batchMode) {
+                target = new ConcurrentLineReducer(testerClass, testerArg, LINE_REDUCTION_JOBS).reduce(mainFile);
+            }
+            Path minimized = JavaInterfaceForJSDelta.run(target, predicateFile, dir ? rootDir : null, quick, batchMode);
             if (!batchMode) {
                 if (minimized == null) {
                     log.info("Minimization failed...");
@@ -147,7 +158,7 @@ public class DeltaMinimizer {
                 }
             }
             return minimized;
-        } catch (IOException e) {
+        } catch (IOException | InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
@@ -171,17 +182,25 @@ public class DeltaMinimizer {
         }
     }
 
-    private static Path writePredicateFile(String testerArg, Class<? extends RunPredicate> predicateClass, DeltaMinimizerServer server) throws IOException {
+    /**
+     * Writes the JSDelta predicate file.
+     * The verdicts of the predicate are cached by the contents of the candidates, see makeCachedPredicate in jsdelta-TAJS-predicate.js.
+     *
+     * @param depth the number of directory levels from the candidate root to the file that JSDelta gives to the predicate
+     */
+    private static Path writePredicateFile(String testerArg, Class<? extends RunPredicate> predicateClass, int depth, DeltaMinimizerServer server) throws IOException {
         StringBuilder predicate = new StringBuilder();
         predicate.append(predicatePreamble);
         TAJSEnvironmentConfig.init(TAJSEnvironmentConfig.findProperties());
         List<Integer> ports = TAJSEnvironmentConfig.get().getJSDeltaServerPorts();
+        String uncachedPredicate;
         if (!ports.isEmpty()) {
             server.start(ports);
-            predicate.append(makeServerpredicateString(testerArg, predicateClass, server.getPort()));
+            uncachedPredicate = makeServerpredicateString(testerArg, predicateClass, server.getPort());
         } else {
-            predicate.append(makeCommandLinePredicateString(testerArg, predicateClass));
+            uncachedPredicate = makeCommandLinePredicateString(testerArg, predicateClass);
         }
+        predicate.append(String.format("exports.test = makeCachedPredicate(%s, %d);%n", uncachedPredicate, depth));
 
         Path predicateFile = Files.createTempFile("predicate", ".js");
         try (PrintWriter writer = new PrintWriter(predicateFile.toFile())) {
@@ -197,14 +216,13 @@ public class DeltaMinimizer {
         String java = TAJSEnvironmentConfig.get().getJava().toString().replace('\\', '/');
         String mainclass =  JSDeltaCommandLineInterfaceToJava.class.getCanonicalName();
         String classpath = System.getProperty("java.class.path").replace('\\', '/');
-        return String.format("exports.test = " +
-                        "makeJavaProcessPredicate(%n" +
+        return String.format("makeJavaProcessPredicate(%n" +
                         "%s, // TAJS-args %n" +
                         "'%s', // Java executable %n" +
                         "['-Xmx4G', '-ea'], // Java-args %n" +
                         "'%s', // main-class %n" +
                         "'%s' // classpath %n" +
-                        ");",
+                        ")",
                 tajsArgs,
                 java,
                 mainclass,
@@ -213,10 +231,9 @@ public class DeltaMinimizer {
     }
 
     private static String makeServerpredicateString(String testerArg, Class<? extends RunPredicate> predicateClass, int port) {
-        return String.format("exports.test = %n" +
-                "makeServerProcessPredicate(%n" +
+        return String.format("makeServerProcessPredicate(%n" +
                 "['%s', '%s'], %n" +
                 "%d%n" +
-                ");", predicateClass.getCanonicalName(), testerArg, port);
+                ")", predicateClass.getCanonicalName(), testerArg, port);
     }
 }
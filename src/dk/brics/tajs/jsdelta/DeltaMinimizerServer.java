@@ -26,21 +26,22 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-
-import static dk.brics.tajs.util.Collections.newSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Persistent server for evaluating predicates of reduced sources, without the overhead of a fresh JVM.
  * <p>
  * The server is started in a separate process, so simultaneous server instances are safe.
- * The server is single-threaded.
+ * The server process binds the first available of the allowed ports and reports it on its standard output,
+ * so no polling is needed for detecting when it is ready.
+ * The server is single-threaded, since the analysis uses global state.
  */
 class DeltaMinimizerServer implements AutoCloseable {
 
     private static final boolean DEBUG = false;
 
-    private static Set<Integer> takenPorts = newSet();
+    private static final String LISTENING = "LISTENING";
 
     private int port;
 
@@ -53,25 +54,7 @@ class DeltaMinimizerServer implements AutoCloseable {
         server.close();
     }
 
-    private static int pickPort(List<Integer> allowedPorts) {
-        for (Integer port : allowedPorts) {
-            try (@SuppressWarnings("unused") Socket s = new Socket((String) null, port)) {
-                /* ignore, try next */
-            } catch (Exception ex) {
-                synchronized (DeltaMinimizerServer.class) {
-                    if (!takenPorts.contains(port)) {
-                        takenPorts.add(port);
-                        return port;
-                    }
-                }
-            }
-        }
-        throw new RuntimeException("Could not find available port");
-    }
-
     public void start(List<Integer> allowedPorts) {
-        port = pickPort(allowedPorts);
-
         if (serverProcess != null) {
             throw new RuntimeException("Cannot start server multiple times without stopping!");
         }
@@ -82,30 +65,28 @@ class DeltaMinimizerServer implements AutoCloseable {
         ProcessBuilder processBuilder =
                 new ProcessBuilder(path, "-cp",
                         classpath,
-                        Server.class.getName(), port + "");
+                        Server.class.getName(), allowedPorts.stream().map(String::valueOf).collect(Collectors.joining(",")));
         try {
-            processBuilder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
             processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
 
             // start other JVM
             Process process = processBuilder.start();
 
             // wait for JVM & Server to start
-            boolean serverIsListening = false;
-            while (!serverIsListening) {
-                try (@SuppressWarnings("unused") Socket s = new Socket((String) null, port)) {
-                    serverIsListening = true;
-                } catch (Exception ex) {
-                    try {
-                        Thread.sleep(250);
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
+            BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line;
+            while ((line = out.readLine()) != null && !line.startsWith(LISTENING + " ")) {
+                System.out.println(line);
             }
-            if (!process.isAlive()) {
+            if (line == null) {
                 throw new RuntimeException("Could not start server");
             }
+            port = Integer.parseInt(line.substring(LISTENING.length() + 1));
+
+            // forward the remaining output of the server
+            Thread forwarder = new Thread(() -> out.lines().forEach(System.out::println));
+            forwarder.setDaemon(true);
+            forwarder.start();
             this.serverProcess = process;
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -143,14 +124,12 @@ class DeltaMinimizerServer implements AutoCloseable {
         if (serverProcess != null) {
             sendMessage("STOP");
             try {
-                Thread.sleep(250);
+                serverProcess.waitFor(10, TimeUnit.SECONDS);
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
-            }
-            serverProcess.destroy();
-            serverProcess = null;
-            synchronized (DeltaMinimizerServer.class) {
-                takenPorts.remove(this.port);
+            } finally {
+                serverProcess.destroy();
+                serverProcess = null;
             }
         }
     }
@@ -161,12 +140,13 @@ class DeltaMinimizerServer implements AutoCloseable {
             TAJSRunPredicateProtocol protocol = new TAJSRunPredicateProtocol();
 
             if (args.length != 1) {
-                System.err.printf("Usage: java %s <port number>", Server.class.getName());
+                System.err.printf("Usage: java %s <comma-separated port numbers>", Server.class.getName());
                 System.exit(1);
             }
 
-            int port = Integer.parseInt(args[0]);
-            try (ServerSocket serverSocket = new ServerSocket(port)) {
+            try (ServerSocket serverSocket = bind(args[0].split(","))) {
+                System.out.println(LISTENING + " " + serverSocket.getLocalPort());
+                System.out.flush();
                 while (!protocol.isDone()) {
                     final Socket clientSocket = serverSocket.accept();
                     try (
@@ -181,7 +161,6 @@ class DeltaMinimizerServer implements AutoCloseable {
                             out.flush();
                             break;
                         }
-                        Thread.sleep(250);
                     } catch (Exception e) {
                         e.printStackTrace();
                     } finally {
@@ -193,11 +172,22 @@ class DeltaMinimizerServer implements AutoCloseable {
                     }
                 }
             } catch (IOException e) {
-                System.err.println("Could not listen on port " + port);
+                System.err.println("Could not listen on any of the ports " + args[0]);
                 System.exit(-1);
             }
         }
 
+        private static ServerSocket bind(String[] ports) throws IOException {
+            for (String port : ports) {
+                try {
+                    return new ServerSocket(Integer.parseInt(port));
+                } catch (IOException e) {
+                    /* ignore, try next */
+                }
+            }
+            throw new IOException("Could not find available port");
+        }
+
         private static class TAJSRunPredicateProtocol {
 
             private boolean done = false;
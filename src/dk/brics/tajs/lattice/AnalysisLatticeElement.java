@@ -17,9 +17,8 @@
 package dk.brics.tajs.lattice;
 
 import dk.brics.tajs.flowgraph.BasicBlock;
-import dk.brics.tajs.flowgraph.FlowGraph;
-import dk.brics.tajs.flowgraph.Function;
 import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.AnalysisBudget.Feature;
 import dk.brics.tajs.solver.BlockAndContext;
 import dk.brics.tajs.solver.CallGraph;
 import dk.brics.tajs.solver.IAnalysisLatticeElement;
@@ -31,7 +30,6 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
-import static dk.brics.tajs.util.Collections.newMap;
 import static dk.brics.tajs.util.Collections.newSet;
 
 /**
@@ -47,29 +45,18 @@ public class AnalysisLatticeElement implements
      * Stores an abstract state for each basic block entry and context.
      * Default is none.
      */
-    private final Map<BasicBlock, Map<Context, State>> block_entry_states;
+    private final BlockEntryStates block_entry_states;
 
     /**
      * Call graph.
      */
     private final CallGraph<State, Context, CallEdge> call_graph;
 
-    /**
-     * Total number of states in block_entry_states.
-     */
-    private int number_of_states;
-
     /**
      * Constructs a new global analysis lattice element.
      */
-    public AnalysisLatticeElement(FlowGraph fg) {
-        block_entry_states = newMap();
-        for (Function ff : fg.getFunctions()) {
-            for (BasicBlock bb : ff.getBlocks()) {
-                Map<Context, State> m = newMap();
-                block_entry_states.put(bb, m);
-            }
-        }
+    public AnalysisLatticeElement() {
+        block_entry_states = new BlockEntryStates();
         call_graph = new CallGraph<>();
     }
 
@@ -80,15 +67,7 @@ public class AnalysisLatticeElement implements
 
     @Override
     public State getState(BasicBlock block, Context context) {
-        Map<Context, State> bs = block_entry_states.get(block);
-        State b;
-        if (bs == null) {
-            Map<Context, State> m = newMap();
-            block_entry_states.put(block, m);
-            b = null;
-        } else {
-            b = bs.get(context);
-        }
+        State b = block_entry_states.get(block, context);
         if (b != null) {
             if (!b.getBasicBlock().equals(block) || !b.getContext().equals(context))
                 throw new AnalysisException("State owner block/context mismatch!");
@@ -103,12 +82,12 @@ public class AnalysisLatticeElement implements
 
     @Override
     public Map<Context, State> getStates(BasicBlock block) {
-        return block_entry_states.computeIfAbsent(block, k -> newMap());
+        return block_entry_states.getStates(block);
     }
 
     @Override
     public Collection<State> getStatesWithEntryContext(BasicBlock block, Context entryContext) {
-        return getStates(block).entrySet().stream().filter(e -> e.getKey().getContextAtEntry().equals(entryContext)).map(Map.Entry::getValue).collect(Collectors.toList());
+        return getStates(block).values().stream().filter(s -> s.getContext().getContextAtEntry().equals(entryContext)).collect(Collectors.toList());
     }
 
 //    @Override
@@ -126,8 +105,7 @@ public class AnalysisLatticeElement implements
         }
         boolean add;
         String diff = null;
-        Map<Context, State> m = getStates(bc.getBlock());
-        State state_current = m.get(bc.getContext());
+        State state_current = block_entry_states.get(bc.getBlock(), bc.getContext());
         if (state_current == null) { // existing state at (b,c) is implicitly bottom, so just store s
             add = true;
             if (localize) {
@@ -138,9 +116,8 @@ public class AnalysisLatticeElement implements
             }
             s.setBasicBlock(bc.getBlock());
             s.setContext(bc.getContext());
-            m.put(bc.getContext(), s);
+            block_entry_states.add(bc.getBlock(), bc.getContext(), s);
             state_current = s;
-            number_of_states++;
         } else { // a nontrivial state already exists at (b,c), so join s into it
             if (Options.get().isIntermediateStatesEnabled()) {
                 if (log.isDebugEnabled())
@@ -163,8 +140,9 @@ public class AnalysisLatticeElement implements
             }
             boolean backedge = !localize && state_current.getBasicBlock().getTopologicalOrder() <= s.getBasicBlock().getTopologicalOrder();
             boolean recursive = localize && s.getStackedFunctions().contains(new BlockAndContext<>(state_current.getBasicBlock(), state_current.getContext()));
+            boolean widen = backedge || recursive || !s.getSolverInterface().getBudget().isEnabled(Feature.NON_WIDENING_JOINS, bc.getBlock().getFunction());
             long time = System.currentTimeMillis();
-            add = state_current.propagate(s, localize, backedge || recursive);
+            add = state_current.propagate(s, localize, widen);
             long elapsed = System.currentTimeMillis() - time;
             s.getSolverInterface().getMonitoring().visitJoin(elapsed);
             if (Options.get().isNewFlowEnabled()) {
@@ -183,6 +161,6 @@ public class AnalysisLatticeElement implements
 
     @Override
     public int getNumberOfStates() {
-        return number_of_states;
+        return block_entry_states.size();
     }
 }
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.lattice;
+
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.util.AnalysisException;
+
+import javax.annotation.Nonnull;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Table of abstract block entry states, keyed by (block index, context ID).
+ * <p>
+ * The table uses open addressing with linear probing on primitive <code>long</code> keys,
+ * so lookups involve neither boxing nor calls to {@link Context#hashCode()}.
+ * All storage is allocated lazily, and per-block state lists are only created for blocks that are reached.
+ * States are never removed.
+ */
+final class BlockEntryStates {
+
+    /**
+     * Initial capacity of the hash table (must be a power of two).
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Initial capacity of the per-block state lists.
+     */
+    private static final int INITIAL_BLOCK_CAPACITY = 2;
+
+    /**
+     * Hash table keys, 0 represents an empty slot. Null until the first state is added.
+     */
+    private long[] keys;
+
+    /**
+     * Hash table values, parallel to <code>keys</code>.
+     */
+    private State[] values;
+
+    /**
+     * Number of states in the table.
+     */
+    private int size;
+
+    /**
+     * Per-block state lists, indexed by block index. Entries are null for blocks that have no states.
+     */
+    private BlockStates[] blocks;
+
+    /**
+     * Constructs a new empty table.
+     */
+    BlockEntryStates() {
+        // do nothing
+    }
+
+    /**
+     * Builds the table key for the given block and context.
+     * The block index is offset by one so that 0 is never a valid key.
+     */
+    private static long key(int block_index, Context c) {
+        return ((long) (block_index + 1) << 32) | (c.getID() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Mixes the bits of the key (from MurmurHash3's 64-bit finalizer).
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Returns the state for the given block and context, or null if none.
+     */
+    State get(BasicBlock block, Context c) {
+        if (keys == null)
+            return null;
+        return lookup(key(checkIndex(block), c));
+    }
+
+    private State lookup(long key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key)
+                return values[i];
+            if (k == 0)
+                return null;
+        }
+    }
+
+    /**
+     * Adds a state for the given block and context. There must not already be a state for that pair.
+     */
+    void add(BasicBlock block, Context c, State s) {
+        int block_index = checkIndex(block);
+        if (keys == null) {
+            keys = new long[INITIAL_CAPACITY];
+            values = new State[INITIAL_CAPACITY];
+        } else if (2 * (size + 1) > keys.length)
+            rehash(keys.length * 2);
+        long key = key(block_index, c);
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key)
+                throw new AnalysisException("State already exists for block " + block_index + " and context " + c);
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = s;
+        size++;
+        getOrCreateBlockStates(block, block_index).add(c, s);
+    }
+
+    private void rehash(int capacity) {
+        long[] old_keys = keys;
+        State[] old_values = values;
+        keys = new long[capacity];
+        values = new State[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < old_keys.length; j++) {
+            long key = old_keys[j];
+            if (key != 0) {
+                int i = hash(key) & mask;
+                while (keys[i] != 0)
+                    i = (i + 1) & mask;
+                keys[i] = key;
+                values[i] = old_values[j];
+            }
+        }
+    }
+
+    private BlockStates getOrCreateBlockStates(BasicBlock block, int block_index) {
+        if (blocks == null)
+            blocks = new BlockStates[Math.max(block_index + 1, INITIAL_CAPACITY)];
+        else if (block_index >= blocks.length) // the flow graph may grow during the analysis
+            blocks = Arrays.copyOf(blocks, Math.max(block_index + 1, blocks.length * 2));
+        BlockStates bs = blocks[block_index];
+        if (bs == null)
+            blocks[block_index] = bs = new BlockStates(block);
+        return bs;
+    }
+
+    /**
+     * Returns an unmodifiable view of the contexts and states for the given block.
+     */
+    Map<Context, State> getStates(BasicBlock block) {
+        int block_index = checkIndex(block);
+        if (blocks == null || block_index >= blocks.length || blocks[block_index] == null)
+            return java.util.Collections.emptyMap();
+        return blocks[block_index];
+    }
+
+    /**
+     * Returns the total number of states in the table.
+     */
+    int size() {
+        return size;
+    }
+
+    private static int checkIndex(BasicBlock block) {
+        int index = block.getIndex();
+        if (index < 0)
+            throw new AnalysisException("Block does not belong to a flow graph: " + block);
+        return index;
+    }
+
+    /**
+     * Unmodifiable map view of the states for a single block.
+     * Iteration over keys and values is allocation-free apart from the iterator itself.
+     */
+    private final class BlockStates extends AbstractMap<Context, State> {
+
+        private final BasicBlock block;
+
+        private Context[] contexts = new Context[INITIAL_BLOCK_CAPACITY];
+
+        private State[] states = new State[INITIAL_BLOCK_CAPACITY];
+
+        private int count;
+
+        BlockStates(BasicBlock block) {
+            this.block = block;
+        }
+
+        void add(Context c, State s) {
+            if (count == contexts.length) {
+                contexts = Arrays.copyOf(contexts, count * 2);
+                states = Arrays.copyOf(states, count * 2);
+            }
+            contexts[count] = c;
+            states[count++] = s;
+        }
+
+        @Override
+        public State get(Object key) {
+            if (!(key instanceof Context))
+                return null;
+            return BlockEntryStates.this.get(block, (Context) key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        @Nonnull
+        @Override
+        public Set<Context> keySet() {
+            return new AbstractSet<Context>() {
+
+                @Nonnull
+                @Override
+                public Iterator<Context> iterator() {
+                    return new ArrayIterator<>(contexts, count);
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+
+        @Nonnull
+        @Override
+        public Collection<State> values() {
+            return new AbstractCollection<State>() {
+
+                @Nonnull
+                @Override
+                public Iterator<State> iterator() {
+                    return new ArrayIterator<>(states, count);
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+
+        @Nonnull
+        @Override
+        public Set<Entry<Context, State>> entrySet() {
+            return new AbstractSet<Entry<Context, State>>() {
+
+                @Nonnull
+                @Override
+                public Iterator<Entry<Context, State>> iterator() {
+                    Context[] cs = contexts;
+                    State[] ss = states;
+                    int n = count;
+                    return new Iterator<Entry<Context, State>>() {
+
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < n;
+                        }
+
+                        @Override
+                        public Entry<Context, State> next() {
+                            if (next >= n)
+                                throw new NoSuchElementException();
+                            Entry<Context, State> e = new SimpleImmutableEntry<>(cs[next], ss[next]);
+                            next++;
+                            return e;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+    }
+
+    /**
+     * Iterator over a prefix of an array.
+     * The array and length are captured when the iterator is created, so states added during iteration are not visited.
+     */
+    private static final class ArrayIterator<T> implements Iterator<T> {
+
+        private final T[] array;
+
+        private final int length;
+
+        private int next;
+
+        ArrayIterator(T[] array, int length) {
+            this.array = array;
+            this.length = length;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < length;
+        }
+
+        @Override
+        public T next() {
+            if (next >= length)
+                throw new NoSuchElementException();
+            return array[next++];
+        }
+    }
+}
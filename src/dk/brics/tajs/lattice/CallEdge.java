@@ -16,10 +16,17 @@
 
 package dk.brics.tajs.lattice;
 
+import dk.brics.tajs.options.Options;
 import dk.brics.tajs.solver.ICallEdge;
 
+import java.util.Map;
+
 /**
  * Information stored at an edge in a call graph.
+ * <p>
+ * With option <code>-compact-call-edges</code>, the store of the state is kept as a delta against the store of the caller state
+ * when the edge is stored in the call graph. The store is restored when the state is accessed, and the delta is reinstated
+ * when the edge is released.
  */
 public class CallEdge implements ICallEdge<State> {
 
@@ -27,6 +34,12 @@ public class CallEdge implements ICallEdge<State> {
 
     private FunctionTypeSignatures functionTypeSignatures;
 
+    private Map<ObjectLabel, Obj> base; // read-only caller store that the store of the state is a delta against, or null
+
+    private Map<ObjectLabel, Obj> delta; // non-null if base is non-null
+
+    private Map<ObjectLabel, Obj> restored; // the restored store, or null if the store of the state is the delta
+
     /**
      * Constructs a new edge object.
      */
@@ -37,6 +50,8 @@ public class CallEdge implements ICallEdge<State> {
 
     @Override
     public State getState() {
+        if (base != null && restored == null)
+            restored = state.restoreStoreDelta(base, delta);
         return state;
     }
 
@@ -47,5 +62,28 @@ public class CallEdge implements ICallEdge<State> {
     @Override
     public void setState(State s) {
         state = s;
+        base = delta = restored = null;
+    }
+
+    @Override
+    public void compact(State caller_state) {
+        State s = getState();
+        base = delta = restored = null;
+        if (Options.get().isCompactCallEdgesEnabled() && caller_state != null && caller_state != s) {
+            base = caller_state.freezeStore();
+            delta = s.makeStoreDelta(base);
+        } else
+            s.compact();
+    }
+
+    @Override
+    public void release() {
+        if (base == null || restored == null)
+            return;
+        if (state.getStore() == restored)
+            state.setStoreDelta(delta); // unmodified since restored
+        else
+            delta = state.makeStoreDelta(base);
+        restored = null;
     }
 }
@@ -40,6 +40,18 @@ import static dk.brics.tajs.util.Collections.newSet;
  */
 public final class Context implements IContext<Context>, DeepImmutable {
 
+    /**
+     * Next context ID to be assigned.
+     */
+    private static int next_id;
+
+    /**
+     * Unique ID of this context, or -1 if not yet assigned.
+     * Assigned lazily, so only canonical instances that are actually used as keys get an ID.
+     * Not part of equals and hashCode.
+     */
+    private int id = -1;
+
     /**
      * Cached hashcode for immutable instance.
      */
@@ -155,6 +167,13 @@ public final class Context implements IContext<Context>, DeepImmutable {
         this.hashcode = hashcode;
     }
 
+    /**
+     * Resets the context ID counter.
+     */
+    public static void reset() {
+        next_id = 0;
+    }
+
     public static Context make(Value thisval, Map<Integer, Value> specialRegs,
                                Context contextAtEntry, Map<Qualifier, Value> extraAllocationContexts,
                                Map<BeginLoopNode, Integer> loopUnrolling,
@@ -261,6 +280,15 @@ public final class Context implements IContext<Context>, DeepImmutable {
         return arguments.get(index);
     }
 
+    /**
+     * Returns the unique ID of this (canonical) context.
+     */
+    public int getID() {
+        if (id == -1)
+            id = next_id++;
+        return id;
+    }
+
     /**
      * Returns the context at entry.
      */
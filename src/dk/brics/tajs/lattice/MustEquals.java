@@ -33,7 +33,7 @@ import static dk.brics.tajs.util.Collections.newSet;
  *
  * Map from singleton object label and property key to set of registers that must have the same value as the memory location.
  */
-public class MustEquals {// TODO: use copy-on-write?
+public class MustEquals {
 
     /**
      * Map from singleton object label to fixed property key to set of registers that must have the same value.
@@ -42,27 +42,63 @@ public class MustEquals {// TODO: use copy-on-write?
 
     private Map<Integer, Set<ObjectProperty>> mustEqualsReverse;
 
+    private boolean writable; // for copy-on-write of both maps, including the inner maps and sets
+
+    private static int number_of_makewritable;
+
     /**
      * Constructs a new empty MustEquals.
      */
     public MustEquals() {
-        mustEquals = newMap();
-        mustEqualsReverse = newMap();
+        setToBottom();
     }
 
     /**
      * Constructs a new MustEquals as a copy of the given one.
      */
     public MustEquals(MustEquals old) {
+        mustEquals = old.mustEquals;
+        mustEqualsReverse = old.mustEqualsReverse;
+        if (Options.get().isCopyOnWriteDisabled()) {
+            writable = false;
+            makeWritable();
+        } else
+            writable = old.writable = false;
+        checkInvariants();
+    }
+
+    /**
+     * Makes the maps writable by copying them and their inner maps and sets.
+     */
+    private void makeWritable() {
+        if (writable)
+            return;
+        Map<ObjectLabel, Map<PropertyKey, Set<Integer>>> oldMustEquals = mustEquals;
         mustEquals = newMap();
-        old.mustEquals.forEach((objlabel, m) -> {
+        oldMustEquals.forEach((objlabel, m) -> {
             Map<PropertyKey, Set<Integer>> mn = newMap();
             mustEquals.put(objlabel, mn);
             m.forEach((pkey, s) -> mn.put(pkey, newSet(s)));
         });
+        Map<Integer, Set<ObjectProperty>> oldMustEqualsReverse = mustEqualsReverse;
         mustEqualsReverse = newMap();
-        old.mustEqualsReverse.forEach((reg, s) -> mustEqualsReverse.put(reg, newSet(s)));
-        checkInvariants();
+        oldMustEqualsReverse.forEach((reg, s) -> mustEqualsReverse.put(reg, newSet(s)));
+        writable = true;
+        number_of_makewritable++;
+    }
+
+    /**
+     * Returns the total number of makeWritable operations.
+     */
+    public static int getNumberOfMakeWritableCalls() {
+        return number_of_makewritable;
+    }
+
+    /**
+     * Resets the global counters.
+     */
+    public static void reset() {
+        number_of_makewritable = 0;
     }
 
     private void checkInvariants() {
@@ -92,14 +128,24 @@ public class MustEquals {// TODO: use copy-on-write?
      * Empties this MustEquals.
      */
     public void setToBottom() {
-        mustEquals.clear();
-        mustEqualsReverse.clear();
+        if (Options.get().isCopyOnWriteDisabled()) {
+            mustEquals = newMap();
+            mustEqualsReverse = newMap();
+            writable = true;
+        } else {
+            mustEquals = java.util.Collections.emptyMap();
+            mustEqualsReverse = java.util.Collections.emptyMap();
+            writable = false;
+        }
     }
 
     /**
      * Empties this MustEquals for the given object label.
      */
     public void setToBottom(ObjectLabel objlabel) {
+        if (!mustEquals.containsKey(objlabel))
+            return;
+        makeWritable();
         Map<PropertyKey, Set<Integer>> m = mustEquals.remove(objlabel);
         if (m != null)
             m.values().forEach(regs -> regs.forEach(reg -> {
@@ -117,6 +163,9 @@ public class MustEquals {// TODO: use copy-on-write?
      * Empties this MustEquals for the given object label and property key.
      */
     public void setToBottom(ObjectLabel objlabel, PropertyKey pkey) {
+        if (getMustEquals(objlabel, pkey).isEmpty())
+            return;
+        makeWritable();
         Map<PropertyKey, Set<Integer>> m = mustEquals.get(objlabel);
         if (m != null) {
             Set<Integer> regs = m.remove(pkey);
@@ -151,6 +200,9 @@ public class MustEquals {// TODO: use copy-on-write?
      */
     public void setToBottom(int reg) {
         checkInvariants();
+        if (!mustEqualsReverse.containsKey(reg))
+            return;
+        makeWritable();
         Set<ObjectProperty> ops = mustEqualsReverse.remove(reg);
         if (ops != null)
             ops.forEach(op -> {
@@ -175,6 +227,7 @@ public class MustEquals {// TODO: use copy-on-write?
     public void addMustEquals(int reg, ObjectLabel objlabel, PropertyKey pkey) {
         if (objlabel == null || pkey == null)
             return;
+        makeWritable();
         Map<PropertyKey, Set<Integer>> m = mustEquals.get(objlabel);
         if (m != null)
             for (int aliasreg : m.getOrDefault(pkey, java.util.Collections.emptySet())) {
@@ -222,6 +275,9 @@ public class MustEquals {// TODO: use copy-on-write?
      */
     public boolean propagate(MustEquals other) {
         checkInvariants();
+        if (isIncludedIn(other))
+            return false;
+        makeWritable();
         boolean changed = false;
         for (Iterator<Map.Entry<ObjectLabel, Map<PropertyKey, Set<Integer>>>> it1 = mustEquals.entrySet().iterator(); it1.hasNext();) {
             Map.Entry<ObjectLabel, Map<PropertyKey, Set<Integer>>> thisme1 = it1.next();
@@ -268,6 +324,26 @@ public class MustEquals {// TODO: use copy-on-write?
         return changed;
     }
 
+    /**
+     * Checks whether all must-equals facts of this MustEquals are also in the given one.
+     * The reverse map is derived from the forward map, so only the latter is checked.
+     */
+    private boolean isIncludedIn(MustEquals other) {
+        if (mustEquals == other.mustEquals)
+            return true;
+        for (Map.Entry<ObjectLabel, Map<PropertyKey, Set<Integer>>> me1 : mustEquals.entrySet()) {
+            Map<PropertyKey, Set<Integer>> otherm = other.mustEquals.get(me1.getKey());
+            if (otherm == null)
+                return false;
+            for (Map.Entry<PropertyKey, Set<Integer>> me2 : me1.getValue().entrySet()) {
+                Set<Integer> others = otherm.get(me2.getKey());
+                if (others == null || !others.containsAll(me2.getValue()))
+                    return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Replaces all occurrences of oldlabel by newlabel.
      */
@@ -275,6 +351,9 @@ public class MustEquals {// TODO: use copy-on-write?
         checkInvariants();
         if (oldlabel.getKind() == ObjectLabel.Kind.SYMBOL)
             throw new AnalysisException("Unexpected symbol"); // the code below doesn't replace PKeys in mustEquals
+        if (!mustEquals.containsKey(oldlabel))
+            return;
+        makeWritable();
         Map<PropertyKey, Set<Integer>> m = mustEquals.remove(oldlabel);
         if (m != null) {
             mustEquals.put(newlabel, m);
@@ -17,8 +17,10 @@
 package dk.brics.tajs.lattice;
 
 import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.options.Options;
 import dk.brics.tajs.util.Collectors;
 
+import java.util.Collections;
 import java.util.Map;
 
 import static dk.brics.tajs.util.Collections.newMap;
@@ -29,38 +31,82 @@ import static dk.brics.tajs.util.Collections.newMap;
  * The must-reaching definition of a register is the node where the register must have obtained its value.
  * This information is used for filtering at explicit and implicit branches.
  */
-public class MustReachingDefs { // TODO: use copy-on-write?
+public class MustReachingDefs {
 
     /**
      * Map from register to the node that must have defined the value of the register, or absent if no such node.
      */
     private Map<Integer, AbstractNode> registerDefs;
 
+    private boolean writable; // for copy-on-write
+
+    private static int number_of_makewritable;
+
     /**
      * Constructs a new empty MustReachingDefs.
      */
     public MustReachingDefs() {
-        registerDefs = newMap();
+        setToBottom();
     }
 
     /**
      * Constructs a new MustReachingDefs as a copy of the given one.
      */
     public MustReachingDefs(MustReachingDefs old) {
-        registerDefs = newMap(old.registerDefs);
+        if (Options.get().isCopyOnWriteDisabled()) {
+            registerDefs = newMap(old.registerDefs);
+            writable = true;
+        } else {
+            registerDefs = old.registerDefs;
+            writable = old.writable = false;
+        }
+    }
+
+    /**
+     * Makes the map writable.
+     */
+    private void makeWritable() {
+        if (writable)
+            return;
+        registerDefs = newMap(registerDefs);
+        writable = true;
+        number_of_makewritable++;
+    }
+
+    /**
+     * Returns the total number of makeWritable operations.
+     */
+    public static int getNumberOfMakeWritableCalls() {
+        return number_of_makewritable;
+    }
+
+    /**
+     * Resets the global counters.
+     */
+    public static void reset() {
+        number_of_makewritable = 0;
     }
 
     /**
      * Empties this MustReachingDefs.
      */
     public void setToBottom() {
-        registerDefs.clear();
+        if (Options.get().isCopyOnWriteDisabled()) {
+            registerDefs = newMap();
+            writable = true;
+        } else {
+            registerDefs = Collections.emptyMap();
+            writable = false;
+        }
     }
 
     /**
      * Empties this MustReachingDefs for the given register.
      */
     public void setToBottom(int reg) {
+        if (!registerDefs.containsKey(reg))
+            return;
+        makeWritable();
         registerDefs.remove(reg);
     }
 
@@ -68,6 +114,9 @@ public class MustReachingDefs { // TODO: use copy-on-write?
      * Adds a must-reaching definition for a register.
      */
     public void addReachingDef(int reg, AbstractNode node) {
+        if (registerDefs.get(reg) == node)
+            return;
+        makeWritable();
         discardOldEntries();
         registerDefs.put(reg, node);
     }
@@ -94,6 +143,16 @@ public class MustReachingDefs { // TODO: use copy-on-write?
      * @return if this MustReachingDefs changed
      */
     public boolean propagate(MustReachingDefs must_reaching_defs) {
+        if (registerDefs == must_reaching_defs.registerDefs)
+            return false;
+        boolean all_agree = true;
+        for (Map.Entry<Integer, AbstractNode> me : registerDefs.entrySet())
+            if (me.getValue() != must_reaching_defs.getReachingDef(me.getKey())) {
+                all_agree = false;
+                break;
+            }
+        if (all_agree)
+            return false;
         Map<Integer, AbstractNode> newRegisterDefs = newMap();
         registerDefs.forEach((reg, node) -> {
             if (node == must_reaching_defs.getReachingDef(reg))
@@ -101,6 +160,7 @@ public class MustReachingDefs { // TODO: use copy-on-write?
         });
         boolean changed = newRegisterDefs.size() != registerDefs.size();
         registerDefs = newRegisterDefs;
+        writable = true;
         return changed;
     }
 
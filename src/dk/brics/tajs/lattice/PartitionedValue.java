@@ -27,6 +27,8 @@ import dk.brics.tajs.util.DeepImmutable;
 import javax.annotation.Nonnull;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -35,6 +37,7 @@ import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+import static dk.brics.tajs.util.Collections.newList;
 import static dk.brics.tajs.util.Collections.newMap;
 import static dk.brics.tajs.util.Collections.newSet;
 
@@ -52,6 +55,33 @@ public final class PartitionedValue extends Value implements Undef, Null, Bool,
     @Nonnull
     private Map<AbstractNode, Partitions> partitions;
 
+    /**
+     * Distinct partition tokens introduced at each partitioning node, if the partition budget is enabled.
+     */
+    private static Map<AbstractNode, Set<PartitionToken>> tokens = newMap();
+
+    /**
+     * Partitionings that are merged into the single values because the partition budget is exceeded.
+     * Merging is global and permanent, so that the partitions of a value cannot alternate and prevent termination.
+     */
+    private static Set<AbstractNode> over_budget = newSet();
+
+    /**
+     * Partitionings that have been merged in some value (for statistics only).
+     */
+    private static Set<AbstractNode> merged = newSet();
+
+    private static int number_of_partitioned_values_created;
+
+    private static int max_number_of_partitions;
+
+    private static int number_of_partitions_merged;
+
+    /**
+     * Order in which partitionings are kept when merging: those introduced earliest in the flow graph come first.
+     */
+    private static final Comparator<AbstractNode> PRIORITY = Comparator.comparingInt(AbstractNode::getIndex);
+
     /**
      * Constructs a new (not canonicalized) partitioned value.
      */
@@ -77,7 +107,7 @@ public final class PartitionedValue extends Value implements Undef, Null, Bool,
             return v.ignorePartitions();
         if (partitions.size() == v.partitions.size())
             return v;
-        return PartitionedValue.make(partitions.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getPartitions())));
+        return makeShared(Value.join(partitions.values().stream().flatMap(p -> p.values().stream()).collect(Collectors.toSet())), partitions);
     }
 
     protected int computeHashCode() {
@@ -89,14 +119,131 @@ public final class PartitionedValue extends Value implements Undef, Null, Bool,
      * @param v single abstract value that overapproximates the partitions
      */
     private static PartitionedValue make(Value v, Map<AbstractNode, Map<PartitionToken, Value>> partitions) {
-        Map<AbstractNode, Partitions> transformedMap =
-                partitions.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> Partitions.make(e.getValue())));
+        return makeShared(v, partitions.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> Partitions.make(e.getValue()))));
+    }
+
+    /**
+     * Constructs a new (canonicalized) partitioned value from canonicalized partitions, which are shared, not copied.
+     * Merges partitionings into the single value if the partition limit or budget is exceeded.
+     * @param v single abstract value that overapproximates the partitions
+     */
+    private static PartitionedValue makeShared(Value v, Map<AbstractNode, Partitions> partitions) {
+        int size = mergePartitions(partitions);
+        number_of_partitioned_values_created++;
+        max_number_of_partitions = Math.max(max_number_of_partitions, size);
         canonicalizing = true;
-        PartitionedValue canonicalize = Canonicalizer.get().canonicalize(new PartitionedValue(v, Canonicalizer.get().canonicalizeMap(transformedMap)));
+        PartitionedValue canonicalize = Canonicalizer.get().canonicalize(new PartitionedValue(v, Canonicalizer.get().canonicalizeMap(partitions)));
         canonicalizing = false;
         return canonicalize;
     }
 
+    /**
+     * Merges partitionings into the single value until the partition budget and the partition limit are respected.
+     * The partitionings introduced latest in the flow graph are merged first, so the result only depends on the given
+     * partitionings and the partitions seen so far, not on the order in which values are constructed or used.
+     * Free variable partitionings are never merged, and at least one partitioning is kept.
+     * @return the resulting number of partitions
+     */
+    private static int mergePartitions(Map<AbstractNode, Partitions> partitions) {
+        if (Options.get().getPartitionBudget() >= 0) {
+            updateBudget(partitions);
+            if (partitions.size() > 1) {
+                AbstractNode first = Collections.min(partitions.keySet(), PRIORITY);
+                for (AbstractNode n : newList(partitions.keySet()))
+                    if (n != first && over_budget.contains(n))
+                        merge(partitions, n);
+            }
+        }
+        int size = partitions.values().stream().mapToInt(p -> p.partitions.size()).sum();
+        int limit = Options.get().getPartitionLimit();
+        if (limit < 0 || size <= limit || partitions.size() == 1)
+            return size;
+        List<AbstractNode> candidates = partitions.keySet().stream()
+                .filter(n -> !(n instanceof DeclareFunctionNode))
+                .sorted(PRIORITY.reversed())
+                .collect(Collectors.toList());
+        for (AbstractNode n : candidates) {
+            if (size <= limit || partitions.size() == 1)
+                break;
+            size -= merge(partitions, n);
+        }
+        return size;
+    }
+
+    /**
+     * Removes the given partitioning.
+     * @return the number of partitions removed
+     */
+    private static int merge(Map<AbstractNode, Partitions> partitions, AbstractNode n) {
+        int s = partitions.remove(n).partitions.size();
+        number_of_partitions_merged += s;
+        merged.add(n);
+        return s;
+    }
+
+    /**
+     * Records the partition tokens of the given partitionings, and if new tokens have been seen,
+     * marks the partitionings that do not fit within the partition budget (by priority) as merged.
+     * The partition counts only grow, so a partitioning that is over budget remains so.
+     */
+    private static void updateBudget(Map<AbstractNode, Partitions> partitions) {
+        boolean changed = false;
+        for (Map.Entry<AbstractNode, Partitions> me : partitions.entrySet())
+            if (!(me.getKey() instanceof DeclareFunctionNode))
+                changed |= tokens.computeIfAbsent(me.getKey(), k -> newSet()).addAll(me.getValue().keySet());
+        if (!changed)
+            return;
+        int budget = Options.get().getPartitionBudget();
+        int total = 0;
+        List<AbstractNode> nodes = newList(tokens.keySet());
+        nodes.sort(PRIORITY);
+        for (AbstractNode n : nodes) {
+            total += tokens.get(n).size();
+            if (total > budget)
+                over_budget.add(n);
+        }
+    }
+
+    /**
+     * Returns the number of partitioned values constructed.
+     */
+    public static int getNumberOfPartitionedValuesCreated() {
+        return number_of_partitioned_values_created;
+    }
+
+    /**
+     * Returns the maximum number of partitions in a partitioned value.
+     */
+    public static int getMaxNumberOfPartitions() {
+        return max_number_of_partitions;
+    }
+
+    /**
+     * Returns the number of partitions that have been merged due to the partition limit or budget.
+     */
+    public static int getNumberOfPartitionsMerged() {
+        return number_of_partitions_merged;
+    }
+
+    /**
+     * Returns the number of partitionings that have been merged due to the partition limit or budget.
+     */
+    public static int getNumberOfMergedPartitionings() {
+        return merged.size();
+    }
+
+    /**
+     * Resets the partition statistics and the merged partitionings.
+     */
+    public static void reset() {
+        tokens = newMap();
+        over_budget = newSet();
+        merged = newSet();
+        number_of_partitioned_values_created = 0;
+        max_number_of_partitions = 0;
+        number_of_partitions_merged = 0;
+    }
+
     /**
      * Constructs a new (canonicalized) partitioned value.
      * @return a partitioned value with a single abstract value that is the join of the partition values
@@ -120,6 +267,8 @@ public final class PartitionedValue extends Value implements Undef, Null, Bool,
      * @param widen if true, apply widening
      */
     public static Value join(Value v1, Value v2, boolean widen) {
+        if (v1 == v2 && !widen && v1 instanceof PartitionedValue)
+            return v1;
         if (v1 instanceof PartitionedValue) {
             if (v2 instanceof PartitionedValue) {
                 Set<AbstractNode> pns = Stream.concat(((PartitionedValue) v1).partitions.keySet().stream(), ((PartitionedValue) v2).partitions.keySet().stream())
@@ -128,16 +277,21 @@ public final class PartitionedValue extends Value implements Undef, Null, Bool,
                 if (pns.isEmpty()) {
                     return new Value(v1.joinSingleValue(v2, widen));
                 }
-                Map<AbstractNode, Map<PartitionToken, Value>> resPartitionings = newMap();
+                Map<AbstractNode, Partitions> resPartitionings = newMap();
                 for (AbstractNode n : pns) {
+                    Partitions p1 = ((PartitionedValue) v1).partitions.get(n);
+                    if (p1 != null && p1 == ((PartitionedValue) v2).partitions.get(n) && !widen) {
+                        resPartitionings.put(n, p1); // identical partitions are shared
+                        continue;
+                    }
                     // find the union of the partition tokens
                     Set<PartitionToken> ps = newSet(((PartitionedValue) v1).getPartitionTokens(n));
                     ps.addAll(((PartitionedValue) v2).getPartitionTokens(n));
                     Map<PartitionToken, Value> partitioningsForNode =
                             ps.stream().collect(Collectors.toMap(q -> q, q -> ((PartitionedValue)v1).getPartitionValue(n, q, false).joinSingleValue(((PartitionedValue)v2).getPartitionValue(n, q, false), widen)));
-                    resPartitionings.put(n, partitioningsForNode);
+                    resPartitionings.put(n, Partitions.make(partitioningsForNode));
                 }
-                return make(new Value(v1.joinSingleValue(v2, widen)), resPartitionings);
+                return makeShared(new Value(v1.joinSingleValue(v2, widen)), resPartitionings);
             } else {
                 // v2 is not a PartitionValue, so just use v2 for each partition in this value
                 return make(new Value(v1.joinSingleValue(v2, widen)), ((PartitionedValue)v1).applyForEachPartition((e, n) -> e.getValue().joinSingleValue(v2, widen)));
@@ -304,9 +458,9 @@ public final class PartitionedValue extends Value implements Undef, Null, Bool,
      * Adds additional partitions to this partitioned value.
      */
     public PartitionedValue addPartitions(PartitionedValue v) {
-        Map<AbstractNode, Map<PartitionToken, Value>> newPartitions = partitions.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().partitions));
-        v.partitions.forEach((key, value) -> newPartitions.put(key, value.partitions));
-        return make(new Value(this), newPartitions);
+        Map<AbstractNode, Partitions> newPartitions = newMap(partitions);
+        newPartitions.putAll(v.partitions);
+        return makeShared(new Value(this), newPartitions);
     }
 
     @Override
@@ -436,6 +590,11 @@ public final class PartitionedValue extends Value implements Undef, Null, Bool,
         return applyFunction(Value::restrictToNotModified);
     }
 
+    @Override
+    public Value recanonicalize() {
+        throw new AnalysisException("Partitioned value cannot be recanonicalized: " + this);
+    }
+
     @Override
     public Value restrictToNotAbsent() {
         return applyFunction(Value::restrictToNotAbsent);
@@ -919,12 +1078,12 @@ public final class PartitionedValue extends Value implements Undef, Null, Bool,
     public Value removePartitions(Set<AbstractNode> nodes) {
         if (nodes.stream().noneMatch(n -> getPartitionNodes().contains(n)))
             return this;
-        Map<AbstractNode, Map<PartitionToken, Value>> newPartitions = partitions.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().partitions));
+        Map<AbstractNode, Partitions> newPartitions = newMap(partitions);
         nodes.forEach(newPartitions::remove);
         if (newPartitions.isEmpty()) {
             return canonicalize(new Value(this));
         }
-        return make(new Value(this), newPartitions);
+        return makeShared(new Value(this), newPartitions);
     }
 
     /**
@@ -56,6 +56,11 @@ public class State implements IState<State, Context, CallEdge> {
 
     private static Logger log = Logger.getLogger(State.class);
 
+    /**
+     * Marks objects that are absent in a store delta (see {@link #makeStoreDelta(Map)}).
+     */
+    private static final Obj ABSENT_IN_DELTA = new Obj(Obj.makeNone());
+
     private GenericSolver<State, Context, CallEdge, ? extends ILatticeMonitoring, ?>.SolverInterface c;
 
     /**
@@ -177,7 +182,8 @@ public class State implements IState<State, Context, CallEdge> {
         for (Map.Entry<ObjectLabel, Obj> xs : x.store.entrySet()) {
             Obj obj =  Canonicalizer.get().canonicalizeViaImmutableBox(xs.getValue().freeze());
             writeToStore(xs.getKey(), obj);
-            xs.setValue(obj); // write back canonicalized object
+            if (x.writable_store)
+                xs.setValue(obj); // write back canonicalized object
         }
         basis_store = x.basis_store;
         writable_store = true;
@@ -352,6 +358,7 @@ public class State implements IState<State, Context, CallEdge> {
      * Removes objects that are equal to the default object.
      */
     public void removeObjectsEqualToDefault(boolean default_none_at_entry) {
+        makeWritableStore();
         for (Iterator<Map.Entry<ObjectLabel, Obj>> it = store.entrySet().iterator(); it.hasNext(); ) {
             Map.Entry<ObjectLabel, Obj> me = it.next();
             if (me.getValue().equals(store_default)) {
@@ -387,6 +394,83 @@ public class State implements IState<State, Context, CallEdge> {
         }
     }
 
+    /**
+     * Compacts this state, for states that are kept unmodified for a long time, such as call edge states.
+     * The objects and the store map are canonicalized, so identical stores are shared between states
+     * (the store maps are not retained by the canonicalizer).
+     * The store is copied again on the next modification (copy-on-write).
+     */
+    public void compact() {
+        if (!writable_store)
+            return;
+        for (Map.Entry<ObjectLabel, Obj> me : store.entrySet())
+            me.setValue(Canonicalizer.get().canonicalizeViaImmutableBox(me.getValue().freeze()));
+        store = Canonicalizer.get().canonicalizeWeakly(Collections.unmodifiableMap(store));
+        writable_store = false;
+    }
+
+    /**
+     * Makes the store of this state read-only, such that it can be used as base store for deltas (see {@link #makeStoreDelta(Map)}).
+     * The store is copied again on the next modification (copy-on-write).
+     *
+     * @return the read-only store
+     */
+    Map<ObjectLabel, Obj> freezeStore() {
+        if (writable_store) {
+            for (Obj obj : store.values())
+                obj.freeze();
+            store = Collections.unmodifiableMap(store);
+            writable_store = false;
+        }
+        return store;
+    }
+
+    /**
+     * Replaces the store of this state by its difference to the given read-only base store.
+     * Objects that are identical in the two stores are omitted.
+     * The state must not be used before the store has been restored with {@link #restoreStoreDelta(Map, Map)}.
+     *
+     * @return the delta
+     */
+    Map<ObjectLabel, Obj> makeStoreDelta(Map<ObjectLabel, Obj> base) {
+        Map<ObjectLabel, Obj> delta = newMap();
+        for (Map.Entry<ObjectLabel, Obj> me : store.entrySet())
+            if (base.get(me.getKey()) != me.getValue())
+                delta.put(me.getKey(), me.getValue().freeze());
+        for (ObjectLabel objlabel : base.keySet())
+            if (!store.containsKey(objlabel))
+                delta.put(objlabel, ABSENT_IN_DELTA);
+        setStoreDelta(delta);
+        return delta;
+    }
+
+    /**
+     * Replaces the store of this state by the given delta (see {@link #makeStoreDelta(Map)}).
+     */
+    void setStoreDelta(Map<ObjectLabel, Obj> delta) {
+        store = delta;
+        writable_store = false;
+    }
+
+    /**
+     * Restores the store of this state from the given base store and delta (see {@link #makeStoreDelta(Map)}).
+     * The restored store is read-only, so it is copied on the next modification (copy-on-write).
+     *
+     * @return the restored store
+     */
+    Map<ObjectLabel, Obj> restoreStoreDelta(Map<ObjectLabel, Obj> base, Map<ObjectLabel, Obj> delta) {
+        Map<ObjectLabel, Obj> restored = newMap();
+        for (Map.Entry<ObjectLabel, Obj> me : base.entrySet())
+            if (!delta.containsKey(me.getKey()))
+                restored.put(me.getKey(), me.getValue());
+        for (Map.Entry<ObjectLabel, Obj> me : delta.entrySet())
+            if (me.getValue() != ABSENT_IN_DELTA)
+                restored.put(me.getKey(), me.getValue());
+        store = Collections.unmodifiableMap(restored);
+        writable_store = false;
+        return store;
+    }
+
     /**
      * Makes store writable (for copy-on-write).
      */
@@ -470,6 +554,8 @@ public class State implements IState<State, Context, CallEdge> {
         number_of_states_created = 0;
         number_of_makewritable_store = 0;
         number_of_makewritable_registers = 0;
+        MustReachingDefs.reset();
+        MustEquals.reset();
     }
 
     /**
@@ -877,8 +963,7 @@ public class State implements IState<State, Context, CallEdge> {
                 log.debug("propagate(...) - this is bottom, other is non-bottom");
             return true; // s is not none
         }
-        makeWritableStore();
-        makeWritableExecutionContext();
+        makeWritableExecutionContext(); // the store is only made writable if an object changes (see propagateObj)
         makeWritableRegisters();
         makeWritableStacked();
         boolean changed = execution_context.add(s.execution_context);
@@ -914,6 +999,7 @@ public class State implements IState<State, Context, CallEdge> {
             }
         }
         if (store_default.isAllNone() && !s.store_default.isAllNone()) {
+            makeWritableStore();
             for (ObjectLabel lab : s.store.keySet()) { // materialize before changing default
                 if (!store.containsKey(lab)) {
                     writeToStore(lab, store_default);
@@ -1102,8 +1188,11 @@ public class State implements IState<State, Context, CallEdge> {
                             values.add(UnknownValueResolver.getDefaultNumericProperty(l, this));
                         }
                         // relevant properties have been materialized now
-                        values.addAll(getObject(l, false).getProperties().keySet().stream()
+                        List<PropertyKey> names = getObject(l, false).getProperties().keySet().stream()
                                 .filter(k -> k instanceof StringPropertyKey && propertyName.isMaybeExactStr(((StringPropertyKey)k).getStr())) // FIXME: doesn't support Symbols?
+                                .collect(Collectors.toList());
+                        UnknownValueResolver.recoverProperties(l, names, this, true);
+                        values.addAll(names.stream()
                                 .map(n -> UnknownValueResolver.getProperty(l, n, this, true))
                                 .collect(Collectors.toList()));
                     } else { // FIXME: doesn't support Symbols?
@@ -1194,6 +1283,7 @@ public class State implements IState<State, Context, CallEdge> {
             Value old_other = UnknownValueResolver.getDefaultOtherProperty(objlabel, this);
             obj.setDefaultNumericProperty(old_numeric.joinAbsentModified());
             obj.setDefaultOtherProperty(old_other.joinAbsentModified());
+            UnknownValueResolver.recoverProperties(objlabel, newList(UnknownValueResolver.getProperties(objlabel, this).keySet()), this, true);
             for (Map.Entry<PropertyKey, Value> me : newSet(UnknownValueResolver.getProperties(objlabel, this).entrySet())) {
                 PropertyKey propertyname = me.getKey();
                 Value v = me.getValue();
@@ -1209,6 +1299,7 @@ public class State implements IState<State, Context, CallEdge> {
     }
 
     private void summarizeObj(ObjectLabel singleton, ObjectLabel summary, Obj newObj) {
+        makeWritableStore();
         Obj oldobj = getObject(singleton, false);
         if (!oldobj.isSomeNone()) {
             // join singleton object into its summary object
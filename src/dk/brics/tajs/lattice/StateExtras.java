@@ -69,6 +69,13 @@ public class StateExtras {
         }
     }
 
+    /**
+     * Checks whether all the sets and maps are empty.
+     */
+    public boolean isEmpty() {
+        return may_sets.isEmpty() && may_maps.isEmpty() && may_maps_default.isEmpty();
+    }
+
     /**
      * Makes the may-sets writable.
      */
@@ -128,7 +135,39 @@ public class StateExtras {
         return true;
     }
 
+    /**
+     * Checks whether this StateExtras already contains all the entries of the given one.
+     */
+    private boolean containsAll(StateExtras s) {
+        if (may_sets != s.may_sets)
+            for (Entry<String, Set<ObjectLabel>> e : s.may_sets.entrySet()) {
+                Set<ObjectLabel> thismayset = may_sets.get(e.getKey());
+                if (thismayset == null || !thismayset.containsAll(e.getValue()))
+                    return false;
+            }
+        if (may_maps != s.may_maps)
+            for (Entry<String, Map<String, Set<ObjectLabel>>> e : s.may_maps.entrySet()) {
+                Map<String, Set<ObjectLabel>> thismaymap = may_maps.get(e.getKey());
+                if (thismaymap == null)
+                    return false;
+                for (Entry<String, Set<ObjectLabel>> ee : e.getValue().entrySet()) {
+                    Set<ObjectLabel> thismayset = thismaymap.get(ee.getKey());
+                    if (thismayset == null || !thismayset.containsAll(ee.getValue()))
+                        return false;
+                }
+            }
+        if (may_maps_default != s.may_maps_default)
+            for (Entry<String, Set<ObjectLabel>> e : s.may_maps_default.entrySet()) {
+                Set<ObjectLabel> thisDefault = may_maps_default.get(e.getKey());
+                if (thisDefault == null || !thisDefault.containsAll(e.getValue()))
+                    return false;
+            }
+        return true;
+    }
+
     protected boolean propagate(StateExtras s) {
+        if (containsAll(s))
+            return false;
         makeMaySetsWritable();
         makeMayMapsWritable();
         boolean changed = false;
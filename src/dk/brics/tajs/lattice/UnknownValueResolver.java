@@ -29,13 +29,15 @@ import org.apache.log4j.Level;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import static dk.brics.tajs.util.Collections.newList;
 import static dk.brics.tajs.util.Collections.newMap;
 import static dk.brics.tajs.util.Collections.newSet;
 
@@ -123,7 +125,7 @@ public final class UnknownValueResolver {
 
         private Set<RGNode> roots;
 
-        private LinkedList<RGNode> pending;
+        private ArrayDeque<RGNode> pending;
 
         private Map<RGNode, Value> original_polymorphic_value;
 
@@ -137,7 +139,7 @@ public final class UnknownValueResolver {
             if (graph == null) {
                 graph = newMap();
                 roots = newSet();
-                pending = new LinkedList<>();
+                pending = new ArrayDeque<>();
                 original_polymorphic_value = newMap();
             }
         }
@@ -161,9 +163,12 @@ public final class UnknownValueResolver {
 
         /**
          * Adds a node (caller) and updates the pending list accordingly.
+         * Does nothing if the node is already present.
          */
         public void addNode(RGNode n) {
             prepare();
+            if (graph.containsKey(n))
+                return;
             graph.put(n, dk.brics.tajs.util.Collections.newMap());
             pending.add(n);
             if (log.isDebugEnabled())
@@ -262,30 +267,50 @@ public final class UnknownValueResolver {
      * Generic function for recovering 'unknown' properties.
      */
     private static Obj recover(State s, ObjectProperty prop, boolean partial) {
+        recover(s, java.util.Collections.singletonList(prop), partial);
+        return s.getObject(prop.getObjectLabel(), false);
+    }
+
+    /**
+     * Recovers the given 'unknown' properties using a single recovery graph.
+     * Properties that share call edges are thereby only traversed once, instead of once per property.
+     */
+    private static void recover(State s, Collection<ObjectProperty> props, boolean partial) {
         if (!s.getSolverInterface().isScanning())
             s.getSolverInterface().getMonitoring().allowNextIteration(); // throws AnalysisTimeException if timeout reached
-        Value value_at_s = getValue(s, prop);
-        if (!partial && value_at_s != null && value_at_s.isPolymorphic() && value_at_s.isMaybeAbsent() && !value_at_s.isMaybePresent()) { // optimization only
-            Obj res = s.getObject(prop.getObjectLabel(), true);
-            res.setValue(prop, Value.makeAbsent());
-            return res;
-        }
-        Set<ObjectProperty> entry_prop = toEntry(s, prop);
-        if (partial && entry_prop.size() > 1) {
-            if (log.isDebugEnabled())
-                log.debug("switching from partial to full recover");
-            return recover(s, prop, false);
+        List<ObjectProperty> recover_props = newList();
+        List<Value> values_at_s = newList();
+        List<Set<ObjectProperty>> entry_props = newList();
+        for (ObjectProperty prop : props) {
+            Value value_at_s = getValue(s, prop);
+            if (!partial && value_at_s != null && value_at_s.isPolymorphic() && value_at_s.isMaybeAbsent() && !value_at_s.isMaybePresent()) { // optimization only
+                s.getObject(prop.getObjectLabel(), true).setValue(prop, Value.makeAbsent());
+                continue;
+            }
+            Set<ObjectProperty> entry_prop = toEntry(s, prop);
+            if (partial && entry_prop.size() > 1) {
+                if (log.isDebugEnabled())
+                    log.debug("switching from partial to full recover");
+                recover(s, props, false);
+                return;
+            }
+            recover_props.add(prop);
+            values_at_s.add(value_at_s);
+            entry_props.add(entry_prop);
         }
+        if (recover_props.isEmpty())
+            return;
         if (log.isDebugEnabled())
-            log.debug((partial ? "partially" : "fully") + " recovering " + prop + " at block " + s.getBasicBlock().getIndex() + " context " + s.getContext());
+            log.debug((partial ? "partially" : "fully") + " recovering " + recover_props + " at block " + s.getBasicBlock().getIndex() + " context " + s.getContext());
         GenericSolver<State, Context, CallEdge, ? extends ILatticeMonitoring, ?>.SolverInterface c = s.getSolverInterface();
         c.getMonitoring().visitUnknownValueResolve(s.getBasicBlock().getFirstNode(), partial, c.isScanning());
         // build recovery graph
         RecoveryGraph g = new RecoveryGraph();
         State entry_state = getEntryState(s);
-        for (ObjectProperty p : entry_prop)
-            if (!isOK(entry_state, p, partial))
-                g.addNode(new RGNode(s.getBasicBlock().getFirstNode(), s.getContext(), p));
+        for (Set<ObjectProperty> entry_prop : entry_props)
+            for (ObjectProperty p : entry_prop)
+                if (!isOK(entry_state, p, partial))
+                    g.addNode(new RGNode(s.getBasicBlock().getFirstNode(), s.getContext(), p));
         while (!g.pendingIsEmpty()) {
             RGNode n = g.getNextPending();
             BlockAndContext<Context> n_entry = BlockAndContext.makeEntry(n.getNode().getBlock(), n.getContext());
@@ -306,7 +331,8 @@ public final class UnknownValueResolver {
                     if (partial && caller_functionentry_prop.size() > 1) {
                         if (log.isDebugEnabled())
                             log.debug("switching from partial to full recover");
-                        return recover(s, prop, false);
+                        recover(s, props, false);
+                        return;
                     }
                     for (ObjectProperty p : caller_functionentry_prop)
                         addRootOrPredecessors(n, cs.getCallNode(), cs.getCallerContext(), cs.getEdgeContext(), caller_functionentry_state, p, g, partial);
@@ -341,7 +367,7 @@ public final class UnknownValueResolver {
         }
         // propagate throughout the graph
         Set<RGNode> pending2 = g.getRoots();
-        LinkedList<RGNode> pending_list2 = new LinkedList<>(pending2);
+        ArrayDeque<RGNode> pending_list2 = new ArrayDeque<>(pending2);
         while (!pending2.isEmpty()) {
             RGNode n = pending_list2.remove();
             pending2.remove(n);
@@ -380,9 +406,9 @@ public final class UnknownValueResolver {
             }
         }
         // propagate to the current state (necessary for materializing all properties and for abstract gc)
-        for (ObjectProperty p : entry_prop)
-            propagate(entry_state, p, s, prop, s.getRenamings(), partial, false, value_at_s);
-        return s.getObject(prop.getObjectLabel(), false);
+        for (int i = 0; i < recover_props.size(); i++)
+            for (ObjectProperty p : entry_props.get(i))
+                propagate(entry_state, p, s, recover_props.get(i), s.getRenamings(), partial, false, values_at_s.get(i));
     }
 
     /**
@@ -725,10 +751,12 @@ public final class UnknownValueResolver {
     public static Map<PropertyKey, Value> getProperties(ObjectLabel objlabel, State s) {
         Obj obj = s.getObject(objlabel, false);
         if (obj.getDefaultNumericProperty().isUnknown() || obj.getDefaultOtherProperty().isUnknown()) {
+            List<ObjectProperty> props = newList();
             if (obj.getDefaultNumericProperty().isUnknown())
-                recover(s, ObjectProperty.makeDefaultNumeric(objlabel), false);
+                props.add(ObjectProperty.makeDefaultNumeric(objlabel));
             if (obj.getDefaultOtherProperty().isUnknown())
-                recover(s, ObjectProperty.makeDefaultOther(objlabel), false);
+                props.add(ObjectProperty.makeDefaultOther(objlabel));
+            recover(s, props, false);
             obj = s.getObject(objlabel, false); // now all properties have been materialized from the defaults if unknown
             if (log.isDebugEnabled())
                 log.debug("getProperties(" + objlabel + ")");
@@ -736,6 +764,21 @@ public final class UnknownValueResolver {
         return obj.getProperties();
     }
 
+    /**
+     * Recovers the given ordinary properties of the given object, such that subsequent calls to
+     * {@link #getProperty(ObjectLabel, PropertyKey, State, boolean)} for these properties need no recovery.
+     * All the properties that need recovery are recovered together using a single recovery graph.
+     */
+    public static void recoverProperties(ObjectLabel objlabel, Collection<PropertyKey> propertynames, State s, boolean partial) {
+        Obj obj = s.getObject(objlabel, false);
+        List<ObjectProperty> props = newList();
+        for (PropertyKey propertyname : propertynames)
+            if (!isValueOK(obj.getProperty(propertyname), partial))
+                props.add(ObjectProperty.makeOrdinary(objlabel, propertyname));
+        if (props.size() > 1) // single properties are recovered on demand
+            recover(s, props, partial && !Options.get().isPolymorphicDisabled());
+    }
+
     /**
      * Fully recovers the given value if polymorphic.
      */
@@ -186,7 +186,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
      * &&
      * !((flags & STR_PREFIX) != 0 && (str == null || str.length == 0))
      * &&
-     * !((flags & NUM_ANY) != 0 && num != null)
+     * !((flags & NUM_ANY) != 0 && hasNum())
      * &&
      * !(object_labels != null && object_labels.isEmpty())
      * &&
@@ -200,11 +200,9 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
      * &&
      * !(v.excluded_strings != null && v.included_strings != null)
      * &&
-     * !(num != null && Double.isNaN(num))
+     * !((flags & UNKNOWN) != 0 && ((flags & ~UNKNOWN) != 0 || str != null || hasNum() || !object_labels.isEmpty()) || !getters.isEmpty()) || !setters.isEmpty()))
      * &&
-     * !((flags & UNKNOWN) != 0 && ((flags & ~UNKNOWN) != 0 || str != null || num != null || !object_labels.isEmpty()) || !getters.isEmpty()) || !setters.isEmpty()))
-     * &&
-     * !(var != null && ((flags & PRIMITIVE) != 0 || str != null || num != null || !object_labels.isEmpty()) || !getters.isEmpty()) || !setters.isEmpty()))
+     * !(var != null && ((flags & PRIMITIVE) != 0 || str != null || hasNum() || !object_labels.isEmpty()) || !getters.isEmpty()) || !setters.isEmpty()))
      * &&
      * !((flags & (PRESENT_DATA | PRESENT_ACCESSOR) != 0 && var == null)
      * &&
@@ -222,8 +220,10 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
 
     /**
      * Constant number, may be +/-Infinity but not NaN.
+     * NaN if no constant number (the NaN number itself is represented by {@link #NUM_NAN}).
+     * A primitive field avoids a boxed Double per value.
      */
-    private Double num;
+    private double num;
 
     /**
      * Constant string or prefix.
@@ -323,7 +323,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
      */
     protected Value() {
         flags = 0;
-        num = null;
+        num = Double.NaN;
         str = null;
         object_labels = getters = setters = null;
         excluded_strings = included_strings = null;
@@ -351,6 +351,16 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         hashcode = v.hashcode;
     }
 
+    /**
+     * Returns the canonical representative of this value in the current analysis.
+     * Used for values that are kept across analyses, which must therefore not refer to object labels or other analysis specific data.
+     */
+    public Value recanonicalize() {
+        if (object_labels != null || getters != null || setters != null || var != null || functionPartitions != null || functionTypeSignatures != null)
+            throw new AnalysisException("Value cannot be recanonicalized: " + this);
+        return canonicalize(new Value(this));
+    }
+
     /**
      * Put the value into canonical form.
      */
@@ -361,10 +371,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
                 msg = "fixed string and flags inconsistent";
             else if ((v.flags & STR_PREFIX) != 0 && (v.str == null || v.str.isEmpty()))
                 msg = "prefix string inconsistent";
-            else if ((v.flags & NUM) != 0 && v.num != null)
+            else if ((v.flags & NUM) != 0 && v.hasNum())
                 msg = "number facet inconsistent";
-            else if (v.num != null && Double.isNaN(v.num))
-                msg = "number constant is NaN";
             else if (v.object_labels != null && v.object_labels.isEmpty())
                 msg = "empty set of object labels";
             else if (v.getters != null && v.getters.isEmpty())
@@ -379,12 +387,12 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
                 msg = "invalid number of included strings";
             else if (v.excluded_strings != null && v.included_strings != null)
                 msg = "has both excluded strings and included strings";
-            else if ((v.flags & UNKNOWN) != 0 && ((v.flags & ~UNKNOWN) != 0 || v.str != null || v.num != null
+            else if ((v.flags & UNKNOWN) != 0 && ((v.flags & ~UNKNOWN) != 0 || v.str != null || v.hasNum()
                     || (v.object_labels != null && !v.object_labels.isEmpty())
                     || (v.getters != null && !v.getters.isEmpty())
                     || (v.setters != null && !v.setters.isEmpty())))
                 msg = "'unknown' inconsistent with other flags";
-            else if (v.var != null && ((v.flags & PRIMITIVE) != 0 || v.str != null || v.num != null
+            else if (v.var != null && ((v.flags & PRIMITIVE) != 0 || v.str != null || v.hasNum()
                     || (v.object_labels != null && !v.object_labels.isEmpty())
                     || (v.getters != null && !v.getters.isEmpty())
                     || (v.setters != null && !v.setters.isEmpty())))
@@ -427,7 +435,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     protected int computeHashCode() {
         return flags * 17
                 + (var != null ? var.hashCode() : 0)
-                + (num != null ? num.hashCode() : 0)
+                + (hasNum() ? Double.hashCode(num) : 0)
                 + (str != null ? str.hashCode() : 0)
                 + (object_labels != null ? object_labels.hashCode() : 0)
                 + (getters != null ? getters.hashCode() : 0)
@@ -592,7 +600,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
      */
     public boolean isNone() {
         if (var == null)
-            return (flags & (PRIMITIVE | ABSENT | UNKNOWN)) == 0 && num == null && str == null && object_labels == null && getters == null && setters == null;
+            return (flags & (PRIMITIVE | ABSENT | UNKNOWN)) == 0 && !hasNum() && str == null && object_labels == null && getters == null && setters == null;
         else
             return (flags & (ABSENT | PRESENT_DATA | PRESENT_ACCESSOR)) == 0;
     }
@@ -673,7 +681,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             return this;
         Value r = new Value(this);
         r.flags &= ~PRIMITIVE;
-        r.num = null;
+        r.num = Double.NaN;
         r.str = null;
         r.object_labels = null;
         r.excluded_strings = r.included_strings = null;
@@ -1159,14 +1167,14 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         int oldflags = flags;
         if (!v.isPolymorphic()) {
             // numbers
-            if (num != null)
-                if (v.num != null) {
+            if (hasNum())
+                if (v.hasNum()) {
                     // both this and v are single numbers
-                    if (!num.equals(v.num)) {
+                    if (Double.compare(num, v.num) != 0) {
                         // both this and v are single numbers, and the numbers are different
                         joinSingleNumberAsFuzzy(num);
                         joinSingleNumberAsFuzzy(v.num);
-                        num = null;
+                        num = Double.NaN;
                         modified = true;
                     } // otherwise this and v are equal single numbers, so do nothing
                 } else {
@@ -1174,11 +1182,11 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
                     if ((v.flags & NUM) != 0) {
                         // this is a single number, v is fuzzy
                         joinSingleNumberAsFuzzy(num);
-                        num = null;
+                        num = Double.NaN;
                         modified = true;
                     } // otherwise v is empty. so do nothing
                 }
-            else if (v.num != null) {
+            else if (v.hasNum()) {
                 // this is not a single number, v is a single number
                 if ((flags & NUM) != 0) {
                     // this is a fuzzy number, v is a single number
@@ -1376,7 +1384,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         // noinspection StringEquality
         return flags == v.flags
                 && (var == v.var || (var != null && v.var != null && var.equals(v.var)))
-                && ((num == null && v.num == null) || (num != null && v.num != null && num.equals(v.num)))
+                && Double.doubleToLongBits(num) == Double.doubleToLongBits(v.num)
                 && (str == v.str || (str != null && v.str != null && str.equals(v.str)))
                 && (object_labels == v.object_labels || (object_labels != null && v.object_labels != null && object_labels.equals(v.object_labels)))
                 && (getters == v.getters || (getters != null && v.getters != null && getters.equals(v.getters)))
@@ -1507,7 +1515,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
                 b.append("Num");
                 any = true;
             } else {
-                if (num == null && isMaybeZero() && !isMaybeNumUIntPos()) {
+                if (!hasNum() && isMaybeZero() && !isMaybeNumUIntPos()) {
                     if (any)
                         b.append('|');
                     b.append("Zero");
@@ -1541,7 +1549,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
                     b.append("Inf");
                     any = true;
                 }
-                if (num != null) {
+                if (hasNum()) {
                     if (any)
                         b.append('|');
                     b.append(num);
@@ -1899,7 +1907,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     @Override
     public boolean isMaybeOtherThanUndef() {
         checkNotPolymorphicOrUnknown();
-        return (flags & (NULL | BOOL | NUM | STR)) != 0 || num != null || str != null || object_labels != null || getters != null || setters != null;
+        return (flags & (NULL | BOOL | NUM | STR)) != 0 || hasNum() || str != null || object_labels != null || getters != null || setters != null;
     }
 
     @Override
@@ -1959,7 +1967,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     @Override
     public boolean isMaybeOtherThanNull() {
         checkNotPolymorphicOrUnknown();
-        return (flags & (UNDEF | BOOL | NUM | STR)) != 0 || num != null || str != null || object_labels != null || getters != null || setters != null;
+        return (flags & (UNDEF | BOOL | NUM | STR)) != 0 || hasNum() || str != null || object_labels != null || getters != null || setters != null;
     }
 
     @Override
@@ -1995,7 +2003,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     public boolean isNullOrUndef() {
         checkNotPolymorphicOrUnknown();
         return (flags & (NULL | UNDEF)) != 0
-                && (flags & (NUM | STR | BOOL)) == 0 && num == null && str == null && object_labels == null && getters == null && setters == null;
+                && (flags & (NUM | STR | BOOL)) == 0 && !hasNum() && str == null && object_labels == null && getters == null && setters == null;
     }
 
     /**
@@ -2064,7 +2072,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     @Override
     public boolean isMaybeOtherThanBool() {
         checkNotPolymorphicOrUnknown();
-        return (flags & (UNDEF | NULL | NUM | STR)) != 0 || num != null || str != null || object_labels != null || getters != null || setters != null;
+        return (flags & (UNDEF | NULL | NUM | STR)) != 0 || hasNum() || str != null || object_labels != null || getters != null || setters != null;
     }
 
     @Override
@@ -2173,8 +2181,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         Value r = new Value(this);
         if ((r.flags & STR_PREFIX) == 0 && r.str != null && r.str.isEmpty())
             r.str = null;
-        if (r.num != null && Math.abs(r.num) == 0.0)
-            r.num = null;
+        if (r.hasNum() && Math.abs(r.num) == 0.0)
+            r.num = Double.NaN;
         r.flags &= ~(BOOL_FALSE | NULL | UNDEF | NUM_NAN | NUM_ZERO | ABSENT);
         if (r.isMaybeFuzzyStr())
             return r.restrictToNotStrings(singleton(""));
@@ -2194,8 +2202,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         else
             r.str = null;
         r.flags &= ~STR;
-        if (r.num != null && Math.abs(r.num) != 0.0)
-            r.num = null;
+        if (r.hasNum() && Math.abs(r.num) != 0.0)
+            r.num = Double.NaN;
         r.object_labels = r.getters = r.setters = null;
         r.flags &= ~(BOOL_TRUE | STR_PREFIX | (NUM & ~(NUM_ZERO | NUM_NAN)));
         r.excluded_strings = r.included_strings = null;
@@ -2230,18 +2238,18 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     @Override
     public boolean isMaybeSingleNum() {
         checkNotPolymorphicOrUnknown();
-        return num != null;
+        return hasNum();
     }
 
     @Override
     public boolean isMaybeSingleNumUInt() {
         checkNotPolymorphicOrUnknown();
-        return num != null && isUInt32(num);
+        return hasNum() && isUInt32(num);
     }
 
     public boolean isMaybeSingleNumInt() {
         checkNotPolymorphicOrUnknown();
-        return num != null && isInt32(num);
+        return hasNum() && isInt32(num);
     }
 
     @Override
@@ -2277,7 +2285,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     @Override
     public boolean isMaybeExactNum(double num) {
         checkNotPolymorphicOrUnknown();
-        if (this.num != null) {
+        if (hasNum()) {
             return this.num == num;
         } else if (Double.isInfinite(num)) {
             return (flags & NUM_INF) != 0;
@@ -2331,16 +2339,23 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         return ((flags & (UNDEF | NULL | BOOL | STR | NUM_INF | NUM_NAN | NUM_OTHER)) != 0) || str != null || object_labels != null || getters != null || setters != null;
     }
 
+    /**
+     * Checks whether this value has a constant number.
+     */
+    private boolean hasNum() {
+        return !Double.isNaN(num);
+    }
+
     @Override
     public Double getNum() {
         checkNotPolymorphicOrUnknown();
-        return num != null ? num : (flags & NUM_NAN) != 0 ? Double.NaN : null;
+        return hasNum() ? Double.valueOf(num) : (flags & NUM_NAN) != 0 ? Double.valueOf(Double.NaN) : null;
     }
 
     @Override
     public boolean isNotNum() {
         checkNotPolymorphicOrUnknown();
-        return (flags & NUM) == 0 && num == null;
+        return (flags & NUM) == 0 && !hasNum();
     }
 
     @Override
@@ -2349,7 +2364,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         if (isMaybeNum())
             return this;
         Value r = new Value(this);
-        r.num = null;
+        r.num = Double.NaN;
         r.flags |= NUM;
         return canonicalize(r);
     }
@@ -2361,8 +2376,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             return this;
         Value r = new Value(this);
         r.flags |= NUM_UINT;
-        r.num = null;
-        if (num != null)
+        r.num = Double.NaN;
+        if (hasNum())
             r.joinSingleNumberAsFuzzy(num);
         return canonicalize(r);
     }
@@ -2373,8 +2388,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             return this;
         Value r = new Value(this);
         r.flags |= NUM_UINT_POS;
-        r.num = null;
-        if (num != null)
+        r.num = Double.NaN;
+        if (hasNum())
             r.joinSingleNumberAsFuzzy(num);
         return canonicalize(r);
     }
@@ -2385,8 +2400,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             return this;
         Value r = new Value(this);
         r.flags |= NUM_INT_NEGATIVE;
-        r.num = null;
-        if (num != null)
+        r.num = Double.NaN;
+        if (hasNum())
             r.joinSingleNumberAsFuzzy(num);
         return canonicalize(r);
     }
@@ -2398,8 +2413,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             return this;
         Value r = new Value(this);
         r.flags |= NUM_OTHER;
-        r.num = null;
-        if (num != null)
+        r.num = Double.NaN;
+        if (hasNum())
             r.joinSingleNumberAsFuzzy(num);
         return canonicalize(r);
     }
@@ -2458,14 +2473,14 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         checkNotPolymorphicOrUnknown();
         if (Double.isNaN(v))
             return joinNumNaN();
-        if (num != null && num.equals(v))
+        if (hasNum() && Double.compare(num, v) == 0)
             return this;
         Value r = new Value(this);
         if (isNotNum())
             r.num = v;
         else {
-            if (num != null) {
-                r.num = null;
+            if (hasNum()) {
+                r.num = Double.NaN;
                 r.joinSingleNumberAsFuzzy(num);
             }
             r.joinSingleNumberAsFuzzy(v);
@@ -2480,8 +2495,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             return this;
         Value r = new Value(this);
         r.flags |= NUM_NAN;
-        r.num = null;
-        if (num != null)
+        r.num = Double.NaN;
+        if (hasNum())
             r.joinSingleNumberAsFuzzy(num);
         return canonicalize(r);
     }
@@ -2493,8 +2508,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             return this;
         Value r = new Value(this);
         r.flags |= NUM_INF;
-        r.num = null;
-        if (num != null)
+        r.num = Double.NaN;
+        if (hasNum())
             r.joinSingleNumberAsFuzzy(num);
         return canonicalize(r);
     }
@@ -2637,7 +2652,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         checkNotPolymorphicOrUnknown();
         Value r = new Value(this);
         r.flags &= ~NUM;
-        r.num = null;
+        r.num = Double.NaN;
         return canonicalize(r);
     }
 
@@ -2744,7 +2759,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     @Override
     public boolean isStrJSON() {
         checkNotPolymorphicOrUnknown();
-        return (flags & PRIMITIVE) == STR_JSON && str == null && num == null && object_labels == null && getters == null && setters == null;
+        return (flags & PRIMITIVE) == STR_JSON && str == null && !hasNum() && object_labels == null && getters == null && setters == null;
     }
 
     @Override
@@ -2753,7 +2768,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         if (included_strings != null)
             return included_strings.stream().allMatch(Strings::isIdentifierParts);
         return (((flags & STR_IDENTIFIERPARTS) != 0 && (flags & PRIMITIVE & ~STR_IDENTIFIERPARTS) == 0)
-                || (str != null && Strings.isIdentifierParts(str))) && num == null && object_labels == null && getters == null && setters == null;
+                || (str != null && Strings.isIdentifierParts(str))) && !hasNum() && object_labels == null && getters == null && setters == null;
     }
 
     @Override
@@ -2762,7 +2777,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         if (included_strings != null)
             return included_strings.stream().allMatch(Strings::isIdentifier);
         return ((flags & PRIMITIVE) == STR_IDENTIFIER
-                || (str != null && Strings.isIdentifier(str))) && num == null && object_labels == null && getters == null && setters == null;
+                || (str != null && Strings.isIdentifier(str))) && !hasNum() && object_labels == null && getters == null && setters == null;
     }
 
     @Override
@@ -2812,7 +2827,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
 
     public boolean isMaybeOtherThanStrOrSymbol() {
         checkNotPolymorphicOrUnknown();
-        if ((flags & (UNDEF | NULL | BOOL | NUM)) != 0 || num != null || getters != null || setters != null) {
+        if ((flags & (UNDEF | NULL | BOOL | NUM)) != 0 || hasNum() || getters != null || setters != null) {
             return true;
         }
         return object_labels != null && object_labels.stream().anyMatch(x -> x.getKind() != Kind.SYMBOL);
@@ -2841,7 +2856,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         checkNotPolymorphicOrUnknown();
         Value r = new Value(this);
         r.flags &= ~PRIMITIVE;
-        r.num = null;
+        r.num = Double.NaN;
         r.str = null;
         r.getters = r.setters = null;
         r.excluded_strings = r.included_strings = null;
@@ -2862,7 +2877,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         checkNotPolymorphicOrUnknown();
         Value r = new Value(this);
         r.flags &= ~PRIMITIVE;
-        r.num = null;
+        r.num = Double.NaN;
         r.str = null;
         r.getters = r.setters = null;
         r.excluded_strings = r.included_strings = null;
@@ -2907,7 +2922,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     @Override
     public boolean isMaybeOtherThanStr() {
         checkNotPolymorphicOrUnknown();
-        return (flags & (UNDEF | NULL | BOOL | NUM)) != 0 || num != null || object_labels != null || getters != null || setters != null;
+        return (flags & (UNDEF | NULL | BOOL | NUM)) != 0 || hasNum() || object_labels != null || getters != null || setters != null;
     }
 
     @Override
@@ -3647,7 +3662,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             return this;
         Value r = new Value(this);
         r.flags &= ~PRIMITIVE;
-        r.num = null;
+        r.num = Double.NaN;
         r.str = null;
         r.getters = r.setters = null;
         r.excluded_strings = r.included_strings = null;
@@ -3668,7 +3683,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         checkNotPolymorphicOrUnknown();
         Value r = new Value(this);
         r.flags &= (~PRIMITIVE) | NULL;
-        r.num = null;
+        r.num = Double.NaN;
         r.str = null;
         r.getters = r.setters = null;
         r.excluded_strings = r.included_strings = null;
@@ -3706,7 +3721,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         checkNotPolymorphicOrUnknown();
         Value r = new Value(this);
         r.flags &= ~PRIMITIVE;
-        r.num = null;
+        r.num = Double.NaN;
         r.str = null;
         r.excluded_strings = r.included_strings = null;
         r.object_labels = newSet();
@@ -3781,7 +3796,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             return this;
         Value r = new Value(this);
         r.flags &= ~PRIMITIVE;
-        r.num = null;
+        r.num = Double.NaN;
         r.str = null;
         r.excluded_strings = r.included_strings = null;
         r.object_labels = newSet(object_labels);
@@ -3847,7 +3862,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         if (isPolymorphic())
             return (flags & (PRESENT_DATA | PRESENT_ACCESSOR)) != 0;
         else
-            return (flags & PRIMITIVE) != 0 || num != null || str != null || object_labels != null || getters != null || setters != null;
+            return (flags & PRIMITIVE) != 0 || hasNum() || str != null || object_labels != null || getters != null || setters != null;
     }
 
     /**
@@ -3858,7 +3873,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         if (isPolymorphic())
             return (flags & PRESENT_DATA) != 0;
         else
-            return (flags & PRIMITIVE) != 0 || num != null || str != null || object_labels != null;
+            return (flags & PRIMITIVE) != 0 || hasNum() || str != null || object_labels != null;
     }
 
     /**
@@ -3966,7 +3981,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
      */
     public boolean isMaybePrimitive() {
         checkNotPolymorphicOrUnknown();
-        return (flags & PRIMITIVE) != 0 || num != null || str != null;
+        return (flags & PRIMITIVE) != 0 || hasNum() || str != null;
     }
 
     /**
@@ -4133,7 +4148,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         checkNotUnknown();
         if (isPolymorphic())
             return;
-        if ((flags & PRIMITIVE) == 0 && num == null && str == null && object_labels == null && getters == null && setters == null
+        if ((flags & PRIMITIVE) == 0 && !hasNum() && str == null && object_labels == null && getters == null && setters == null
                 && !Options.get().isPropagateDeadFlow())
             throw new AnalysisException("Empty value");
     }
@@ -4204,7 +4219,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
      */
     public Value restrictToAttributes() {
         Value r = new Value(this);
-        r.num = null;
+        r.num = Double.NaN;
         r.str = null;
         r.var = null;
         r.flags &= ATTR | ABSENT | UNKNOWN;
@@ -4301,8 +4316,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             return this;
         }
         Value r = new Value(this);
-        if (r.num != null && isZero(r.num)) {
-            r.num = null;
+        if (r.hasNum() && isZero(r.num)) {
+            r.num = Double.NaN;
         }
         r.flags &= ~NUM_ZERO;
         return canonicalize(r);
@@ -4311,7 +4326,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     @Override
     public boolean isMaybeZero() {
         checkNotPolymorphicOrUnknown();
-        if (num != null && isZero(num)) {
+        if (hasNum() && isZero(num)) {
             return true;
         }
         return (flags & NUM_ZERO) != 0;
@@ -4332,10 +4347,10 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     @Override
     public boolean isMaybeSameNumber(Value v) {
         checkNotPolymorphicOrUnknown();
-        if (num != null) {
+        if (hasNum()) {
             return v.isMaybeExactNum(num);
         }
-        if (v.num != null) {
+        if (v.hasNum()) {
             return isMaybeExactNum(v.num);
         }
         return (flags & v.flags & NUM) != 0;
@@ -4344,10 +4359,10 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
     @Override
     public boolean isMaybeSameNumberWhenNegated(Value v) {
         checkNotPolymorphicOrUnknown();
-        if (num != null) {
+        if (hasNum()) {
             return v.isMaybeExactNum(-num);
         }
-        if (v.num != null) {
+        if (v.hasNum()) {
             return isMaybeExactNum(-v.num);
         }
         boolean maybePos = (flags & NUM_UINT_POS) != 0;
@@ -4391,7 +4406,7 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
         // handle numbers
         if (isMaybeSingleNum()) {
             if (!v.isMaybeExactNum(num))
-                r.num = null;
+                r.num = Double.NaN;
         } else { // this is fuzzy number (or not a number)
             if (v.isMaybeSingleNum()) {
                 if (isMaybeExactNum(v.num))
@@ -4556,8 +4571,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
                 r.flags &= ~BOOL_FALSE;
             else if (vIsNumber) {
                 Double vnum = v.getNum();
-                if (r.num != null && r.num.equals(vnum) && !Double.isNaN(vnum)) // note: NaN !== NaN
-                    r.num = null;
+                if (r.hasNum() && vnum != null && Double.compare(r.num, vnum) == 0) // note: NaN !== NaN
+                    r.num = Double.NaN;
                 // TODO: could also handle NUM_ZERO and NUM_NAN (but treated as fuzzy by isMaybeFuzzyNum above)
             } else if (r.object_labels != null) { // vIsObjectOrSymbol must be true here, and there can be only one object label
                 r.object_labels = newSet(r.object_labels);
@@ -4646,19 +4661,19 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             // remove all numbers if v is definitely not a number, false, the empty string, or a numeric string
             if (vIsNotNumber && vIsNotFalse && vIsNotEmptyString && vIsNotNumericString) {
                 r.flags &= ~NUM;
-                r.num = null;
+                r.num = Double.NaN;
             }
             // remove 0, false, "", "  0.0 ", etc. if v is definitely not 0, false, "", or "  0.0 ", etc.
             if (vIsNotZero && vIsNotFalse && vIsNotEmptyString && vIsNotNumericStringZero) {
                 r.flags &= ~(BOOL_FALSE | NUM_ZERO);
-                if (r.num != null && r.num == 0)
-                    r.num = null;
+                if (r.hasNum() && r.num == 0)
+                    r.num = Double.NaN;
                 r.removeIncludedAddExcludedString("");
                 r.removeIncludedAddExcludedString("0"); // could also exclude "0.0", "  -0 ", etc.
             }
             // remove non-zero number if v is definitely not that number or a string that is coerced to that number
-            if (r.num != null && r.num != 0 && !v.isMaybeExactNum(r.num) && vNumericStringNumber != null && vNumericStringNumber.doubleValue() != r.num.doubleValue()) {
-                r.num = null;
+            if (r.hasNum() && r.num != 0 && !v.isMaybeExactNum(r.num) && vNumericStringNumber != null && vNumericStringNumber.doubleValue() != r.num) {
+                r.num = Double.NaN;
             }
             // remove non-empty string if v is definitely not that string or a number that is coerced to that string
             if (isMaybeSingleStr() && !str.isEmpty() && !v.isMaybeExactStr(str) && (vIsNotNumber || thisIsNotNumericString)) {
@@ -4717,8 +4732,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             r.flags &= ~BOOL_TRUE;
         } else if (vIsNumberZero || vIsFalse) {
             // can't be 0, false, "", "  0.0 ", etc.
-            if (r.num != null && r.num == 0)
-                r.num = null;
+            if (r.hasNum() && r.num == 0)
+                r.num = Double.NaN;
             r.flags &= ~(NUM_ZERO | BOOL_FALSE);
             if (thisNumberIfStringNumeric != null && thisNumberIfStringNumeric == 0)
                 r.str = null;
@@ -4726,16 +4741,16 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             r.removeIncludedAddExcludedString("0"); // could also exclude "0.0", "  -0 ", etc.
         } else if (vIsNumber) {
             // can't be that (non-zero) number, also not as string
-            if (r.num != null && r.num.doubleValue() == v.num.doubleValue()) // using == to handle +/- 0 correctly
-                r.num = null;
-            if (thisNumberIfStringNumeric != null && v.num != null && thisNumberIfStringNumeric.doubleValue() == v.num.doubleValue())
+            if (r.hasNum() && r.num == v.num) // using == to handle +/- 0 correctly
+                r.num = Double.NaN;
+            if (thisNumberIfStringNumeric != null && v.hasNum() && thisNumberIfStringNumeric.doubleValue() == v.num)
                 r.str = null;
-            if (v.num != null)
+            if (v.hasNum())
                 r.removeIncludedAddExcludedString(Double.toString(v.num));
         } else if (vIsStringZero || vIsStringEmpty) {
             // can't be 0, false, or that string
-            if (r.num != null && r.num == 0)
-                r.num = null;
+            if (r.hasNum() && r.num == 0)
+                r.num = Double.NaN;
             r.flags &= ~(NUM_ZERO | BOOL_FALSE);
             if (r.isMaybeSingleStr() && r.str.equals(v.str))
                 r.str = null;
@@ -4744,8 +4759,8 @@ public class Value implements Undef, Null, Bool, Num, Str, StringOrSymbol, DeepI
             // can't be that (non-zero, non-empty) string, also not as number
             if (r.isMaybeSingleStr() && r.str.equals(v.str))
                 r.str = null;
-            if (vNumberIfStringNumeric != null && r.num != null && vNumberIfStringNumeric.doubleValue() == r.num.doubleValue())
-                r.num = null;
+            if (vNumberIfStringNumeric != null && r.hasNum() && vNumberIfStringNumeric.doubleValue() == r.num)
+                r.num = Double.NaN;
             r.removeIncludedAddExcludedString(v.str);
         }
         r.cleanupIncludedExcluded();
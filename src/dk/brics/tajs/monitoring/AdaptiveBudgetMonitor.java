@@ -0,0 +1,230 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.monitoring;
+
+import dk.brics.tajs.analysis.Solver;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.solver.AnalysisBudget;
+import dk.brics.tajs.util.AnalysisLimitationException;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newMap;
+
+/**
+ * Monitoring that keeps the analysis within a time and/or node transfer budget by degrading precision
+ * instead of terminating the fixpoint iteration early and unsoundly (like {@link AnalysisTimeLimiter} does).
+ * <p>
+ * Progress is sampled every {@link #SAMPLE_INTERVAL} worklist iterations. When the consumed fraction of the budget passes the next threshold,
+ * or the run is projected to exceed the budget (from the worklist size and the recent transfer rate),
+ * the next step of {@link AnalysisBudget} is taken for the functions that received most node transfers
+ * since the previous step. Only if the budget is overrun by a large factor after all steps have been taken
+ * is the analysis terminated with an {@link AnalysisLimitationException.AnalysisTimeException}.
+ * <p>
+ * If a node transfer limit is given, the degradation steps depend only on the node transfers and the worklist,
+ * so the analysis results are reproducible. A time limit is then only used for terminating the analysis if
+ * it is exceeded by a large factor. If only a time limit is given, the degradation steps depend on the elapsed time,
+ * which makes the analysis results depend on the machine and its load.
+ * <p>
+ * Ignores time spent in building flowgraph and post-processing analysis results.
+ */
+public class AdaptiveBudgetMonitor extends DefaultAnalysisMonitoring {
+
+    private static Logger log = Logger.getLogger(AdaptiveBudgetMonitor.class);
+
+    /**
+     * Number of iterations between progress samples.
+     */
+    private static final int SAMPLE_INTERVAL = 64;
+
+    /**
+     * Consumed budget fractions where the degradation steps are taken at the latest.
+     */
+    private static final double[] THRESHOLDS = {0.5, 0.65, 0.8, 0.9, 1.0};
+
+    /**
+     * Consumed budget fraction before projections are trusted.
+     */
+    private static final double MIN_PROJECTION_FRACTION = 0.2;
+
+    /**
+     * Fraction of the recent node transfers that the hot functions must account for.
+     */
+    private static final double HOT_SHARE = 0.5;
+
+    /**
+     * Consumed budget fraction where the analysis is terminated if all degradation steps have been taken.
+     */
+    private static final double HARD_LIMIT_FACTOR = 2.0;
+
+    private static long nanoFactor = 1000 * 1000 * 1000;
+
+    private final long secondsTimeLimit;
+
+    private final int nodeTransferLimit;
+
+    private Solver.SolverInterface c;
+
+    private long startNanoTime = -1;
+
+    private int nodeTransfers = 0;
+
+    private int iterations = 0;
+
+    /**
+     * Node transfers since the previous degradation step, per function.
+     */
+    private Map<Function, Integer> recentTransfers = newMap();
+
+    /**
+     * Iterations and node transfers at the previous sample.
+     */
+    private int sampleIterations = 0;
+
+    private int sampleNodeTransfers = 0;
+
+    private long sampleNanoTime = -1;
+
+    /**
+     * @param secondsTimeLimit  the number of second the analysis should run, or -1 if no limit
+     * @param nodeTransferLimit the number of node transfers the analysis should run, or -1 if no limit
+     */
+    public AdaptiveBudgetMonitor(int secondsTimeLimit, int nodeTransferLimit) {
+        this.secondsTimeLimit = secondsTimeLimit;
+        this.nodeTransferLimit = nodeTransferLimit;
+    }
+
+    @Override
+    public void setSolverInterface(Solver.SolverInterface c) {
+        this.c = c;
+    }
+
+    @Override
+    public void visitPhasePre(AnalysisPhase phase) {
+        if (phase == AnalysisPhase.ANALYSIS) {
+            startNanoTime = System.nanoTime();
+            sampleNanoTime = startNanoTime;
+            if (!isDeterministic())
+                log.warn("Adaptive analysis budget uses the time limit only, results may differ between runs (use -transfer-limit for reproducible results)");
+        }
+    }
+
+    @Override
+    public void visitNodeTransferPre(AbstractNode n, State s) {
+        if (!s.getSolverInterface().isScanning()) {
+            nodeTransfers++;
+            recentTransfers.merge(n.getBlock().getFunction(), 1, Integer::sum);
+        }
+    }
+
+    @Override
+    public boolean allowNextIteration() {
+        iterations++;
+        if (c == null || startNanoTime == -1 || iterations % SAMPLE_INTERVAL != 0)
+            return true;
+        long now = System.nanoTime();
+        double consumed = getConsumedFraction(now, nodeTransfers);
+        AnalysisBudget budget = c.getBudget();
+        if (isDeterministic() && secondsTimeLimit != -1 && (double) (now - startNanoTime) / (secondsTimeLimit * nanoFactor) > HARD_LIMIT_FACTOR)
+            throw new AnalysisLimitationException.AnalysisTimeException(String.format("Analysis exceeded %.1f times its time limit", HARD_LIMIT_FACTOR));
+        if (budget.isExhausted()) {
+            if (consumed > HARD_LIMIT_FACTOR)
+                throw new AnalysisLimitationException.AnalysisTimeException(String.format("Analysis exceeded %.1f times its budget after all precision degradation steps", HARD_LIMIT_FACTOR));
+        } else {
+            int step = Math.min(budget.getNumberOfSteps(), THRESHOLDS.length - 1);
+            double projected = getProjectedFraction(now);
+            if (consumed >= THRESHOLDS[step] || (consumed >= MIN_PROJECTION_FRACTION && projected > 1.0)) {
+                budget.degrade(getHotFunctions());
+                recentTransfers = newMap();
+                if (log.isDebugEnabled())
+                    log.debug(String.format("Degraded precision at %.0f%% of budget (projected %.0f%%), worklist size %d, abstract states %d",
+                            consumed * 100, projected * 100, c.getWorklist().size(), c.getAnalysisLatticeElement().getNumberOfStates()));
+            }
+        }
+        sampleIterations = iterations;
+        sampleNodeTransfers = nodeTransfers;
+        sampleNanoTime = now;
+        return true;
+    }
+
+    /**
+     * Returns true if the degradation steps only depend on the node transfers and the worklist.
+     */
+    private boolean isDeterministic() {
+        return nodeTransferLimit != -1;
+    }
+
+    /**
+     * Returns the fraction of the budget that has been consumed.
+     * The node transfer fraction is used if there is a node transfer limit, otherwise the time fraction.
+     */
+    private double getConsumedFraction(long nanoTime, double transfers) {
+        if (isDeterministic())
+            return transfers / nodeTransferLimit;
+        return (double) (nanoTime - startNanoTime) / (secondsTimeLimit * nanoFactor);
+    }
+
+    /**
+     * Projects the fraction of the budget that is needed to process the current worklist at the rate of the latest sample.
+     * The worklist size is a lower bound of the remaining number of iterations, so this is an optimistic estimate.
+     */
+    private double getProjectedFraction(long now) {
+        int sampledIterations = iterations - sampleIterations;
+        if (sampledIterations == 0)
+            return 0;
+        int remaining = c.getWorklist().size();
+        double nanosPerIteration = (double) (now - sampleNanoTime) / sampledIterations;
+        double transfersPerIteration = (double) (nodeTransfers - sampleNodeTransfers) / sampledIterations;
+        return getConsumedFraction(now + (long) (remaining * nanosPerIteration), nodeTransfers + remaining * transfersPerIteration);
+    }
+
+    /**
+     * Returns the functions that account for most of the node transfers since the previous degradation step.
+     * Ties are broken by function index, so the choice does not depend on hash codes.
+     */
+    private List<Function> getHotFunctions() {
+        int total = recentTransfers.values().stream().mapToInt(Integer::intValue).sum();
+        List<Map.Entry<Function, Integer>> sorted = recentTransfers.entrySet().stream()
+                .sorted(Map.Entry.<Function, Integer>comparingByValue().reversed().thenComparing(me -> me.getKey().getIndex()))
+                .collect(Collectors.toList());
+        List<Function> hot = newList();
+        int covered = 0;
+        for (Map.Entry<Function, Integer> me : sorted) {
+            if (covered >= total * HOT_SHARE)
+                break;
+            hot.add(me.getKey());
+            covered += me.getValue();
+        }
+        return hot;
+    }
+
+    @Override
+    public void visitIterationDone(String terminatedEarlyMsg) {
+        if (c == null)
+            return;
+        AnalysisBudget budget = c.getBudget();
+        if (budget.getNumberOfSteps() > 0)
+            log.info("Precision degraded to fit the analysis budget: " + budget.getDisabledFeatures() + " disabled "
+                    + (budget.isExhausted() ? "in all functions" : "in " + budget.getHotFunctions().size() + " functions"));
+    }
+}
@@ -55,9 +55,12 @@ import dk.brics.tajs.flowgraph.jsnodes.WriteVariableNode;
 import dk.brics.tajs.lattice.CallEdge;
 import dk.brics.tajs.lattice.Context;
 import dk.brics.tajs.lattice.HostObject;
+import dk.brics.tajs.lattice.MustEquals;
+import dk.brics.tajs.lattice.MustReachingDefs;
 import dk.brics.tajs.lattice.Obj;
 import dk.brics.tajs.lattice.ObjectLabel;
 import dk.brics.tajs.lattice.ObjectLabel.Kind;
+import dk.brics.tajs.lattice.PartitionedValue;
 import dk.brics.tajs.lattice.PropertyKey;
 import dk.brics.tajs.lattice.PropertyKey.StringPropertyKey;
 import dk.brics.tajs.lattice.StringOrSymbol;
@@ -625,14 +628,17 @@ public class AnalysisMonitor implements IAnalysisMonitoring {
             b.append(callgraph.getCallGraphStatistics());
 
             b.append("\nBlockState: created=").append(State.getNumberOfStatesCreated()).append(", makeWritableStore=").append(State.getNumberOfMakeWritableStoreCalls());
+            b.append("\nMustReachingDefs: makeWritable=").append(MustReachingDefs.getNumberOfMakeWritableCalls()).append(", MustEquals: makeWritable=").append(MustEquals.getNumberOfMakeWritableCalls());
             b.append("\nObj: created=").append(Obj.getNumberOfObjsCreated()).append(", makeWritableProperties=").append(Obj.getNumberOfMakeWritablePropertiesCalls());
+            b.append("\nPartitionedValue: created=").append(PartitionedValue.getNumberOfPartitionedValuesCreated()).append(", maxPartitions=").append(PartitionedValue.getMaxNumberOfPartitions()).append(", mergedPartitionings=").append(PartitionedValue.getNumberOfMergedPartitionings()).append(", mergedPartitions=").append(PartitionedValue.getNumberOfPartitionsMerged());
             b.append("\nScopeChain cache: hits=").append(ScopeChain.getNumberOfCacheHits()).append(", misses=").append(ScopeChain.getNumberOfCacheMisses()).append(", finalSize=").append(ScopeChain.getCacheSize());
             b.append("\nBasic blocks: ").append(flowgraph.getNumberOfBlocks());
+            b.append("\nNodes: ").append(flowgraph.getNumberOfNodes());
             b.append("\nRecovery graph sizes: ").append(recovery_graph_sizes);
 
             b.append("\n\nTotal time for state joins:                                                   ").append(joinTime).append("ms");
 
-            b.append("\n\nCanonicalizer: hits=").append(Canonicalizer.get().getCacheHits()).append(", misses=").append(Canonicalizer.get().getCacheMisses());
+            b.append("\n\nCanonicalizer: hits=").append(Canonicalizer.get().getCacheHits()).append(", misses=").append(Canonicalizer.get().getCacheMisses()).append(", size=").append(Canonicalizer.get().getSize());
 
             log.info(b);
         }
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.monitoring;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import dk.brics.tajs.analysis.Solver;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.lattice.CallEdge;
+import dk.brics.tajs.lattice.Context;
+import dk.brics.tajs.lattice.Obj;
+import dk.brics.tajs.lattice.PartitionedValue;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.lattice.Value;
+import dk.brics.tajs.solver.BlockAndContext;
+import dk.brics.tajs.solver.IAnalysisLatticeElement;
+import dk.brics.tajs.util.Canonicalizer;
+import dk.brics.tajs.util.Pair;
+import org.apache.log4j.Logger;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+
+/**
+ * Estimates the memory usage of the analysis without forcing garbage collection.
+ * <p>
+ * At the end of the analysis, the size of each stored block entry state is estimated from the number of
+ * objects, properties, registers and value partitions it contains. The estimates are summed up per function and per context,
+ * together with estimates for the call edge states and the canonical value table.
+ * The live heap size is sampled via garbage collection notifications instead of calls to {@link System#gc()}.
+ * <p>
+ * The estimates are approximate: objects that are shared copy-on-write between states are counted once for each state
+ * in the per-function and per-context numbers, so these are best used for finding the functions and contexts that dominate.
+ * The total is also reported with each shared object counted only once.
+ */
+public class HeapSamplingMonitor extends DefaultAnalysisMonitoring {
+
+    private static final Logger log = Logger.getLogger(HeapSamplingMonitor.class);
+
+    /**
+     * Number of functions and contexts to report.
+     */
+    private static final int TOP = 10;
+
+    // rough sizes in bytes (64-bit JVM with compressed references)
+
+    private static final int STATE_BYTES = 160;
+
+    private static final int OBJ_BYTES = 80;
+
+    private static final int PROPERTY_BYTES = 48;
+
+    private static final int REFERENCE_BYTES = 8;
+
+    private static final int VALUE_BYTES = 96;
+
+    private final GCListener gc = new GCListener();
+
+    /**
+     * Estimate for each stored block entry state.
+     */
+    private final Map<Pair<BasicBlock, Context>, Estimate> estimates = newMap();
+
+    /**
+     * Estimate for all stored block entry states, where shared objects are counted once.
+     */
+    private final Estimate distinct = new Estimate();
+
+    /**
+     * Estimate for all call edge states.
+     */
+    private final Estimate edges = new Estimate();
+
+    private Solver.SolverInterface c;
+
+    /**
+     * Estimated sizes of the parts of a state.
+     */
+    public static class Estimate {
+
+        private long states;
+
+        private long objs;
+
+        private long properties;
+
+        private long partitions;
+
+        private void add(Estimate e) {
+            states += e.states;
+            objs += e.objs;
+            properties += e.properties;
+            partitions += e.partitions;
+        }
+
+        /**
+         * Returns the estimated total size in bytes.
+         */
+        public long getBytes() {
+            return states + objs + properties + partitions;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (states %s, objects %s, properties %s, partitions %s)",
+                    formatBytes(getBytes()), formatBytes(states), formatBytes(objs), formatBytes(properties), formatBytes(partitions));
+        }
+    }
+
+    /**
+     * Keeps track of garbage collections.
+     * Kept separate from the monitor so that a listener that is not removed does not retain the analysis state.
+     */
+    private static class GCListener implements NotificationListener {
+
+        private final Set<String> heap_pools = newSet();
+
+        private final List<NotificationEmitter> emitters = newList();
+
+        private long collections;
+
+        private long millis;
+
+        private long last_live_bytes;
+
+        private long max_live_bytes;
+
+        void install() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+                if (pool.getType() == MemoryType.HEAP)
+                    heap_pools.add(pool.getName());
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+                if (bean instanceof NotificationEmitter) {
+                    ((NotificationEmitter) bean).addNotificationListener(this, null, null);
+                    emitters.add((NotificationEmitter) bean);
+                }
+        }
+
+        void uninstall() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(this);
+                } catch (ListenerNotFoundException e) {
+                    // already removed
+                }
+            }
+            emitters.clear();
+        }
+
+        @Override
+        public synchronized void handleNotification(Notification n, Object handback) {
+            if (!n.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                return;
+            GcInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData()).getGcInfo();
+            long live = info.getMemoryUsageAfterGc().entrySet().stream()
+                    .filter(e -> heap_pools.contains(e.getKey()))
+                    .mapToLong(e -> e.getValue().getUsed())
+                    .sum();
+            collections++;
+            millis += info.getDuration();
+            last_live_bytes = live;
+            max_live_bytes = Math.max(max_live_bytes, live);
+        }
+
+        synchronized String format() {
+            return String.format("%d collections, %dms, live heap after last collection %s, max %s",
+                    collections, millis, formatBytes(last_live_bytes), formatBytes(max_live_bytes));
+        }
+    }
+
+    @Override
+    public void setSolverInterface(Solver.SolverInterface c) {
+        this.c = c;
+    }
+
+    @Override
+    public void visitPhasePre(AnalysisPhase phase) {
+        if (phase == AnalysisPhase.ANALYSIS)
+            gc.install();
+    }
+
+    @Override
+    public void visitPhasePost(AnalysisPhase phase) {
+        if (phase == AnalysisPhase.ANALYSIS && c != null)
+            measure();
+        if (phase == AnalysisPhase.SCAN) {
+            gc.uninstall();
+            log.info(String.join(String.format("%n"), format()));
+        }
+    }
+
+    /**
+     * Estimates the sizes of the stored block entry states and call edge states.
+     */
+    private void measure() {
+        IAnalysisLatticeElement<State, Context, CallEdge> e = c.getAnalysisLatticeElement();
+        Set<Obj> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Function f : c.getFlowGraph().getFunctions())
+            for (BasicBlock b : f.getBlocks())
+                for (Map.Entry<Context, State> me : e.getStates(b).entrySet()) {
+                    estimates.put(Pair.make(b, me.getKey()), estimate(me.getValue(), null));
+                    distinct.add(estimate(me.getValue(), seen));
+                }
+        for (Map<BlockAndContext<Context>, CallEdge> m : e.getCallGraph().getCallEdgeInfo().values())
+            for (CallEdge edge : m.values())
+                if (edge.getState() != null)
+                    edges.add(estimate(edge.getState(), null));
+    }
+
+    /**
+     * Returns the number of block entry states that have been measured.
+     */
+    public int getNumberOfStates() {
+        return estimates.size();
+    }
+
+    /**
+     * Returns the sum of the estimates of the block entry states.
+     */
+    public Estimate getTotal() {
+        Estimate total = new Estimate();
+        estimates.values().forEach(total::add);
+        return total;
+    }
+
+    /**
+     * Returns the estimate of all block entry states, where objects that are shared between states are counted once.
+     */
+    public Estimate getDistinctTotal() {
+        return distinct;
+    }
+
+    /**
+     * Returns the sum of the estimates of the block entry states for each function.
+     */
+    public Map<Function, Estimate> getEstimatesByFunction() {
+        return sum((key, add) -> add.accept(key.getFirst().getFunction(), estimates.get(key)));
+    }
+
+    /**
+     * Returns the sum of the estimates of the block entry states for each context.
+     */
+    public Map<Context, Estimate> getEstimatesByContext() {
+        return sum((key, add) -> add.accept(key.getSecond(), estimates.get(key)));
+    }
+
+    private <K> Map<K, Estimate> sum(BiConsumer<Pair<BasicBlock, Context>, BiConsumer<K, Estimate>> grouping) {
+        Map<K, Estimate> res = newMap();
+        for (Pair<BasicBlock, Context> key : estimates.keySet())
+            grouping.accept(key, (k, e) -> res.computeIfAbsent(k, x -> new Estimate()).add(e));
+        return res;
+    }
+
+    private List<String> format() {
+        List<String> lines = newList();
+        int canonical = Canonicalizer.get().getSize();
+        lines.add(String.format("Estimated memory usage (%d block entry states):", estimates.size()));
+        lines.add("  Block states: " + getTotal());
+        lines.add("  Block states, shared objects counted once: " + distinct);
+        lines.add("  Call edge states: " + edges);
+        lines.add(String.format("  Canonical values: %s (%d instances)", formatBytes((long) canonical * VALUE_BYTES), canonical));
+        lines.add("  Garbage collection: " + gc.format());
+        lines.add("  Functions:");
+        getEstimatesByFunction().entrySet().stream()
+                .sorted((e1, e2) -> Long.compare(e2.getValue().getBytes(), e1.getValue().getBytes()))
+                .limit(TOP)
+                .forEach(e -> lines.add("    " + e.getValue() + " " + e.getKey() + " at " + e.getKey().getSourceLocation()));
+        lines.add("  Contexts:");
+        getEstimatesByContext().entrySet().stream()
+                .sorted((e1, e2) -> Long.compare(e2.getValue().getBytes(), e1.getValue().getBytes()))
+                .limit(TOP)
+                .forEach(e -> lines.add("    " + e.getValue() + " " + e.getKey()));
+        return lines;
+    }
+
+    /**
+     * Estimates the size of the given state.
+     *
+     * @param seen if non-null, objects in this set are skipped and the counted objects are added
+     */
+    private static Estimate estimate(State state, Set<Obj> seen) {
+        Estimate e = new Estimate();
+        e.states = STATE_BYTES + (long) state.getRegisters().size() * REFERENCE_BYTES;
+        for (Value v : state.getRegisters())
+            if (v != null)
+                countPartitions(v, e);
+        for (Obj obj : state.getStore().values()) {
+            if (seen != null && !seen.add(obj))
+                continue;
+            e.objs += OBJ_BYTES;
+            e.properties += (long) obj.getProperties().size() * PROPERTY_BYTES;
+            for (Value v : obj.getProperties().values())
+                countPartitions(v, e);
+        }
+        return e;
+    }
+
+    private static void countPartitions(Value v, Estimate e) {
+        if (v instanceof PartitionedValue)
+            e.partitions += (long) ((PartitionedValue) v).getPartitionValues().size() * PROPERTY_BYTES;
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024L * 1024L)
+            return String.format("%dKB", bytes / 1024L);
+        return String.format("%dMB", bytes / (1024L * 1024L));
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.monitoring;
+
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.SourceLocation;
+import dk.brics.tajs.lattice.Context;
+import dk.brics.tajs.lattice.HostObject;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.lattice.UnknownValueResolver;
+import dk.brics.tajs.lattice.Value;
+import dk.brics.tajs.util.AnalysisException;
+import org.apache.log4j.Logger;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+
+/**
+ * Collects the analysis results at specific source locations during the scan phase.
+ * <p>
+ * For each query location, the values of the variables and properties that are read or written there
+ * (joined over all contexts) and the functions that may be called there are recorded.
+ * Only the blocks returned by {@link #findBlocks(FlowGraph, List)} need to be scanned.
+ * <p>
+ * The fixpoint iteration stops as soon as the remaining work cannot affect the query locations
+ * (see {@link dk.brics.tajs.solver.GenericSolver#setDemandedBlocks(Set)}).
+ * That check is conservative, so it only saves work for query locations in the main function that are reached
+ * without calling user functions; otherwise the fixpoint is computed for the whole program as usual.
+ * The scan phase is restricted to the query locations. Messages and checks that are made during the scan
+ * phase, including soundness testing, are therefore not performed at other locations.
+ */
+public class QueryMonitor extends DefaultAnalysisMonitoring {
+
+    private static final Logger log = Logger.getLogger(QueryMonitor.class);
+
+    private final List<Query> queries;
+
+    private final Map<Query, Map<String, Value>> values = newMap();
+
+    private final Map<Query, Set<Function>> user_callees = newMap();
+
+    private final Map<Query, Set<HostObject>> native_callees = newMap();
+
+    private boolean scanning;
+
+    /**
+     * Source location of interest.
+     */
+    public static class Query {
+
+        private final String file;
+
+        private final int line;
+
+        private final int column;
+
+        /**
+         * Constructs a new query.
+         *
+         * @param file   file name, or suffix of the file path
+         * @param line   line number
+         * @param column column number, or -1 for all columns
+         */
+        public Query(String file, int line, int column) {
+            this.file = file;
+            this.line = line;
+            this.column = column;
+        }
+
+        /**
+         * Parses a query of the form FILE:LINE or FILE:LINE:COLUMN.
+         */
+        public static Query parse(String s) {
+            String[] parts = s.trim().split(":");
+            try {
+                if (parts.length >= 3 && parts[parts.length - 1].matches("\\d+") && parts[parts.length - 2].matches("\\d+"))
+                    return new Query(String.join(":", Arrays.copyOf(parts, parts.length - 2)),
+                            Integer.parseInt(parts[parts.length - 2]), Integer.parseInt(parts[parts.length - 1]));
+                if (parts.length >= 2)
+                    return new Query(String.join(":", Arrays.copyOf(parts, parts.length - 1)), Integer.parseInt(parts[parts.length - 1]), -1);
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+            throw new AnalysisException("Invalid query location (expected FILE:LINE or FILE:LINE:COLUMN): " + s);
+        }
+
+        /**
+         * Parses a comma separated list of queries.
+         */
+        public static List<Query> parseAll(String s) {
+            List<Query> res = newList();
+            for (String q : s.split(","))
+                if (!q.trim().isEmpty())
+                    res.add(parse(q));
+            return res;
+        }
+
+        /**
+         * Checks whether the given source location matches this query.
+         */
+        public boolean matches(SourceLocation loc) {
+            URL url = loc.getLocation();
+            if (url == null || loc.getLineNumber() != line || (column != -1 && loc.getColumnNumber() != column))
+                return false;
+            String path = url.getPath();
+            return path.equals(file) || path.endsWith("/" + file);
+        }
+
+        @Override
+        public String toString() {
+            return file + ":" + line + (column != -1 ? ":" + column : "");
+        }
+    }
+
+    /**
+     * Constructs a new monitor for the given queries.
+     */
+    public QueryMonitor(List<Query> queries) {
+        this.queries = queries;
+        for (Query q : queries) {
+            values.put(q, newMap());
+            user_callees.put(q, newSet());
+            native_callees.put(q, newSet());
+        }
+    }
+
+    /**
+     * Returns the blocks that contain nodes at the given query locations.
+     */
+    public static Set<BasicBlock> findBlocks(FlowGraph flowgraph, List<Query> queries) {
+        Set<BasicBlock> res = newSet();
+        for (Function f : flowgraph.getFunctions())
+            for (BasicBlock b : f.getBlocks())
+                for (AbstractNode n : b.getNodes())
+                    if (queries.stream().anyMatch(q -> q.matches(n.getSourceLocation())))
+                        res.add(b);
+        return res;
+    }
+
+    /**
+     * Returns the values of the variables and properties at the given query location, joined over all contexts.
+     */
+    public Map<String, Value> getValues(Query q) {
+        return values.get(q);
+    }
+
+    /**
+     * Returns the user functions that may be called at the given query location.
+     */
+    public Set<Function> getUserFunctionCallees(Query q) {
+        return user_callees.get(q);
+    }
+
+    /**
+     * Returns the native functions that may be called at the given query location.
+     */
+    public Set<HostObject> getNativeFunctionCallees(Query q) {
+        return native_callees.get(q);
+    }
+
+    @Override
+    public void visitPhasePre(AnalysisPhase phase) {
+        scanning = phase == AnalysisPhase.SCAN;
+    }
+
+    @Override
+    public void visitPhasePost(AnalysisPhase phase) {
+        if (phase != AnalysisPhase.SCAN)
+            return;
+        scanning = false;
+        for (Query q : queries) {
+            StringBuilder b = new StringBuilder();
+            b.append("Query ").append(q).append(":");
+            values.get(q).forEach((var, v) -> b.append("\n  ").append(var).append(": ").append(v));
+            user_callees.get(q).forEach(f -> b.append("\n  calls ").append(f).append(" at ").append(f.getSourceLocation()));
+            native_callees.get(q).forEach(h -> b.append("\n  calls ").append(h));
+            if (values.get(q).isEmpty() && user_callees.get(q).isEmpty() && native_callees.get(q).isEmpty())
+                b.append(" no results");
+            log.info(b);
+        }
+    }
+
+    @Override
+    public void visitVariableOrProperty(AbstractNode node, String var, SourceLocation loc, Value value, Context context, State state) {
+        if (!scanning)
+            return;
+        for (Query q : queries)
+            if (q.matches(loc))
+                values.get(q).merge(var, UnknownValueResolver.getRealValue(value, state), (v1, v2) -> v1.join(v2));
+    }
+
+    @Override
+    public void visitUserFunctionCall(Function f, AbstractNode call, boolean constructor) {
+        if (!scanning)
+            return;
+        for (Query q : queries)
+            if (q.matches(call.getSourceLocation()))
+                user_callees.get(q).add(f);
+    }
+
+    @Override
+    public void visitNativeFunctionCall(AbstractNode n, HostObject hostobject, boolean num_actuals_unknown, int num_actuals, int min, int max) {
+        if (!scanning)
+            return;
+        for (Query q : queries)
+            if (q.matches(n.getSourceLocation()))
+                native_callees.get(q).add(hostobject);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.monitoring;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import dk.brics.tajs.analysis.Solver;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.SourceLocation;
+import dk.brics.tajs.lattice.Context;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.lattice.UnknownValueResolver;
+import dk.brics.tajs.lattice.Value;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.Message;
+import dk.brics.tajs.util.AnalysisException;
+import dk.brics.tajs.util.Pair;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static dk.brics.tajs.util.Collections.newSet;
+
+/**
+ * Streams analysis results to a file in JSON Lines format during the scan phase.
+ * <p>
+ * Each line is a JSON object with a "kind" field:
+ * <ul>
+ * <li>"type": the value of a variable or property at a location and context,
+ * one record per observation (like {@link TypeCollector}, consumers should join the values of equal locations),
+ * <li>"call": a call edge from a call site to a user function, emitted once per edge,
+ * <li>"message": a message, emitted at the end of the scan phase when its status is final.
+ * </ul>
+ * Records are written as they are produced, so the results need not be kept in memory
+ * and can be consumed while the analysis is running.
+ */
+public class ResultsStreamMonitor extends DefaultAnalysisMonitoring {
+
+    private final Path file;
+
+    private final AnalysisMonitor messages;
+
+    private final Gson gson = new Gson();
+
+    private final Set<Pair<AbstractNode, Function>> call_edges = newSet();
+
+    private FlowGraph flowgraph;
+
+    private Writer out;
+
+    /**
+     * Constructs a new monitor.
+     *
+     * @param file     the output file
+     * @param messages the monitor that collects the messages, or null if messages should not be written
+     */
+    public ResultsStreamMonitor(Path file, AnalysisMonitor messages) {
+        this.file = file;
+        this.messages = messages;
+    }
+
+    @Override
+    public void setSolverInterface(Solver.SolverInterface c) {
+        flowgraph = c.getFlowGraph();
+    }
+
+    @Override
+    public void visitPhasePre(AnalysisPhase phase) {
+        if (phase == AnalysisPhase.SCAN) {
+            try {
+                if (file.getParent() != null)
+                    Files.createDirectories(file.getParent());
+                out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new AnalysisException("Unable to write " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void visitPhasePost(AnalysisPhase phase) {
+        if (phase == AnalysisPhase.SCAN && out != null) {
+            if (messages != null && !Options.get().isNoMessages()) {
+                for (Message m : messages.getSortedMessages()) {
+                    if (!Options.get().isShowInternalMessagesEnabled() && flowgraph.isHostEnvironmentSource(m.getNode().getSourceLocation()))
+                        continue;
+                    JsonObject r = makeRecord("message", m.getNode().getSourceLocation());
+                    r.addProperty("status", m.getStatus().name());
+                    r.addProperty("severity", m.getSeverity().name());
+                    r.addProperty("message", m.getMessage());
+                    write(r);
+                }
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new AnalysisException("Unable to write " + file + ": " + e.getMessage());
+            }
+            out = null;
+            call_edges.clear();
+        }
+    }
+
+    @Override
+    public void visitVariableOrProperty(AbstractNode node, String var, SourceLocation loc, Value value, Context context, State state) {
+        if (out == null)
+            return;
+        JsonObject r = makeRecord("type", loc);
+        r.addProperty("name", var);
+        r.addProperty("context", context.toString());
+        r.addProperty("value", UnknownValueResolver.getRealValue(value, state).toString());
+        write(r);
+    }
+
+    @Override
+    public void visitUserFunctionCall(Function f, AbstractNode call, boolean constructor) {
+        if (out == null || !call_edges.add(Pair.make(call, f)))
+            return;
+        JsonObject r = makeRecord("call", call.getSourceLocation());
+        r.add("target", makeLocation(f.getSourceLocation()));
+        r.addProperty("function", f.getName());
+        r.addProperty("constructor", constructor);
+        write(r);
+    }
+
+    private JsonObject makeRecord(String kind, SourceLocation loc) {
+        JsonObject r = new JsonObject();
+        r.addProperty("kind", kind);
+        r.add("location", makeLocation(loc));
+        return r;
+    }
+
+    private static JsonObject makeLocation(SourceLocation loc) {
+        JsonObject l = new JsonObject();
+        l.addProperty("file", loc.getLocation() != null ? loc.getLocation().toString() : null);
+        l.addProperty("line", loc.getLineNumber());
+        l.addProperty("column", loc.getColumnNumber());
+        return l;
+    }
+
+    private void write(JsonObject record) {
+        try {
+            out.write(gson.toJson(record));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new AnalysisException("Unable to write " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -32,6 +32,7 @@ import dk.brics.inspector.api.model.locations.DescribedLocation;
 import dk.brics.inspector.api.model.locations.FileDescription;
 import dk.brics.inspector.api.model.values.DescribedProperties;
 import dk.brics.tajs.monitoring.TogglableMonitor.Toggler;
+import dk.brics.tajs.util.Pair;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -50,6 +51,8 @@ public class SynchronizedMonitoringStoppingAPI implements InspectorAPI {
 
     private final Map<FileID, Set<Gutter<?>>> gutterCache = new HashMap<>();
 
+    private final Map<Pair<FileID, Integer>, Set<LineValue>> lineValueCache = new HashMap<>();
+
     public SynchronizedMonitoringStoppingAPI(InspectorAPI api, Toggler toggler) {
         this.api = api;
         this.toggler = toggler;
@@ -90,7 +93,13 @@ public class SynchronizedMonitoringStoppingAPI implements InspectorAPI {
 
     @Override
     public Set<LineValue> getLineValues(FileID fileID, int line) {
-        return wrap(() -> api.getLineValues(fileID, line));
+        Pair<FileID, Integer> key = Pair.make(fileID, line);
+        if (lineValueCache.containsKey(key)) {
+            return lineValueCache.get(key);
+        }
+        Set<LineValue> res = wrap(() -> api.getLineValues(fileID, line));
+        lineValueCache.put(key, res);
+        return res;
     }
 
     @Override
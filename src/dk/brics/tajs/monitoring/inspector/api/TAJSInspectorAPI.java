@@ -25,7 +25,6 @@ import dk.brics.inspector.api.model.ids.LocationID;
 import dk.brics.inspector.api.model.ids.ObjectID;
 import dk.brics.inspector.api.model.lines.Gutter;
 import dk.brics.inspector.api.model.lines.LineValue;
-import dk.brics.inspector.api.model.lines.LineValueKind;
 import dk.brics.inspector.api.model.locations.ContextSensitiveDescribedLocation;
 import dk.brics.inspector.api.model.locations.DescribedContext;
 import dk.brics.inspector.api.model.locations.DescribedLocation;
@@ -42,7 +41,6 @@ import dk.brics.tajs.lattice.PropertyKey;
 import dk.brics.tajs.lattice.State;
 import dk.brics.tajs.lattice.UnknownValueResolver;
 import dk.brics.tajs.lattice.Value;
-import dk.brics.tajs.monitoring.TypeCollector;
 import dk.brics.tajs.monitoring.inspector.datacollection.InspectorData;
 import dk.brics.tajs.monitoring.inspector.dataprocessing.ContextExpressionFilterer;
 import dk.brics.tajs.monitoring.inspector.dataprocessing.DomainMapper;
@@ -104,39 +102,6 @@ public class TAJSInspectorAPI implements InspectorAPI {
         this.c = c;
     }
 
-    private Map<Pair<FileID, Integer>, Set<LineValue>> buildLineValuesMap(Map<TypeCollector.VariableSummary, Value> valueMap, IDManager idManager) {
-        Map<Pair<FileID, Integer>, Set<LineValue>> map = newMap();
-        Map<Pair<AbstractNode, String>, Set<Value>> contextInsensitiveMap = newMap();
-        valueMap.forEach((key, value) -> {
-            URL location = key.getVariableLocation().getLocation();
-            if (location != null && !"null".equals(key.getVariableName())) {
-                Set<AbstractNode> nodes = syntaxMatcher.getNodeFromFixedAccessAtTAJSSourceLocation(key.getVariableLocation(), key.getVariableName());
-                if (nodes.size() != 1) {
-                    log.warn(String.format("Need to make syntax matching more precise: %s/%s -> %d nodes", key.getVariableLocation(), key.getVariableName(), nodes.size())); // XXX fix this hackery
-                    return;
-                }
-                AbstractNode node = nodes.iterator().next();
-                FileID fileID = idManager.make(location);
-                String variableName = key.getVariableName();
-                Pair<FileID, Integer> mapKey = Pair.make(fileID, key.getVariableLocation().getLineNumber());
-
-                addToMapSet(contextInsensitiveMap, Pair.make(node, key.getVariableName()), value);
-
-                CompositeValue CompositeValue = mapper.makeCompositeValue(value);
-                ContextSensitiveDescribedLocation describedLocation = mapper.makeDescribedLocation(node, key.getContext());
-                addToMapSet(map, mapKey, new LineValue(LineValueKind.UNKNOWN, variableName, CompositeValue, describedLocation));
-            }
-        });
-
-        contextInsensitiveMap.forEach((keys, values) -> {
-            AbstractNode node = keys.getFirst();
-            LineValue lineValue = new LineValue(LineValueKind.UNKNOWN, keys.getSecond(), mapper.makeCompositeValue(Value.join(values)), mapper.makeDescribedLocation(node));
-            Pair<FileID, Integer> mapKey = Pair.make(idManager.make(node.getSourceLocation().getLocation()), node.getSourceLocation().getLineNumber());
-            addToMapSet(map, mapKey, lineValue);
-        });
-        return map;
-    }
-
     @Override
     public Set<FileID> getFileIDs() {
         return c.getFlowGraph().getFunctions().stream()
@@ -268,7 +233,7 @@ public class TAJSInspectorAPI implements InspectorAPI {
     @Override
     public Set<ContextSensitiveDescribedLocation> getEventHandlerRegistrationLocations(ObjectID objectID) {
         ObjectLabel label = idManager.resolve(objectID);
-        return data.eventHandlerRegistrationLocations.entrySet().stream()
+        return data.getEventHandlerRegistrationLocations().entrySet().stream()
                 .filter(e -> e.getValue().stream().anyMatch(v -> v.getObjectLabels().contains(label)))
                 .map(Map.Entry::getKey)
                 .map(e -> mapper.makeDescribedLocation(e.getFirst(), e.getSecond()))
@@ -280,7 +245,7 @@ public class TAJSInspectorAPI implements InspectorAPI {
         List<AbstractNode> nodes = location.getFirst().getBlock().getNodes();
         int index = nodes.indexOf(node);
         if (index == 0) {
-            Set<BlockAndContext<Context>> predecessors = data.propagationData.getBackwardsGraph().getOrDefault(new BlockAndContext<>(location.getFirst().getBlock(), location.getSecond()), newSet());
+            Set<BlockAndContext<Context>> predecessors = data.getPropagationData().getBackwardsGraph().getOrDefault(new BlockAndContext<>(location.getFirst().getBlock(), location.getSecond()), newSet());
             return predecessors.stream()
                     .map(predecessor -> Pair.make(predecessor.getBlock().getLastNode(), predecessor.getContext())) // assuming there is only propagation from the end of a block
                     .collect(Collectors.toSet());
@@ -294,7 +259,7 @@ public class TAJSInspectorAPI implements InspectorAPI {
         List<AbstractNode> nodes = location.getFirst().getBlock().getNodes();
         int index = nodes.indexOf(node);
         if (index == nodes.size() - 1) {
-            Set<BlockAndContext<Context>> successors = data.propagationData.getForwardsGraph().getOrDefault(new BlockAndContext<>(location.getFirst().getBlock(), location.getSecond()), newSet());
+            Set<BlockAndContext<Context>> successors = data.getPropagationData().getForwardsGraph().getOrDefault(new BlockAndContext<>(location.getFirst().getBlock(), location.getSecond()), newSet());
             return successors.stream()
                     .map(successor -> Pair.make(successor.getBlock().getFirstNode(), successor.getContext()))
                     .collect(Collectors.toSet());
@@ -308,7 +273,7 @@ public class TAJSInspectorAPI implements InspectorAPI {
         Pair<AbstractNode, Context> location = idManager.resolve(locationID);
         Set<? extends DescribedLocation> described;
         if (location.getSecond() == null) {
-            Set<DescribedLocation> contextInsensitive = data.blockContexts.get(location.getFirst().getBlock()).stream()
+            Set<DescribedLocation> contextInsensitive = data.getBlockContexts().get(location.getFirst().getBlock()).stream()
                     .flatMap(context -> getRelatedLocations(Pair.make(location.getFirst(), context), forwards, kind, intraprocedural).stream())
                     .map(related -> mapper.makeDescribedLocation(related.getFirst()))
                     .collect(Collectors.toSet());
@@ -329,7 +294,7 @@ public class TAJSInspectorAPI implements InspectorAPI {
         if (function.isMain()) {
             return newSet();
         }
-        return data.allocationSiteMap.getOrDefault(function.getNode(), newSet()).stream()
+        return data.getAllocationSiteMap().getOrDefault(function.getNode(), newSet()).stream()
                 .filter(l -> l.getKind() == ObjectLabel.Kind.FUNCTION)
                 .map(idManager::make)
                 .collect(Collectors.toSet());
@@ -359,7 +324,7 @@ public class TAJSInspectorAPI implements InspectorAPI {
         Pair<AbstractNode, Context> location = idManager.resolve(locationID);
         Set<Context> contexts;
         if (location.getSecond() == null) {
-            contexts = data.blockContexts.get(location.getFirst().getBlock());
+            contexts = data.getBlockContexts().get(location.getFirst().getBlock());
         } else {
             contexts = singleton(location.getSecond()); // pointless?
         }
@@ -26,27 +26,61 @@ import dk.brics.tajs.util.Pair;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 /**
- * Simple Java bean with lots of different data to be used by the {@link dk.brics.tajs.monitoring.inspector.api.TAJSInspectorAPI}
+ * Data to be used by the {@link dk.brics.tajs.monitoring.inspector.api.TAJSInspectorAPI}.
+ * Each kind of data is computed when first requested, and then reused for subsequent queries.
  */
 public class InspectorData {
 
-    public final Map<Pair<AbstractNode, Context>, Set<Value>> eventHandlerRegistrationLocations;
+    private final Supplier<Map<Pair<AbstractNode, Context>, Set<Value>>> eventHandlerRegistrationLocationsSupplier;
 
-    public final PropagationMonitor.PropagationData propagationData;
+    private final Supplier<PropagationMonitor.PropagationData> propagationDataSupplier;
 
-    public final Map<BasicBlock, Set<Context>> blockContexts;
+    private final Supplier<Map<BasicBlock, Set<Context>>> blockContextsSupplier;
 
-    public final Map<AbstractNode, Set<ObjectLabel>> allocationSiteMap;
+    private final Supplier<Map<AbstractNode, Set<ObjectLabel>>> allocationSiteMapSupplier;
 
-    public InspectorData(Map<Pair<AbstractNode, Context>, Set<Value>> eventHandlerRegistrationLocations,
-                         PropagationMonitor.PropagationData propagationData,
-                         Map<BasicBlock, Set<Context>> blockContexts,
-                         Map<AbstractNode, Set<ObjectLabel>> allocationSiteMap) {
-        this.eventHandlerRegistrationLocations = eventHandlerRegistrationLocations;
-        this.propagationData = propagationData;
-        this.blockContexts = blockContexts;
-        this.allocationSiteMap = allocationSiteMap;
+    private Map<Pair<AbstractNode, Context>, Set<Value>> eventHandlerRegistrationLocations;
+
+    private PropagationMonitor.PropagationData propagationData;
+
+    private Map<BasicBlock, Set<Context>> blockContexts;
+
+    private Map<AbstractNode, Set<ObjectLabel>> allocationSiteMap;
+
+    public InspectorData(Supplier<Map<Pair<AbstractNode, Context>, Set<Value>>> eventHandlerRegistrationLocations,
+                         Supplier<PropagationMonitor.PropagationData> propagationData,
+                         Supplier<Map<BasicBlock, Set<Context>>> blockContexts,
+                         Supplier<Map<AbstractNode, Set<ObjectLabel>>> allocationSiteMap) {
+        this.eventHandlerRegistrationLocationsSupplier = eventHandlerRegistrationLocations;
+        this.propagationDataSupplier = propagationData;
+        this.blockContextsSupplier = blockContexts;
+        this.allocationSiteMapSupplier = allocationSiteMap;
+    }
+
+    public Map<Pair<AbstractNode, Context>, Set<Value>> getEventHandlerRegistrationLocations() {
+        if (eventHandlerRegistrationLocations == null)
+            eventHandlerRegistrationLocations = eventHandlerRegistrationLocationsSupplier.get();
+        return eventHandlerRegistrationLocations;
+    }
+
+    public PropagationMonitor.PropagationData getPropagationData() {
+        if (propagationData == null)
+            propagationData = propagationDataSupplier.get();
+        return propagationData;
+    }
+
+    public Map<BasicBlock, Set<Context>> getBlockContexts() {
+        if (blockContexts == null)
+            blockContexts = blockContextsSupplier.get();
+        return blockContexts;
+    }
+
+    public Map<AbstractNode, Set<ObjectLabel>> getAllocationSiteMap() {
+        if (allocationSiteMap == null)
+            allocationSiteMap = allocationSiteMapSupplier.get();
+        return allocationSiteMap;
     }
 }
@@ -44,12 +44,15 @@ public class InspectorDataProvider {
         this.allocationCollectingMonitor = allocationCollectingMonitor;
     }
 
+    /**
+     * Returns the inspector data. The monitor data is only aggregated when requested by a query.
+     */
     public InspectorData get() {
         return new InspectorData(
-                eventHandlerRegistrationMonitor.getMap(),
-                propagationMonitor.getData(),
-                contextRegistrationMonitor.getMap(),
-                allocationCollectingMonitor.getByAllocationSite()
+                eventHandlerRegistrationMonitor::getMap,
+                propagationMonitor::getData,
+                contextRegistrationMonitor::getMap,
+                allocationCollectingMonitor::getByAllocationSite
         );
     }
 }
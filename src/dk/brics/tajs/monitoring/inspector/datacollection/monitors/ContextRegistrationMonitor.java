@@ -16,13 +16,14 @@
 
 package dk.brics.tajs.monitoring.inspector.datacollection.monitors;
 
+import dk.brics.tajs.analysis.Solver;
 import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
 import dk.brics.tajs.flowgraph.SourceLocation;
 import dk.brics.tajs.lattice.Context;
 import dk.brics.tajs.monitoring.DefaultAnalysisMonitoring;
 import dk.brics.tajs.monitoring.inspector.datacollection.SourceLine;
 import dk.brics.tajs.monitoring.inspector.util.OccurenceCountingMap;
-import dk.brics.tajs.solver.BlockAndContext;
 import dk.brics.tajs.util.Collectors;
 import dk.brics.tajs.util.Pair;
 
@@ -31,13 +32,18 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
-import static dk.brics.tajs.util.Collections.addToMapSet;
 import static dk.brics.tajs.util.Collections.newMap;
 import static dk.brics.tajs.util.Collections.newSet;
 
+/**
+ * Provides the contexts of each basic block.
+ * The contexts are read from the analysis lattice element when first requested after the analysis, instead of being recorded at every propagation.
+ */
 public class ContextRegistrationMonitor extends DefaultAnalysisMonitoring {
 
-    private final Map<BasicBlock, Set<Context>> map = newMap();
+    private Solver.SolverInterface c;
+
+    private Map<BasicBlock, Set<Context>> map;
 
     private static SourceLine makeWithUnspecifiedColumn(SourceLocation sourceLocation) {
         URL location = sourceLocation.getLocation();
@@ -48,18 +54,26 @@ public class ContextRegistrationMonitor extends DefaultAnalysisMonitoring {
     }
 
     @Override
-    public void visitPropagationPost(BlockAndContext<Context> from, BlockAndContext<Context> to, boolean changed) {
-        addToMapSet(map, from.getBlock(), from.getContext());
-        addToMapSet(map, to.getBlock(), to.getContext());
+    public void setSolverInterface(Solver.SolverInterface c) {
+        this.c = c;
     }
 
     public Map<BasicBlock, Set<Context>> getMap() {
+        if (map == null) {
+            map = newMap();
+            for (Function f : c.getFlowGraph().getFunctions())
+                for (BasicBlock b : f.getBlocks()) {
+                    Set<Context> contexts = c.getAnalysisLatticeElement().getStates(b).keySet();
+                    if (!contexts.isEmpty())
+                        map.put(b, newSet(contexts));
+                }
+        }
         return map;
     }
 
     public Map<SourceLine, Integer> getContextsPerLine() {
         OccurenceCountingMap<SourceLine> map = new OccurenceCountingMap<>();
-        this.map.entrySet().stream()
+        getMap().entrySet().stream()
                 .flatMap(e1 -> e1.getKey().getNodes().stream().map(n -> Pair.make(n, e1.getValue())))
                 .filter(e -> e.getFirst().getSourceLocation().getLocation() != null)
                 .collect(Collectors.groupingBy(e1 -> makeWithUnspecifiedColumn(e1.getFirst().getSourceLocation()), java.util.stream.Collectors.mapping(Pair::getSecond, Collectors.toSet()))).entrySet().stream()
@@ -36,6 +36,8 @@ public class ObjectCollectionMonitor extends DefaultAnalysisMonitoring {
 
     private final Map<Pair<AbstractNode, Context>, Set<ObjectLabel>> objects;
 
+    private Map<AbstractNode, Set<ObjectLabel>> byAllocationSite; // computed on demand, after the analysis
+
     public ObjectCollectionMonitor() {
         objects = newMap();
     }
@@ -55,6 +57,12 @@ public class ObjectCollectionMonitor extends DefaultAnalysisMonitoring {
     }
 
     public Map<AbstractNode, Set<ObjectLabel>> getByAllocationSite() {
+        if (byAllocationSite == null)
+            byAllocationSite = groupByAllocationSite();
+        return byAllocationSite;
+    }
+
+    private Map<AbstractNode, Set<ObjectLabel>> groupByAllocationSite() {
         return objects.entrySet().stream()
                 .collect(
                         Collectors.groupingBy(e -> e.getKey().getFirst(),
@@ -16,8 +16,10 @@
 
 package dk.brics.tajs.monitoring.inspector.datacollection.monitors;
 
+import dk.brics.tajs.analysis.Solver;
 import dk.brics.tajs.flowgraph.AbstractNode;
 import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
 import dk.brics.tajs.lattice.Context;
 import dk.brics.tajs.lattice.State;
 import dk.brics.tajs.monitoring.DefaultAnalysisMonitoring;
@@ -31,27 +33,28 @@ import java.util.Map;
 import static dk.brics.tajs.util.Collections.newMap;
 
 /**
- * A monitor that collects all the post-transfer states in the analysis. Only the most recent state is kept for each block and context pair.
+ * Provides the states of the analysis lattice element, for each block and context pair.
+ * The states are read from the analysis lattice element when requested after the analysis, so no states are retained during the analysis.
  */
 public class StateCollectorMonitor extends DefaultAnalysisMonitoring {
 
-    private final Map<BlockAndContext<Context>, State> states;
-
-    public StateCollectorMonitor() {
-        states = newMap();
-    }
+    private Solver.SolverInterface c;
 
     @Override
-    public void visitBlockTransferPost(BasicBlock b, State state) {
-        states.put(new BlockAndContext<>(b, state.getContext()), state);
+    public void setSolverInterface(Solver.SolverInterface c) {
+        this.c = c;
     }
 
     public Map<BlockAndContext<Context>, State> getStates() {
+        Map<BlockAndContext<Context>, State> states = newMap();
+        for (Function f : c.getFlowGraph().getFunctions())
+            for (BasicBlock b : f.getBlocks())
+                c.getAnalysisLatticeElement().getStates(b).forEach((context, state) -> states.put(new BlockAndContext<>(b, context), state));
         return states;
     }
 
     public Map<AbstractNode, Integer> getMaxStateSizes() {
-        return states.entrySet().stream()
+        return getStates().entrySet().stream()
                 // compute max state size per block
                 .collect(Collectors.groupingBy(e -> e.getKey().getBlock(),
                         java.util.stream.Collectors.mapping(e -> e.getValue().getStore().values().stream()
@@ -55,6 +55,8 @@ public class DefaultGutterDataProvider {
 
     private final StateCollectorMonitor stateCollectorMonitor;
 
+    private DefaultGutterData data;
+
     public DefaultGutterDataProvider(EventHandlerRegistrationMonitor eventHandlerRegistrationMonitor,
                                      PropagationMonitor propagationMonitor,
                                      ContextRegistrationMonitor contextRegistrationMonitor,
@@ -78,7 +80,16 @@ public class DefaultGutterDataProvider {
         this.stateCollectorMonitor = stateCollectorMonitor;
     }
 
+    /**
+     * Returns the gutter data. The data is aggregated from the monitors on the first request, and then shared by the gutters of all files.
+     */
     public DefaultGutterData create() {
+        if (data == null)
+            data = aggregate();
+        return data;
+    }
+
+    private DefaultGutterData aggregate() {
         return new DefaultGutterData(
                 propagationMonitor.getData(),
                 contextInsensitivityMapperMonitor.getMap(),
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.monitoring.soundness;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.options.OptionValues;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.options.TAJSEnvironmentConfig;
+import dk.brics.tajs.util.AnalysisException;
+import org.apache.log4j.Logger;
+import org.kohsuke.args4j.CmdLineException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newMap;
+
+/**
+ * Generates or regenerates soundness log files for many JavaScript/HTML files in parallel.
+ * <p>
+ * Usage: <tt>java dk.brics.tajs.monitoring.soundness.LogFileGenerator [-jobs N] [-job-timeout SECONDS] [OPTION]... FILE-OR-DIRECTORY...</tt>
+ * <p>
+ * Each file is handled by a separate JVM process, since the options are global.
+ * Arguments that are existing files or directories are the main files (directories are searched for .js and .html files),
+ * all other arguments are TAJS options (for example -dom or -nodejs) that are passed on to every process.
+ * Files whose log file exists with the current SHA are skipped without starting a process (unless -regenerate is given),
+ * and a process that exceeds the job timeout is killed.
+ * Log files are written atomically by {@link LogFileHelper}, so an interrupted run never leaves truncated logs.
+ */
+public class LogFileGenerator {
+
+    private static final Logger log = Logger.getLogger(LogFileGenerator.class);
+
+    private static final String CHILD = "-child";
+
+    private static final String GENERATED = "GENERATED";
+
+    private static final String SKIPPED = "SKIPPED";
+
+    /**
+     * Outcome of a job.
+     */
+    public enum Result {
+        UNCHANGED, GENERATED, SKIPPED, FAILED, TIMEOUT
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Main.initLogging();
+        if (args.length > 0 && args[0].equals(CHILD)) {
+            runChild(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int timeout = 600;
+        List<String> options = newList();
+        List<Path> files = newList();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-jobs") && i + 1 < args.length)
+                jobs = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-job-timeout") && i + 1 < args.length)
+                timeout = Integer.parseInt(args[++i]);
+            else if (Files.isDirectory(Paths.get(args[i])))
+                files.addAll(findFiles(Paths.get(args[i])));
+            else if (Files.isRegularFile(Paths.get(args[i])))
+                files.add(Paths.get(args[i]));
+            else
+                options.add(args[i]); // options and option arguments
+        }
+        if (files.isEmpty()) {
+            log.info("Usage: java " + LogFileGenerator.class.getName() + " [-jobs N] [-job-timeout SECONDS] [OPTION]... FILE-OR-DIRECTORY...");
+            System.exit(-1);
+        }
+        generate(files, options, jobs, timeout);
+    }
+
+    /**
+     * Generates the log files for the given files using the given number of parallel processes.
+     *
+     * @param files   main files
+     * @param options TAJS options for every file
+     * @param jobs    number of parallel processes
+     * @param timeout time limit in seconds for each process
+     * @return the number of files with each outcome
+     */
+    public static Map<Result, Integer> generate(List<Path> files, List<String> options, int jobs, int timeout) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        int[] counts = new int[Result.values().length];
+        List<Path> pending = newList();
+        for (Path file : files) {
+            if (isUpToDate(file, options))
+                counts[Result.UNCHANGED.ordinal()]++;
+            else
+                pending.add(file);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        List<Future<Result>> results = newList();
+        for (Path file : pending)
+            results.add(executor.submit(() -> runJob(file, options, timeout)));
+        executor.shutdown();
+        for (int i = 0; i < pending.size(); i++) {
+            Result r;
+            try {
+                r = results.get(i).get();
+            } catch (ExecutionException e) {
+                log.error(pending.get(i) + ": " + e.getCause());
+                r = Result.FAILED;
+            }
+            counts[r.ordinal()]++;
+        }
+        long seconds = Math.max(1, (System.currentTimeMillis() - start) / 1000);
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("Processed %d files in %ds using %d jobs (%.1f files/min, %.1f generated logs/min):",
+                files.size(), seconds, jobs, files.size() * 60.0 / seconds, counts[Result.GENERATED.ordinal()] * 60.0 / seconds));
+        for (Result r : Result.values())
+            b.append(" ").append(r.name().toLowerCase()).append("=").append(counts[r.ordinal()]);
+        log.info(b);
+        Map<Result, Integer> res = newMap();
+        for (Result r : Result.values())
+            res.put(r, counts[r.ordinal()]);
+        return res;
+    }
+
+    /**
+     * Runs a child process for the given file.
+     */
+    private static Result runJob(Path file, List<String> options, int timeout) throws IOException, InterruptedException {
+        List<String> command = newList();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LogFileGenerator.class.getName());
+        command.add(CHILD);
+        command.addAll(options);
+        command.add(file.toString());
+        Path output = Files.createTempFile("tajs-log-generator", ".txt");
+        try {
+            Process p = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(output.toFile()).start();
+            if (!p.waitFor(timeout, TimeUnit.SECONDS)) {
+                p.destroyForcibly().waitFor();
+                log.error(file + ": timeout after " + timeout + "s");
+                return Result.TIMEOUT;
+            }
+            List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+            String last = lines.isEmpty() ? "" : lines.get(lines.size() - 1);
+            if (p.exitValue() == 0 && last.equals(SKIPPED))
+                return Result.SKIPPED;
+            if (p.exitValue() == 0 && last.equals(GENERATED)) {
+                log.info(file + ": generated");
+                return Result.GENERATED;
+            }
+            log.error(file + ": failed\n" + String.join("\n", lines));
+            return Result.FAILED;
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    /**
+     * Checks whether the log file of the given main file is up to date, without starting a process.
+     * This is done sequentially, since the options are global.
+     */
+    private static boolean isUpToDate(Path file, List<String> options) {
+        try {
+            List<String> args = newList(options);
+            args.add(file.toString());
+            setOptions(args.toArray(new String[0]));
+            return !Options.get().getSoundnessTesterOptions().isRegenerate() && new LogFileHelper().isUpToDate();
+        } catch (RuntimeException e) { // the child process reports the problem
+            return false;
+        }
+    }
+
+    /**
+     * Sets the options for generating the log file of a single main file.
+     */
+    private static void setOptions(String[] args) {
+        OptionValues options = new OptionValues();
+        try {
+            options.parse(args);
+        } catch (CmdLineException e) {
+            throw new AnalysisException(e);
+        }
+        options.getSoundnessTesterOptions().setGenerate(true);
+        Options.set(options);
+        TAJSEnvironmentConfig.init();
+    }
+
+    /**
+     * Generates the log file for a single main file.
+     * The last line of output is the outcome.
+     */
+    private static void runChild(String[] args) {
+        setOptions(args);
+        String outcome = new LogFileHelper().createOrGetLogFile() != null ? GENERATED : SKIPPED;
+        System.out.println(outcome);
+        System.exit(0);
+    }
+
+    private static List<Path> findFiles(Path dir) throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            return s.filter(p -> {
+                String name = p.getFileName().toString().toLowerCase();
+                return Files.isRegularFile(p) && (name.endsWith(".js") || name.endsWith(".html"));
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+}
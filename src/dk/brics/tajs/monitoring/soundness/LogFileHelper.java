@@ -30,6 +30,7 @@ import dk.brics.tajs.util.Collectors;
 import dk.brics.tajs.util.PathAndURLUtils;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -38,6 +39,7 @@ import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -178,7 +180,7 @@ public class LogFileHelper {
                 if (runtimePath.getFileName().toString().endsWith(gzipSuffix)) {
                     gzipLogFile(rawLogFile, runtimePath);
                 } else {
-                    Files.write(runtimePath, rawLogFile.getLines(), logFileEncoding);
+                    writeViaTempFile(runtimePath, tmp -> Files.write(tmp, rawLogFile.getLines(), logFileEncoding));
                 }
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -188,8 +190,10 @@ public class LogFileHelper {
                 if (!persistentPath.equals(runtimePath)) {
                     try (InputStream persistentStream = runtimeLocation.openStream()) {
                         Files.createDirectories(persistentPath.getParent());
-                        if (Files.copy(persistentStream, persistentPath, StandardCopyOption.REPLACE_EXISTING) <= 0)
-                            throw new RuntimeException("No byte written when persisting a copy of the log file");
+                        writeViaTempFile(persistentPath, tmp -> {
+                            if (Files.copy(persistentStream, tmp, StandardCopyOption.REPLACE_EXISTING) <= 0)
+                                throw new RuntimeException("No byte written when persisting a copy of the log file");
+                        });
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     }
@@ -202,6 +206,15 @@ public class LogFileHelper {
         return null;
     }
 
+    /**
+     * Checks whether the log file exists and matches the current SHA of the main file (or the files being instrumented).
+     */
+    public boolean isUpToDate() {
+        LogFileLocation logFileLocation = getLogFileLocation();
+        URL runtimeLocation = logFileLocation.runtimeLocation;
+        return PathAndURLUtils.isConsumable(runtimeLocation) && !isEmptyContent(runtimeLocation) && verifySha(logFileLocation, getMainFile());
+    }
+
     private void wipeLogFilesIfPossible(LogFileLocation logFileLocation) {
         wipeFileIfPossible(logFileLocation.runtimeLocation);
         if (logFileLocation.persistentLocation.isPresent()) {
@@ -246,15 +259,45 @@ public class LogFileHelper {
             throw new IllegalArgumentException("Attempting to gzip to non-gzip file: " + target);
         }
         byte[] newLine = "\n".getBytes(logFileEncoding);
-        try (FileOutputStream zipFile = new FileOutputStream(target.toFile()); GZIPOutputStream zipOut = new GZIPOutputStream(zipFile)) {
-            logFileLines.getLines().forEach(line -> {
-                try {
-                    zipOut.write(line.getBytes(logFileEncoding));
-                    zipOut.write(newLine);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+        writeViaTempFile(target, tmp -> {
+            try (FileOutputStream zipFile = new FileOutputStream(tmp.toFile()); GZIPOutputStream zipOut = new GZIPOutputStream(new BufferedOutputStream(zipFile))) {
+                logFileLines.getLines().forEach(line -> {
+                    try {
+                        zipOut.write(line.getBytes(logFileEncoding));
+                        zipOut.write(newLine);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Writes a file in the directory of the target file.
+     */
+    @FunctionalInterface
+    public interface TempFileWriter {
+
+        void write(Path tmp) throws IOException;
+    }
+
+    /**
+     * Writes the target file via a temporary file that replaces the target, atomically if supported by the file system.
+     * Readers (including concurrent log generators) thereby never observe a partially written log file.
+     * The temporary file is deleted if writing fails.
+     */
+    public static void writeViaTempFile(Path target, TempFileWriter writer) throws IOException {
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            writer.write(tmp);
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp); // only exists if writing or moving failed
         }
     }
 
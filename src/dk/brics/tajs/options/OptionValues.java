@@ -86,8 +86,8 @@ public class OptionValues {
     @Option(name = "-no-user-events", usage = "Disable modeling of user events")
     private boolean noUserEvents;
 
-//	@Optional(name = "-flowgraph-optimization", usage = "Enable flowgraph optimization")
-//	private boolean flowgraphOptimization;
+    @Option(name = "-flowgraph-optimization", usage = "Enable flowgraph optimization")
+    private boolean flowgraphOptimization;
 
     @Option(name = "-context-specialization", usage = "Enable context specialization")
     private boolean contextSpecialization;
@@ -291,6 +291,42 @@ public class OptionValues {
     @Option(name = "-nodejs-c-summary", usage = "Enable -nodejs with the path of c summaries (used with -node-js). The default path is './c-summaries/'")
     private String cSummaryPath;
 
+    @Option(name = "-shared-dom-model", usage = "Reuse the initial host environment model across analyses with -dom in the same JVM")
+    private boolean sharedDOMModel;
+
+    @Option(name = "-adaptive-budget", usage = "Degrade precision instead of terminating early when -time-limit or -transfer-limit is exceeded (results only reproducible with -transfer-limit)")
+    private boolean adaptiveBudget;
+
+    @Option(name = "-worklist-strategy", usage = "Work list strategy: default, wto (delay loop heads), lifo (within functions), or lrv (least recently visited function contexts first)")
+    private String workListStrategy;
+
+    @Option(name = "-flowgraph-cache", usage = "Cache translated flow graphs of files loaded by the host environment in the given directory")
+    private String flowgraphCacheDirectory;
+
+    @Option(name = "-results-jsonl", usage = "Stream messages, variable types and call edges as JSON Lines to the given file during the scan phase")
+    private String resultsJSONLinesFile;
+
+    @Option(name = "-memory-sampling", usage = "Report estimated memory usage of the stored states per function and context (does not force GC'ing)")
+    private boolean memorySampling;
+
+    @Option(name = "-partition-limit", usage = "Maximum number of partitions in a partitioned value, the partitionings introduced latest in the flow graph are merged when exceeded")
+    private int partitionLimit = -1;
+
+    @Option(name = "-no-flowgraph-reuse", usage = "Disable reuse of the translated host environment functions between analyses in the same JVM")
+    private boolean noFlowGraphReuse;
+
+    @Option(name = "-query", usage = "Report results at the given locations (FILE:LINE or FILE:LINE:COLUMN, separated by comma), the fixpoint iteration stops once the remaining work cannot affect these locations and the scan phase skips all other locations")
+    private String queries;
+
+    @Option(name = "-compact-call-edges", usage = "Store call edge states as deltas against the caller states (less memory, more time)")
+    private boolean compactCallEdges;
+
+    @Option(name = "-partition-budget", usage = "Maximum total number of partitions over all partitionings, the partitionings introduced latest in the flow graph are merged when exceeded")
+    private int partitionBudget = -1;
+
+    @Option(name = "-function-summaries", usage = "Reuse the results of earlier analyses in the same JVM for functions that only compute with primitive values, instead of analyzing their bodies again")
+    private boolean functionSummaries;
+
     @Argument
     private List<Path> arguments = new ArrayList<>();
 
@@ -320,6 +356,7 @@ public class OptionValues {
         if (noConcreteNative != that.noConcreteNative) return false;
         if (forInSpecialization != that.forInSpecialization) return false;
         if (noUserEvents != that.noUserEvents) return false;
+        if (flowgraphOptimization != that.flowgraphOptimization) return false;
         if (contextSpecialization != that.contextSpecialization) return false;
         if (lowSeverity != that.lowSeverity) return false;
         if (flowgraph != that.flowgraph) return false;
@@ -383,6 +420,18 @@ public class OptionValues {
         if (!Objects.equals(arguments, that.arguments)) return false;
         if (blendedAnalysis != that.blendedAnalysis) return false;
         if (noFiltering != that.noFiltering) return false;
+        if (sharedDOMModel != that.sharedDOMModel) return false;
+        if (adaptiveBudget != that.adaptiveBudget) return false;
+        if (!Objects.equals(workListStrategy, that.workListStrategy)) return false;
+        if (!Objects.equals(flowgraphCacheDirectory, that.flowgraphCacheDirectory)) return false;
+        if (!Objects.equals(resultsJSONLinesFile, that.resultsJSONLinesFile)) return false;
+        if (memorySampling != that.memorySampling) return false;
+        if (partitionLimit != that.partitionLimit) return false;
+        if (noFlowGraphReuse != that.noFlowGraphReuse) return false;
+        if (!Objects.equals(queries, that.queries)) return false;
+        if (compactCallEdges != that.compactCallEdges) return false;
+        if (partitionBudget != that.partitionBudget) return false;
+        if (functionSummaries != that.functionSummaries) return false;
         return Objects.equals(soundnessTesterOptions, that.soundnessTesterOptions);
     }
 
@@ -400,6 +449,7 @@ public class OptionValues {
         result = 31 * result + (noConcreteNative ? 1 : 0);
         result = 31 * result + (forInSpecialization ? 1 : 0);
         result = 31 * result + (noUserEvents ? 1 : 0);
+        result = 31 * result + (flowgraphOptimization ? 1 : 0);
         result = 31 * result + (contextSpecialization ? 1 : 0);
         result = 31 * result + (lowSeverity ? 1 : 0);
         result = 31 * result + (unsoundnessString != null ? unsoundnessString.hashCode() : 0);
@@ -464,6 +514,18 @@ public class OptionValues {
         result = 31 * result + (noFiltering ? 1 : 0);
         result = 31 * result + (noStringReplacePolyfill ? 1 : 0);
         result = 31 * result + (noErrorCaptureStackTracePolyfill ? 1 : 0);
+        result = 31 * result + (sharedDOMModel ? 1 : 0);
+        result = 31 * result + (adaptiveBudget ? 1 : 0);
+        result = 31 * result + (workListStrategy != null ? workListStrategy.hashCode() : 0);
+        result = 31 * result + (flowgraphCacheDirectory != null ? flowgraphCacheDirectory.hashCode() : 0);
+        result = 31 * result + (resultsJSONLinesFile != null ? resultsJSONLinesFile.hashCode() : 0);
+        result = 31 * result + (memorySampling ? 1 : 0);
+        result = 31 * result + partitionLimit;
+        result = 31 * result + (noFlowGraphReuse ? 1 : 0);
+        result = 31 * result + (queries != null ? queries.hashCode() : 0);
+        result = 31 * result + (compactCallEdges ? 1 : 0);
+        result = 31 * result + partitionBudget;
+        result = 31 * result + (functionSummaries ? 1 : 0);
         return result;
     }
 
@@ -608,9 +670,9 @@ public class OptionValues {
         flowgraph = false;
     }
 
-//	public void disableFlowgraphOptimization() {
-//		flowgraphOptimization = false;
-//	}
+    public void disableFlowgraphOptimization() {
+        flowgraphOptimization = false;
+    }
 
     public void disableForInSpecialization() {
         forInSpecialization = false;
@@ -765,9 +827,9 @@ public class OptionValues {
         contextSpecialization = true;
     }
 
-//	public void enableFlowgraphOptimization() {
-//		flowgraphOptimization = true;
-//	}
+    public void enableFlowgraphOptimization() {
+        flowgraphOptimization = true;
+    }
 
     public void enableControlSensitivity() {
         noControlSensitivity = false;
@@ -964,9 +1026,9 @@ public class OptionValues {
         return contextSensitiveHeap;
     }
 
-//	public boolean isFlowGraphOptimizationEnabled() {
-//		return flowgraphOptimization;
-//	}
+    public boolean isFlowGraphOptimizationEnabled() {
+        return flowgraphOptimization;
+    }
 
     public boolean isContextSpecializationEnabled() {
         return contextSpecialization;
@@ -1127,6 +1189,12 @@ public class OptionValues {
         if (blendedAnalysis && unsoundness.isUseFixedRandom()) {
             throw new CmdLineException(null, "-blended-analysis and -unsound -use-fixed-random are not allowed together", null);
         }
+        if (queries != null && testSoundness) {
+            throw new CmdLineException(null, "-query cannot be combined with -test-soundness (implied by -test), only the query locations are scanned", null);
+        }
+        if (functionSummaries && testSoundness) {
+            throw new CmdLineException(null, "-function-summaries cannot be combined with -test-soundness (implied by -test), the bodies of summarized functions are not analyzed", null);
+        }
     }
 
     public void enablePolyfillMDN() {
@@ -1436,4 +1504,128 @@ public class OptionValues {
     public String getCSummaryPath() {
         return cSummaryPath == null? "./c-summaries/" : cSummaryPath;
     }
+
+    public boolean isSharedDOMModelEnabled() {
+        return sharedDOMModel;
+    }
+
+    public void enableSharedDOMModel() {
+        sharedDOMModel = true;
+    }
+
+    public void disableSharedDOMModel() {
+        sharedDOMModel = false;
+    }
+
+    public boolean isAdaptiveBudgetEnabled() {
+        return adaptiveBudget;
+    }
+
+    public void enableAdaptiveBudget() {
+        adaptiveBudget = true;
+    }
+
+    public void disableAdaptiveBudget() {
+        adaptiveBudget = false;
+    }
+
+    public String getWorkListStrategy() {
+        return workListStrategy;
+    }
+
+    public void setWorkListStrategy(String workListStrategy) {
+        this.workListStrategy = workListStrategy;
+    }
+
+    public boolean isFlowGraphCacheEnabled() {
+        return flowgraphCacheDirectory != null;
+    }
+
+    public String getFlowGraphCacheDirectory() {
+        return flowgraphCacheDirectory;
+    }
+
+    public void setFlowGraphCacheDirectory(String flowgraphCacheDirectory) {
+        this.flowgraphCacheDirectory = flowgraphCacheDirectory;
+    }
+
+    public String getResultsJSONLinesFile() {
+        return resultsJSONLinesFile;
+    }
+
+    public void setResultsJSONLinesFile(String resultsJSONLinesFile) {
+        this.resultsJSONLinesFile = resultsJSONLinesFile;
+    }
+
+    public boolean isMemorySamplingEnabled() {
+        return memorySampling;
+    }
+
+    public void enableMemorySampling() {
+        memorySampling = true;
+    }
+
+    public void disableMemorySampling() {
+        memorySampling = false;
+    }
+
+    public int getPartitionLimit() {
+        return partitionLimit;
+    }
+
+    public void setPartitionLimit(int partitionLimit) {
+        this.partitionLimit = partitionLimit;
+    }
+
+    public boolean isNoFlowGraphReuseEnabled() {
+        return noFlowGraphReuse;
+    }
+
+    public void enableNoFlowGraphReuse() {
+        noFlowGraphReuse = true;
+    }
+
+    public void disableNoFlowGraphReuse() {
+        noFlowGraphReuse = false;
+    }
+
+    public String getQueries() {
+        return queries;
+    }
+
+    public void setQueries(String queries) {
+        this.queries = queries;
+    }
+
+    public boolean isCompactCallEdgesEnabled() {
+        return compactCallEdges;
+    }
+
+    public void enableCompactCallEdges() {
+        compactCallEdges = true;
+    }
+
+    public void disableCompactCallEdges() {
+        compactCallEdges = false;
+    }
+
+    public int getPartitionBudget() {
+        return partitionBudget;
+    }
+
+    public void setPartitionBudget(int partitionBudget) {
+        this.partitionBudget = partitionBudget;
+    }
+
+    public boolean isFunctionSummariesEnabled() {
+        return functionSummaries;
+    }
+
+    public void enableFunctionSummaries() {
+        functionSummaries = true;
+    }
+
+    public void disableFunctionSummaries() {
+        functionSummaries = false;
+    }
 }
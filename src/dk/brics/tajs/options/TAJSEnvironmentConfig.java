@@ -103,6 +103,10 @@ public class TAJSEnvironmentConfig {
         if (babelPath.toFile().exists()) {
             p.setProperty("babel", babelPath.toString());
         }
+        Path babelWorkerPath = Paths.get("extras/babel/worker.js").toAbsolutePath();
+        if (babelWorkerPath.toFile().exists()) {
+            p.setProperty("babel-worker", babelWorkerPath.toString());
+        }
     }
 
     public static void init() {
@@ -152,6 +156,18 @@ public class TAJSEnvironmentConfig {
         return Paths.get(getRequiredProperty("babel"));
     }
 
+    public Path getBabelWorker() {
+        return Paths.get(getRequiredProperty("babel-worker"));
+    }
+
+    /**
+     * Returns the directory for caching Babel output, by default in the system temporary directory.
+     */
+    public Path getBabelCache() {
+        String babelCache = properties.getProperty("babel-cache");
+        return babelCache != null ? Paths.get(babelCache) : Paths.get(System.getProperty("java.io.tmpdir"), "tajs-babel-cache");
+    }
+
     public Path getJava() {
         return Paths.get(getRequiredProperty("java"));
     }
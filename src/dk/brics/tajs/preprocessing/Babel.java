@@ -21,20 +21,20 @@ import dk.brics.tajs.options.TAJSEnvironmentConfig;
 import dk.brics.tajs.util.AnalysisException;
 import dk.brics.tajs.util.Collectors;
 import dk.brics.tajs.util.Lists;
+import dk.brics.tajs.util.Loader;
 import dk.brics.tajs.util.PathAndURLUtils;
+import dk.brics.tajs.util.Strings;
 import org.apache.log4j.Logger;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static dk.brics.tajs.util.Collections.newSet;
@@ -58,7 +58,7 @@ public class Babel {
 
             
 
-    private static final Pattern successPattern = Pattern.compile("Successfully compiled (\\d+) files? with Babel\\.");
+    private static String configFingerprint;
 
     private static final Set<String> supportedFileExtensions = newSet(Arrays.asList(".es6", ".js", ".es", ".jsx", ".mjs", ""));
 
@@ -84,7 +84,6 @@ public class Babel {
         Path testFile = Lists.getLast(args);
         Path realCommonAncestor = PathAndURLUtils.toRealPath(commonAncestor);
         Path babelRoot = commonAncestor.resolve("_babel");
-        Path babelPath = TAJSEnvironmentConfig.get().getBabel();
 
         /* If we run babel with the project root as input directory, it will copy all files in it! */
         if (PathAndURLUtils.getWorkingDirectory().startsWith(realCommonAncestor)) {
@@ -102,64 +101,33 @@ public class Babel {
                 .map(file -> realCommonAncestor.relativize(file.toAbsolutePath()))
                 .distinct().collect(Collectors.toList());
 
-        Set<String> fileExtensions = relativeFiles.stream().map(PathAndURLUtils::getFileExtension).collect(Collectors.toSet());
-        fileExtensions.retainAll(supportedFileExtensions);
-
-        List<String> baseCmd = Arrays.asList(
-                babelPath.toString(),
-                "--root-mode", "upward",            // Find the nearest babel.config.js in the file-system
-                "--extensions", String.join(",", fileExtensions),
-                "--keep-file-extension",
-                "--verbose",
-                "--plugins", babelPlugins,          // Plugins used for transformations
-                "--out-dir", babelRoot.toString()   // Output directory
-        );
-
         try {
-            // Split list into sublists to avoid argument list length limit
-            final int sublistSize = 100;
-            for(int i = 0; i < relativeFiles.size(); i += sublistSize) {
-                List<Path> subFiles = relativeFiles.subList(i, Math.min(i + sublistSize, relativeFiles.size()));
-                ArrayList<String> cmd = new ArrayList<>(baseCmd);
-
-                if(i == 0) { // Delete and copy other files in the first pass
-                    cmd.add("--delete-dir-on-start");
-                    cmd.add("--copy-files");
-                }
-
-                cmd.add("--only"); // Control which files to transform (must be absolute for babel to work correctly)
-                cmd.add(subFiles.stream().map(file -> commonAncestor.resolve(file).toString()).collect(java.util.stream.Collectors.joining(",")));
-                cmd.add(commonAncestor.toString()); // Input directory
-
-                // Run the babel command
-                Process process = new ProcessBuilder(cmd).directory(babelPath.getParent().toFile()).start();
-                String output, err;
-
-                try (BufferedReader stdBr = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                     BufferedReader errBr = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-
-                    output = stdBr.lines().collect(java.util.stream.Collectors.joining("\n"));
-                    err = errBr.lines().collect(java.util.stream.Collectors.joining("\n"));
-                    process.waitFor();
-                }
-
-                if (process.exitValue() != 0)
-                    throw new AnalysisException("Error occurred while running babel:\n" + err);
-
-                if (!Options.get().isQuietEnabled())
-                    System.out.println(output);
-
-                Matcher m = successPattern.matcher(output);
-                if (!m.find())
-                    log.warn("Babel might not have run successfully!\n" + output);
-                else {
-                    int processedFiles = Integer.parseInt(m.group(1));
-                    if (processedFiles != subFiles.size())
-                        throw new AnalysisException(String.format("Babel processed %d/%d files", processedFiles, subFiles.size()));
+            int compiled = 0, cached = 0;
+            Set<Path> compiledFiles = newSet();
+            Path cacheDir = TAJSEnvironmentConfig.get().getBabelCache();
+            Files.createDirectories(cacheDir);
+            for (Path file : relativeFiles) {
+                if (!supportedFileExtensions.contains(PathAndURLUtils.getFileExtension(file)))
+                    continue;
+                Path source = realCommonAncestor.resolve(file);
+                String code = Loader.getString(source, StandardCharsets.UTF_8);
+                Path cacheFile = cacheDir.resolve(Strings.sha256(getConfigFingerprint() + "\n" + code) + ".js");
+                String output;
+                if (Files.exists(cacheFile)) {
+                    output = Loader.getString(cacheFile, StandardCharsets.UTF_8);
+                    cached++;
+                } else {
+                    output = BabelWorker.get(babelPlugins).transform(source, code);
+                    writeIfChanged(cacheFile, output);
                 }
+                writeIfChanged(babelRoot.resolve(file), output);
+                compiledFiles.add(file);
+                compiled++;
             }
-        } catch (InterruptedException | IOException e) {
-
+            copyOtherFiles(realCommonAncestor, babelRoot, compiledFiles);
+            if (!Options.get().isQuietEnabled())
+                System.out.println(String.format("Successfully compiled %d files with Babel (%d unchanged files from cache).", compiled, cached));
+        } catch (IOException e) {
             throw new AnalysisException("Error occurred while running babel:\n" + e);
         }
 
@@ -179,4 +147,64 @@ public class Babel {
 
         args.set(args.size() - 1, babelTestFile);
     }
+
+    /**
+     * Returns a string that identifies the Babel configuration.
+     * Transpiled files are cached under a hash of this string and the file contents.
+     */
+    private static synchronized String getConfigFingerprint() throws IOException {
+        if (configFingerprint == null) {
+            Path worker = TAJSEnvironmentConfig.get().getBabelWorker();
+            StringBuilder b = new StringBuilder(babelPlugins).append('\n');
+            for (Path p : Arrays.asList(worker, worker.resolveSibling("babel.config.js"), worker.resolveSibling("node_modules/@babel/core/package.json")))
+                if (Files.exists(p))
+                    b.append(Loader.getString(p, StandardCharsets.UTF_8)).append('\n');
+            configFingerprint = Strings.sha256(b.toString());
+        }
+        return configFingerprint;
+    }
+
+    /**
+     * Writes the given file, unless it already has the given contents.
+     */
+    private static void writeIfChanged(Path file, String contents) throws IOException {
+        if (Files.exists(file) && Loader.getString(file, StandardCharsets.UTF_8).equals(contents))
+            return;
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(tmp, contents.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Mirrors the files in the input directory that are not transpiled to the output directory.
+     * Files that are unchanged since the last run (same size and modification time) are not copied again,
+     * and files in the output directory that no longer exist in the input directory are deleted.
+     */
+    private static void copyOtherFiles(Path inputDir, Path outputDir, Set<Path> compiledFiles) throws IOException {
+        Path realOutputDir = inputDir.resolve(outputDir.getFileName());
+        try (Stream<Path> s = Files.walk(inputDir)) {
+            for (Path source : (Iterable<Path>) s::iterator) {
+                if (source.startsWith(realOutputDir) || !Files.isRegularFile(source))
+                    continue;
+                Path file = inputDir.relativize(source);
+                if (compiledFiles.contains(file))
+                    continue;
+                Path target = outputDir.resolve(file);
+                if (Files.exists(target) && Files.size(target) == Files.size(source) && Files.getLastModifiedTime(target).equals(Files.getLastModifiedTime(source)))
+                    continue;
+                Files.createDirectories(target.getParent());
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+        if (!Files.isDirectory(outputDir))
+            return;
+        try (Stream<Path> s = Files.walk(outputDir)) {
+            for (Path target : (Iterable<Path>) s::iterator) {
+                Path file = outputDir.relativize(target);
+                if (Files.isRegularFile(target) && !compiledFiles.contains(file) && !Files.exists(inputDir.resolve(file)))
+                    Files.delete(target);
+            }
+        }
+    }
 }
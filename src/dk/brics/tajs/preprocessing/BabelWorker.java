@@ -0,0 +1,107 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.preprocessing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import dk.brics.tajs.options.TAJSEnvironmentConfig;
+import dk.brics.tajs.util.AnalysisException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Long-lived Babel process (extras/babel/worker.js) that transpiles files sent over stdin/stdout.
+ * <p>
+ * The process is started on first use and shared by all subsequent analyses in the JVM.
+ */
+public class BabelWorker {
+
+    private static BabelWorker instance;
+
+    private final String plugins;
+
+    private final Process process;
+
+    private final BufferedWriter requests;
+
+    private final BufferedReader responses;
+
+    private final Gson gson = new Gson();
+
+    private BabelWorker(String plugins) throws IOException {
+        this.plugins = plugins;
+        Path worker = TAJSEnvironmentConfig.get().getBabelWorker();
+        process = new ProcessBuilder(Arrays.asList(TAJSEnvironmentConfig.get().getNode().toString(), worker.toString(), plugins))
+                .directory(worker.getParent().toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        responses = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        readResponse(); // wait until Babel has been loaded
+    }
+
+    /**
+     * Returns the worker, starting it if not already running with the given plugins.
+     *
+     * @param plugins comma-separated Babel plugin names
+     */
+    public static synchronized BabelWorker get(String plugins) throws IOException {
+        if (instance == null || !instance.process.isAlive() || !instance.plugins.equals(plugins)) {
+            if (instance != null)
+                instance.process.destroy();
+            instance = new BabelWorker(plugins);
+            Process p = instance.process;
+            Runtime.getRuntime().addShutdownHook(new Thread(p::destroy));
+        }
+        return instance;
+    }
+
+    /**
+     * Transpiles the given file.
+     * Requests are answered one at a time, since the worker blocks when its output is not consumed.
+     *
+     * @param file the file, used for error messages and for locating Babel configuration
+     * @param code the contents of the file
+     * @return the transpiled contents
+     */
+    public synchronized String transform(Path file, String code) throws IOException {
+        JsonObject request = new JsonObject();
+        request.addProperty("filename", file.toString());
+        request.addProperty("code", code);
+        requests.write(gson.toJson(request));
+        requests.newLine();
+        requests.flush();
+        JsonObject response = readResponse();
+        if (response.has("error"))
+            throw new AnalysisException("Error occurred while running babel on " + file + ":\n" + response.get("error").getAsString());
+        return response.get("code").getAsString();
+    }
+
+    private JsonObject readResponse() throws IOException {
+        String line = responses.readLine();
+        if (line == null)
+            throw new AnalysisException("Babel worker terminated unexpectedly");
+        return gson.fromJson(line, JsonObject.class);
+    }
+}
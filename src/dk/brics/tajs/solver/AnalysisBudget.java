@@ -0,0 +1,151 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.solver;
+
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.Function;
+import org.apache.log4j.Logger;
+
+import java.util.Collection;
+import java.util.Set;
+
+import static dk.brics.tajs.util.Collections.newSet;
+
+/**
+ * Precision budget of an analysis run.
+ * <p>
+ * Keeps track of the precision-enhancing features that have been turned off in order to reach a fixpoint
+ * within the time or transfer budget (see <code>-adaptive-budget</code>).
+ * Features are turned off in steps, first for the hot functions only and in the last step for all functions.
+ * Turning one of these features off during fixpoint iteration is sound: it only affects the contexts, partitions and joins
+ * that are made from then on, and no existing flow is discarded.
+ * Free variable partitioning is deliberately not among them, since joins treat the missing free variable partition tokens
+ * of new flow as "none", so values that already carry such tokens cannot soundly be joined with flow that carries none.
+ */
+public class AnalysisBudget {
+
+    private static Logger log = Logger.getLogger(AnalysisBudget.class);
+
+    /**
+     * Precision-enhancing features that can be turned off.
+     */
+    public enum Feature {
+        LOOP_UNROLLING,
+        CONTEXT_SPECIALIZATION,
+        PARAMETER_SENSITIVITY,
+        PROPERTY_NAME_PARTITIONING,
+        TYPE_PARTITIONING,
+        NON_WIDENING_JOINS
+    }
+
+    /**
+     * The features that are turned off at each degradation step, cumulatively.
+     * The step after the last one applies all of them to all functions.
+     */
+    private static final Feature[][] STEPS = {
+            {Feature.LOOP_UNROLLING},
+            {Feature.CONTEXT_SPECIALIZATION, Feature.PARAMETER_SENSITIVITY},
+            {Feature.PROPERTY_NAME_PARTITIONING, Feature.TYPE_PARTITIONING},
+            {Feature.NON_WIDENING_JOINS}
+    };
+
+    /**
+     * Features that are turned off for the hot functions.
+     */
+    private final Set<Feature> disabled = newSet();
+
+    /**
+     * Functions where the disabled features are turned off.
+     */
+    private final Set<Function> hot_functions = newSet();
+
+    /**
+     * If set, the disabled features are turned off in all functions.
+     */
+    private boolean global;
+
+    /**
+     * Number of degradation steps taken.
+     */
+    private int steps;
+
+    /**
+     * Returns true if the given feature may be used in the given function.
+     */
+    public boolean isEnabled(Feature f, Function fun) {
+        if (steps == 0 || !disabled.contains(f))
+            return true;
+        return !global && !hot_functions.contains(fun);
+    }
+
+    /**
+     * Returns true if the given feature may be used at the given node.
+     */
+    public boolean isEnabled(Feature f, AbstractNode n) {
+        return isEnabled(f, n.getBlock().getFunction());
+    }
+
+    /**
+     * Returns true if all degradation steps have been taken.
+     */
+    public boolean isExhausted() {
+        return global;
+    }
+
+    /**
+     * Returns the number of degradation steps taken.
+     */
+    public int getNumberOfSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the features that are currently turned off.
+     */
+    public Set<Feature> getDisabledFeatures() {
+        return disabled;
+    }
+
+    /**
+     * Returns the functions where features are turned off (unless all functions are degraded).
+     */
+    public Set<Function> getHotFunctions() {
+        return hot_functions;
+    }
+
+    /**
+     * Takes the next degradation step.
+     *
+     * @param hot the functions where the analysis currently spends most of its time
+     * @return false if all steps have already been taken
+     */
+    public boolean degrade(Collection<Function> hot) {
+        if (global)
+            return false;
+        if (steps < STEPS.length) {
+            for (Feature f : STEPS[steps])
+                disabled.add(f);
+            hot_functions.addAll(hot);
+        } else {
+            global = true;
+        }
+        steps++;
+        if (log.isDebugEnabled())
+            log.debug("Analysis budget degradation step " + steps + ": disabled " + disabled + (global ? " in all functions" : " in " + hot_functions.size() + " functions"));
+        return true;
+    }
+}
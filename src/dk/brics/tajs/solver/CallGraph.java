@@ -29,6 +29,7 @@ import java.io.PrintWriter;
 import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -78,6 +79,11 @@ public class CallGraph<StateType extends IState<StateType, ContextType, CallEdge
 
     private int size_ignoring_contexts;
 
+    /**
+     * Call edges that have been accessed since the last call to {@link #releaseCallEdges()}.
+     */
+    private Set<CallEdgeType> accessed_edges;
+
     public static class ReverseEdge<ContextType extends IContext<?>> {
 
         AbstractNode call_node;
@@ -114,15 +120,18 @@ public class CallGraph<StateType extends IState<StateType, ContextType, CallEdge
         funentry_order = newMap();
         context_order = newMap();
         callees_ignoring_contexts = newMap();
+        accessed_edges = Collections.newSetFromMap(new IdentityHashMap<>());
     }
 
     /**
      * Adds an edge from the given call node to the given function.
+     * The stored edge is compacted if it is new or changed.
      *
+     * @param caller_state the state at the entry of the caller block, or null if not available
      * @return true if the call edge changed as result of this operation
      */
     public boolean addTarget(AbstractNode caller, ContextType caller_context, BasicBlock callee, ContextType edge_context,
-                             CallEdgeType edge, SolverSynchronizer sync, IAnalysis<StateType, ContextType, CallEdgeType, ?, ?> analysis, ISolverMonitoring<StateType, ContextType> monitoring) {
+                             CallEdgeType edge, StateType caller_state, SolverSynchronizer sync, IAnalysis<StateType, ContextType, CallEdgeType, ?, ?> analysis, ISolverMonitoring<StateType, ContextType> monitoring) {
         boolean changed;
         NodeAndContext<ContextType> nc = new NodeAndContext<>(caller, caller_context);
         Map<BlockAndContext<ContextType>, CallEdgeType> mb = call_edge_info.computeIfAbsent(nc, k -> newMap());
@@ -132,7 +141,9 @@ public class CallGraph<StateType extends IState<StateType, ContextType, CallEdge
         monitoring.visitPropagationPre(from, to);
         if (call_edge == null) {
             // new edge
-            mb.put(to, analysis.cloneCallEdge(edge));
+            CallEdgeType new_edge = analysis.cloneCallEdge(edge);
+            new_edge.compact(caller_state);
+            mb.put(to, new_edge);
             if (sync != null && isOrdinaryCallEdge(callee))
                 sync.callEdgeAdded(caller.getBlock().getFunction(), callee.getFunction());
             changed = true;
@@ -147,6 +158,10 @@ public class CallGraph<StateType extends IState<StateType, ContextType, CallEdge
         } else {
             // propagate into existing edge
             changed = call_edge.getState().propagate(edge.getState(), true, false);
+            if (changed)
+                call_edge.compact(caller_state);
+            else
+                accessed_edges.add(call_edge); // released after the current block transfer
         }
         monitoring.visitPropagationPost(from, to, changed);
         if (log.isDebugEnabled())
@@ -226,9 +241,19 @@ public class CallGraph<StateType extends IState<StateType, ContextType, CallEdge
         CallEdgeType b = mb.get(new BlockAndContext<>(callee, edge_context));
         if (b == null)
             throw new AnalysisException("No such edge!?");
+        accessed_edges.add(b);
         return b;
     }
 
+    /**
+     * Releases the call edges that have been accessed via {@link #getCallEdge} since the last invocation.
+     */
+    public void releaseCallEdges() {
+        for (CallEdgeType e : accessed_edges)
+            e.release();
+        accessed_edges.clear();
+    }
+
     /**
      * Returns the specified map from (callee entry, edge context) to call edge info.
      */
@@ -27,11 +27,18 @@ import dk.brics.tajs.util.AnalysisLimitationException;
 import net.htmlparser.jericho.Source;
 import org.apache.log4j.Logger;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Locale;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Supplier;
 
+import static dk.brics.tajs.util.Collections.addToMapSet;
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+
 /**
  * Generic fixpoint solver for flow graphs.
  */
@@ -57,6 +64,29 @@ public class GenericSolver<StateType extends IState<StateType, ContextType, Call
 
     private CallDependencies<ContextType> deps;
 
+    private final AnalysisBudget budget = new AnalysisBudget();
+
+    /**
+     * Blocks whose states may affect the demanded blocks, or null if all blocks are demanded.
+     */
+    private Set<BasicBlock> demanded_dependencies;
+
+    /**
+     * Number of work list entries for blocks in {@link #demanded_dependencies}.
+     */
+    private int demanded_pending;
+
+    /**
+     * Set when a call edge from a block in {@link #demanded_dependencies} has been made,
+     * so that return flow may reach the demanded blocks from any function.
+     */
+    private boolean demanded_call;
+
+    /**
+     * Set if {@link #solve()} stopped before reaching the fixpoint for all blocks.
+     */
+    private boolean partial;
+
     private AbstractNode current_node;
 
     private StateType current_state;
@@ -221,8 +251,11 @@ public class GenericSolver<StateType extends IState<StateType, ContextType, Call
          * Adds the given location to the worklist.
          */
         public void addToWorklist(BasicBlock block, ContextType context) {
-            if (worklist.add(new BlockAndContext<>(block, context)))
+            if (worklist.add(new BlockAndContext<>(block, context))) {
                 deps.incrementFunctionActivityLevel(BlockAndContext.makeEntry(block, context));
+                if (demanded_dependencies != null && demanded_dependencies.contains(block))
+                    demanded_pending++;
+            }
             if (sync != null)
                 sync.markPendingBlock(block);
         }
@@ -237,11 +270,13 @@ public class GenericSolver<StateType extends IState<StateType, ContextType, Call
                                              ContextType edge_context, BasicBlock callee_entry, CallKind callKind) {
             if (messages_enabled)
                 return;
+            if (demanded_dependencies != null && demanded_dependencies.contains(call_node.getBlock()))
+                demanded_call = true;
             CallGraph<StateType, ContextType, CallEdgeType> cg = the_analysis_lattice_element.getCallGraph();
             ContextType callee_context = edge_context; // FIXME: change if using edge transformations: edge_state.transform(cg.getCallEdge(call_node, caller_context, callee_entry, edge_context), edge_context, the_analysis_lattice_element.getStates(callee_entry), callee_entry);
             the_analysis_lattice_element.getCallGraph().registerFunctionEntry(new BlockAndContext<>(callee_entry, callee_context));
             // add to existing call edge
-            if (cg.addTarget(call_node, caller_context, callee_entry, edge_context, edge, sync, analysis, c.getMonitoring())) {
+            if (cg.addTarget(call_node, caller_context, callee_entry, edge_context, edge, the_analysis_lattice_element.getState(call_node.getBlock(), caller_context), sync, analysis, c.getMonitoring())) {
                 // new flow at call edge, transform it relative to the function entry states and contexts
                 cg.addSource(call_node, caller_context, callee_entry, callee_context, edge_context);
                 // propagate transformed state into function entry
@@ -295,6 +330,13 @@ public class GenericSolver<StateType extends IState<StateType, ContextType, Call
         public CallDependencies<ContextType> getCallDependencies() {
             return deps;
         }
+
+        /**
+         * Returns the precision budget of the analysis.
+         */
+        public AnalysisBudget getBudget() {
+            return budget;
+        }
     }
 
     /**
@@ -339,6 +381,11 @@ public class GenericSolver<StateType extends IState<StateType, ContextType, Call
             // iterate until fixpoint
             block_loop:
             while (!worklist.isEmpty()) {
+                if (demanded_dependencies != null && demanded_pending == 0 && !demanded_call) {
+                    log.info("Stopping fixpoint iteration, the remaining work cannot affect the demanded blocks");
+                    partial = true;
+                    break;
+                }
                 if (!analysis.getMonitoring().allowNextIteration()) {
                     terminatedEarly = "Analysis aborted";
                     break;
@@ -357,6 +404,8 @@ public class GenericSolver<StateType extends IState<StateType, ContextType, Call
                 }
                 BasicBlock block = p.getBlock();
                 ContextType context = p.getContext();
+                if (demanded_dependencies != null && demanded_dependencies.contains(block))
+                    demanded_pending--;
                 if (sync != null)
                     sync.markActiveBlock(block);
                 StateType state = the_analysis_lattice_element.getState(block, context);
@@ -428,6 +477,7 @@ public class GenericSolver<StateType extends IState<StateType, ContextType, Call
                 } finally {
                     // process return flow and discharge incoming call edges if the function is now inactive
                     deps.dischargeIfInactive(BlockAndContext.makeEntry(block, context));
+                    the_analysis_lattice_element.getCallGraph().releaseCallEdges();
                 }
             }
         } catch (AnalysisLimitationException.AnalysisTimeException e) {
@@ -442,32 +492,92 @@ public class GenericSolver<StateType extends IState<StateType, ContextType, Call
             log.warn(terminatedEarly);
             return false;
         } else {
-            deps.assertEmpty();
+            if (!partial)
+                deps.assertEmpty();
             return true;
         }
     }
 
+    /**
+     * Makes {@link #solve()} stop as soon as no pending work can affect the states of the given blocks,
+     * in which case the states of other blocks may be below the fixpoint (see {@link #isPartial()}).
+     * <p>
+     * The blocks that the given blocks depend on are found by following the intraprocedural and exceptional edges backwards.
+     * Any pending block may call any function, and the return flow of a function may reach any of its callers,
+     * so the iteration can only stop early if the dependencies are not inside a function other than the main function
+     * and no call is made from them.
+     * Must be called after {@link #init(FlowGraph, Source)} and before {@link #solve()}.
+     */
+    public void setDemandedBlocks(Set<BasicBlock> blocks) {
+        if (worklist == null)
+            throw new IllegalStateException("setDemandedBlocks() called before init()");
+        if (Options.get().isUnevalizerEnabled())
+            return; // the unevalizer changes the edges of existing blocks
+        Map<BasicBlock, Set<BasicBlock>> predecessors = newMap();
+        for (Function f : flowgraph.getFunctions())
+            for (BasicBlock b : f.getBlocks()) {
+                for (BasicBlock succ : b.getSuccessors())
+                    addToMapSet(predecessors, succ, b);
+                if (b.getExceptionHandler() != null)
+                    addToMapSet(predecessors, b.getExceptionHandler(), b);
+            }
+        Set<BasicBlock> dependencies = newSet(blocks);
+        LinkedList<BasicBlock> todo = new LinkedList<>(blocks);
+        while (!todo.isEmpty())
+            for (BasicBlock pred : predecessors.getOrDefault(todo.removeFirst(), Collections.emptySet()))
+                if (dependencies.add(pred))
+                    todo.add(pred);
+        if (dependencies.stream().anyMatch(b -> b.isEntry() && !b.getFunction().isMain()))
+            return; // any pending block may call the function
+        demanded_dependencies = dependencies;
+        demanded_pending = (int) worklist.getPendingEntries().stream().filter(bc -> dependencies.contains(bc.getBlock())).count();
+        demanded_call = the_analysis_lattice_element.getCallGraph().getCallSources().values().stream()
+                .anyMatch(es -> es.stream().anyMatch(e -> dependencies.contains(e.getCallNode().getBlock())));
+    }
+
+    /**
+     * Returns true if {@link #solve()} stopped before all blocks reached the fixpoint,
+     * because the remaining work could not affect the demanded blocks.
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
     /**
      * Scans for messages. Takes one round through all nodes and all contexts without invoking <code>propagate</code>.
      * {@link #solve()} must be called first.
      */
     public void scan() {
+        scan(null);
+    }
+
+    /**
+     * Scans for messages at the given blocks only, and visits only the functions containing those blocks.
+     * {@link #solve()} must be called first.
+     *
+     * @param blocks the blocks to scan, or null to scan all blocks
+     */
+    public void scan(Set<BasicBlock> blocks) {
         if (the_analysis_lattice_element == null)
             throw new IllegalStateException("scan() called before solve()");
         // visit each block
         for (Function function : flowgraph.getFunctions()) {
+            if (blocks != null && function.getBlocks().stream().noneMatch(blocks::contains))
+                continue;
             if (log.isDebugEnabled())
                 log.debug("Scanning " + function + " at " + function.getSourceLocation());
             analysis.getMonitoring().visitFunction(function, the_analysis_lattice_element.getStates(function.getEntry()).values());
             for (BasicBlock block : function.getBlocks()) {
+                if (blocks != null && !blocks.contains(block))
+                    continue;
                 if (log.isDebugEnabled())
                     log.debug("Scanning " + block + " at " + block.getSourceLocation());
                 block_loop:
-                for (Entry<ContextType, StateType> me : the_analysis_lattice_element.getStates(block).entrySet()) {
-                    current_state = me.getValue().clone();
+                for (StateType block_state : the_analysis_lattice_element.getStates(block).values()) {
+                    current_state = block_state.clone();
                     analysis.getMonitoring().visitBlockTransferPre(block, current_state);
                     try {
-                        ContextType context = me.getKey();
+                        ContextType context = block_state.getContext();
                         if (global_entry_block == block)
                             current_state.localize(null); // use *localized* initial state
                         if (log.isDebugEnabled()) {
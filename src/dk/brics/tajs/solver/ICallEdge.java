@@ -30,4 +30,18 @@ public interface ICallEdge<StateType extends IState<?, ?, ?>> {
      * Sets the state at this edge.
      */
     void setState(StateType s);
+
+    /**
+     * Compacts the representation of this edge.
+     * Invoked when the edge has been stored or updated in the call graph.
+     *
+     * @param caller_state the state at the entry of the caller block, or null if not available
+     */
+    void compact(StateType caller_state);
+
+    /**
+     * Releases the memory used since the state of this edge was last accessed, if possible.
+     * Invoked after each block transfer for the edges that have been accessed via the call graph.
+     */
+    void release();
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.solver;
+
+/**
+ * Priority policy for the work list.
+ * <p>
+ * Strategies must only depend on counters and flow graph orders (not on hash codes or time)
+ * so that the iteration order, and thereby the analysis result, is reproducible.
+ */
+public interface IWorkListStrategy<ContextType extends IContext<ContextType>> {
+
+    /**
+     * Computes the priority of a new entry. The priority is fixed while the entry is in the work list.
+     */
+    int getPriority(WorkList<ContextType>.Entry e);
+
+    /**
+     * Compares two different entries.
+     * A negative return value means that the first has higher priority than the second,
+     * a positive return value means that the second has higher priority than the first.
+     * Zero means that the strategy cannot distinguish the entries, which is an error.
+     */
+    int compare(WorkList<ContextType>.Entry e1, WorkList<ContextType>.Entry e2);
+
+    /**
+     * Notifies the strategy that the given entry has been removed from the work list for processing.
+     */
+    default void visit(WorkList<ContextType>.Entry e) {
+        // do nothing
+    }
+}
@@ -22,14 +22,17 @@ import dk.brics.tajs.util.AnalysisException;
 import org.apache.log4j.Logger;
 
 import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 
-import static dk.brics.tajs.util.Collections.newSet;
+import static dk.brics.tajs.util.Collections.newMap;
 
 /**
  * Work list used by solver.
+ * The priority of the entries is determined by a {@link IWorkListStrategy}.
  */
 public class WorkList<ContextType extends IContext<ContextType>> {
 
@@ -37,20 +40,32 @@ public class WorkList<ContextType extends IContext<ContextType>> {
 
     private TreeSet<Entry> pending_queue;
 
-    private Set<Entry> pending_set; // only for test mode
+    private Map<BlockAndContext<ContextType>, Entry> pending_entries;
 
     private CallGraph<?, ContextType, ?> call_graph;
 
     private ITypeTester<ContextType> ttr;
 
+    private IWorkListStrategy<ContextType> strategy;
+
+    private int next_sequence_number;
+
     /**
-     * Constructs a new empty work list.
+     * Constructs a new empty work list using the strategy selected by the options.
      */
     public WorkList(CallGraph<?, ContextType, ?> call_graph, ITypeTester<ContextType> ttr) {
+        this(call_graph, ttr, WorkListStrategies.make(Options.get().getWorkListStrategy()));
+    }
+
+    /**
+     * Constructs a new empty work list using the given strategy.
+     */
+    public WorkList(CallGraph<?, ContextType, ?> call_graph, ITypeTester<ContextType> ttr, IWorkListStrategy<ContextType> strategy) {
         this.call_graph = call_graph;
         this.ttr = ttr;
+        this.strategy = strategy;
         pending_queue = new TreeSet<>();
-        pending_set = newSet();
+        pending_entries = newMap();
     }
 
     /**
@@ -59,13 +74,15 @@ public class WorkList<ContextType extends IContext<ContextType>> {
      * @return true if changed
      */
     public boolean add(BlockAndContext<ContextType> bc) {
+        if (pending_entries.containsKey(bc))
+            return false;
         Entry e = new Entry(bc);
-        boolean added = pending_queue.add(e);
-        if (added && log.isDebugEnabled())
-            log.debug("Adding worklist entry for " + bc);
-        if (Options.get().isTestEnabled() && pending_set.add(e) != added)
+        if (!pending_queue.add(e))
             throw new AnalysisException("Failed to add to worklist - entries perhaps not totally ordered?");
-        return added;
+        pending_entries.put(bc, e);
+        if (log.isDebugEnabled())
+            log.debug("Adding worklist entry for " + bc);
+        return true;
     }
 
     /**
@@ -80,11 +97,19 @@ public class WorkList<ContextType extends IContext<ContextType>> {
      */
     public BlockAndContext<ContextType> removeNext() {
         Entry e = Objects.requireNonNull(pending_queue.pollFirst());
-        if (Options.get().isTestEnabled() && !pending_set.remove(e))
+        if (pending_entries.remove(e.bc) != e)
             throw new AnalysisException("Failed to remove from worklist - entries perhaps not totally ordered?");
+        strategy.visit(e);
         return e.bc;
     }
 
+    /**
+     * Returns the pending entries, in no particular order.
+     */
+    public Set<BlockAndContext<ContextType>> getPendingEntries() {
+        return Collections.unmodifiableSet(pending_entries.keySet());
+    }
+
     /**
      * Returns the number of entries in the work list.
      */
@@ -104,7 +129,7 @@ public class WorkList<ContextType extends IContext<ContextType>> {
      * Work list entry.
      * Consists of a block and a context.
      */
-    private class Entry implements Comparable<Entry> {
+    public class Entry implements Comparable<Entry> {
 
         private BlockAndContext<ContextType> bc;
 
@@ -116,15 +141,63 @@ public class WorkList<ContextType extends IContext<ContextType>> {
 
         private int context_order; // uniquely determined by bc
 
+        private int sequence_number; // order of creation
+
+        private int priority; // determined by the strategy when created
+
         /**
          * Constructs a new entry.
          */
-        public Entry(BlockAndContext<ContextType> bc) {
+        private Entry(BlockAndContext<ContextType> bc) {
             this.bc = bc;
             hash = bc.hashCode();
             funentry = BlockAndContext.makeEntry(bc.getBlock(), bc.getContext());
             funentry_order = call_graph.getFunctionEntryOrder(funentry);
             context_order = call_graph.getContextOrder(bc.getContext());
+            sequence_number = next_sequence_number++;
+            priority = strategy.getPriority(this);
+        }
+
+        /**
+         * Returns the block and context.
+         */
+        public BlockAndContext<ContextType> getBlockAndContext() {
+            return bc;
+        }
+
+        /**
+         * Returns the entry block and the context at entry of the function.
+         */
+        public BlockAndContext<ContextType> getFunctionEntry() {
+            return funentry;
+        }
+
+        /**
+         * Returns the occurrence order of the function entry.
+         */
+        public int getFunctionEntryOrder() {
+            return funentry_order;
+        }
+
+        /**
+         * Returns the occurrence order of the context.
+         */
+        public int getContextOrder() {
+            return context_order;
+        }
+
+        /**
+         * Returns the number of entries created before this one.
+         */
+        public int getSequenceNumber() {
+            return sequence_number;
+        }
+
+        /**
+         * Returns the priority assigned by the strategy.
+         */
+        public int getPriority() {
+            return priority;
         }
 
         /**
@@ -166,9 +239,6 @@ public class WorkList<ContextType extends IContext<ContextType>> {
             if (bc.equals(other.bc))
                 return 0;
 
-            final int THIS_FIRST = -1;
-            final int OTHER_FIRST = 1;
-
 //            // low priority for event dispatcher node
 //            if (bc.getBlock().getFirstNode() instanceof EventDispatcherNode && !(other.bc.getBlock().getFirstNode() instanceof EventDispatcherNode))
 //                return OTHER_FIRST;
@@ -187,22 +257,10 @@ public class WorkList<ContextType extends IContext<ContextType>> {
                     return c;
             }
 
-            if (funentry.equals(other.funentry)) {
-                // same function and same context at entry: use block order (reverse post order)
-                if (bc.getBlock().getWorklistOrder() < other.bc.getBlock().getWorklistOrder())
-                    return THIS_FIRST;
-                else if (other.bc.getBlock().getWorklistOrder() < bc.getBlock().getWorklistOrder())
-                    return OTHER_FIRST;
-                // same block, same function and context at entry, but different context: order by context number (not important, but need a tiebreaker)
-                return context_order - other.context_order;
-            } else {
-                // different function/context at entry: order by entry occurrence number (lower first)
-                if (funentry_order < other.funentry_order)
-                    return THIS_FIRST;
-                else if (other.funentry_order < funentry_order)
-                    return OTHER_FIRST;
+            int c = strategy.compare(this, other);
+            if (c == 0)
                 throw new AnalysisException("Failed to compare " + this + " + and " + other);
-            }
+            return c;
         }
     }
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2009-2020 Aarhus University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.brics.tajs.solver;
+
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.util.AnalysisException;
+
+import java.util.Map;
+import java.util.Set;
+
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+
+/**
+ * The built-in work list strategies (see <code>-worklist-strategy</code>).
+ */
+public class WorkListStrategies {
+
+    private static final int THIS_FIRST = -1;
+
+    private static final int OTHER_FIRST = 1;
+
+    private WorkListStrategies() { }
+
+    /**
+     * Returns a new strategy with the given name, or the default strategy if the name is null.
+     */
+    public static <ContextType extends IContext<ContextType>> IWorkListStrategy<ContextType> make(String name) {
+        if (name == null)
+            return new Default<>();
+        switch (name) {
+            case "default":
+                return new Default<>();
+            case "wto":
+                return new LoopHeadsLast<>();
+            case "lifo":
+                return new LastInFirstOut<>();
+            case "lrv":
+                return new LeastRecentlyVisited<>();
+            default:
+                throw new AnalysisException("Unknown work list strategy: " + name);
+        }
+    }
+
+    /**
+     * Compares entries by function entry order, then block order (reverse post order), then context order.
+     */
+    private static <ContextType extends IContext<ContextType>> int compareDefault(WorkList<ContextType>.Entry e1, WorkList<ContextType>.Entry e2) {
+        if (e1.getFunctionEntry().equals(e2.getFunctionEntry())) {
+            // same function and same context at entry: use block order (reverse post order)
+            int o1 = e1.getBlockAndContext().getBlock().getWorklistOrder();
+            int o2 = e2.getBlockAndContext().getBlock().getWorklistOrder();
+            if (o1 < o2)
+                return THIS_FIRST;
+            else if (o2 < o1)
+                return OTHER_FIRST;
+            // same block, same function and context at entry, but different context: order by context number (not important, but need a tiebreaker)
+            return Integer.compare(e1.getContextOrder(), e2.getContextOrder());
+        }
+        // different function/context at entry: order by entry occurrence number (lower first)
+        return Integer.compare(e1.getFunctionEntryOrder(), e2.getFunctionEntryOrder());
+    }
+
+    /**
+     * Function entry order, then block order, then context order.
+     */
+    private static class Default<ContextType extends IContext<ContextType>> implements IWorkListStrategy<ContextType> {
+
+        @Override
+        public int getPriority(WorkList<ContextType>.Entry e) {
+            return 0;
+        }
+
+        @Override
+        public int compare(WorkList<ContextType>.Entry e1, WorkList<ContextType>.Entry e2) {
+            return compareDefault(e1, e2);
+        }
+    }
+
+    /**
+     * Like the default strategy, but within a function and context at entry, loop heads (targets of back edges in the
+     * topological block order) are delayed until the other pending blocks have been processed.
+     * This approximates iteration according to a weak topological order, where each loop body is stabilized
+     * before its head is revisited.
+     */
+    private static class LoopHeadsLast<ContextType extends IContext<ContextType>> implements IWorkListStrategy<ContextType> {
+
+        /**
+         * Loop heads per function, together with the number of blocks when computed (functions may be extended during the analysis).
+         */
+        private final Map<Function, LoopHeads> loop_heads = newMap();
+
+        @Override
+        public int getPriority(WorkList<ContextType>.Entry e) {
+            BasicBlock b = e.getBlockAndContext().getBlock();
+            Function f = b.getFunction();
+            LoopHeads h = loop_heads.get(f);
+            if (h == null || h.number_of_blocks != f.getBlocks().size())
+                loop_heads.put(f, h = new LoopHeads(f));
+            return h.blocks.contains(b) ? 1 : 0;
+        }
+
+        @Override
+        public int compare(WorkList<ContextType>.Entry e1, WorkList<ContextType>.Entry e2) {
+            if (e1.getFunctionEntry().equals(e2.getFunctionEntry()) && e1.getPriority() != e2.getPriority())
+                return Integer.compare(e1.getPriority(), e2.getPriority());
+            return compareDefault(e1, e2);
+        }
+
+        private static class LoopHeads {
+
+            private final int number_of_blocks;
+
+            private final Set<BasicBlock> blocks = newSet();
+
+            LoopHeads(Function f) {
+                number_of_blocks = f.getBlocks().size();
+                for (BasicBlock p : f.getBlocks())
+                    for (BasicBlock s : p.getSuccessors())
+                        if (s.getTopologicalOrder() <= p.getTopologicalOrder())
+                            blocks.add(s);
+            }
+        }
+    }
+
+    /**
+     * Function entry order, but the most recently added entry first within a function and context at entry.
+     */
+    private static class LastInFirstOut<ContextType extends IContext<ContextType>> implements IWorkListStrategy<ContextType> {
+
+        @Override
+        public int getPriority(WorkList<ContextType>.Entry e) {
+            return e.getSequenceNumber();
+        }
+
+        @Override
+        public int compare(WorkList<ContextType>.Entry e1, WorkList<ContextType>.Entry e2) {
+            if (e1.getFunctionEntry().equals(e2.getFunctionEntry()))
+                return Integer.compare(e2.getPriority(), e1.getPriority());
+            return compareDefault(e1, e2);
+        }
+    }
+
+    /**
+     * Least recently visited function and context at entry first, then the default order.
+     * Prevents a single hot context (for example, a recursive call cycle) from starving the others.
+     */
+    private static class LeastRecentlyVisited<ContextType extends IContext<ContextType>> implements IWorkListStrategy<ContextType> {
+
+        private final Map<BlockAndContext<ContextType>, Integer> last_visit = newMap();
+
+        private int clock = 0;
+
+        @Override
+        public int getPriority(WorkList<ContextType>.Entry e) {
+            return last_visit.getOrDefault(e.getFunctionEntry(), 0);
+        }
+
+        @Override
+        public int compare(WorkList<ContextType>.Entry e1, WorkList<ContextType>.Entry e2) {
+            if (e1.getPriority() != e2.getPriority())
+                return Integer.compare(e1.getPriority(), e2.getPriority());
+            return compareDefault(e1, e2);
+        }
+
+        @Override
+        public void visit(WorkList<ContextType>.Entry e) {
+            last_visit.put(e.getFunctionEntry(), ++clock);
+        }
+    }
+}
@@ -26,7 +26,9 @@ import dk.brics.tajs.options.Options;
 import dk.brics.tajs.options.TAJSEnvironmentConfig;
 import dk.brics.tajs.util.AnalysisException;
 import dk.brics.tajs.util.Loader;
+import dk.brics.tajs.util.Pair;
 import dk.brics.tajs.util.PathAndURLUtils;
+import dk.brics.tajs.util.Strings;
 import org.apache.log4j.Logger;
 
 import java.io.BufferedReader;
@@ -35,11 +37,16 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
 
 //import org.apache.log4j.Level;
 //import org.apache.log4j.LogManager;
@@ -55,10 +62,12 @@ public class TypeScriptDeclLoader {
 //        LogManager.getLogger(TypeScriptDeclLoader.class).setLevel(Level.DEBUG);
 //    }
 
-    private static SpecReader env; // standard type environment
+    private static Set<String> stdGlobalNames; // names of the global properties in the standard type environment
 
     private static Map<Type, ObjectLabel.Kind> stdTypes = newMap(); // standard types
 
+    private static Map<Pair<Path, String>, Pair<FileTime, Type>> moduleTypes = newMap(); // module types, by .d.ts.json file and module name
+
     /**
      * Attempts to find a TypeScript declaration file for the given JavaScript module, returns null if not found.
      */
@@ -69,7 +78,7 @@ public class TypeScriptDeclLoader {
     /**
      * Loads the type declaration file for the given library, or returns null if not found.
      */
-    private static Type loadTypeScriptDeclarationFile(URL libfile) {
+    public static Type loadTypeScriptDeclarationFile(URL libfile) {
         if (libfile.getProtocol().equals("tajs-host-env"))
             return null;
         if (!libfile.getProtocol().equals("file")) {
@@ -85,12 +94,20 @@ public class TypeScriptDeclLoader {
             Path dtsjsonfile = generateJSONDeclFile(libfilepath);
             if (dtsjsonfile == null)
                 return null;
+            String basename = PathAndURLUtils.removeExtension(libfilepath.getFileName());
+            // reuse the module type if the .d.ts.json file has been loaded before and is unchanged
+            Pair<Path, String> key = Pair.make(dtsjsonfile, basename);
+            FileTime modified = Files.getLastModifiedTime(dtsjsonfile);
+            Pair<FileTime, Type> loaded = moduleTypes.get(key);
+            if (loaded != null && loaded.getFirst().equals(modified))
+                return loaded.getSecond();
             if (log.isDebugEnabled())
                 log.debug("Loading TypeScript declaration file " + dtsjsonfile);
             SpecReader spec = new SpecReader(Loader.getString(dtsjsonfile, StandardCharsets.UTF_8));
-            String basename = PathAndURLUtils.removeExtension(libfilepath.getFileName());
             findStandardTypes(spec);
-            return findModuleType(spec, dtsjsonfile, basename);
+            Type type = findModuleType(spec, dtsjsonfile, basename);
+            moduleTypes.put(key, Pair.make(modified, type));
+            return type;
         } catch (IOException | InterruptedException e) {
             throw new AnalysisException(e);
         }
@@ -114,13 +131,13 @@ public class TypeScriptDeclLoader {
         for (SpecReader.NamedType n : spec.getAmbientTypes())
             if (n.qName.size() == 1 && n.qName.get(0).equals(basename))
                 return n.type;
-        // load empty environment (if not done already)
-        if (env == null)
-            env = new SpecReader(Loader.getString(TypeScriptDeclLoader.class.getResource("/tsspecs/es6-dom.json"), StandardCharsets.UTF_8));
+        // load the global names of the empty environment (if not done already), the types themselves are not needed
+        if (stdGlobalNames == null)
+            stdGlobalNames = newSet(new SpecReader(Loader.getString(TypeScriptDeclLoader.class.getResource("/tsspecs/es6-dom.json"), StandardCharsets.UTF_8)).getGlobal().getDeclaredProperties().keySet());
         // look for user-defined global property
         Map<String, Type> userDefinedTypes = newMap();
         for (Map.Entry<String, Type> entry : spec.getGlobal().getDeclaredProperties().entrySet())
-            if (!env.getGlobal().getDeclaredProperties().containsKey(entry.getKey()) && !entry.getKey().equals("global"))
+            if (!stdGlobalNames.contains(entry.getKey()) && !entry.getKey().equals("global"))
                 userDefinedTypes.put(entry.getKey(), entry.getValue());
         if (userDefinedTypes.size() == 1)
             return userDefinedTypes.values().stream().findFirst().get();
@@ -129,6 +146,8 @@ public class TypeScriptDeclLoader {
 
     /**
      * If the .d.ts.json file is missing or outdated, attempt to (re-)generate it.
+     * The .d.ts.json file is up-to-date if it has been generated from a .d.ts file with the same content hash,
+     * as recorded in a .d.ts.json.sha256 file, or, if no hash has been recorded, if it is newer than the .d.ts file.
      *
      * @param libfilepath path of library file
      * @return URL of .d.t.json file
@@ -159,7 +178,16 @@ public class TypeScriptDeclLoader {
         }
         // convert .d.ts to .d.ts.json if necessary
         File dtsjson = new File(dtsfile + ".json");
-        if (!dtsjson.exists() || dts.lastModified() >= dtsjson.lastModified()) { // TODO: timestamp useless if files checked out together :-(
+        Path dtshash = Paths.get(dtsfile + ".json.sha256");
+        String hash = Strings.sha256(Loader.getString(dts.toPath(), StandardCharsets.UTF_8));
+        boolean upToDate;
+        if (!dtsjson.exists())
+            upToDate = false;
+        else if (Files.exists(dtshash))
+            upToDate = hash.equals(Loader.getString(dtshash, StandardCharsets.UTF_8).trim());
+        else
+            upToDate = dts.lastModified() < dtsjson.lastModified(); // timestamp useless if files checked out together, but needed for .d.ts.json files generated without a hash
+        if (!upToDate) {
             if (!Options.get().isTestEnabled())
                 log.info("Converting " + dtsfile + " to .json");
             String[] cmd = {
@@ -179,6 +207,7 @@ public class TypeScriptDeclLoader {
                 log.error("Error:\n" + err);
                 throw new AnalysisException("Unable to convert .d.ts file " + dts);
             }
+            Files.write(dtshash, hash.getBytes(StandardCharsets.UTF_8));
         }
         return dtsjson.toPath();
     }
@@ -17,9 +17,11 @@
 package dk.brics.tajs.util;
 
 import java.lang.ref.WeakReference;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import static dk.brics.tajs.util.Collections.newMap;
 
@@ -30,8 +32,15 @@ public class Canonicalizer {
 
     private static Canonicalizer instance;
 
+    /**
+     * Canonical instances that survive {@link #reset()}, or null if none.
+     */
+    private static Collection<? extends DeepImmutable> retained;
+
     private final Map<DeepImmutable, WeakReference<DeepImmutable>> canonicalInstances = newMap();
 
+    private final Map<Object, WeakReference<Object>> weakCanonicalInstances = new WeakHashMap<>();
+
     private int cacheHits = 0;
 
     private int cacheMisses = 0;
@@ -45,10 +54,22 @@ public class Canonicalizer {
     public static Canonicalizer get() {
         if (instance == null) {
             instance = new Canonicalizer();
+            if (retained != null)
+                for (DeepImmutable x : retained)
+                    instance.canonicalInstances.put(x, new WeakReference<>(x));
         }
         return instance;
     }
 
+    /**
+     * Sets the canonical instances to retain across resets, replacing any previously retained instances.
+     * The instances must be canonical and pairwise distinct, and they must not depend on state that is discarded at reset.
+     * The current canonicalizer is not affected.
+     */
+    public static void setRetained(Collection<? extends DeepImmutable> instances) {
+        retained = instances;
+    }
+
     public int getCacheHits() {
         return cacheHits;
     }
@@ -57,6 +78,13 @@ public class Canonicalizer {
         return cacheMisses;
     }
 
+    /**
+     * Returns the number of canonical instances, including instances that have been garbage collected but not yet evicted.
+     */
+    public int getSize() {
+        return canonicalInstances.size() + weakCanonicalInstances.size();
+    }
+
     /**
      * Checks whether an object is currently being canonicalized.
      */
@@ -85,6 +113,24 @@ public class Canonicalizer {
         }
     }
 
+    /**
+     * Canonicalizes the given instance without retaining it.
+     * Unlike {@link #canonicalize(DeepImmutable)}, the canonical instance can be garbage collected when it is no longer used elsewhere.
+     * The instance must be immutable in practice!
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T canonicalizeWeakly(T instance) {
+        WeakReference<Object> canonical = weakCanonicalInstances.get(instance);
+        Object c = canonical != null ? canonical.get() : null;
+        if (c == null) {
+            weakCanonicalInstances.put(instance, new WeakReference<>(instance));
+            cacheMisses++;
+            return instance;
+        }
+        cacheHits++;
+        return (T) c;
+    }
+
     /**
      * Canonicalizes a set into an immutable version.
      */
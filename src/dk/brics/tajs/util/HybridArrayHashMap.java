@@ -19,26 +19,36 @@ package dk.brics.tajs.util;
 import dk.brics.tajs.options.Options;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.AbstractCollection;
 import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 
 /**
  * Hybrid of array and hash map.
- * Small maps are represented as arrays; above a certain threshold a hash map is used instead.
+ * Small maps are represented as compact arrays; above a certain threshold an open addressing hash table is used instead.
  * Moreover, empty maps and singleton maps are represented with just a reference.
  * Keys cannot be null.
+ * <p>
+ * The hash table uses linear probing and stores the hash codes of the keys, so lookups call
+ * {@link Object#equals(Object)} only for keys with the same hash code.
+ * {@link #forEach(BiConsumer)} and {@link #replaceAll(BiFunction)} do not allocate,
+ * and iteration over keys and values only allocates the iterator.
  */
 public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
-    // invariant: at most one of singleton_key, array and hashmap is non-null
+    // invariant: at most one of singleton_key, array_keys and hash_keys is non-null
 
     private static final String NULL_KEY = "HybridArrayHashMap does not permit null keys";
 
@@ -47,35 +57,68 @@ public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
      */
     private static final int ARRAY_SIZE = Options.Constants.HYBRID_ARRAY_HASH_MAP_ARRAY_SIZE;
 
+    /**
+     * Initial capacity of the arrays.
+     */
+    private static final int INITIAL_ARRAY_CAPACITY = Math.min(4, ARRAY_SIZE);
+
+    /**
+     * Marker for removed entries in the hash table.
+     */
+    private static final Object REMOVED = new Object();
+
     /**
      * The key for singletons. Null if not singleton.
      */
-    private K singleton_key;
+    private transient K singleton_key;
 
     /**
      * The value, for singletons. Null if not singleton.
      */
-    private V singleton_value;
+    private transient V singleton_value;
 
     /**
      * The array with the item keys. Null if the array is not used.
+     * The items are stored contiguously from index 0.
      */
-    private Object[] array_keys;
+    private transient Object[] array_keys;
 
     /**
      * The array with the item values. Null if the array is not used.
      */
-    private Object[] array_values;
+    private transient Object[] array_values;
 
     /**
      * Counter for the number of items in the container.
      */
-    private int number_of_used_array_entries; // = number of non-null entries in array_keys. if non-null
+    private transient int number_of_used_array_entries; // = number of items in array_keys, if non-null
+
+    /**
+     * The hash table keys. Null if the hash table is not used.
+     * A slot is either free (null), removed ({@link #REMOVED}), or contains a key.
+     * The length is a power of two, and at least one slot is always free.
+     */
+    private transient Object[] hash_keys;
+
+    /**
+     * The hash table values, parallel to <code>hash_keys</code>.
+     */
+    private transient Object[] hash_values;
+
+    /**
+     * The hash codes of the keys in the hash table, parallel to <code>hash_keys</code>.
+     */
+    private transient int[] hash_codes;
 
     /**
-     * The hash map with the items. Null if the hashmap is not used.
+     * Number of keys in the hash table.
      */
-    private HashMap<K, V> hashmap;
+    private transient int hash_size;
+
+    /**
+     * Number of slots in the hash table that are not free (keys and removed markers).
+     */
+    private transient int hash_used;
 
     /**
      * Constructs a new empty hybrid map.
@@ -87,112 +130,241 @@ public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
     /**
      * Constructs a new hybrid map from the given map.
      */
+    @SuppressWarnings("unchecked")
     public HybridArrayHashMap(Map<K, V> m) {
-        int m_size = m.size();
-        if (m_size == 0)
-            return;
-        if (m_size == 1) {
-            Entry<K, V> e = getFirstEntry(m);
-            singleton_key = e.getKey();
-            singleton_value = e.getValue();
-        } else if (m_size <= ARRAY_SIZE) {
-            array_keys = new Object[ARRAY_SIZE];
-            array_values = new Object[ARRAY_SIZE];
-            number_of_used_array_entries = 0;
-            for (Entry<K, V> e : m.entrySet()) {
-                K key = e.getKey();
-                if (key == null)
-                    throw new NullPointerException(NULL_KEY);
-                V value = e.getValue();
-                array_keys[number_of_used_array_entries] = key;
-                array_values[number_of_used_array_entries++] = value;
+        if (m instanceof HybridArrayHashMap<?, ?>)
+            copyFrom((HybridArrayHashMap<K, V>) m);
+        else
+            putAll(m);
+    }
+
+    /**
+     * Copies the representation of the given map into this empty map.
+     */
+    private void copyFrom(HybridArrayHashMap<? extends K, ? extends V> m) {
+        if (m.singleton_key != null) {
+            singleton_key = m.singleton_key;
+            singleton_value = m.singleton_value;
+        } else if (m.array_keys != null) {
+            if (m.number_of_used_array_entries == 0)
+                return;
+            array_keys = Arrays.copyOf(m.array_keys, m.array_keys.length);
+            array_values = Arrays.copyOf(m.array_values, m.array_values.length);
+            number_of_used_array_entries = m.number_of_used_array_entries;
+        } else if (m.hash_keys != null) {
+            if (m.hash_used == m.hash_size) {
+                hash_keys = m.hash_keys.clone();
+                hash_values = m.hash_values.clone();
+                hash_codes = m.hash_codes.clone();
+                hash_size = hash_used = m.hash_size;
+            } else { // leave out the removed markers
+                initHashTable(m.hash_size);
+                for (int i = 0; i < m.hash_keys.length; i++) {
+                    Object k = m.hash_keys[i];
+                    if (k != null && k != REMOVED)
+                        insertHash(k, m.hash_values[i], m.hash_codes[i]);
+                }
             }
-        } else {
-            for (K k : m.keySet())
-                if (k == null)
-                    throw new NullPointerException(NULL_KEY);
-            hashmap = new HashMap<>(m_size + ARRAY_SIZE);
-            hashmap.putAll(m);
+        }
+    }
+
+    @Override
+    public void clear() {
+        singleton_key = null;
+        singleton_value = null;
+        array_keys = null;
+        array_values = null;
+        number_of_used_array_entries = 0;
+        hash_keys = null;
+        hash_values = null;
+        hash_codes = null;
+        hash_size = hash_used = 0;
+    }
+
+    /**
+     * Scrambles the hash code before indexing.
+     * Hash codes of similar keys (for example, property names that differ only in the last character) are often
+     * consecutive, which would give long probe sequences with linear probing.
+     */
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the hash table capacity needed for the given number of keys.
+     */
+    private static int capacityFor(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size, ARRAY_SIZE) * 2);
+        while (capacity * 3 < (size + 1) * 4)
+            capacity *= 2;
+        return capacity;
+    }
+
+    /**
+     * Returns the index of the given key in the array, or -1 if absent.
+     */
+    private int arrayIndexOf(Object key) {
+        for (int i = 0; i < number_of_used_array_entries; i++) {
+            Object k = array_keys[i];
+            if (k == key || k.equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the given non-null key in the hash table, or -1 if absent.
+     */
+    private int hashIndexOf(Object key) {
+        int h = key.hashCode();
+        int mask = hash_keys.length - 1;
+        for (int i = spread(h) & mask; ; i = (i + 1) & mask) {
+            Object k = hash_keys[i];
+            if (k == null)
+                return -1;
+            if (k == key || (hash_codes[i] == h && k != REMOVED && k.equals(key)))
+                return i;
+        }
+    }
+
+    /**
+     * Creates an empty hash table with room for the given number of keys.
+     */
+    private void initHashTable(int size) {
+        int capacity = capacityFor(size);
+        hash_keys = new Object[capacity];
+        hash_values = new Object[capacity];
+        hash_codes = new int[capacity];
+        hash_size = hash_used = 0;
+    }
+
+    /**
+     * Inserts a key that is known to be absent from the hash table, which must have room for it.
+     */
+    private void insertHash(Object key, Object value, int h) {
+        int mask = hash_keys.length - 1;
+        int i = spread(h) & mask;
+        while (hash_keys[i] != null)
+            i = (i + 1) & mask;
+        hash_keys[i] = key;
+        hash_values[i] = value;
+        hash_codes[i] = h;
+        hash_size++;
+        hash_used++;
+    }
+
+    /**
+     * Rebuilds the hash table with room for the given number of keys, dropping the removed markers.
+     */
+    private void rehash(int size) {
+        Object[] old_keys = hash_keys;
+        Object[] old_values = hash_values;
+        int[] old_codes = hash_codes;
+        initHashTable(size);
+        for (int i = 0; i < old_keys.length; i++) {
+            Object k = old_keys[i];
+            if (k != null && k != REMOVED)
+                insertHash(k, old_values[i], old_codes[i]);
         }
     }
 
     @SuppressWarnings("unchecked")
-    private static <K, V> Entry<K, V> getFirstEntry(Map<K, V> m) {
-        if (!(m instanceof HybridArrayHashMap<?, ?>))
-            return m.entrySet().iterator().next();
-        HybridArrayHashMap<?, ?> map = (HybridArrayHashMap<?, ?>) m;
-        if (map.singleton_key != null)
-            return new MapEntry<>((K) map.singleton_key, (V) map.singleton_value);
-        if (map.array_keys != null) {
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (map.array_keys[i] != null)
-                    return new MapEntry<>((K) map.array_keys[i], (V) map.array_values[i]);
-            return null;
+    private V putHash(K key, V value) {
+        if ((hash_used + 1) * 4 > hash_keys.length * 3)
+            rehash(hash_size + 1);
+        int h = key.hashCode();
+        int mask = hash_keys.length - 1;
+        int removed = -1;
+        for (int i = spread(h) & mask; ; i = (i + 1) & mask) {
+            Object k = hash_keys[i];
+            if (k == null) {
+                if (removed != -1)
+                    i = removed;
+                else
+                    hash_used++;
+                hash_keys[i] = key;
+                hash_values[i] = value;
+                hash_codes[i] = h;
+                hash_size++;
+                return null;
+            }
+            if (k == REMOVED) {
+                if (removed == -1)
+                    removed = i;
+            } else if (k == key || (hash_codes[i] == h && k.equals(key))) {
+                V old = (V) hash_values[i];
+                hash_values[i] = value;
+                return old;
+            }
         }
-        if (map.hashmap != null)
-            return (Entry<K, V>) map.hashmap.entrySet().iterator().next();
-        return null;
     }
 
-    @Override
-    public void clear() {
-        if (singleton_key != null) {
-            singleton_key = null;
-            singleton_value = null;
-        } else if (array_keys != null) {
-            Arrays.fill(array_keys, null);
-            Arrays.fill(array_values, null);
-            number_of_used_array_entries = 0;
-        } else if (hashmap != null)
-            hashmap.clear();
+    private void removeArrayEntry(int i) {
+        int last = --number_of_used_array_entries;
+        array_keys[i] = array_keys[last];
+        array_values[i] = array_values[last];
+        array_keys[last] = null;
+        array_values[last] = null;
+    }
+
+    private void removeHashEntry(int i) {
+        hash_keys[i] = REMOVED;
+        hash_values[i] = null;
+        hash_size--;
     }
 
     @Override
     public boolean containsKey(Object key) {
-        if (singleton_key != null)
-            return singleton_key.equals(key);
-        if (array_keys != null) {
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (array_keys[i] != null && array_keys[i].equals(key))
-                    return true;
+        if (key == null)
             return false;
-        }
-        if (hashmap != null)
-            return hashmap.containsKey(key);
+        if (singleton_key != null)
+            return singleton_key == key || singleton_key.equals(key);
+        if (array_keys != null)
+            return arrayIndexOf(key) != -1;
+        if (hash_keys != null)
+            return hashIndexOf(key) != -1;
         return false;
     }
 
     @Override
     public boolean containsValue(Object value) {
         if (singleton_key != null)
-            return singleton_value.equals(value);
+            return Objects.equals(singleton_value, value);
         if (array_keys != null) {
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (array_keys[i] != null && array_values[i].equals(value))
+            for (int i = 0; i < number_of_used_array_entries; i++)
+                if (Objects.equals(array_values[i], value))
                     return true;
             return false;
         }
-        if (hashmap != null)
-            return hashmap.containsValue(value);
+        if (hash_keys != null) {
+            for (int i = 0; i < hash_keys.length; i++) {
+                Object k = hash_keys[i];
+                if (k != null && k != REMOVED && Objects.equals(hash_values[i], value))
+                    return true;
+            }
+        }
         return false;
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public V get(Object key) {
+        if (key == null)
+            return null;
         if (singleton_key != null) {
-            if (singleton_key.equals(key))
+            if (singleton_key == key || singleton_key.equals(key))
                 return singleton_value;
             return null;
         }
         if (array_keys != null) {
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (array_keys[i] != null && array_keys[i].equals(key))
-                    return (V) array_values[i];
-            return null;
+            int i = arrayIndexOf(key);
+            return i != -1 ? (V) array_values[i] : null;
+        }
+        if (hash_keys != null) {
+            int i = hashIndexOf(key);
+            return i != -1 ? (V) hash_values[i] : null;
         }
-        if (hashmap != null)
-            return hashmap.get(key);
         return null;
     }
 
@@ -202,7 +374,7 @@ public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
         if (key == null)
             throw new NullPointerException(NULL_KEY);
         if (singleton_key != null) {
-            if (singleton_key.equals(key)) {
+            if (singleton_key == key || singleton_key.equals(key)) {
                 V old = singleton_value;
                 singleton_value = value;
                 return old;
@@ -210,32 +382,34 @@ public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
             convertSingletonToArray();
         }
         if (array_keys != null) {
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (array_keys[i] != null && array_keys[i].equals(key)) {
-                    V old = (V) array_values[i];
-                    array_values[i] = value;
-                    return old;
-                }
-            for (int i = 0; i < ARRAY_SIZE; i++) {
-                if (array_keys[i] == null) {
-                    array_keys[i] = key;
-                    array_values[i] = value;
-                    number_of_used_array_entries++;
-                    return null;
+            int i = arrayIndexOf(key);
+            if (i != -1) {
+                V old = (V) array_values[i];
+                array_values[i] = value;
+                return old;
+            }
+            if (number_of_used_array_entries < ARRAY_SIZE) {
+                if (number_of_used_array_entries == array_keys.length) {
+                    int capacity = Math.min(ARRAY_SIZE, array_keys.length * 2);
+                    array_keys = Arrays.copyOf(array_keys, capacity);
+                    array_values = Arrays.copyOf(array_values, capacity);
                 }
+                array_keys[number_of_used_array_entries] = key;
+                array_values[number_of_used_array_entries++] = value;
+                return null;
             }
-            convertArrayToHashMap();
+            convertArrayToHashMap(number_of_used_array_entries + 1);
         }
-        if (hashmap != null)
-            return hashmap.put(key, value);
+        if (hash_keys != null)
+            return putHash(key, value);
         singleton_key = key;
         singleton_value = value;
         return null;
     }
 
     private void convertSingletonToArray() {
-        array_keys = new Object[ARRAY_SIZE];
-        array_values = new Object[ARRAY_SIZE];
+        array_keys = new Object[INITIAL_ARRAY_CAPACITY];
+        array_values = new Object[INITIAL_ARRAY_CAPACITY];
         array_keys[0] = singleton_key;
         array_values[0] = singleton_value;
         number_of_used_array_entries = 1;
@@ -243,88 +417,56 @@ public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
         singleton_value = null;
     }
 
-    @SuppressWarnings("unchecked")
-    private void convertArrayToHashMap() {
-        hashmap = new HashMap<>(ARRAY_SIZE * 2);
-        for (int i = 0; i < ARRAY_SIZE; i++) {
-            K key = (K) array_keys[i];
-            if (key != null) {
-                V value = (V) array_values[i];
-                hashmap.put(key, value);
-            }
+    private void convertArrayToHashMap(int size) {
+        initHashTable(size);
+        for (int i = 0; i < number_of_used_array_entries; i++) {
+            Object k = array_keys[i];
+            insertHash(k, array_values[i], k.hashCode());
         }
         array_keys = null;
         array_values = null;
         number_of_used_array_entries = 0;
     }
 
+    private void convertSingletonToHashMap(int size) {
+        initHashTable(size);
+        insertHash(singleton_key, singleton_value, singleton_key.hashCode());
+        singleton_key = null;
+        singleton_value = null;
+    }
+
     @Override
     public void putAll(@Nonnull Map<? extends K, ? extends V> m) {
         int m_size = m.size();
         if (m_size == 0)
             return;
-        int max_new_size = m_size + size();
-        if (array_keys == null && hashmap == null && max_new_size == 1) {
-            Entry<? extends K, ? extends V> e = getFirstEntry(m);
-            K key = e.getKey();
-            if (key == null)
-                throw new NullPointerException(NULL_KEY);
-            singleton_key = key;
-            singleton_value = e.getValue();
+        int size = size();
+        if (size == 0 && m instanceof HybridArrayHashMap<?, ?>) {
+            clear();
+            copyFrom((HybridArrayHashMap<? extends K, ? extends V>) m);
             return;
         }
-        if (array_keys == null && hashmap == null && max_new_size <= ARRAY_SIZE) {
+        int max_new_size = m_size + size;
+        if (max_new_size > ARRAY_SIZE) { // make room for all the new entries at once
             if (singleton_key != null)
-                convertSingletonToArray();
-            else {
-                array_keys = new Object[ARRAY_SIZE];
-                array_values = new Object[ARRAY_SIZE];
-                number_of_used_array_entries = 0;
-            }
-        }
-        if (array_keys != null && max_new_size <= ARRAY_SIZE) {
-            int next = 0;
-            loop:
-            for (Entry<? extends K, ? extends V> f : m.entrySet()) {
-                K key = f.getKey();
-                if (key == null)
-                    throw new NullPointerException(NULL_KEY);
-                V value = f.getValue();
-                for (int i = 0; i < ARRAY_SIZE; i++)
-                    if (array_keys[i] != null && array_keys[i].equals(key)) {
-                        array_values[i] = value;
-                        continue loop;
-                    }
-                while (array_keys[next] != null)
-                    next++;
-                array_keys[next] = key;
-                array_values[next++] = value;
-                number_of_used_array_entries++;
-            }
-            return;
-        }
-        for (K k : m.keySet())
-            if (k == null)
-                throw new NullPointerException(NULL_KEY);
-        if (array_keys != null) {
-            convertArrayToHashMap();
-        }
-        if (hashmap == null) {
-            hashmap = new HashMap<>(ARRAY_SIZE + max_new_size);
-        }
-        if (singleton_key != null) {
-            hashmap.put(singleton_key, singleton_value);
-            singleton_key = null;
-            singleton_value = null;
-        }
-        hashmap.putAll(m);
+                convertSingletonToHashMap(max_new_size);
+            else if (array_keys != null)
+                convertArrayToHashMap(max_new_size);
+            else if (hash_keys == null)
+                initHashTable(max_new_size);
+            else if ((hash_used + m_size) * 4 > hash_keys.length * 3)
+                rehash(max_new_size);
+        }
+        m.forEach(this::put);
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public V remove(Object key) {
+        if (key == null)
+            return null;
         if (singleton_key != null) {
-            if (singleton_key.equals(key)) {
+            if (singleton_key == key || singleton_key.equals(key)) {
                 V old = singleton_value;
                 singleton_key = null;
                 singleton_value = null;
@@ -333,19 +475,21 @@ public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
             return null;
         }
         if (array_keys != null) {
-            for (int i = 0; i < ARRAY_SIZE; i++) {
-                if (array_keys[i] != null && array_keys[i].equals(key)) {
-                    V v = (V) array_values[i];
-                    array_keys[i] = null;
-                    array_values[i] = null;
-                    number_of_used_array_entries--;
-                    return v;
-                }
-            }
-            return null;
+            int i = arrayIndexOf(key);
+            if (i == -1)
+                return null;
+            V v = (V) array_values[i];
+            removeArrayEntry(i);
+            return v;
+        }
+        if (hash_keys != null) {
+            int i = hashIndexOf(key);
+            if (i == -1)
+                return null;
+            V v = (V) hash_values[i];
+            removeHashEntry(i);
+            return v;
         }
-        if (hashmap != null)
-            return hashmap.remove(key);
         return null;
     }
 
@@ -355,48 +499,88 @@ public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
             return 1;
         else if (array_keys != null)
             return number_of_used_array_entries;
-        else if (hashmap != null)
-            return hashmap.size();
+        else if (hash_keys != null)
+            return hash_size;
         return 0;
     }
 
     @Override
     public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
         if (singleton_key != null)
-            return false;
+            action.accept(singleton_key, singleton_value);
+        else if (array_keys != null) {
+            int n = number_of_used_array_entries;
+            for (int i = 0; i < n; i++)
+                action.accept((K) array_keys[i], (V) array_values[i]);
+            if (n != number_of_used_array_entries)
+                throw new ConcurrentModificationException();
+        } else if (hash_keys != null) {
+            Object[] keys = hash_keys;
+            for (int i = 0; i < keys.length; i++) {
+                Object k = keys[i];
+                if (k != null && k != REMOVED)
+                    action.accept((K) k, (V) hash_values[i]);
+            }
+            if (keys != hash_keys)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (singleton_key != null)
+            singleton_value = function.apply(singleton_key, singleton_value);
+        else if (array_keys != null) {
+            for (int i = 0; i < number_of_used_array_entries; i++)
+                array_values[i] = function.apply((K) array_keys[i], (V) array_values[i]);
+        } else if (hash_keys != null) {
+            for (int i = 0; i < hash_keys.length; i++) {
+                Object k = hash_keys[i];
+                if (k != null && k != REMOVED)
+                    hash_values[i] = function.apply((K) k, (V) hash_values[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyAt(int slot) {
+        if (singleton_key != null)
+            return singleton_key;
         if (array_keys != null)
-            return number_of_used_array_entries == 0;
-        if (hashmap != null)
-            return hashmap.isEmpty();
-        return true;
+            return (K) array_keys[slot];
+        return (K) hash_keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int slot) {
+        if (singleton_key != null)
+            return singleton_value;
+        if (array_keys != null)
+            return (V) array_values[slot];
+        return (V) hash_values[slot];
     }
 
+    @Nonnull
     @Override
     public Collection<V> values() {
-        if (hashmap != null)
-            return hashmap.values();
         return new AbstractCollection<V>() {
 
             @Nonnull
             @Override
             public Iterator<V> iterator() {
-                if (singleton_key != null) {
-                    return new SingletonIterator<V>() {
-                        @Override
-                        public V next() {
-                            return nextValue();
-                        }
-                    };
-                }
-                if (array_keys != null) {
-                    return new ArrayIterator<V>() {
-                        @Override
-                        public V next() {
-                            return nextValue();
-                        }
-                    };
-                }
-                return new EmptyIterator<>();
+                return new SlotIterator<V>() {
+                    @Override
+                    public V next() {
+                        return valueAt(nextSlot());
+                    }
+                };
             }
 
             @Override
@@ -411,45 +595,26 @@ public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
 
             @Override
             public boolean contains(Object o) {
-                if (singleton_key != null)
-                    return singleton_value.equals(o);
-                if (array_keys != null) {
-                    for (int i = 0; i < ARRAY_SIZE; i++) {
-                        if (array_keys[i] != null && array_values[i].equals(o))
-                            return true;
-                    }
-                }
-                return false;
+                return containsValue(o);
             }
         };
     }
 
+    @Nonnull
     @Override
     public Set<Entry<K, V>> entrySet() {
-        if (hashmap != null)
-            return hashmap.entrySet();
         return new AbstractSet<Entry<K, V>>() {
 
             @Nonnull
             @Override
             public Iterator<Entry<K, V>> iterator() {
-                if (singleton_key != null) {
-                    return new SingletonIterator<Entry<K, V>>() {
-                        @Override
-                        public Entry<K, V> next() {
-                            return nextEntry();
-                        }
-                    };
-                }
-                if (array_keys != null) {
-                    return new ArrayIterator<Entry<K, V>>() {
-                        @Override
-                        public Entry<K, V> next() {
-                            return nextEntry();
-                        }
-                    };
-                }
-                return new EmptyIterator<>();
+                return new SlotIterator<Entry<K, V>>() {
+                    @Override
+                    public Entry<K, V> next() {
+                        int slot = nextSlot();
+                        return new SlotEntry(slot, keyAt(slot), valueAt(slot));
+                    }
+                };
             }
 
             @Override
@@ -467,46 +632,26 @@ public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
                 if (!(o instanceof Entry<?, ?>))
                     return false;
                 Entry<?, ?> e = (Entry<?, ?>) o;
-                if (singleton_key != null)
-                    return singleton_key.equals(e.getKey()) && singleton_value.equals(e.getValue());
-                if (array_keys != null) {
-                    for (int i = 0; i < ARRAY_SIZE; i++) {
-                        if (array_keys[i] != null && array_keys[i].equals(e.getKey()) && array_values[i].equals(e.getValue())) {
-                            return true;
-                        }
-                    }
-                }
-                return false;
+                Object key = e.getKey();
+                return containsKey(key) && Objects.equals(get(key), e.getValue());
             }
         };
     }
 
+    @Nonnull
     @Override
     public Set<K> keySet() {
-        if (hashmap != null)
-            return hashmap.keySet();
         return new AbstractSet<K>() {
 
             @Nonnull
             @Override
             public Iterator<K> iterator() {
-                if (singleton_key != null) {
-                    return new SingletonIterator<K>() {
-                        @Override
-                        public K next() {
-                            return nextKey();
-                        }
-                    };
-                }
-                if (array_keys != null) {
-                    return new ArrayIterator<K>() {
-                        @Override
-                        public K next() {
-                            return nextKey();
-                        }
-                    };
-                }
-                return new EmptyIterator<>();
+                return new SlotIterator<K>() {
+                    @Override
+                    public K next() {
+                        return keyAt(nextSlot());
+                    }
+                };
             }
 
             @Override
@@ -521,15 +666,15 @@ public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
 
             @Override
             public boolean contains(Object o) {
-                if (singleton_key != null)
-                    return singleton_key.equals(o);
-                if (array_keys != null) {
-                    for (int i = 0; i < ARRAY_SIZE; i++) {
-                        if (array_keys[i] != null && array_keys[i].equals(o))
-                            return true;
-                    }
-                }
-                return false;
+                return containsKey(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                if (!containsKey(o))
+                    return false;
+                HybridArrayHashMap.this.remove(o);
+                return true;
             }
         };
     }
@@ -549,167 +694,167 @@ public final class HybridArrayHashMap<K, V> implements Map<K, V>, Serializable {
             if (singleton_key != null && h.singleton_key != null)
                 return singleton_key.equals(h.singleton_key) && (Objects.equals(singleton_value, h.singleton_value));
         }
-        return entrySet().equals(m.entrySet());
+        if (singleton_key != null)
+            return containsEntry(m, singleton_key, singleton_value);
+        if (array_keys != null) {
+            for (int i = 0; i < number_of_used_array_entries; i++)
+                if (!containsEntry(m, array_keys[i], array_values[i]))
+                    return false;
+        } else if (hash_keys != null) {
+            for (int i = 0; i < hash_keys.length; i++) {
+                Object k = hash_keys[i];
+                if (k != null && k != REMOVED && !containsEntry(m, k, hash_values[i]))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsEntry(Map<?, ?> m, Object key, Object value) {
+        Object v = m.get(key);
+        if (v == null)
+            return value == null && m.containsKey(key);
+        return v.equals(value);
     }
 
     @Override
     public int hashCode() { // see contract for Map.hashCode
         if (singleton_key != null)
-            return singleton_key.hashCode() ^ (singleton_value == null ? 0 : singleton_value.hashCode());
+            return singleton_key.hashCode() ^ Objects.hashCode(singleton_value);
+        int h = 0;
         if (array_keys != null) {
-            int h = 0;
-            for (int i = 0; i < ARRAY_SIZE; i++) {
-                if (array_keys[i] != null)
-                    h += array_keys[i].hashCode() ^ (array_values[i] == null ? 0 : array_values[i].hashCode());
+            for (int i = 0; i < number_of_used_array_entries; i++)
+                h += array_keys[i].hashCode() ^ Objects.hashCode(array_values[i]);
+        } else if (hash_keys != null) {
+            for (int i = 0; i < hash_keys.length; i++) {
+                Object k = hash_keys[i];
+                if (k != null && k != REMOVED)
+                    h += hash_codes[i] ^ Objects.hashCode(hash_values[i]);
             }
-            return h;
         }
-        if (hashmap != null)
-            return hashmap.hashCode();
-        return 0;
+        return h;
     }
 
     @Override
     public String toString() {
         if (singleton_key != null)
             return "[" + singleton_key + '=' + singleton_value + ']';
-        if (array_keys != null) {
-            StringBuilder b = new StringBuilder();
-            b.append('{');
-            boolean first = true;
-            for (int i = 0; i < ARRAY_SIZE; i++) {
-                if (array_keys[i] != null) {
-                    if (first)
-                        first = false;
-                    else
-                        b.append(", ");
-                    b.append(array_keys[i]).append('=').append(array_values[i]);
-                }
-            }
-            b.append('}');
-            return b.toString();
-        }
-        if (hashmap != null)
-            return hashmap.toString();
-        return "[]";
+        if (array_keys == null && hash_keys == null)
+            return "[]";
+        StringBuilder b = new StringBuilder();
+        b.append('{');
+        boolean first = true;
+        for (Entry<K, V> e : entrySet()) {
+            if (first)
+                first = false;
+            else
+                b.append(", ");
+            b.append(e.getKey()).append('=').append(e.getValue());
+        }
+        b.append('}');
+        return b.toString();
     }
 
-    private abstract class ArrayIterator<E> implements Iterator<E> {
-
-        int next, last;
-
-        ArrayIterator() {
-            findNext();
-            last = -1;
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size());
+        for (Entry<K, V> e : entrySet()) {
+            out.writeObject(e.getKey());
+            out.writeObject(e.getValue());
         }
+    }
 
-        private void findNext() {
-            while (next < ARRAY_SIZE && array_keys[next] == null)
-                next++;
-        }
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++)
+            put((K) in.readObject(), (V) in.readObject());
+    }
 
-        @Override
-        public boolean hasNext() {
-            return next < ARRAY_SIZE;
-        }
+    /**
+     * Iterator over the slots of the current representation.
+     * Slot 0 is the singleton, array slots are indexes into the compact array, and hash slots are indexes into the hash table.
+     */
+    private abstract class SlotIterator<E> implements Iterator<E> {
 
-        public Entry<K, V> nextEntry() {
-            if (next == ARRAY_SIZE)
-                throw new NoSuchElementException();
-            last = next;
-            @SuppressWarnings("unchecked")
-            Entry<K, V> e = new MapEntry<>((K) array_keys[next], (V) array_values[next++]);
-            findNext();
-            return e;
-        }
+        private int next;
 
-        public K nextKey() {
-            if (next == ARRAY_SIZE)
-                throw new NoSuchElementException();
-            last = next;
-            @SuppressWarnings("unchecked")
-            K k = (K) array_keys[next++];
-            findNext();
-            return k;
-        }
+        private int last = -1;
 
-        public V nextValue() {
-            if (next == ARRAY_SIZE)
-                throw new NoSuchElementException();
-            last = next;
-            @SuppressWarnings("unchecked")
-            V v = (V) array_values[next++];
-            findNext();
-            return v;
+        SlotIterator() {
+            skipFreeHashSlots();
         }
 
-        @Override
-        public void remove() {
-            if (last == -1 || array_keys[last] == null)
-                throw new IllegalStateException();
-            array_keys[last] = null;
-            array_values[last] = null;
-            number_of_used_array_entries--;
-            findNext();
+        private void skipFreeHashSlots() {
+            if (hash_keys != null)
+                while (next < hash_keys.length && (hash_keys[next] == null || hash_keys[next] == REMOVED))
+                    next++;
         }
-    }
-
-    private abstract class SingletonIterator<E> implements Iterator<E> {
-
-        boolean done;
 
         @Override
         public boolean hasNext() {
-            return !done;
-        }
-
-        public Entry<K, V> nextEntry() {
-            if (done)
-                throw new NoSuchElementException();
-            Entry<K, V> e = new MapEntry<>(singleton_key, singleton_value);
-            done = true;
-            return e;
-        }
-
-        public K nextKey() {
-            if (done)
-                throw new NoSuchElementException();
-            done = true;
-            return singleton_key;
+            if (singleton_key != null)
+                return next == 0;
+            if (array_keys != null)
+                return next < number_of_used_array_entries;
+            if (hash_keys != null)
+                return next < hash_keys.length;
+            return false;
         }
 
-        public V nextValue() {
-            if (done)
+        int nextSlot() {
+            if (!hasNext())
                 throw new NoSuchElementException();
-            done = true;
-            return singleton_value;
+            last = next++;
+            skipFreeHashSlots();
+            return last;
         }
 
         @Override
         public void remove() {
-            if (done && singleton_key != null) {
+            if (last == -1)
+                throw new IllegalStateException();
+            if (singleton_key != null) {
                 singleton_key = null;
                 singleton_value = null;
-            } else
+            } else if (array_keys != null) {
+                removeArrayEntry(last); // moves the last entry into this slot, so visit it next
+                next = last;
+            } else if (hash_keys != null && hash_keys[last] != null && hash_keys[last] != REMOVED)
+                removeHashEntry(last);
+            else
                 throw new IllegalStateException();
+            last = -1;
         }
     }
 
-    private static final class EmptyIterator<E> implements Iterator<E> {
+    /**
+     * Map entry that writes through to the map.
+     */
+    private final class SlotEntry extends MapEntry<K, V> {
 
-        @Override
-        public boolean hasNext() {
-            return false;
-        }
+        private final int slot;
 
-        @Override
-        public E next() {
-            throw new NoSuchElementException();
+        SlotEntry(int slot, K key, V value) {
+            super(key, value);
+            this.slot = slot;
         }
 
+        @SuppressWarnings("unchecked")
         @Override
-        public void remove() {
-            throw new IllegalStateException();
+        public V setValue(V value) {
+            V old = super.setValue(value);
+            K key = getKey();
+            if (singleton_key == key)
+                singleton_value = value;
+            else if (array_keys != null && slot < number_of_used_array_entries && array_keys[slot] == key)
+                array_values[slot] = value;
+            else if (hash_keys != null && hash_keys[slot] == key)
+                hash_values[slot] = value;
+            else
+                put(key, value);
+            return old;
         }
     }
 }
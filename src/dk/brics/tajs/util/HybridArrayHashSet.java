@@ -19,25 +19,32 @@ package dk.brics.tajs.util;
 import dk.brics.tajs.options.Options;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Hybrid of array and hash set.
- * Small maps are represented as arrays; above a certain threshold a hash set is used instead.
+ * Small sets are represented as compact arrays; above a certain threshold an open addressing hash table is used instead.
  * Moreover, empty sets and singleton sets are represented with just a reference.
  * Elements cannot be null.
+ * <p>
+ * The hash table uses linear probing and stores the hash codes of the elements, so lookups call
+ * {@link Object#equals(Object)} only for elements with the same hash code.
+ * {@link #forEach(Consumer)} does not allocate.
  */
-@SuppressWarnings("SuspiciousArrayCast")
 public final class HybridArrayHashSet<V> implements Set<V>, Serializable {
 
-    // invariant: at most one of singleton, array and hashset is non-null
+    // invariant: at most one of singleton, array and hash_table is non-null
 
     private static final String NULL_KEY = "HybridArrayHashSet does not permit null keys";
 
@@ -46,25 +53,53 @@ public final class HybridArrayHashSet<V> implements Set<V>, Serializable {
      */
     private static final int ARRAY_SIZE = Options.Constants.HYBRID_ARRAY_HASH_SET_ARRAY_SIZE;
 
+    /**
+     * Initial capacity of the array.
+     */
+    private static final int INITIAL_ARRAY_CAPACITY = Math.min(4, ARRAY_SIZE);
+
+    /**
+     * Marker for removed elements in the hash table.
+     */
+    private static final Object REMOVED = new Object();
+
     /**
      * The singleton value. Null if not a singleton.
      */
-    private V singleton;
+    private transient V singleton;
 
     /**
      * The array with the items. Null if the array is not used.
+     * The items are stored contiguously from index 0.
      */
-    private V[] array;
+    private transient Object[] array;
 
     /**
      * Counter for the number of items in the container.
      */
-    private int number_of_used_array_entries; // = number of non-null entries in array, if non-null
+    private transient int number_of_used_array_entries; // = number of items in array, if non-null
 
     /**
-     * The hash set with the items. Null if the hash set is not used.
+     * The hash table. Null if the hash table is not used.
+     * A slot is either free (null), removed ({@link #REMOVED}), or contains an element.
+     * The length is a power of two, and at least one slot is always free.
      */
-    private HashSet<V> hashset;
+    private transient Object[] hash_table;
+
+    /**
+     * The hash codes of the elements in the hash table, parallel to <code>hash_table</code>.
+     */
+    private transient int[] hash_codes;
+
+    /**
+     * Number of elements in the hash table.
+     */
+    private transient int hash_size;
+
+    /**
+     * Number of slots in the hash table that are not free (elements and removed markers).
+     */
+    private transient int hash_used;
 
     /**
      * Constructs a new hybrid set.
@@ -76,53 +111,160 @@ public final class HybridArrayHashSet<V> implements Set<V>, Serializable {
     /**
      * Constructs a new hybrid set from the given collection.
      */
-    @SuppressWarnings("unchecked")
     public HybridArrayHashSet(Collection<V> m) {
-        int m_size = m.size();
-        if (m_size == 0)
-            return;
-        if (m_size == 1) {
-            singleton = getFirstElement(m);
-        } else if (m_size <= ARRAY_SIZE) {
-            array = (V[]) new Object[ARRAY_SIZE];
-            number_of_used_array_entries = 0;
-            boolean m_is_set = m instanceof Set;
-            outer: for (V v : m) {
-                if (v == null)
-                    throw new NullPointerException(NULL_KEY);
-                if (!m_is_set) { // avoid duplicates
-                    for (int i = 0; i < number_of_used_array_entries; i++) {
-                        if (array[i].equals(v)) {
-                            continue outer;
-                        }
-                    }
+        if (m instanceof HybridArrayHashSet<?>)
+            copyFrom((HybridArrayHashSet<V>) m);
+        else
+            addAll(m);
+    }
+
+    /**
+     * Copies the representation of the given set into this empty set.
+     */
+    private void copyFrom(HybridArrayHashSet<? extends V> s) {
+        if (s.singleton != null)
+            singleton = s.singleton;
+        else if (s.array != null) {
+            if (s.number_of_used_array_entries == 0)
+                return;
+            array = Arrays.copyOf(s.array, s.array.length);
+            number_of_used_array_entries = s.number_of_used_array_entries;
+        } else if (s.hash_table != null) {
+            if (s.hash_used == s.hash_size) {
+                hash_table = s.hash_table.clone();
+                hash_codes = s.hash_codes.clone();
+                hash_size = hash_used = s.hash_size;
+            } else { // leave out the removed markers
+                initHashTable(s.hash_size);
+                for (int i = 0; i < s.hash_table.length; i++) {
+                    Object v = s.hash_table[i];
+                    if (v != null && v != REMOVED)
+                        insertHash(v, s.hash_codes[i]);
                 }
-                array[number_of_used_array_entries++] = v;
             }
-        } else {
-            for (V v : m)
-                if (v == null)
-                    throw new NullPointerException(NULL_KEY);
-            hashset = new HashSet<>(m);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private static <V> V getFirstElement(Collection<V> m) {
-        if (!(m instanceof HybridArrayHashSet<?>))
-            return m.iterator().next();
-        HybridArrayHashSet<?> set = (HybridArrayHashSet<?>) m;
-        if (set.singleton != null)
-            return (V) set.singleton;
-        if (set.array != null) {
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (set.array[i] != null)
-                    return (V) set.array[i];
-            return null;
+    /**
+     * Scrambles the hash code before indexing.
+     * Hash codes of similar keys (for example, property names that differ only in the last character) are often
+     * consecutive, which would give long probe sequences with linear probing.
+     */
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the hash table capacity needed for the given number of elements.
+     */
+    private static int capacityFor(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size, ARRAY_SIZE) * 2);
+        while (capacity * 3 < (size + 1) * 4)
+            capacity *= 2;
+        return capacity;
+    }
+
+    /**
+     * Returns the index of the given element in the array, or -1 if absent.
+     */
+    private int arrayIndexOf(Object o) {
+        for (int i = 0; i < number_of_used_array_entries; i++) {
+            Object v = array[i];
+            if (v == o || v.equals(o))
+                return i;
         }
-        if (set.hashset != null)
-            return (V) set.hashset.iterator().next();
-        return null;
+        return -1;
+    }
+
+    /**
+     * Returns the index of the given non-null element in the hash table, or -1 if absent.
+     */
+    private int hashIndexOf(Object o) {
+        int h = o.hashCode();
+        int mask = hash_table.length - 1;
+        for (int i = spread(h) & mask; ; i = (i + 1) & mask) {
+            Object v = hash_table[i];
+            if (v == null)
+                return -1;
+            if (v == o || (hash_codes[i] == h && v != REMOVED && v.equals(o)))
+                return i;
+        }
+    }
+
+    /**
+     * Creates an empty hash table with room for the given number of elements.
+     */
+    private void initHashTable(int size) {
+        int capacity = capacityFor(size);
+        hash_table = new Object[capacity];
+        hash_codes = new int[capacity];
+        hash_size = hash_used = 0;
+    }
+
+    /**
+     * Inserts an element that is known to be absent from the hash table, which must have room for it.
+     */
+    private void insertHash(Object v, int h) {
+        int mask = hash_table.length - 1;
+        int i = spread(h) & mask;
+        while (hash_table[i] != null)
+            i = (i + 1) & mask;
+        hash_table[i] = v;
+        hash_codes[i] = h;
+        hash_size++;
+        hash_used++;
+    }
+
+    /**
+     * Rebuilds the hash table with room for the given number of elements, dropping the removed markers.
+     */
+    private void rehash(int size) {
+        Object[] old_table = hash_table;
+        int[] old_codes = hash_codes;
+        initHashTable(size);
+        for (int i = 0; i < old_table.length; i++) {
+            Object v = old_table[i];
+            if (v != null && v != REMOVED)
+                insertHash(v, old_codes[i]);
+        }
+    }
+
+    private boolean addHash(V e) {
+        if ((hash_used + 1) * 4 > hash_table.length * 3)
+            rehash(hash_size + 1);
+        int h = e.hashCode();
+        int mask = hash_table.length - 1;
+        int removed = -1;
+        for (int i = spread(h) & mask; ; i = (i + 1) & mask) {
+            Object v = hash_table[i];
+            if (v == null) {
+                if (removed != -1)
+                    i = removed;
+                else
+                    hash_used++;
+                hash_table[i] = e;
+                hash_codes[i] = h;
+                hash_size++;
+                return true;
+            }
+            if (v == REMOVED) {
+                if (removed == -1)
+                    removed = i;
+            } else if (v == e || (hash_codes[i] == h && v.equals(e)))
+                return false;
+        }
+    }
+
+    private void removeArrayEntry(int i) {
+        int last = --number_of_used_array_entries;
+        array[i] = array[last];
+        array[last] = null;
+    }
+
+    private void removeHashEntry(int i) {
+        hash_table[i] = REMOVED;
+        hash_size--;
     }
 
     @Override
@@ -130,125 +272,96 @@ public final class HybridArrayHashSet<V> implements Set<V>, Serializable {
         if (e == null)
             throw new NullPointerException(NULL_KEY);
         if (singleton != null) {
-            if (singleton.equals(e))
+            if (singleton == e || singleton.equals(e))
                 return false;
             convertSingletonToArray();
         }
         if (array != null) {
-            for (int i = 0; i < ARRAY_SIZE; i++) {
-                if (array[i] != null && array[i].equals(e))
-                    return false;
+            if (arrayIndexOf(e) != -1)
+                return false;
+            if (number_of_used_array_entries < ARRAY_SIZE) {
+                if (number_of_used_array_entries == array.length)
+                    array = Arrays.copyOf(array, Math.min(ARRAY_SIZE, array.length * 2));
+                array[number_of_used_array_entries++] = e;
+                return true;
             }
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (array[i] == null) {
-                    array[i] = e;
-                    number_of_used_array_entries++;
-                    return true;
-                }
-            convertArrayToHashSet();
+            convertArrayToHashSet(number_of_used_array_entries + 1);
         }
-        if (hashset != null)
-            return hashset.add(e);
+        if (hash_table != null)
+            return addHash(e);
         singleton = e;
         return true;
     }
 
-    @SuppressWarnings("unchecked")
     private void convertSingletonToArray() {
-        array = (V[]) new Object[ARRAY_SIZE];
+        array = new Object[INITIAL_ARRAY_CAPACITY];
         array[0] = singleton;
         number_of_used_array_entries = 1;
         singleton = null;
     }
 
-    private void convertArrayToHashSet() {
-        hashset = new HashSet<>(ARRAY_SIZE * 2);
-        for (int i = 0; i < ARRAY_SIZE; i++)
-            if (array[i] != null)
-                hashset.add(array[i]);
+    private void convertArrayToHashSet(int size) {
+        initHashTable(size);
+        for (int i = 0; i < number_of_used_array_entries; i++)
+            insertHash(array[i], array[i].hashCode());
         array = null;
         number_of_used_array_entries = 0;
     }
 
-    @SuppressWarnings("unchecked")
+    private void convertSingletonToHashSet(int size) {
+        initHashTable(size);
+        insertHash(singleton, singleton.hashCode());
+        singleton = null;
+    }
+
     @Override
-    public boolean addAll(@Nonnull  Collection<? extends V> c) {
+    public boolean addAll(@Nonnull Collection<? extends V> c) {
         int c_size = c.size();
         if (c_size == 0)
             return false;
-        int max_new_size = c_size + size();
-        if (array == null && hashset == null && max_new_size == 1) {
-            V v = getFirstElement(c);
-            if (v == null)
-                throw new NullPointerException(NULL_KEY);
-            singleton = v;
+        int size = size();
+        if (size == 0 && c instanceof HybridArrayHashSet<?>) {
+            clear();
+            copyFrom((HybridArrayHashSet<? extends V>) c);
             return true;
         }
-        if (array == null && hashset == null && max_new_size <= ARRAY_SIZE) {
+        int max_new_size = c_size + size;
+        if (max_new_size > ARRAY_SIZE) { // make room for all the new elements at once
             if (singleton != null)
-                convertSingletonToArray();
-            else {
-                array = (V[]) new Object[ARRAY_SIZE];
-                number_of_used_array_entries = 0;
-            }
-        }
-        if (array != null && max_new_size <= ARRAY_SIZE) {
-            boolean changed = false;
-            int next = 0;
-            loop:
-            for (V e : c) {
-                if (e == null)
-                    throw new NullPointerException(NULL_KEY);
-                for (int i = 0; i < ARRAY_SIZE; i++)
-                    if (array[i] != null && array[i].equals(e))
-                        continue loop;
-                while (array[next] != null)
-                    next++;
-                array[next++] = e;
-                number_of_used_array_entries++;
-                changed = true;
-            }
-            return changed;
+                convertSingletonToHashSet(max_new_size);
+            else if (array != null)
+                convertArrayToHashSet(max_new_size);
+            else if (hash_table == null)
+                initHashTable(max_new_size);
+            else if ((hash_used + c_size) * 4 > hash_table.length * 3)
+                rehash(max_new_size);
         }
+        boolean changed = false;
         for (V v : c)
-            if (v == null)
-                throw new NullPointerException(NULL_KEY);
-        if (array != null) {
-            convertArrayToHashSet();
-        }
-        if (hashset == null) {
-            hashset = new HashSet<>(ARRAY_SIZE + max_new_size);
-        }
-        if (singleton != null) {
-            hashset.add(singleton);
-            singleton = null;
-        }
-        return hashset.addAll(c);
+            changed |= add(v);
+        return changed;
     }
 
     @Override
     public void clear() {
-        if (singleton != null)
-            singleton = null;
-        else if (array != null) {
-            Arrays.fill(array, null);
-            number_of_used_array_entries = 0;
-        } else if (hashset != null)
-            hashset.clear();
+        singleton = null;
+        array = null;
+        number_of_used_array_entries = 0;
+        hash_table = null;
+        hash_codes = null;
+        hash_size = hash_used = 0;
     }
 
     @Override
     public boolean contains(Object o) {
-        if (singleton != null)
-            return singleton.equals(o);
-        if (array != null) {
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (array[i] != null && array[i].equals(o))
-                    return true;
+        if (o == null)
             return false;
-        }
-        if (hashset != null)
-            return hashset.contains(o);
+        if (singleton != null)
+            return singleton == o || singleton.equals(o);
+        if (array != null)
+            return arrayIndexOf(o) != -1;
+        if (hash_table != null)
+            return hashIndexOf(o) != -1;
         return false;
     }
 
@@ -262,13 +375,7 @@ public final class HybridArrayHashSet<V> implements Set<V>, Serializable {
 
     @Override
     public boolean isEmpty() {
-        if (singleton != null)
-            return false;
-        if (array != null)
-            return number_of_used_array_entries == 0;
-        if (hashset != null)
-            return hashset.isEmpty();
-        return true;
+        return size() == 0;
     }
 
     @Override
@@ -277,83 +384,63 @@ public final class HybridArrayHashSet<V> implements Set<V>, Serializable {
             return 1;
         if (array != null)
             return number_of_used_array_entries;
-        if (hashset != null)
-            return hashset.size();
+        if (hash_table != null)
+            return hash_size;
         return 0;
     }
 
+    @SuppressWarnings("unchecked")
     @Override
-    public Iterator<V> iterator() {
+    public void forEach(Consumer<? super V> action) {
         if (singleton != null)
-            return new Iterator<V>() {
-
-                boolean done;
-
-                @Override
-                public boolean hasNext() {
-                    return !done;
-                }
-
-                @Override
-                public V next() {
-                    if (done)
-                        throw new NoSuchElementException();
-                    done = true;
-                    return singleton;
-                }
-
-                @Override
-                public void remove() {
-                    if (done && singleton != null) {
-                        singleton = null;
-                    } else
-                        throw new IllegalStateException();
-                }
-            };
-        if (array != null)
-            return new ArrayIterator();
-        if (hashset != null)
-            return hashset.iterator();
-        return new Iterator<V>() {
-
-            @Override
-            public boolean hasNext() {
-                return false;
-            }
-
-            @Override
-            public V next() {
-                throw new NoSuchElementException();
-            }
+            action.accept(singleton);
+        else if (array != null) {
+            int n = number_of_used_array_entries;
+            for (int i = 0; i < n; i++)
+                action.accept((V) array[i]);
+            if (n != number_of_used_array_entries)
+                throw new ConcurrentModificationException();
+        } else if (hash_table != null) {
+            Object[] table = hash_table;
+            for (Object v : table)
+                if (v != null && v != REMOVED)
+                    action.accept((V) v);
+            if (table != hash_table)
+                throw new ConcurrentModificationException();
+        }
+    }
 
-            @Override
-            public void remove() {
-                throw new IllegalStateException();
-            }
-        };
+    @Nonnull
+    @Override
+    public Iterator<V> iterator() {
+        return new SlotIterator();
     }
 
     @Override
     public boolean remove(Object o) {
+        if (o == null)
+            return false;
         if (singleton != null) {
-            if (singleton.equals(o)) {
+            if (singleton == o || singleton.equals(o)) {
                 singleton = null;
                 return true;
             }
             return false;
         }
         if (array != null) {
-            for (int i = 0; i < ARRAY_SIZE; i++) {
-                if (array[i] != null && array[i].equals(o)) {
-                    array[i] = null;
-                    number_of_used_array_entries--;
-                    return true;
-                }
-            }
-            return false;
+            int i = arrayIndexOf(o);
+            if (i == -1)
+                return false;
+            removeArrayEntry(i);
+            return true;
+        }
+        if (hash_table != null) {
+            int i = hashIndexOf(o);
+            if (i == -1)
+                return false;
+            removeHashEntry(i);
+            return true;
         }
-        if (hashset != null)
-            return hashset.remove(o);
         return false;
     }
 
@@ -379,49 +466,25 @@ public final class HybridArrayHashSet<V> implements Set<V>, Serializable {
     @Nonnull
     @Override
     public Object[] toArray() {
-        if (singleton != null) {
-            Object[] a = new Object[1];
-            a[0] = singleton;
-            return a;
-        }
-        if (array != null) {
-            Object[] a = new Object[number_of_used_array_entries];
-            int k = 0;
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (array[i] != null)
-                    a[k++] = array[i];
-            return a;
-        }
-        if (hashset != null)
-            return hashset.toArray();
-        return new Object[0];
+        Object[] a = new Object[size()];
+        int k = 0;
+        for (Iterator<V> it = iterator(); it.hasNext(); )
+            a[k++] = it.next();
+        return a;
     }
 
     @SuppressWarnings("unchecked")
     @Nonnull
     @Override
     public <T> T[] toArray(@Nonnull T[] a) {
-        if (singleton != null) {
-            if (a.length < 1)
-                a = (T[]) Array.newInstance(a.getClass().getComponentType(), 1);
-            a[0] = (T) singleton; // TODO: throw ArrayStoreException if not T :> V
-            return a;
-        }
-        if (array != null) {
-            if (a.length < number_of_used_array_entries)
-                a = (T[]) Array.newInstance(a.getClass().getComponentType(), number_of_used_array_entries);
-            int k = 0;
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (array[i] != null)
-                    a[k++] = (T) array[i]; // TODO: throw ArrayStoreException if not T :> V
-            while (k < a.length)
-                a[k++] = null;
-            return a;
-        }
-        if (hashset != null)
-            //noinspection SuspiciousToArrayCall
-            return hashset.toArray(a);
-        Arrays.fill(a, null);
+        int size = size();
+        if (a.length < size)
+            a = (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+        int k = 0;
+        for (Iterator<V> it = iterator(); it.hasNext(); )
+            a[k++] = (T) it.next(); // TODO: throw ArrayStoreException if not T :> V
+        while (k < a.length)
+            a[k++] = null;
         return a;
     }
 
@@ -429,16 +492,18 @@ public final class HybridArrayHashSet<V> implements Set<V>, Serializable {
     public int hashCode() { // see contract for Set.hashCode
         if (singleton != null)
             return singleton.hashCode();
+        int h = 0;
         if (array != null) {
-            int h = 0;
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (array[i] != null)
-                    h += array[i].hashCode();
-            return h;
+            for (int i = 0; i < number_of_used_array_entries; i++)
+                h += array[i].hashCode();
+        } else if (hash_table != null) {
+            for (int i = 0; i < hash_table.length; i++) {
+                Object v = hash_table[i];
+                if (v != null && v != REMOVED)
+                    h += hash_codes[i];
+            }
         }
-        if (hashset != null)
-            return hashset.hashCode();
-        return 0;
+        return h;
     }
 
     @Override
@@ -448,9 +513,11 @@ public final class HybridArrayHashSet<V> implements Set<V>, Serializable {
         if (!(obj instanceof Set<?>))
             return false;
         Set<?> s = (Set<?>) obj;
-        if (size() != s.size())
+        int size = size();
+        if (size != s.size())
             return false;
-        // TODO: special support for singletons...
+        if (size == 1 && singleton != null && obj instanceof HybridArrayHashSet<?> && ((HybridArrayHashSet<?>) obj).singleton != null)
+            return singleton.equals(((HybridArrayHashSet<?>) obj).singleton);
         if (hashCode() != s.hashCode())
             return false;
         return containsAll(s);
@@ -460,62 +527,94 @@ public final class HybridArrayHashSet<V> implements Set<V>, Serializable {
     public String toString() {
         if (singleton != null)
             return "[" + singleton + ']';
-        if (array != null) {
-            StringBuilder b = new StringBuilder();
-            b.append('[');
-            boolean first = true;
-            for (int i = 0; i < ARRAY_SIZE; i++)
-                if (array[i] != null) {
-                    if (first)
-                        first = false;
-                    else
-                        b.append(", ");
-                    b.append(array[i]);
-                }
-            b.append(']');
-            return b.toString();
+        StringBuilder b = new StringBuilder();
+        b.append('[');
+        boolean first = true;
+        for (Iterator<V> it = iterator(); it.hasNext(); ) {
+            if (first)
+                first = false;
+            else
+                b.append(", ");
+            b.append(it.next());
         }
-        if (hashset != null)
-            return hashset.toString();
-        return "[]";
+        b.append(']');
+        return b.toString();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size());
+        for (Iterator<V> it = iterator(); it.hasNext(); )
+            out.writeObject(it.next());
     }
 
-    private final class ArrayIterator implements Iterator<V> {
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++)
+            add((V) in.readObject());
+    }
 
-        int next, last;
+    /**
+     * Iterator over the slots of the current representation.
+     * Slot 0 is the singleton, array slots are indexes into the compact array, and hash slots are indexes into the hash table.
+     */
+    private final class SlotIterator implements Iterator<V> {
 
-        ArrayIterator() {
-            findNext();
-            last = -1;
+        private int next;
+
+        private int last = -1;
+
+        SlotIterator() {
+            skipFreeHashSlots();
         }
 
-        private void findNext() {
-            while (next < ARRAY_SIZE && array[next] == null)
-                next++;
+        private void skipFreeHashSlots() {
+            if (hash_table != null)
+                while (next < hash_table.length && (hash_table[next] == null || hash_table[next] == REMOVED))
+                    next++;
         }
 
         @Override
         public boolean hasNext() {
-            return next < ARRAY_SIZE;
+            if (singleton != null)
+                return next == 0;
+            if (array != null)
+                return next < number_of_used_array_entries;
+            if (hash_table != null)
+                return next < hash_table.length;
+            return false;
         }
 
+        @SuppressWarnings("unchecked")
         @Override
         public V next() {
-            if (next == ARRAY_SIZE)
+            if (!hasNext())
                 throw new NoSuchElementException();
-            last = next;
-            V v = array[next++];
-            findNext();
-            return v;
+            last = next++;
+            skipFreeHashSlots();
+            if (singleton != null)
+                return singleton;
+            if (array != null)
+                return (V) array[last];
+            return (V) hash_table[last];
         }
 
         @Override
         public void remove() {
-            if (last == -1 || array[last] == null)
+            if (last == -1)
                 throw new IllegalStateException();
-            array[last] = null;
-            number_of_used_array_entries--;
-            findNext();
+            if (singleton != null)
+                singleton = null;
+            else if (array != null) {
+                removeArrayEntry(last); // moves the last element into this slot, so visit it next
+                next = last;
+            } else if (hash_table != null && hash_table[last] != null && hash_table[last] != REMOVED)
+                removeHashEntry(last);
+            else
+                throw new IllegalStateException();
+            last = -1;
         }
     }
 }
@@ -16,6 +16,9 @@
 
 package dk.brics.tajs.util;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.Random;
 import java.util.regex.Pattern;
@@ -335,6 +338,21 @@ public class Strings {
         return sb.toString();
     }
 
+    /**
+     * Returns the SHA-256 hash of the UTF-8 encoding of the given string, as a hexadecimal string.
+     */
+    public static String sha256(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder b = new StringBuilder(2 * digest.length);
+            for (byte d : digest)
+                b.append(String.format("%02x", d));
+            return b.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AnalysisException(e);
+        }
+    }
+
     /**
      * Returns the longest common prefix of the two given strings.
      */
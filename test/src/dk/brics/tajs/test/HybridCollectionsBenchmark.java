@@ -0,0 +1,166 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.util.HybridArrayHashMap;
+import dk.brics.tajs.util.HybridArrayHashSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Micro-benchmark comparing the hybrid collections with the standard hash-based collections.
+ * <p>
+ * The collection sizes follow the distribution seen in abstract states: most property maps and object label sets
+ * are singletons or have a few entries, some have tens of entries (prototype objects), and a few have hundreds
+ * (the global object). Each measurement is repeated after warm-up, and the best time is reported.
+ */
+public class HybridCollectionsBenchmark {
+
+    private static final int COLLECTIONS = 20000;
+
+    private static final int WARMUP = 10;
+
+    private static final int ITERATIONS = 10;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        Random r = new Random(1);
+        List<List<String>> shapes = new ArrayList<>();
+        for (int i = 0; i < COLLECTIONS; i++) {
+            int p = r.nextInt(100);
+            int size = p < 40 ? 1 : p < 65 ? 2 : p < 90 ? 3 + r.nextInt(6) : p < 98 ? 9 + r.nextInt(56) : 200;
+            List<String> keys = new ArrayList<>();
+            for (int j = 0; j < size; j++)
+                keys.add(("p" + r.nextInt(1000)).intern());
+            shapes.add(keys);
+        }
+        System.out.printf("%-30s %12s %12s%n", "operation (ns per collection)", "hybrid", "hash");
+        compareMaps(shapes, "map: build", HybridArrayHashMap::new, HashMap::new);
+        compareSets(shapes, "set: build", HybridArrayHashSet::new, HashSet::new);
+    }
+
+    private static void compareMaps(List<List<String>> shapes, String name, Supplier<Map<String, Object>> hybrid, Supplier<Map<String, Object>> hash) {
+        List<Map<String, Object>> hybrids = new ArrayList<>();
+        List<Map<String, Object>> hashes = new ArrayList<>();
+        report(name, measure(() -> buildMaps(shapes, hybrid, hybrids)), measure(() -> buildMaps(shapes, hash, hashes)));
+        report("map: get (hit and miss)", measure(() -> getMaps(shapes, hybrids)), measure(() -> getMaps(shapes, hashes)));
+        report("map: forEach", measure(() -> forEachMaps(hybrids)), measure(() -> forEachMaps(hashes)));
+        report("map: entrySet iteration", measure(() -> iterateMaps(hybrids)), measure(() -> iterateMaps(hashes)));
+        report("map: copy", measure(() -> copyMaps(hybrids, HybridArrayHashMap::new)), measure(() -> copyMaps(hashes, HashMap::new)));
+        report("map: equals copy", measure(() -> equalsMaps(hybrids, HybridArrayHashMap::new)), measure(() -> equalsMaps(hashes, HashMap::new)));
+    }
+
+    private static void compareSets(List<List<String>> shapes, String name, Supplier<Set<String>> hybrid, Supplier<Set<String>> hash) {
+        List<Set<String>> hybrids = new ArrayList<>();
+        List<Set<String>> hashes = new ArrayList<>();
+        report(name, measure(() -> buildSets(shapes, hybrid, hybrids)), measure(() -> buildSets(shapes, hash, hashes)));
+        report("set: contains (hit and miss)", measure(() -> containsSets(shapes, hybrids)), measure(() -> containsSets(shapes, hashes)));
+        report("set: iteration", measure(() -> iterateSets(hybrids)), measure(() -> iterateSets(hashes)));
+    }
+
+    private static void buildMaps(List<List<String>> shapes, Supplier<Map<String, Object>> factory, List<Map<String, Object>> result) {
+        result.clear();
+        for (List<String> keys : shapes) {
+            Map<String, Object> m = factory.get();
+            for (String k : keys)
+                m.put(k, k);
+            result.add(m);
+        }
+    }
+
+    private static void getMaps(List<List<String>> shapes, List<Map<String, Object>> maps) {
+        long n = 0;
+        for (int i = 0; i < maps.size(); i++) {
+            Map<String, Object> m = maps.get(i);
+            for (String k : shapes.get(i))
+                if (m.get(k) != null)
+                    n++;
+            if (m.get("missing") != null)
+                n++;
+        }
+        sink += n;
+    }
+
+    private static void forEachMaps(List<Map<String, Object>> maps) {
+        long[] n = {0};
+        for (Map<String, Object> m : maps)
+            m.forEach((k, v) -> n[0] += k.length());
+        sink += n[0];
+    }
+
+    private static void iterateMaps(List<Map<String, Object>> maps) {
+        long n = 0;
+        for (Map<String, Object> m : maps)
+            for (Map.Entry<String, Object> e : m.entrySet())
+                n += e.getKey().length();
+        sink += n;
+    }
+
+    private static void copyMaps(List<Map<String, Object>> maps, Function<Map<String, Object>, Map<String, Object>> copier) {
+        long n = 0;
+        for (Map<String, Object> m : maps)
+            n += copier.apply(m).size();
+        sink += n;
+    }
+
+    private static void equalsMaps(List<Map<String, Object>> maps, Function<Map<String, Object>, Map<String, Object>> copier) {
+        long n = 0;
+        for (Map<String, Object> m : maps)
+            if (m.equals(copier.apply(m)))
+                n++;
+        sink += n;
+    }
+
+    private static void buildSets(List<List<String>> shapes, Supplier<Set<String>> factory, List<Set<String>> result) {
+        result.clear();
+        for (List<String> keys : shapes) {
+            Set<String> s = factory.get();
+            s.addAll(keys);
+            result.add(s);
+        }
+    }
+
+    private static void containsSets(List<List<String>> shapes, List<Set<String>> sets) {
+        long n = 0;
+        for (int i = 0; i < sets.size(); i++) {
+            Set<String> s = sets.get(i);
+            for (String k : shapes.get(i))
+                if (s.contains(k))
+                    n++;
+            if (s.contains("missing"))
+                n++;
+        }
+        sink += n;
+    }
+
+    private static void iterateSets(List<Set<String>> sets) {
+        long n = 0;
+        for (Set<String> s : sets)
+            for (String k : s)
+                n += k.length();
+        sink += n;
+    }
+
+    private static double measure(Runnable r) {
+        for (int i = 0; i < WARMUP; i++)
+            r.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            r.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / COLLECTIONS;
+    }
+
+    private static void report(String name, double hybrid, double hash) {
+        System.out.printf("%-30s %12.1f %12.1f%n", name, hybrid, hash);
+    }
+}
@@ -0,0 +1,129 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.analysis.Analysis;
+import dk.brics.tajs.analysis.Solver;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.monitoring.AnalysisMonitor;
+import dk.brics.tajs.monitoring.CompositeMonitor;
+import dk.brics.tajs.monitoring.DefaultAnalysisMonitoring;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.AnalysisBudget;
+import dk.brics.tajs.solver.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the adaptive analysis budget (option -adaptive-budget).
+ */
+public class TestAdaptiveBudget {
+
+    private static final String FILE = "test-resources/src/google/richards.js";
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestAdaptiveBudget");
+    }
+
+    @Before
+    public void init() {
+        setup();
+    }
+
+    private static void setup() {
+        Main.initLogging();
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    /**
+     * Counts the node transfers of the fixpoint iteration and keeps the budget.
+     */
+    private static class BudgetMonitor extends DefaultAnalysisMonitoring {
+
+        private AnalysisBudget budget;
+
+        private int transfers;
+
+        @Override
+        public void setSolverInterface(Solver.SolverInterface c) {
+            budget = c.getBudget();
+        }
+
+        @Override
+        public void visitNodeTransferPre(AbstractNode n, State s) {
+            if (!s.getSolverInterface().isScanning())
+                transfers++;
+        }
+    }
+
+    /**
+     * Runs the analysis and returns a description of the budget and the results.
+     */
+    private static String analyze(BudgetMonitor budgetMonitor) {
+        Options.get().getArguments().add(Paths.get(FILE));
+        AnalysisMonitor monitor = new AnalysisMonitor();
+        Analysis a = Main.init(Options.get(), CompositeMonitor.make(monitor, budgetMonitor), null);
+        Main.run(a);
+        AnalysisBudget budget = budgetMonitor.budget;
+        return "steps: " + budget.getNumberOfSteps() + "\n" +
+                "disabled: " + budget.getDisabledFeatures().stream().sorted().collect(Collectors.toList()) + "\n" +
+                "hot functions: " + budget.getHotFunctions().stream().map(Function::getIndex).sorted().collect(Collectors.toList()) + "\n" +
+                "transfers: " + budgetMonitor.transfers + "\n" +
+                "states: " + a.getSolver().getAnalysisLatticeElement().getNumberOfStates() + "\n" +
+                monitor.getSortedMessages().stream().map(Message::toString).collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * Returns the number of node transfers without a budget.
+     */
+    private static int unlimitedTransfers() {
+        BudgetMonitor m = new BudgetMonitor();
+        analyze(m);
+        assertEquals(0, m.budget.getNumberOfSteps());
+        return m.transfers;
+    }
+
+    @Test
+    public void degradesWithinTransferLimit() {
+        int limit = unlimitedTransfers() * 3 / 4;
+        setup();
+        Options.get().enableAdaptiveBudget();
+        Options.get().setAnalysisTransferLimit(limit);
+        BudgetMonitor m = new BudgetMonitor();
+        analyze(m); // reaches the fixpoint instead of throwing AnalysisTimeException
+        assertTrue(m.budget.getNumberOfSteps() > 0);
+    }
+
+    @Test
+    public void reproducibleWithTransferLimit() {
+        int limit = unlimitedTransfers() * 3 / 4;
+        setup();
+        Options.get().enableAdaptiveBudget();
+        Options.get().setAnalysisTransferLimit(limit);
+        String first = analyze(new BudgetMonitor());
+        setup();
+        Options.get().enableAdaptiveBudget();
+        Options.get().setAnalysisTransferLimit(limit);
+        String second = analyze(new BudgetMonitor());
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void noDegradationWithinBudget() {
+        int limit = unlimitedTransfers() * 4;
+        setup();
+        Options.get().enableAdaptiveBudget();
+        Options.get().setAnalysisTransferLimit(limit);
+        BudgetMonitor m = new BudgetMonitor();
+        analyze(m);
+        assertEquals(0, m.budget.getNumberOfSteps());
+    }
+}
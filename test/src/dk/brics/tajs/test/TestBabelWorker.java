@@ -0,0 +1,91 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.options.TAJSEnvironmentConfig;
+import dk.brics.tajs.preprocessing.BabelWorker;
+import dk.brics.tajs.util.AnalysisException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the request/response protocol of the persistent Babel process.
+ */
+public class TestBabelWorker {
+
+    private static final String ARROW = "@babel/plugin-transform-arrow-functions";
+
+    private static final String TEMPLATE = "@babel/plugin-transform-template-literals";
+
+    private static final Path FILE = Paths.get("test.js");
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestBabelWorker");
+    }
+
+    @Before
+    public void init() {
+        Main.initLogging();
+        Main.reset();
+        Options.get().enableTest();
+        TAJSEnvironmentConfig.init();
+    }
+
+    @Test
+    public void responsesInRequestOrder() throws IOException {
+        BabelWorker worker = BabelWorker.get(ARROW);
+        String[] sources = {"var f = a => a + 1;", "var g = (a, b) => a * b;", "var h = () => 42;"};
+        String[] outputs = new String[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            outputs[i] = worker.transform(FILE, sources[i]);
+            assertFalse(outputs[i].contains("=>"));
+            assertTrue(outputs[i].contains("function"));
+        }
+        for (int i = 0; i < sources.length; i++)
+            assertEquals(outputs[i], worker.transform(FILE, sources[i])); // same answers when repeated
+        assertTrue(outputs[0].contains("a + 1"));
+        assertTrue(outputs[1].contains("a * b"));
+        assertTrue(outputs[2].contains("42"));
+    }
+
+    @Test
+    public void workerReused() throws IOException {
+        BabelWorker worker = BabelWorker.get(ARROW);
+        worker.transform(FILE, "var f = a => a;");
+        assertSame(worker, BabelWorker.get(ARROW));
+    }
+
+    @Test
+    public void restartedForOtherPlugins() throws IOException {
+        BabelWorker arrow = BabelWorker.get(ARROW);
+        BabelWorker template = BabelWorker.get(TEMPLATE);
+        assertNotSame(arrow, template);
+        String output = template.transform(FILE, "var s = `a${1}`; var f = a => a;");
+        assertFalse(output.contains("`"));
+        assertTrue(output.contains("=>")); // arrow functions are not transformed by this worker
+    }
+
+    @Test
+    public void errorReportedAndWorkerUsable() throws IOException {
+        BabelWorker worker = BabelWorker.get(ARROW);
+        try {
+            worker.transform(FILE, "var f = a => {;");
+            fail("syntax error not reported");
+        } catch (AnalysisException e) {
+            assertTrue(e.getMessage().contains(FILE.toString()));
+        }
+        assertSame(worker, BabelWorker.get(ARROW));
+        assertFalse(worker.transform(FILE, "var f = a => a;").contains("=>"));
+    }
+}
@@ -0,0 +1,188 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.ReadPropertyNode;
+import dk.brics.tajs.lattice.Obj;
+import dk.brics.tajs.lattice.ObjectLabel;
+import dk.brics.tajs.lattice.PropertyKey;
+import dk.brics.tajs.lattice.PropertyKey.StringPropertyKey;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.lattice.UnknownValueResolver;
+import dk.brics.tajs.lattice.Value;
+import dk.brics.tajs.monitoring.AnalysisMonitor;
+import dk.brics.tajs.monitoring.CompositeMonitor;
+import dk.brics.tajs.monitoring.DefaultAnalysisMonitoring;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that recovering several unknown properties together ({@link UnknownValueResolver#recoverProperties})
+ * gives the same values as recovering them one at a time when they are read.
+ */
+public class TestBatchedRecovery {
+
+    private static final String[] PLAIN = {
+            "function mk(i) { return {a: i, b: 'x', c: true}; }",
+            "function f(o) { var s = o.a + o.b; if (o.c) s += o.a; return s; }",
+            "var r1 = f(mk(0));",
+            "var r2 = f({a: 'y', b: 2, c: false});",
+            "TAJS_assert(typeof r1 === 'string');"
+    };
+
+    private static final String[] SUMMARIZED = { // o is summarized by the allocation in f, so each property comes from two properties at the entry of f
+            "function mk(i) { return {a: i, b: 'x', c: true}; }",
+            "function f(o) { mk(1); return o.a + o.b + o.c; }",
+            "var r = f(mk(0));",
+            "TAJS_assert(typeof r === 'string');"
+    };
+
+    private static final String[] SUMMARIZED_IN_CALLER = { // as above, but discovered while traversing the call edges from g
+            "function mk(i) { return {a: i, b: 'x', c: true}; }",
+            "function g(o) { return o.a + o.b + o.c; }",
+            "function h(o) { mk(1); return g(o); }",
+            "var r = h(mk(0));",
+            "TAJS_assert(typeof r === 'string');"
+    };
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestBatchedRecovery");
+    }
+
+    @Before
+    public void init() {
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    /**
+     * Records the values read by each read-property node.
+     */
+    private static class ReadMonitor extends DefaultAnalysisMonitoring {
+
+        private final Map<String, Value> reads = newMap();
+
+        @Override
+        public void visitNodeTransferPost(AbstractNode n, State s) {
+            if (!(n instanceof ReadPropertyNode) || s.isBottom() || s.getSolverInterface().isScanning())
+                return;
+            int reg = ((ReadPropertyNode) n).getResultRegister();
+            if (reg != AbstractNode.NO_VALUE)
+                reads.merge(n.getIndex() + " " + n + " " + s.getContext(), s.readRegister(reg), Value::join);
+        }
+
+        List<String> getReads() {
+            return reads.entrySet().stream().map(e -> e.getKey() + ": " + e.getValue()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Before each read-property node in a function, partially recovers all the fixed property names that are read in the function
+     * from the base objects, as one batch.
+     */
+    private static class BatchingMonitor extends ReadMonitor {
+
+        private final Map<Function, Set<PropertyKey>> names = newMap();
+
+        private boolean batching;
+
+        private int batches;
+
+        private int switches;
+
+        @Override
+        public void visitNodeTransferPre(AbstractNode n, State s) {
+            Function f = n.getBlock().getFunction();
+            if (!(n instanceof ReadPropertyNode) || f.isMain() || s.getSolverInterface().isScanning())
+                return;
+            Set<PropertyKey> keys = names.computeIfAbsent(f, TestBatchedRecovery::getReadPropertyNames);
+            if (keys.size() < 2)
+                return;
+            for (ObjectLabel l : s.readRegister(((ReadPropertyNode) n).getBaseRegister()).getObjectLabels()) {
+                Obj obj = s.getObject(l, false);
+                if (keys.stream().filter(k -> obj.getProperty(k).isUnknown()).count() >= 2)
+                    batches++;
+                batching = true;
+                UnknownValueResolver.recoverProperties(l, keys, s, true);
+                batching = false;
+                for (PropertyKey k : keys)
+                    assertFalse(s.getObject(l, false).getProperty(k).isUnknown());
+            }
+        }
+
+        @Override
+        public void visitUnknownValueResolve(AbstractNode node, boolean partial, boolean scanning) {
+            if (batching && !partial)
+                switches++;
+        }
+    }
+
+    private static Set<PropertyKey> getReadPropertyNames(Function f) {
+        Set<PropertyKey> keys = newSet();
+        for (BasicBlock b : f.getBlocks())
+            for (AbstractNode n : b.getNodes())
+                if (n instanceof ReadPropertyNode && ((ReadPropertyNode) n).isPropertyFixed())
+                    keys.add(StringPropertyKey.make(((ReadPropertyNode) n).getPropertyString()));
+        return keys;
+    }
+
+    /**
+     * Analyzes the given program with the given monitor, and returns the values read and the messages.
+     */
+    private static List<String> analyze(ReadMonitor reads, String file, String... src) {
+        Main.reset();
+        Options.get().enableTest();
+        AnalysisMonitor monitor = new AnalysisMonitor();
+        if (file != null)
+            Misc.run(file, CompositeMonitor.make(monitor, reads));
+        else
+            Misc.runSource(src, CompositeMonitor.make(monitor, reads));
+        List<String> res = newList(reads.getReads());
+        res.addAll(monitor.getSortedMessages().stream().map(Message::toString).collect(Collectors.toList()));
+        return res;
+    }
+
+    private static BatchingMonitor check(String file, String... src) {
+        List<String> expected = analyze(new ReadMonitor(), file, src);
+        BatchingMonitor batching = new BatchingMonitor();
+        assertEquals(expected, analyze(batching, file, src));
+        assertTrue(batching.batches > 0);
+        return batching;
+    }
+
+    @Test
+    public void sameValuesAsIndividualRecovery() {
+        check(null, PLAIN);
+    }
+
+    @Test
+    public void switchToFullRecovery() {
+        assertTrue(check(null, SUMMARIZED).switches > 0);
+    }
+
+    @Test
+    public void switchToFullRecoveryAtCaller() {
+        assertTrue(check(null, SUMMARIZED_IN_CALLER).switches > 0);
+    }
+
+    @Test
+    public void richards() {
+        check("test-resources/src/google/richards.js");
+    }
+}
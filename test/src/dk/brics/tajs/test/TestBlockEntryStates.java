@@ -0,0 +1,112 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.analysis.Solver;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.lattice.CallEdge;
+import dk.brics.tajs.lattice.Context;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.monitoring.AnalysisMonitor;
+import dk.brics.tajs.monitoring.AnalysisPhase;
+import dk.brics.tajs.monitoring.CompositeMonitor;
+import dk.brics.tajs.monitoring.DefaultAnalysisMonitoring;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.IAnalysisLatticeElement;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the block entry states stored in the analysis lattice element
+ * agree with a plain per-block map of the block and context pairs that are transferred.
+ */
+public class TestBlockEntryStates {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestBlockEntryStates");
+    }
+
+    @Before
+    public void init() {
+        Main.initLogging();
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    /**
+     * Records the contexts of all block transfers in a per-block map and compares it with the stored states after the analysis.
+     */
+    private static class ReferenceMonitor extends DefaultAnalysisMonitoring {
+
+        private final Map<BasicBlock, Set<Context>> reference = newMap();
+
+        private Solver.SolverInterface c;
+
+        private boolean checked;
+
+        @Override
+        public void setSolverInterface(Solver.SolverInterface c) {
+            this.c = c;
+        }
+
+        @Override
+        public void visitBlockTransferPre(BasicBlock b, State s) {
+            reference.computeIfAbsent(b, k -> newSet()).add(s.getContext());
+        }
+
+        @Override
+        public void visitPhasePost(AnalysisPhase phase) {
+            if (phase != AnalysisPhase.ANALYSIS)
+                return;
+            IAnalysisLatticeElement<State, Context, CallEdge> e = c.getAnalysisLatticeElement();
+            int count = 0;
+            for (Function f : c.getFlowGraph().getFunctions()) {
+                for (BasicBlock b : f.getBlocks()) {
+                    Map<Context, State> states = e.getStates(b);
+                    Set<Context> expected = reference.getOrDefault(b, newSet());
+                    assertEquals(expected, newSet(states.keySet()));
+                    assertEquals(expected.size(), states.size());
+                    assertEquals(expected.size(), states.values().size());
+                    for (Map.Entry<Context, State> me : states.entrySet()) {
+                        State s = me.getValue();
+                        assertSame(s, states.get(me.getKey()));
+                        assertSame(b, s.getBasicBlock());
+                        assertEquals(me.getKey(), s.getContext());
+                        assertTrue(states.containsKey(me.getKey()));
+                    }
+                    count += states.size();
+                }
+            }
+            assertEquals(count, e.getNumberOfStates());
+            assertNull(e.getStates(c.getFlowGraph().getMain().getEntry()).get(new Object()));
+            checked = true;
+        }
+    }
+
+    private void check(String file) {
+        ReferenceMonitor monitor = new ReferenceMonitor();
+        Misc.run(file, CompositeMonitor.make(new AnalysisMonitor(), monitor));
+        assertTrue(monitor.checked);
+    }
+
+    @Test
+    public void micro() {
+        check("test-resources/src/micro/test200.js");
+    }
+
+    @Test
+    public void manyContexts() { // enough states to grow the table several times
+        Options.get().enableDeterminacy();
+        check("test-resources/src/google/richards.js");
+    }
+}
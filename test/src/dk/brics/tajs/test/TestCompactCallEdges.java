@@ -0,0 +1,159 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.analysis.Solver;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.lattice.CallEdge;
+import dk.brics.tajs.lattice.Context;
+import dk.brics.tajs.lattice.ObjectLabel;
+import dk.brics.tajs.lattice.Obj;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.monitoring.AnalysisMonitor;
+import dk.brics.tajs.monitoring.AnalysisPhase;
+import dk.brics.tajs.monitoring.CompositeMonitor;
+import dk.brics.tajs.monitoring.DefaultAnalysisMonitoring;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.BlockAndContext;
+import dk.brics.tajs.solver.IAnalysisLatticeElement;
+import dk.brics.tajs.solver.Message;
+import dk.brics.tajs.solver.NodeAndContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that storing call edge states as deltas (option -compact-call-edges) does not change the analysis results,
+ * and that propagating an unchanged state does not copy the store.
+ */
+public class TestCompactCallEdges {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestCompactCallEdges");
+    }
+
+    @Before
+    public void init() {
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    /**
+     * Records the block entry states and call edge states after the analysis.
+     */
+    private static class ResultMonitor extends DefaultAnalysisMonitoring {
+
+        private final List<String> states = newList();
+
+        private final List<String> edges = newList();
+
+        private Solver.SolverInterface c;
+
+        @Override
+        public void setSolverInterface(Solver.SolverInterface c) {
+            this.c = c;
+        }
+
+        @Override
+        public void visitPhasePost(AnalysisPhase phase) {
+            if (phase != AnalysisPhase.ANALYSIS)
+                return;
+            IAnalysisLatticeElement<State, Context, CallEdge> e = c.getAnalysisLatticeElement();
+            for (Function f : c.getFlowGraph().getFunctions())
+                for (BasicBlock b : f.getBlocks())
+                    for (Map.Entry<Context, State> me : e.getStates(b).entrySet())
+                        states.add(b.getIndex() + " " + me.getKey() + ": " + me.getValue());
+            for (Map.Entry<NodeAndContext<Context>, Map<BlockAndContext<Context>, CallEdge>> me : e.getCallGraph().getCallEdgeInfo().entrySet())
+                for (Map.Entry<BlockAndContext<Context>, CallEdge> me2 : me.getValue().entrySet())
+                    edges.add(me.getKey() + " -> " + me2.getKey() + ": " + me2.getValue().getState());
+            Collections.sort(states);
+            Collections.sort(edges);
+        }
+    }
+
+    private static class Result {
+
+        private final List<String> messages;
+
+        private final ResultMonitor monitor;
+
+        private Result(List<String> messages, ResultMonitor monitor) {
+            this.messages = messages;
+            this.monitor = monitor;
+        }
+    }
+
+    private static Result analyze(String file, boolean compact) {
+        Main.reset();
+        Options.get().enableTest();
+        if (compact)
+            Options.get().enableCompactCallEdges();
+        AnalysisMonitor analysisMonitor = new AnalysisMonitor();
+        ResultMonitor resultMonitor = new ResultMonitor();
+        Misc.run(file, CompositeMonitor.make(analysisMonitor, resultMonitor));
+        return new Result(analysisMonitor.getSortedMessages().stream().map(Message::toString).collect(Collectors.toList()), resultMonitor);
+    }
+
+    private static void check(String file) {
+        Result plain = analyze(file, false);
+        Result compact = analyze(file, true);
+        assertFalse(plain.monitor.edges.isEmpty());
+        assertEquals(file, plain.messages, compact.messages);
+        assertEquals(file, plain.monitor.states, compact.monitor.states);
+        assertEquals(file, plain.monitor.edges, compact.monitor.edges);
+    }
+
+    @Test
+    public void micro() {
+        check("test-resources/src/micro/test100.js");
+        check("test-resources/src/micro/test200.js");
+    }
+
+    @Test
+    public void richards() {
+        check("test-resources/src/google/richards.js");
+    }
+
+    @Test
+    public void deltablue() {
+        check("test-resources/src/google/delta-blue.js");
+    }
+
+    @Test
+    public void propagateUnchangedKeepsStore() {
+        Options.get().enableCompactCallEdges();
+        ResultMonitor monitor = new ResultMonitor() {
+            @Override
+            public void visitPhasePost(AnalysisPhase phase) {
+                super.visitPhasePost(phase);
+                if (phase != AnalysisPhase.ANALYSIS)
+                    return;
+                State s = getMainExitState(this);
+                State to = s.clone();
+                State from = s.clone();
+                Map<ObjectLabel, Obj> store = to.getStore();
+                int copies = State.getNumberOfMakeWritableStoreCalls();
+                assertFalse(to.propagate(from, false, false));
+                assertSame(store, to.getStore());
+                assertEquals(copies, State.getNumberOfMakeWritableStoreCalls());
+            }
+        };
+        Misc.run("test-resources/src/google/richards.js", CompositeMonitor.make(new AnalysisMonitor(), monitor));
+        assertTrue(monitor.states.size() > 0);
+    }
+
+    private static State getMainExitState(ResultMonitor monitor) {
+        BasicBlock exit = monitor.c.getFlowGraph().getMain().getOrdinaryExit();
+        return monitor.c.getAnalysisLatticeElement().getStates(exit).values().iterator().next();
+    }
+}
@@ -0,0 +1,117 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.jsdelta.ConcurrentLineReducer;
+import dk.brics.tajs.jsdelta.DeltaMinimizer;
+import dk.brics.tajs.options.TAJSEnvironmentConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the line reduction that precedes JSDelta, and the verdict cache of the JSDelta predicate.
+ */
+public class TestDeltaMinimizer {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestDeltaMinimizer");
+    }
+
+    @Before
+    public void init() {
+        TAJSEnvironmentConfig.init();
+    }
+
+    private static Path makeFile(int lines) throws IOException {
+        Path file = Files.createTempFile("jsdelta-lines", ".js");
+        Files.write(file, IntStream.range(0, lines).mapToObj(i -> "var v" + i + " = " + i + ";").collect(Collectors.toList()), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * Satisfied by candidates with line 3 and at least three lines with even numbers.
+     * The candidates are answered after a random delay, so the verdicts of a round arrive in varying order.
+     */
+    private static boolean interesting(List<String> lines) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+        } catch (InterruptedException e) { // the verdict is no longer needed
+            return false;
+        }
+        long even = lines.stream().filter(l -> Integer.parseInt(l.substring(l.indexOf('=') + 2, l.length() - 1)) % 2 == 0).count();
+        return lines.contains("var v3 = 3;") && even >= 3;
+    }
+
+    private static List<String> reduce(Path file, Predicate<List<String>> tester, int jobs) throws IOException, InterruptedException {
+        return Files.readAllLines(new ConcurrentLineReducer(tester, jobs).reduce(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void concurrentMatchesSequential() throws IOException, InterruptedException {
+        Path file = makeFile(40);
+        List<String> sequential = reduce(file, TestDeltaMinimizer::interesting, 1);
+        assertTrue(interesting(sequential));
+        for (int i = 0; i < sequential.size(); i++) { // no single line can be removed
+            List<String> smaller = newList(sequential);
+            smaller.remove(i);
+            assertFalse(interesting(smaller));
+        }
+        for (int run = 0; run < 5; run++)
+            assertEquals(sequential, reduce(file, TestDeltaMinimizer::interesting, 4));
+    }
+
+    @Test
+    public void unreducibleFileReturned() throws IOException, InterruptedException {
+        Path file = makeFile(10);
+        List<String> original = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(file, new ConcurrentLineReducer(lines -> lines.size() == original.size(), 4).reduce(file));
+    }
+
+    @Test
+    public void verdictsCachedByContents() throws IOException, InterruptedException {
+        String preamble;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(DeltaMinimizer.class.getResourceAsStream("/jsdelta/jsdelta-TAJS-predicate.js"), StandardCharsets.UTF_8))) {
+            preamble = br.lines().collect(Collectors.joining("\n"));
+        }
+        Path dir = Files.createTempDirectory("jsdelta-cache");
+        Path script = dir.resolve("predicate.js");
+        Files.createDirectories(dir.resolve("root/sub"));
+        Files.write(script, (preamble + "\n" +
+                "var fs = require('fs'), path = require('path');\n" +
+                "var calls = 0;\n" +
+                "var test = makeCachedPredicate(function (file) { calls++; return fs.readFileSync(file, 'utf8').indexOf('x') !== -1; }, 2);\n" +
+                "var root = process.argv[2], file = path.join(root, 'sub', 'main.js'), results = [];\n" +
+                "function check(contents) { fs.writeFileSync(file, contents); results.push(test(file, '') + ':' + calls); }\n" +
+                "check('var x;');\n" +
+                "check('var x;');\n" + // same contents
+                "check('var y;');\n" +
+                "check('var x;');\n" + // back to the first contents
+                "fs.writeFileSync(path.join(root, 'other.js'), '');\n" + // another file of the candidate
+                "check('var x;');\n" +
+                "console.log('RESULTS ' + results.join(' '));\n").getBytes(StandardCharsets.UTF_8));
+        Process p = new ProcessBuilder(TAJSEnvironmentConfig.get().getNode().toString(), script.toString(), dir.resolve("root").toString())
+                .redirectErrorStream(true)
+                .start();
+        List<String> output;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            output = br.lines().collect(Collectors.toList());
+        }
+        assertEquals(String.join("\n", output), 0, p.waitFor());
+        assertTrue(String.join("\n", output), output.contains("RESULTS true:1 true:1 false:2 true:2 true:3"));
+    }
+}
@@ -0,0 +1,215 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.SourceLocation;
+import dk.brics.tajs.js2flowgraph.FlowGraphMutator;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.util.PathAndURLUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that flow graphs loaded from the flow graph cache are equivalent to freshly translated flow graphs.
+ */
+public class TestFlowGraphCache {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestFlowGraphCache");
+    }
+
+    @Before
+    public void init() {
+        Main.initLogging();
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    @Test
+    public void cachedTopLevelFunction() throws IOException {
+        Path dir = Files.createTempDirectory("tajs-flowgraph-cache");
+        Options.get().setFlowGraphCacheDirectory(dir.toString());
+        URL file = PathAndURLUtils.toURL(Paths.get("test-resources/src/micro/test200.js"));
+        List<String> parameterNames = Arrays.asList("a", "b");
+
+        FlowGraph translated = Misc.build("var x = 1;");
+        Function f1 = FlowGraphMutator.extendFlowGraphWithTopLevelFunction(parameterNames, file, false, translated, new SourceLocation.StaticLocationMaker(file));
+        try (Stream<Path> entries = Files.list(dir)) {
+            assertEquals(1, entries.count());
+        }
+
+        FlowGraph loaded = Misc.build("var x = 1;");
+        Function f2 = FlowGraphMutator.extendFlowGraphWithTopLevelFunction(parameterNames, file, false, loaded, new SourceLocation.StaticLocationMaker(file));
+        loaded.check();
+
+        assertNotSame(f1, f2);
+        assertEquals(loaded.getMain(), f2.getOuterFunction());
+        assertEquals(translated.getNumberOfBlocks(), loaded.getNumberOfBlocks());
+        assertEquals(translated.getNumberOfNodes(), loaded.getNumberOfNodes());
+        assertEquals(translated.getFunctions().size(), loaded.getFunctions().size());
+        assertEquals(translated.toString(), loaded.toString());
+    }
+
+    @Test
+    public void reusedHostEnvironmentFunction() {
+        URL file = PathAndURLUtils.toURL(Paths.get("test-resources/src/micro/test200.js"));
+        List<String> parameterNames = Arrays.asList("a", "b");
+        String name = String.format("HOST(%s)", file.getPath());
+
+        FlowGraph translated = Misc.build("var x = 1;");
+        Function f1 = FlowGraphMutator.extendFlowGraphWithTopLevelFunction(parameterNames, file, true, translated, new SourceLocation.CustomStaticLocationMaker(name, file));
+
+        Main.reset(); // the host environment functions survive resets
+        Options.get().enableTest();
+        FlowGraph reused = Misc.build("var x = 1;");
+        Function f2 = FlowGraphMutator.extendFlowGraphWithTopLevelFunction(parameterNames, file, true, reused, new SourceLocation.CustomStaticLocationMaker(name, file));
+        reused.check();
+
+        assertNotSame(f1, f2);
+        assertEquals(reused.getMain(), f2.getOuterFunction());
+        assertEquals(translated.toString(), reused.toString());
+    }
+
+    private static long countEntries(Path dir) throws IOException {
+        try (Stream<Path> entries = Files.list(dir)) {
+            return entries.count();
+        }
+    }
+
+    @Test
+    public void forInSpecializationMissesCache() throws IOException {
+        Path dir = Files.createTempDirectory("tajs-flowgraph-cache");
+        Path src = Files.createTempFile("tajs-flowgraph-cache", ".js");
+        Files.write(src, ("var s = '';\n" +
+                "for (var p in a) { try { s += p; } catch (e) { } }\n").getBytes(StandardCharsets.UTF_8));
+        URL file = PathAndURLUtils.toURL(src);
+        List<String> parameterNames = Collections.singletonList("a");
+
+        Options.get().setFlowGraphCacheDirectory(dir.toString());
+        Options.get().enableForInSpecialization();
+        FlowGraph specialized = Misc.build("var x = 1;");
+        FlowGraphMutator.extendFlowGraphWithTopLevelFunction(parameterNames, file, false, specialized, new SourceLocation.StaticLocationMaker(file));
+        assertEquals(1, countEntries(dir));
+
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().setFlowGraphCacheDirectory(dir.toString());
+        Options.get().disableForInSpecialization();
+        FlowGraph loaded = Misc.build("var x = 1;");
+        FlowGraphMutator.extendFlowGraphWithTopLevelFunction(parameterNames, file, false, loaded, new SourceLocation.StaticLocationMaker(file));
+        loaded.check();
+        assertEquals(2, countEntries(dir)); // not loaded from the entry made with for-in specialization
+
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().disableForInSpecialization();
+        FlowGraph translated = Misc.build("var x = 1;");
+        FlowGraphMutator.extendFlowGraphWithTopLevelFunction(parameterNames, file, false, translated, new SourceLocation.StaticLocationMaker(file));
+        assertEquals(translated.toString(), loaded.toString());
+        assertEquals(getEntryBlocks(translated), getEntryBlocks(loaded));
+        assertFalse(getEntryBlocks(specialized).equals(getEntryBlocks(loaded)));
+    }
+
+    /**
+     * Returns the entry block index of each block, which is not part of the string description of the flow graph.
+     */
+    private static List<String> getEntryBlocks(FlowGraph fg) {
+        List<String> res = newList();
+        for (Function f : fg.getFunctions())
+            for (BasicBlock b : f.getBlocks())
+                res.add(b.getIndex() + " -> " + b.getEntryBlock().getIndex());
+        Collections.sort(res);
+        return res;
+    }
+
+    /**
+     * Options that are read in the translation code but do not affect the translated code of a top-level function loaded from a file.
+     */
+    private static final Set<String> NOT_AFFECTING_TRANSLATION = newSet(Arrays.asList(
+            "isDebugOrTestEnabled", // consistency checks only
+            "isTestFlowGraphBuilderEnabled", // logging only
+            "isDOMEnabled", "isAsyncEventsEnabled", "getUnsoundness", "isNodeJS", "isTypeCheckEnabled", // event loop of the main function
+            "isFlowGraphCacheEnabled", "getFlowGraphCacheDirectory", "isNoFlowGraphReuseEnabled")); // the cache itself
+
+    private static final Pattern OPTION_READ = Pattern.compile("Options\\.get\\(\\)\\.(\\w+)\\(\\)");
+
+    private static Set<String> getOptionReads(String code) {
+        Set<String> res = newSet();
+        Matcher m = OPTION_READ.matcher(code);
+        while (m.find())
+            res.add(m.group(1));
+        return res;
+    }
+
+    @Test
+    public void translationOptionsInKey() throws IOException {
+        Path dir = Paths.get("src/dk/brics/tajs/js2flowgraph");
+        String cache = new String(Files.readAllBytes(dir.resolve("FlowGraphCache.java")), StandardCharsets.UTF_8);
+        String key = cache.substring(cache.indexOf("String getTranslationOptions()"));
+        key = key.substring(0, key.indexOf("\n    }"));
+        Set<String> read = newSet();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(f -> !f.endsWith("FlowGraphCache.java") && !f.endsWith("HTMLParser.java")).collect(Collectors.toList()))
+                read.addAll(getOptionReads(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)));
+        }
+        read.removeAll(NOT_AFFECTING_TRANSLATION);
+        assertTrue(read.contains("isForInSpecializationEnabled"));
+        for (String option : read)
+            assertTrue(option + " is read during translation but not part of the flow graph cache key", key.contains("options." + option + "()"));
+    }
+
+    @Test
+    public void reusedHostEnvironmentFunctionOptions() throws IOException {
+        Path src = Files.createTempFile("tajs-flowgraph-reuse", ".js");
+        Files.write(src, ("var s = '';\n" +
+                "for (var p in a) { try { s += p; } catch (e) { } }\n").getBytes(StandardCharsets.UTF_8));
+        URL file = PathAndURLUtils.toURL(src);
+        List<String> parameterNames = Collections.singletonList("a");
+        String name = String.format("HOST(%s)", file.getPath());
+
+        Options.get().enableForInSpecialization();
+        FlowGraph specialized = Misc.build("var x = 1;");
+        FlowGraphMutator.extendFlowGraphWithTopLevelFunction(parameterNames, file, true, specialized, new SourceLocation.CustomStaticLocationMaker(name, file));
+
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().disableForInSpecialization();
+        FlowGraph reused = Misc.build("var x = 1;");
+        FlowGraphMutator.extendFlowGraphWithTopLevelFunction(parameterNames, file, true, reused, new SourceLocation.CustomStaticLocationMaker(name, file));
+        reused.check();
+
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().disableForInSpecialization();
+        Options.get().enableNoFlowGraphReuse();
+        FlowGraph translated = Misc.build("var x = 1;");
+        FlowGraphMutator.extendFlowGraphWithTopLevelFunction(parameterNames, file, true, translated, new SourceLocation.CustomStaticLocationMaker(name, file));
+        assertEquals(translated.toString(), reused.toString());
+        assertEquals(getEntryBlocks(translated), getEntryBlocks(reused)); // not reused from the translation with for-in specialization
+        assertFalse(getEntryBlocks(specialized).equals(getEntryBlocks(reused)));
+    }
+}
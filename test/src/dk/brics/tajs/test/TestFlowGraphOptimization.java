@@ -0,0 +1,214 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.BinaryOperatorNode;
+import dk.brics.tajs.flowgraph.jsnodes.ConstantNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReadPropertyNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
+import dk.brics.tajs.flowgraph.jsnodes.UnaryOperatorNode;
+import dk.brics.tajs.flowgraph.jsnodes.WritePropertyNode;
+import dk.brics.tajs.monitoring.AnalysisMonitor;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newMap;
+import static dk.brics.tajs.util.Collections.newSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the flow graph optimizations (option -flowgraph-optimization).
+ */
+public class TestFlowGraphOptimization {
+
+    private static final Set<Integer> MICRO_NO_ORDINARY_EXIT = newSet(Arrays.asList(16, 20, 27, 42, 52)); // as in TestMicro
+
+    private static final Set<Integer> MICRO_IGNORED = newSet(Arrays.asList(74)); // as in TestMicro
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestFlowGraphOptimization");
+    }
+
+    @Before
+    public void init() {
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    /**
+     * Sets the options of TestMicro for the given micro test.
+     */
+    private static void setupMicro(int i, boolean optimize, boolean soundness) {
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().enableContextSensitiveHeap();
+        Options.get().enableParameterSensitivity();
+        if (MICRO_NO_ORDINARY_EXIT.contains(i))
+            Options.get().enableDoNotExpectOrdinaryExit();
+        if (optimize)
+            Options.get().enableFlowgraphOptimization();
+        if (!soundness)
+            Options.get().disableTestSoundness(); // blocks are only merged without the soundness tester
+    }
+
+    private static String microFile(int i) {
+        return String.format("test-resources/src/micro/test%02d.js", i);
+    }
+
+    /**
+     * Runs the analysis and returns the sorted messages.
+     */
+    private static List<String> messages(String file) {
+        AnalysisMonitor monitor = new AnalysisMonitor();
+        Misc.run(file, monitor);
+        return monitor.getSortedMessages().stream().map(Message::toString).collect(Collectors.toList());
+    }
+
+    @Test
+    public void microSoundness() {
+        for (int i = 0; i < 100; i++) {
+            if (MICRO_IGNORED.contains(i))
+                continue;
+            setupMicro(i, true, true);
+            Misc.run(microFile(i));
+        }
+    }
+
+    @Test
+    public void microSameMessages() {
+        for (int i = 0; i < 100; i++) {
+            if (MICRO_IGNORED.contains(i))
+                continue;
+            setupMicro(i, false, false);
+            List<String> plain = messages(microFile(i));
+            setupMicro(i, true, false);
+            List<String> optimized = messages(microFile(i));
+            assertEquals(microFile(i), plain, optimized);
+        }
+    }
+
+    private static List<AbstractNode> getNodes(Function f) {
+        List<AbstractNode> nodes = newList();
+        for (BasicBlock b : f.getBlocks())
+            nodes.addAll(b.getNodes());
+        return nodes;
+    }
+
+    @Test
+    public void constantFolding() {
+        Options.get().enableFlowgraphOptimization();
+        FlowGraph fg = Misc.build(
+                "var t = typeof 1;",
+                "var n = 2 * 3 + 1;",
+                "var s = 'a' + 'b';",
+                "var b = !false;",
+                "var m = -(4 - 9);",
+                "var o = typeof null;");
+        List<AbstractNode> nodes = getNodes(fg.getMain());
+        assertFalse(nodes.stream().anyMatch(n -> n instanceof UnaryOperatorNode || n instanceof BinaryOperatorNode));
+        Set<Object> constants = newSet();
+        for (AbstractNode n : nodes) {
+            if (n instanceof ConstantNode) {
+                ConstantNode c = (ConstantNode) n;
+                switch (c.getType()) {
+                    case NUMBER:
+                        constants.add(c.getNumber());
+                        break;
+                    case STRING:
+                        constants.add(c.getString());
+                        break;
+                    case BOOLEAN:
+                        constants.add(c.getBoolean());
+                        break;
+                    default:
+                }
+            }
+        }
+        assertTrue(constants.toString(), constants.containsAll(Arrays.asList("number", 7.0, "ab", true, 5.0, "object")));
+    }
+
+    @Test
+    public void constantFoldingResults() {
+        Options.get().enableFlowgraphOptimization();
+        Misc.runSource(
+                "TAJS_assert(typeof 1 === 'number');",
+                "TAJS_assert(typeof 'x' === 'string');",
+                "TAJS_assert(typeof true === 'boolean');",
+                "TAJS_assert(typeof null === 'object');",
+                "TAJS_assert(2 * 3 + 1 === 7);",
+                "TAJS_assert(7 / 2 === 3.5);",
+                "TAJS_assert(-5 % 3 === -2);",
+                "TAJS_assert(1 / 0 === Infinity);",
+                "TAJS_assert(isNaN(0 / 0));",
+                "TAJS_assert('a' + 'b' === 'ab');",
+                "TAJS_assert(!false === true);",
+                "TAJS_assert(-(4 - 9) === 5);");
+    }
+
+    /**
+     * Maps each node that may make implicit calls to the first node of its block.
+     */
+    private static Map<String, String> getBlockStarts(FlowGraph fg) {
+        Map<String, String> starts = newMap();
+        for (Function f : fg.getFunctions())
+            for (BasicBlock b : f.getBlocks())
+                for (AbstractNode n : b.getNodes())
+                    if (n instanceof ReadPropertyNode || n instanceof WritePropertyNode || n instanceof ReadVariableNode || n instanceof BinaryOperatorNode)
+                        starts.put(getKey(n), getKey(b.getFirstNode()));
+        return starts;
+    }
+
+    private static String getKey(AbstractNode n) {
+        return n + " at " + n.getSourceLocation();
+    }
+
+    private static final String[] IMPLICIT_CALLS = {
+            "var count = 0;",
+            "var o = { get x() { count++; return count; }, set y(v) { count += v; } };",
+            "var v = { valueOf: function() { count++; return 10; } };",
+            "var s = 0;",
+            "for (var i = 0; i < 2; i++) { s = s + o.x; }",
+            "var t = s > 1 ? o.x : 2;",
+            "while (t) { t = t - 1; }",
+            "o.y = v + 1;"
+    };
+
+    @Test
+    public void noMergeBeforeImplicitCalls() {
+        Options.get().disableTestSoundness();
+        Map<String, String> plain = getBlockStarts(Misc.build(IMPLICIT_CALLS));
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().disableTestSoundness();
+        Options.get().enableFlowgraphOptimization();
+        Map<String, String> optimized = getBlockStarts(Misc.build(IMPLICIT_CALLS));
+        assertFalse(optimized.isEmpty());
+        for (Map.Entry<String, String> e : optimized.entrySet())
+            assertEquals(e.getKey(), plain.get(e.getKey()), e.getValue());
+    }
+
+    @Test
+    public void implicitCallResults() {
+        Options.get().disableTestSoundness();
+        Options.get().enableFlowgraphOptimization();
+        List<String> src = newList(Arrays.asList(IMPLICIT_CALLS));
+        src.add("TAJS_assert(typeof s === 'number');");
+        src.add("TAJS_assert(typeof t === 'number');");
+        src.add("TAJS_assert(typeof count === 'number');");
+        Misc.runSource(src.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,153 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.analysis.InitialStateBuilder;
+import dk.brics.tajs.analysis.Solver;
+import dk.brics.tajs.analysis.js.FunctionSummaries;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.lattice.PropertyKey.StringPropertyKey;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.lattice.UnknownValueResolver;
+import dk.brics.tajs.monitoring.AnalysisPhase;
+import dk.brics.tajs.monitoring.DefaultAnalysisMonitoring;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.util.AnalysisException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the function summaries (option -function-summaries).
+ */
+public class TestFunctionSummaries {
+
+    private static final String[] SOURCE = {
+            "function poly(x, n) {",
+            "  var r = 0;",
+            "  for (var i = 0; i < n; i++)",
+            "    r = r * x + i;",
+            "  return r;",
+            "}",
+            "function sign(x) {",
+            "  if (x < 0)",
+            "    return -1;",
+            "  return x > 0 ? 1 : 0;",
+            "}",
+            "var a = poly(2, 3);",
+            "var b = sign(-5);",
+            "var c = poly(2, 3) + b;"
+    };
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestFunctionSummaries");
+    }
+
+    @Before
+    public void init() {
+        FunctionSummaries.clear();
+    }
+
+    /**
+     * Records the values of the global variables a, b and c at the end of the main function,
+     * the number of node transfers, and the number of summarized calls.
+     */
+    private static class ResultMonitor extends DefaultAnalysisMonitoring {
+
+        private final List<String> values = newList();
+
+        private int transfers;
+
+        private int applied;
+
+        private Solver.SolverInterface c;
+
+        @Override
+        public void setSolverInterface(Solver.SolverInterface c) {
+            this.c = c;
+        }
+
+        @Override
+        public void visitNodeTransferPre(AbstractNode n, State s) {
+            if (!s.getSolverInterface().isScanning())
+                transfers++;
+        }
+
+        @Override
+        public void visitPhasePost(AnalysisPhase phase) {
+            if (phase != AnalysisPhase.ANALYSIS)
+                return;
+            for (State s : c.getAnalysisLatticeElement().getStates(c.getFlowGraph().getMain().getOrdinaryExit()).values())
+                for (String var : new String[]{"a", "b", "c"})
+                    values.add(var + " = " + UnknownValueResolver.getProperty(InitialStateBuilder.GLOBAL, StringPropertyKey.make(var), s.clone(), false));
+            applied = c.getAnalysis().getFunctionSummaries().getNumberOfApplied();
+        }
+    }
+
+    private static ResultMonitor analyze(boolean summaries, String... src) {
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().disableTestSoundness();
+        if (summaries)
+            Options.get().enableFunctionSummaries();
+        ResultMonitor result = new ResultMonitor();
+        Misc.runSource(src, result);
+        return result;
+    }
+
+    @Test
+    public void sameResults() {
+        ResultMonitor plain = analyze(false, SOURCE);
+        ResultMonitor first = analyze(true, SOURCE);
+        ResultMonitor second = analyze(true, SOURCE);
+        assertEquals(3, plain.values.size());
+        assertEquals(0, first.applied);
+        assertEquals(plain.values, first.values);
+        assertEquals(plain.values, second.values);
+        assertTrue(second.applied > 0);
+        assertTrue(second.transfers < first.transfers);
+    }
+
+    @Test
+    public void notRecordedWithoutOption() {
+        analyze(false, SOURCE);
+        ResultMonitor second = analyze(true, SOURCE);
+        assertEquals(0, second.applied);
+    }
+
+    @Test
+    public void differentArgumentsRecomputed() {
+        analyze(true, SOURCE);
+        String[] other = SOURCE.clone();
+        other[other.length - 2] = "var b = sign(5);";
+        ResultMonitor plain = analyze(false, other);
+        ResultMonitor summarized = analyze(true, other);
+        assertEquals(plain.values, summarized.values);
+        assertTrue(summarized.applied > 0); // only the calls to poly
+    }
+
+    @Test
+    public void differentOptionsRecomputed() {
+        analyze(true, SOURCE);
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().disableTestSoundness();
+        Options.get().enableFunctionSummaries();
+        Options.get().enableLoopUnrolling(2);
+        ResultMonitor result = new ResultMonitor();
+        Misc.runSource(SOURCE, result);
+        assertEquals(0, result.applied);
+    }
+
+    @Test(expected = AnalysisException.class)
+    public void rejectedWithSoundnessTesting() {
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().enableFunctionSummaries();
+        Misc.runSource(SOURCE);
+    }
+}
@@ -0,0 +1,88 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.analysis.Solver;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.monitoring.AnalysisMonitor;
+import dk.brics.tajs.monitoring.AnalysisPhase;
+import dk.brics.tajs.monitoring.CompositeMonitor;
+import dk.brics.tajs.monitoring.DefaultAnalysisMonitoring;
+import dk.brics.tajs.monitoring.HeapSamplingMonitor;
+import dk.brics.tajs.options.Options;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the memory estimates of {@link HeapSamplingMonitor} (option -memory-sampling).
+ */
+public class TestHeapSamplingMonitor {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestHeapSamplingMonitor");
+    }
+
+    @Before
+    public void init() {
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    /**
+     * Records the number of stored states after the analysis.
+     */
+    private static class StateCounter extends DefaultAnalysisMonitoring {
+
+        private Solver.SolverInterface c;
+
+        private int states = -1;
+
+        @Override
+        public void setSolverInterface(Solver.SolverInterface c) {
+            this.c = c;
+        }
+
+        @Override
+        public void visitPhasePost(AnalysisPhase phase) {
+            if (phase == AnalysisPhase.ANALYSIS)
+                states = c.getAnalysisLatticeElement().getNumberOfStates();
+        }
+    }
+
+    private static HeapSamplingMonitor run(String file) {
+        HeapSamplingMonitor monitor = new HeapSamplingMonitor();
+        StateCounter counter = new StateCounter();
+        Misc.run(file, CompositeMonitor.make(new AnalysisMonitor(), monitor, counter));
+        assertEquals(counter.states, monitor.getNumberOfStates()); // every stored state is measured, not a sample
+        return monitor;
+    }
+
+    private static long sum(Map<?, HeapSamplingMonitor.Estimate> m) {
+        return m.values().stream().mapToLong(HeapSamplingMonitor.Estimate::getBytes).sum();
+    }
+
+    @Test
+    public void allStoredStates() {
+        HeapSamplingMonitor monitor = run("test-resources/src/google/richards.js");
+        long total = monitor.getTotal().getBytes();
+        assertTrue(total > 0);
+        assertEquals(total, sum(monitor.getEstimatesByFunction()));
+        assertEquals(total, sum(monitor.getEstimatesByContext()));
+        assertTrue(monitor.getDistinctTotal().getBytes() > 0);
+        assertTrue(monitor.getDistinctTotal().getBytes() <= total);
+    }
+
+    @Test
+    public void deterministic() {
+        Map<Function, HeapSamplingMonitor.Estimate> first = run("test-resources/src/google/richards.js").getEstimatesByFunction();
+        Main.reset();
+        Options.get().enableTest();
+        Map<Function, HeapSamplingMonitor.Estimate> second = run("test-resources/src/google/richards.js").getEstimatesByFunction();
+        assertEquals(first.size(), second.size());
+        assertEquals(sum(first), sum(second));
+    }
+}
@@ -0,0 +1,127 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.util.HybridArrayHashMap;
+import dk.brics.tajs.util.HybridArrayHashSet;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the hybrid collections with the standard collections on random operation sequences,
+ * covering the singleton, array and hash table representations and the transitions between them.
+ */
+public class TestHybridCollections {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestHybridCollections");
+    }
+
+    @Test
+    public void randomOperations() {
+        Random r = new Random(42);
+        for (int round = 0; round < 1000; round++) {
+            Map<Integer, Integer> ref = new HashMap<>();
+            HybridArrayHashMap<Integer, Integer> h = new HybridArrayHashMap<>();
+            Set<Integer> sref = new HashSet<>();
+            HybridArrayHashSet<Integer> s = new HybridArrayHashSet<>();
+            int range = 1 + r.nextInt(round % 3 == 0 ? 5 : 60);
+            for (int op = 0; op < 200; op++) {
+                int k = r.nextInt(range) * (r.nextBoolean() ? 65536 : 1); // also produce colliding hash table indexes
+                int v = r.nextInt(100);
+                switch (r.nextInt(10)) {
+                    case 0:
+                    case 1:
+                    case 2:
+                        assertEquals(ref.put(k, v), h.put(k, v));
+                        assertEquals(sref.add(k), s.add(k));
+                        break;
+                    case 3:
+                        assertEquals(ref.remove(k), h.remove(k));
+                        assertEquals(sref.remove(k), s.remove(k));
+                        break;
+                    case 4: {
+                        for (Iterator<Map.Entry<Integer, Integer>> it = h.entrySet().iterator(); it.hasNext(); ) {
+                            Map.Entry<Integer, Integer> e = it.next();
+                            if (e.getKey() % 3 == 0) {
+                                it.remove();
+                                ref.remove(e.getKey());
+                            } else if (e.getKey() % 3 == 1) {
+                                e.setValue(e.getValue() + 1);
+                                ref.put(e.getKey(), e.getValue());
+                            }
+                        }
+                        for (Iterator<Integer> it = s.iterator(); it.hasNext(); ) {
+                            int x = it.next();
+                            if (x % 2 == 0) {
+                                it.remove();
+                                sref.remove(x);
+                            }
+                        }
+                        break;
+                    }
+                    case 5: {
+                        Map<Integer, Integer> m = new HashMap<>();
+                        int n = r.nextInt(12);
+                        for (int i = 0; i < n; i++)
+                            m.put(r.nextInt(range), i);
+                        ref.putAll(m);
+                        h.putAll(m);
+                        sref.addAll(m.keySet());
+                        s.addAll(m.keySet());
+                        break;
+                    }
+                    case 6:
+                        h = new HybridArrayHashMap<>(h);
+                        s = new HybridArrayHashSet<>(s);
+                        break;
+                    case 7: {
+                        HybridArrayHashMap<Integer, Integer> h2 = new HybridArrayHashMap<>();
+                        h2.putAll(h);
+                        h = h2;
+                        HybridArrayHashSet<Integer> s2 = new HybridArrayHashSet<>();
+                        s2.addAll(s);
+                        s = s2;
+                        break;
+                    }
+                    case 8:
+                        h.replaceAll((x, y) -> y * 2);
+                        ref.replaceAll((x, y) -> y * 2);
+                        break;
+                    case 9: {
+                        List<Integer> retained = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+                        h.keySet().removeIf(x -> x % 5 == 0);
+                        ref.keySet().removeIf(x -> x % 5 == 0);
+                        s.retainAll(retained);
+                        sref.retainAll(retained);
+                        break;
+                    }
+                }
+                assertEquals(ref.size(), h.size());
+                assertTrue(h.equals(ref) && ref.equals(h));
+                assertEquals(ref.hashCode(), h.hashCode());
+                assertEquals(ref, new HashMap<>(h));
+                Map<Integer, Integer> visited = new HashMap<>();
+                h.forEach(visited::put);
+                assertEquals(ref, visited);
+                assertEquals(ref.containsKey(k), h.containsKey(k));
+                assertTrue(Objects.equals(ref.get(k), h.get(k)));
+                assertEquals(sref.size(), s.size());
+                assertTrue(s.equals(sref) && sref.equals(s));
+                assertEquals(sref.hashCode(), s.hashCode());
+                assertEquals(sref, new HashSet<>(Arrays.asList(s.toArray())));
+                assertEquals(sref.contains(k), s.contains(k));
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.analysis.Solver;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.lattice.Context;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.monitoring.AnalysisPhase;
+import dk.brics.tajs.monitoring.CompositeMonitor;
+import dk.brics.tajs.monitoring.DefaultAnalysisMonitoring;
+import dk.brics.tajs.monitoring.inspector.datacollection.InspectorData;
+import dk.brics.tajs.monitoring.inspector.datacollection.monitors.ContextRegistrationMonitor;
+import dk.brics.tajs.monitoring.inspector.datacollection.monitors.StateCollectorMonitor;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.BlockAndContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static dk.brics.tajs.util.Collections.addToMapSet;
+import static dk.brics.tajs.util.Collections.newMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the inspector data is computed on demand, and agrees with the data observed during the analysis.
+ */
+public class TestInspectorData {
+
+    private static final String[] SOURCE = {
+            "function C(v) { this.v = v; }",
+            "C.prototype.get = function() { return this.v; };",
+            "var a = new C(1);",
+            "var b = new C('x');",
+            "a.get();",
+            "b.get();"
+    };
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestInspectorData");
+    }
+
+    @Before
+    public void init() {
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    /**
+     * Records the contexts of each block at every propagation, as the inspector did before the data was computed on demand,
+     * and the final block entry states.
+     */
+    private static class EagerMonitor extends DefaultAnalysisMonitoring {
+
+        private final Map<BasicBlock, Set<Context>> contexts = newMap();
+
+        private final Map<BlockAndContext<Context>, State> states = newMap();
+
+        private Solver.SolverInterface c;
+
+        @Override
+        public void setSolverInterface(Solver.SolverInterface c) {
+            this.c = c;
+        }
+
+        @Override
+        public void visitPropagationPost(BlockAndContext<Context> from, BlockAndContext<Context> to, boolean changed) {
+            addToMapSet(contexts, from.getBlock(), from.getContext());
+            addToMapSet(contexts, to.getBlock(), to.getContext());
+        }
+
+        @Override
+        public void visitPhasePost(AnalysisPhase phase) {
+            if (phase != AnalysisPhase.ANALYSIS)
+                return;
+            for (Function f : c.getFlowGraph().getFunctions())
+                for (BasicBlock b : f.getBlocks())
+                    c.getAnalysisLatticeElement().getStates(b).forEach((context, state) -> states.put(new BlockAndContext<>(b, context), state));
+        }
+    }
+
+    @Test
+    public void contextsFromLatticeElement() {
+        EagerMonitor eager = new EagerMonitor();
+        ContextRegistrationMonitor lazy = new ContextRegistrationMonitor();
+        Misc.runSource(SOURCE, CompositeMonitor.make(eager, lazy));
+        Map<BasicBlock, Set<Context>> contexts = lazy.getMap();
+        assertFalse(eager.contexts.isEmpty());
+        eager.contexts.forEach((b, cs) -> assertTrue(b.toString(), contexts.get(b).containsAll(cs)));
+        contexts.forEach((b, cs) -> assertFalse(b.toString(), cs.isEmpty()));
+        int maxContexts = contexts.values().stream().mapToInt(Set::size).max().getAsInt();
+        assertTrue(maxContexts >= 2); // get is analyzed for each receiver
+        assertSame(contexts, lazy.getMap());
+    }
+
+    @Test
+    public void statesFromLatticeElement() {
+        EagerMonitor eager = new EagerMonitor();
+        StateCollectorMonitor lazy = new StateCollectorMonitor();
+        Misc.runSource(SOURCE, CompositeMonitor.make(eager, lazy));
+        Map<BlockAndContext<Context>, State> states = lazy.getStates();
+        assertFalse(states.isEmpty());
+        assertEquals(eager.states.keySet(), states.keySet());
+        eager.states.forEach((bc, s) -> assertSame(s, states.get(bc)));
+        assertFalse(lazy.getMaxStateSizes().isEmpty());
+    }
+
+    private static <T> Supplier<T> counting(AtomicInteger calls, T value) {
+        return () -> {
+            calls.incrementAndGet();
+            return value;
+        };
+    }
+
+    @Test
+    public void computedOnFirstRequest() {
+        AtomicInteger calls = new AtomicInteger();
+        Map<BasicBlock, Set<Context>> blockContexts = newMap();
+        InspectorData data = new InspectorData(counting(calls, newMap()), counting(calls, null), counting(calls, blockContexts), counting(calls, newMap()));
+        assertEquals(0, calls.get());
+        assertSame(blockContexts, data.getBlockContexts());
+        assertEquals(1, calls.get());
+        assertSame(blockContexts, data.getBlockContexts());
+        assertEquals(1, calls.get());
+        data.getAllocationSiteMap();
+        data.getAllocationSiteMap();
+        assertEquals(2, calls.get());
+    }
+}
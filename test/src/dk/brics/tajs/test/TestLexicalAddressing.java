@@ -0,0 +1,143 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.SourceLocation;
+import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
+import dk.brics.tajs.js2flowgraph.FlowGraphMutator;
+import dk.brics.tajs.options.Options;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the static resolution of variable references (skipped scope chain levels).
+ */
+public class TestLexicalAddressing {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestLexicalAddressing");
+    }
+
+    @Before
+    public void init() {
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    private static ReadVariableNode findRead(FlowGraph fg, String function, String var) {
+        for (Function f : fg.getFunctions())
+            if (function.equals(f.getName()))
+                for (BasicBlock b : f.getBlocks())
+                    for (AbstractNode n : b.getNodes())
+                        if (n instanceof ReadVariableNode && ((ReadVariableNode) n).getVariableName().equals(var))
+                            return (ReadVariableNode) n;
+        throw new AssertionError("No read of " + var + " in " + function);
+    }
+
+    private static List<String> names(List<Function> fs) {
+        return fs == null ? null : fs.stream().map(Function::getName).collect(Collectors.toList());
+    }
+
+    @Test
+    public void annotations() {
+        FlowGraph fg = Misc.build(
+                "function f(p) {",
+                "  var a;",
+                "  function g() { return a + b + p + g + arguments; }",
+                "  var h = function hh() { return hh + c; };",
+                "}");
+        assertEquals(Collections.singletonList("g"), names(findRead(fg, "g", "a").getSkippedScopes()));
+        assertEquals(Arrays.asList("g", "f"), names(findRead(fg, "g", "b").getSkippedScopes()));
+        assertEquals(Collections.singletonList("g"), names(findRead(fg, "g", "p").getSkippedScopes()));
+        assertEquals(Collections.singletonList("g"), names(findRead(fg, "g", "g").getSkippedScopes()));
+        assertNull(findRead(fg, "g", "arguments").getSkippedScopes());
+        assertNull(findRead(fg, "hh", "hh").getSkippedScopes());
+        assertEquals(Arrays.asList("hh", "f"), names(findRead(fg, "hh", "c").getSkippedScopes()));
+    }
+
+    @Test
+    public void existingNodesNotReannotated() {
+        FlowGraph fg = Misc.build("function f() { return x; }");
+        List<Function> before = findRead(fg, "f", "x").getSkippedScopes();
+        Function added = FlowGraphMutator.extendFlowGraphWithTopLevelFunction(Collections.emptyList(), "function k() { return y; }", fg, new SourceLocation.SyntheticLocationMaker("dynamic"));
+        fg.check();
+        assertSame(before, findRead(fg, "f", "x").getSkippedScopes());
+        assertEquals(Arrays.asList("k", added.getName()), names(findRead(fg, "k", "y").getSkippedScopes()));
+    }
+
+    @Test
+    public void with() {
+        Misc.runSource(
+                "var x = 'global';",
+                "function f(o) {",
+                "  with (o) {",
+                "    return (function() { return x; })();",
+                "  }",
+                "}",
+                "function g(o) {",
+                "  var x = 'local';",
+                "  function h() { with (o) { return x; } }",
+                "  return h();",
+                "}",
+                "TAJS_assert(f({x: 'with'}) === 'with');",
+                "TAJS_assert(g({x: 'with'}) === 'with');");
+    }
+
+    @Test
+    public void catchScope() {
+        Misc.runSource(
+                "var e = 'global';",
+                "function f() {",
+                "  try { throw 'caught'; } catch (e) { return (function() { return e; })(); }",
+                "}",
+                "TAJS_assert(f() === 'caught');");
+    }
+
+    @Test
+    public void evalDeclaresVariable() {
+        Options.get().enableUnevalizer();
+        Misc.runSource(
+                "var y = 'global';",
+                "function f() {",
+                "  eval('var y = \"local\"');",
+                "  return (function() { return y; })();",
+                "}",
+                "TAJS_assert(f() === 'local');");
+    }
+
+    @Test
+    public void evalDeclaresFunction() {
+        Options.get().enableUnevalizer();
+        Misc.runSource(
+                "var k = function() { return 2; };",
+                "function h() {",
+                "  eval('function k() { return 1; }');",
+                "  return (function() { return k(); })();",
+                "}",
+                "TAJS_assert(h() === 1);");
+    }
+
+    @Test
+    public void dynamicFunction() {
+        Options.get().enableUnevalizer();
+        Misc.runSource(
+                "var x = 5;",
+                "function f() {",
+                "  var x = 1;",
+                "  return new Function('a', 'return a + x;');",
+                "}",
+                "TAJS_assert(f()(1) === 6);");
+    }
+}
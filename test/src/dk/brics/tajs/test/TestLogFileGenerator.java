@@ -0,0 +1,130 @@
+package dk.brics.tajs.test;
+
+import dk.au.cs.casa.jer.HashUtil;
+import dk.brics.tajs.Main;
+import dk.brics.tajs.monitoring.soundness.LogFileGenerator;
+import dk.brics.tajs.monitoring.soundness.LogFileHelper;
+import dk.brics.tajs.options.OptionValues;
+import dk.brics.tajs.options.Options;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.args4j.CmdLineException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the writing of log files via temporary files, and the skipping of up-to-date log files.
+ */
+public class TestLogFileGenerator {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestLogFileGenerator");
+    }
+
+    @Before
+    public void init() {
+        Main.initLogging();
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    private static List<String> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void tempFileRemovedAfterFailedWrite() throws IOException {
+        Path dir = Files.createTempDirectory("tajs-logs");
+        Path target = dir.resolve("main.js.log");
+        Files.write(target, "old".getBytes(StandardCharsets.UTF_8));
+        try {
+            LogFileHelper.writeViaTempFile(target, tmp -> {
+                Files.write(tmp, "partial".getBytes(StandardCharsets.UTF_8));
+                throw new IOException("disk full");
+            });
+            fail("failure not propagated");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        try {
+            LogFileHelper.writeViaTempFile(target, tmp -> {
+                Files.write(tmp, "partial".getBytes(StandardCharsets.UTF_8));
+                throw new RuntimeException("no bytes written");
+            });
+            fail("failure not propagated");
+        } catch (RuntimeException e) {
+            assertEquals("no bytes written", e.getMessage());
+        }
+        assertEquals(Collections.singletonList("main.js.log"), list(dir));
+        assertEquals("old", read(target));
+    }
+
+    @Test
+    public void targetReplaced() throws IOException {
+        Path dir = Files.createTempDirectory("tajs-logs");
+        Path target = dir.resolve("main.js.log");
+        Files.write(target, "old".getBytes(StandardCharsets.UTF_8));
+        LogFileHelper.writeViaTempFile(target, tmp -> Files.write(tmp, "new".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(Collections.singletonList("main.js.log"), list(dir));
+        assertEquals("new", read(target));
+    }
+
+    /**
+     * Makes a main file with a log file (without entries) for its current SHA.
+     */
+    private static Path makeLoggedMainFile(Path dir) throws IOException {
+        Path main = dir.resolve("main.js");
+        Files.write(main, "var x = 1;\n".getBytes(StandardCharsets.UTF_8));
+        String metadata = "{\"sha\":\"" + HashUtil.shaDirOrFile(main) + "\",\"time\":0,\"root\":\"main.js\",\"result\":\"success\"," +
+                "\"environment\":\"NODE_PROF_GLOBAL\",\"environmentVersion\":\"?\",\"logVersion\":\"0.2\",\"timeLimit\":30}\n";
+        Files.write(dir.resolve("main.js.log"), metadata.getBytes(StandardCharsets.UTF_8));
+        return main;
+    }
+
+    private static boolean isUpToDate(Path main) throws CmdLineException {
+        OptionValues options = new OptionValues();
+        options.parse(new String[]{"-log-file", main.resolveSibling("main.js.log").toString(), main.toString()});
+        Options.set(options);
+        return new LogFileHelper().isUpToDate();
+    }
+
+    @Test
+    public void upToDateSkipped() throws IOException, InterruptedException, CmdLineException {
+        Path dir = Files.createTempDirectory("tajs-logs");
+        Path main = makeLoggedMainFile(dir);
+        assertTrue(isUpToDate(main));
+        Map<LogFileGenerator.Result, Integer> counts = LogFileGenerator.generate(Collections.singletonList(main), Arrays.asList("-log-file", dir.resolve("main.js.log").toString()), 1, 60);
+        assertEquals(1, (int) counts.get(LogFileGenerator.Result.UNCHANGED));
+        assertEquals(0, (int) counts.get(LogFileGenerator.Result.GENERATED));
+        assertEquals(0, (int) counts.get(LogFileGenerator.Result.FAILED));
+        assertEquals(Arrays.asList("main.js", "main.js.log"), list(dir));
+    }
+
+    @Test
+    public void changedFileNotUpToDate() throws IOException, CmdLineException {
+        Path dir = Files.createTempDirectory("tajs-logs");
+        Path main = makeLoggedMainFile(dir);
+        Files.write(main, "var x = 2;\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(isUpToDate(main));
+    }
+}
@@ -0,0 +1,141 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.analysis.nativeobjects.ECMAScriptObjects;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.SourceLocation;
+import dk.brics.tajs.flowgraph.jsnodes.NopNode;
+import dk.brics.tajs.lattice.MustEquals;
+import dk.brics.tajs.lattice.MustReachingDefs;
+import dk.brics.tajs.lattice.ObjectLabel;
+import dk.brics.tajs.lattice.ObjectLabel.Kind;
+import dk.brics.tajs.lattice.PropertyKey;
+import dk.brics.tajs.options.Options;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static dk.brics.tajs.util.Collections.newSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that copies of {@link MustReachingDefs} and {@link MustEquals} never see each other's modifications,
+ * also when a copy is modified via propagation.
+ */
+public class TestMustFactsCopyOnWrite {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestMustFactsCopyOnWrite");
+    }
+
+    private AbstractNode n1, n2, n3;
+
+    private ObjectLabel l;
+
+    private PropertyKey p, q;
+
+    @Before
+    public void init() {
+        Main.reset();
+        Options.get().enableTest();
+        SourceLocation loc = new SourceLocation.SyntheticLocationMaker("synthetic").make(1, -1, 1, -1);
+        n1 = new NopNode(loc);
+        n2 = new NopNode(loc);
+        n3 = new NopNode(loc);
+        l = ObjectLabel.make(ECMAScriptObjects.OBJECT_PROTOTYPE, Kind.OBJECT);
+        p = PropertyKey.StringPropertyKey.make("p");
+        q = PropertyKey.StringPropertyKey.make("q");
+    }
+
+    private void reachingDefs() {
+        MustReachingDefs a = new MustReachingDefs();
+        a.addReachingDef(1, n1);
+        a.addReachingDef(2, n2);
+
+        MustReachingDefs b = new MustReachingDefs(a);
+        b.addReachingDef(3, n3);
+        b.setToBottom(1);
+        assertSame(n1, a.getReachingDef(1));
+        assertNull(a.getReachingDef(3));
+
+        MustReachingDefs other = new MustReachingDefs();
+        other.addReachingDef(1, n1);
+        other.addReachingDef(2, n3);
+        MustReachingDefs c = new MustReachingDefs(a);
+        assertTrue(c.propagate(other));
+        assertNull(c.getReachingDef(2));
+        assertSame(n2, a.getReachingDef(2));
+        assertSame(n3, other.getReachingDef(2));
+
+        a.addReachingDef(4, n1); // the original is still writable after being copied
+        assertNull(b.getReachingDef(4));
+        assertNull(c.getReachingDef(4));
+
+        MustReachingDefs d = new MustReachingDefs(c);
+        assertFalse(d.propagate(c)); // no change, still shared
+        d.addReachingDef(5, n2);
+        assertNull(c.getReachingDef(5));
+    }
+
+    private void mustEquals() {
+        MustEquals a = new MustEquals();
+        a.addMustEquals(1, l, p);
+
+        MustEquals b = new MustEquals(a);
+        b.addMustEquals(2, l, p);
+        assertEquals(newSet(Collections.singleton(1)), a.getMustEquals(l, p));
+        assertEquals(newSet(Arrays.asList(1, 2)), b.getMustEquals(l, p));
+        assertEquals(Collections.emptySet(), a.getMustEquals(2));
+
+        MustEquals c = new MustEquals(a);
+        assertTrue(c.propagate(new MustEquals()));
+        assertEquals(Collections.emptySet(), c.getMustEquals(l, p));
+        assertEquals(newSet(Collections.singleton(1)), a.getMustEquals(l, p));
+
+        a.addMustEquals(3, l, p); // modifies the inner set of the original, which b copied
+        a.addMustEquals(1, l, q);
+        assertEquals(newSet(Arrays.asList(1, 2)), b.getMustEquals(l, p));
+        assertEquals(Collections.emptySet(), b.getMustEquals(l, q));
+        assertEquals(Collections.emptySet(), c.getMustEquals(l, q));
+
+        MustEquals d = new MustEquals(b);
+        MustEquals e = new MustEquals(d);
+        e.setToBottom(2);
+        assertEquals(newSet(Arrays.asList(1, 2)), b.getMustEquals(l, p));
+        assertEquals(newSet(Arrays.asList(1, 2)), d.getMustEquals(l, p));
+        assertEquals(newSet(Collections.singleton(1)), e.getMustEquals(l, p));
+
+        MustEquals f = new MustEquals(b);
+        assertTrue(f.propagate(e));
+        assertEquals(newSet(Collections.singleton(1)), f.getMustEquals(l, p));
+        assertEquals(newSet(Arrays.asList(1, 2)), b.getMustEquals(l, p));
+    }
+
+    @Test
+    public void reachingDefsCopyOnWrite() {
+        reachingDefs();
+    }
+
+    @Test
+    public void reachingDefsNoCopyOnWrite() {
+        Options.get().enableNoCopyOnWrite();
+        reachingDefs();
+    }
+
+    @Test
+    public void mustEqualsCopyOnWrite() {
+        mustEquals();
+    }
+
+    @Test
+    public void mustEqualsNoCopyOnWrite() {
+        Options.get().enableNoCopyOnWrite();
+        mustEquals();
+    }
+}
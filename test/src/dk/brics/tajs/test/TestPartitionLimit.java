@@ -0,0 +1,131 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.lattice.PartitionToken;
+import dk.brics.tajs.lattice.PartitionToken.TypePartitionToken.Type;
+import dk.brics.tajs.lattice.PartitionedValue;
+import dk.brics.tajs.lattice.Value;
+import dk.brics.tajs.options.Options;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the merging of partitionings (options -partition-limit and -partition-budget).
+ */
+public class TestPartitionLimit {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestPartitionLimit");
+    }
+
+    private AbstractNode n1, n2, n3;
+
+    @Before
+    public void init() {
+        Main.reset();
+        Main.initLogging();
+        Options.get().enableTest();
+        Options.get().enableDeterminacy();
+        FlowGraph fg = Misc.build("var a = 1;", "var b = 2;", "var c = 3;");
+        List<AbstractNode> nodes = newList();
+        for (BasicBlock b : fg.getMain().getBlocks())
+            nodes.addAll(b.getNodes());
+        nodes.sort((x, y) -> Integer.compare(x.getIndex(), y.getIndex()));
+        n1 = nodes.get(0);
+        n2 = nodes.get(1);
+        n3 = nodes.get(2);
+    }
+
+    /**
+     * Makes a value partitioned at the given node into a string partition and a number partition.
+     */
+    private static PartitionedValue make(AbstractNode n) {
+        Map<PartitionToken, Value> partitions = newMap();
+        partitions.put(PartitionToken.TypePartitionToken.make(n, Type.STRING), Value.makeStr("a"));
+        partitions.put(PartitionToken.TypePartitionToken.make(n, Type.NUMBER), Value.makeNum(1));
+        return PartitionedValue.make(n, partitions);
+    }
+
+    @Test
+    public void limitMergesLatestPartitionings() {
+        Options.get().setPartitionLimit(2);
+        PartitionedValue v1 = make(n1);
+        PartitionedValue v2 = make(n2);
+        PartitionedValue v = v1.addPartitions(v2);
+        assertEquals(Collections.singleton(n1), v.getPartitionNodes());
+        assertEquals(2, PartitionedValue.getNumberOfPartitionsMerged());
+        assertEquals(1, PartitionedValue.getNumberOfMergedPartitionings());
+        assertEquals(v1.ignorePartitions(), v.ignorePartitions()); // the single value still covers the merged partitions
+        assertEquals(v.ignorePartitions(), v.getPartition(n2, PartitionToken.TypePartitionToken.make(n2, Type.STRING)));
+        assertSame(v, v2.addPartitions(v1)); // independent of the order
+    }
+
+    @Test
+    public void limitKeepsOnePartitioning() {
+        Options.get().setPartitionLimit(1);
+        PartitionedValue v = make(n3);
+        assertEquals(Collections.singleton(n3), v.getPartitionNodes());
+        assertEquals(0, PartitionedValue.getNumberOfPartitionsMerged());
+    }
+
+    @Test
+    public void budgetMergesLatestPartitionings() {
+        Options.get().setPartitionBudget(3);
+        PartitionedValue v1 = make(n1);
+        PartitionedValue v2 = make(n2); // 4 partitions seen in total, so n2 is over budget
+        assertEquals(Collections.singleton(n2), v2.getPartitionNodes()); // at least one partitioning is kept
+        PartitionedValue v = v2.addPartitions(v1);
+        assertEquals(Collections.singleton(n1), v.getPartitionNodes());
+        assertEquals(v1.ignorePartitions(), v.ignorePartitions());
+        assertSame(v, v1.addPartitions(v2));
+        PartitionedValue w = make(n3).addPartitions(v1); // n3 is over budget from the start
+        assertEquals(Collections.singleton(n1), w.getPartitionNodes());
+        assertEquals(2, PartitionedValue.getNumberOfMergedPartitionings());
+    }
+
+    private static final String[] PREDICATES = {
+            "function isObj(x) { return typeof x === 'object'; }",
+            "function isStr(x) { return typeof x === 'string'; }",
+            "var y = {};",
+            "var x = TAJS_join(y, 'foo', 5);",
+            "var r;",
+            "for (var i = 0; i < 3; i++) {",
+            "  if (isObj(x) && isStr(x)) {",
+            "    r = 1;",
+            "  } else {",
+            "    r = x;",
+            "  }",
+            "  x = TAJS_join(x, i);",
+            "}",
+            "TAJS_assert(r, 'isMaybeObject');",
+            "TAJS_assert(r, 'isMaybeStrSomeNonNumeric');",
+            "TAJS_assert(r, 'isMaybeNumUInt');"
+    };
+
+    @Test
+    public void analysisWithLimit() { // terminates and stays sound when partitionings are merged
+        Options.get().setPartitionLimit(1);
+        Misc.runSource(PREDICATES);
+        assertTrue(PartitionedValue.getNumberOfPartitionsMerged() > 0);
+    }
+
+    @Test
+    public void analysisWithBudget() {
+        Options.get().setPartitionBudget(1);
+        Misc.runSource(PREDICATES);
+        assertTrue(PartitionedValue.getNumberOfPartitionsMerged() > 0);
+    }
+}
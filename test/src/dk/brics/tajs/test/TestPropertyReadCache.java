@@ -0,0 +1,96 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.options.Options;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that memoized prototype chain property reads are not used after the involved objects have changed.
+ */
+public class TestPropertyReadCache {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestPropertyReadCache");
+    }
+
+    @Before
+    public void init() {
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    @Test
+    public void readWriteReadSameBlock() {
+        Misc.runSource(
+                "var a = Array.prototype.x;",
+                "Object.prototype.x = 42;",
+                "var b = Array.prototype.x;",
+                "Object.prototype.x = 'foo';",
+                "var c = Array.prototype.x;",
+                "TAJS_assert(a === undefined);",
+                "TAJS_assert(b === 42);",
+                "TAJS_assert(c === 'foo');");
+    }
+
+    @Test
+    public void writeToBase() {
+        Misc.runSource(
+                "var a = Array.prototype.push;",
+                "Array.prototype.push = 42;",
+                "var b = Array.prototype.push;",
+                "TAJS_assert(a, 'isMaybeObject');",
+                "TAJS_assert(b === 42);");
+    }
+
+    @Test
+    public void deleteFromPrototype() {
+        Misc.runSource(
+                "Object.prototype.x = 42;",
+                "var a = Array.prototype.x;",
+                "delete Object.prototype.x;",
+                "var b = Array.prototype.x;",
+                "TAJS_assert(a === 42);",
+                "TAJS_assert(b === undefined);");
+    }
+
+    @Test
+    public void changedPrototype() {
+        Misc.runSource(
+                "var p = {x: 1};",
+                "var q = {x: 2};",
+                "var o = Object.create(p);",
+                "var a = o.x;",
+                "Object.setPrototypeOf(o, q);",
+                "var b = o.x;",
+                "TAJS_assert(a === 1);",
+                "TAJS_assert(b === 2);");
+    }
+
+    @Test
+    public void branches() {
+        Misc.runSource(
+                "var a = Array.prototype.x;",
+                "if (Math.random()) {",
+                "  Object.prototype.x = 1;",
+                "  TAJS_assert(Array.prototype.x === 1);",
+                "} else {",
+                "  TAJS_assert(Array.prototype.x === undefined);",
+                "}",
+                "var b = Array.prototype.x;",
+                "TAJS_assert(a === undefined);",
+                "TAJS_assert(b, 'isMaybeUndef');",
+                "TAJS_assert(b, 'isMaybeSingleNum');");
+    }
+
+    @Test
+    public void calls() {
+        Misc.runSource(
+                "function f(o) { return o.x; }",
+                "var a = f(Array.prototype);",
+                "Object.prototype.x = 'y';",
+                "var b = Array.prototype.x;",
+                "TAJS_assert(a, 'isMaybeUndef');",
+                "TAJS_assert(b === 'y');");
+    }
+}
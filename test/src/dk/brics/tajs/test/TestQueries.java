@@ -0,0 +1,159 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.analysis.Analysis;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.monitoring.AnalysisMonitor;
+import dk.brics.tajs.monitoring.CompositeMonitor;
+import dk.brics.tajs.monitoring.DefaultAnalysisMonitoring;
+import dk.brics.tajs.monitoring.QueryMonitor;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.util.AnalysisException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the query mode (option -query).
+ */
+public class TestQueries {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestQueries");
+    }
+
+    @Before
+    public void init() {
+        Main.initLogging();
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().disableTestSoundness(); // only the query locations are scanned
+    }
+
+    @Test
+    public void parse() {
+        assertEquals("a/b.js:4", QueryMonitor.Query.parse("a/b.js:4").toString());
+        assertEquals("a/b.js:4:2", QueryMonitor.Query.parse("a/b.js:4:2").toString());
+        assertEquals(2, QueryMonitor.Query.parseAll("a.js:1, b.js:2:3").size());
+    }
+
+    @Test
+    public void callTargetsAndValues() throws IOException {
+        Path src = Files.createTempFile("tajs-query", ".js");
+        Files.write(src, ("function f(x) { return x; }\n" +
+                "function g(x) { return x; }\n" +
+                "var h = Math.random() ? f : g;\n" +
+                "var y = h(42);\n").getBytes(StandardCharsets.UTF_8));
+        QueryMonitor.Query query = QueryMonitor.Query.parse(src.getFileName() + ":4");
+        QueryMonitor queries = new QueryMonitor(Collections.singletonList(query));
+        Options.get().setQueries(query.toString()); // only scans line 4
+        Options.get().getArguments().add(src);
+        Analysis a = Main.init(Options.get(), CompositeMonitor.make(new AnalysisMonitor(), queries), null);
+        Main.run(a);
+
+        Set<String> callees = queries.getUserFunctionCallees(query).stream().map(Function::getName).collect(Collectors.toSet());
+        assertEquals(2, callees.size());
+        assertTrue(callees.contains("f") && callees.contains("g"));
+        assertTrue(queries.getValues(query).get("y").isMaybeSingleNum());
+    }
+
+    @Test(expected = AnalysisException.class)
+    public void soundnessTestingRejected() throws IOException {
+        Path src = Files.createTempFile("tajs-query", ".js");
+        Files.write(src, "var x = 1;\n".getBytes(StandardCharsets.UTF_8));
+        Options.get().enableTestSoundness();
+        Options.get().setQueries(src.getFileName() + ":1");
+        Options.get().getArguments().add(src);
+        Main.init(Options.get(), new AnalysisMonitor(), null);
+    }
+
+    /**
+     * Counts the node transfers in the fixpoint iteration.
+     */
+    private static class TransferCounter extends DefaultAnalysisMonitoring {
+
+        private int transfers;
+
+        @Override
+        public void visitNodeTransferPre(AbstractNode n, State s) {
+            if (!s.getSolverInterface().isScanning())
+                transfers++;
+        }
+    }
+
+    /**
+     * Analyzes the given file, with or without the -query option, and records the results at the query location.
+     */
+    private static Analysis analyze(Path src, QueryMonitor.Query query, boolean demand, QueryMonitor queries, TransferCounter counter) {
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().disableTestSoundness();
+        if (demand)
+            Options.get().setQueries(query.toString());
+        Options.get().getArguments().add(src);
+        Analysis a = Main.init(Options.get(), CompositeMonitor.make(new AnalysisMonitor(), queries, counter), null);
+        Main.run(a);
+        return a;
+    }
+
+    private static Map<String, String> getValues(QueryMonitor queries, QueryMonitor.Query query) {
+        Map<String, String> res = new TreeMap<>();
+        queries.getValues(query).forEach((var, v) -> res.put(var, v.toString()));
+        return res;
+    }
+
+    @Test
+    public void stopsEarly() throws IOException {
+        Path src = Files.createTempFile("tajs-query", ".js");
+        Files.write(src, ("var x = 'a' + 1;\n" +
+                "function work(n) { var s = 0; for (var i = 0; i < n; i++) { s += i; } return s; }\n" +
+                "var r = 0;\n" +
+                "for (var j = 0; j < 10; j++) { r += work(j) + work('x' + j); }\n").getBytes(StandardCharsets.UTF_8));
+        QueryMonitor.Query query = QueryMonitor.Query.parse(src.getFileName() + ":1");
+        QueryMonitor full = new QueryMonitor(Collections.singletonList(query));
+        TransferCounter fullCounter = new TransferCounter();
+        Analysis fullAnalysis = analyze(src, query, false, full, fullCounter);
+        QueryMonitor demanded = new QueryMonitor(Collections.singletonList(query));
+        TransferCounter demandedCounter = new TransferCounter();
+        Analysis demandedAnalysis = analyze(src, query, true, demanded, demandedCounter);
+
+        assertFalse(fullAnalysis.getSolver().isPartial());
+        assertTrue(demandedAnalysis.getSolver().isPartial());
+        assertFalse(getValues(full, query).isEmpty());
+        assertEquals(getValues(full, query), getValues(demanded, query));
+        assertTrue(demandedCounter.transfers < fullCounter.transfers);
+    }
+
+    @Test
+    public void noEarlyStopAfterCall() throws IOException {
+        Path src = Files.createTempFile("tajs-query", ".js");
+        Files.write(src, ("function inc(x) { return x + 1; }\n" +
+                "var a = inc(1);\n" +
+                "var b = a;\n" +
+                "var c = inc('s');\n").getBytes(StandardCharsets.UTF_8));
+        QueryMonitor.Query query = QueryMonitor.Query.parse(src.getFileName() + ":3");
+        QueryMonitor full = new QueryMonitor(Collections.singletonList(query));
+        analyze(src, query, false, full, new TransferCounter());
+        QueryMonitor demanded = new QueryMonitor(Collections.singletonList(query));
+        Analysis demandedAnalysis = analyze(src, query, true, demanded, new TransferCounter());
+
+        assertFalse(demandedAnalysis.getSolver().isPartial()); // the later call of inc changes the value of a
+        assertTrue(demanded.getValues(query).get("a").isMaybeOtherThanNum());
+        assertEquals(getValues(full, query), getValues(demanded, query));
+    }
+}
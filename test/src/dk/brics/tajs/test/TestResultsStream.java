@@ -0,0 +1,59 @@
+package dk.brics.tajs.test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dk.brics.tajs.Main;
+import dk.brics.tajs.analysis.Analysis;
+import dk.brics.tajs.options.Options;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the JSON Lines results output (option -results-jsonl).
+ */
+public class TestResultsStream {
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestResultsStream");
+    }
+
+    @Before
+    public void init() {
+        Main.initLogging();
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    @Test
+    public void messagesTypesAndCallEdges() throws IOException {
+        Path src = Files.createTempFile("tajs-results", ".js");
+        Files.write(src, ("function f(x) { return x; }\n" +
+                "var y = f(42);\n" +
+                "f(true);\n" +
+                "y.foo.bar;\n").getBytes(StandardCharsets.UTF_8));
+        Path out = Files.createTempFile("tajs-results", ".jsonl");
+        Options.get().setResultsJSONLinesFile(out.toString());
+        Options.get().getArguments().add(src);
+        Analysis a = Main.init(Options.get(), null, null);
+        Main.run(a);
+
+        List<JsonObject> records = Files.readAllLines(out, StandardCharsets.UTF_8).stream()
+                .map(line -> new JsonParser().parse(line).getAsJsonObject())
+                .collect(Collectors.toList());
+        List<JsonObject> calls = records.stream().filter(r -> r.get("kind").getAsString().equals("call")).collect(Collectors.toList());
+        assertEquals(2, calls.size()); // one record per call edge
+        assertTrue(calls.stream().allMatch(r -> r.get("function").getAsString().equals("f") && r.getAsJsonObject("target").get("line").getAsInt() == 1));
+        assertTrue(records.stream().anyMatch(r -> r.get("kind").getAsString().equals("type") && r.get("name").getAsString().equals("y")));
+        assertTrue(records.stream().anyMatch(r -> r.get("kind").getAsString().equals("message") && r.get("status").getAsString().equals("CERTAIN")));
+    }
+}
@@ -0,0 +1,95 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.analysis.Analysis;
+import dk.brics.tajs.analysis.dom.DOMBuilder;
+import dk.brics.tajs.analysis.dom.SharedDOMModel;
+import dk.brics.tajs.monitoring.AnalysisMonitor;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the shared DOM model (option -shared-dom-model) is reused by later analyses in the same JVM
+ * and that the results are the same as when the model is built from scratch.
+ */
+public class TestSharedDOMModel {
+
+    private static final String FILE = "test-resources/src/chromeexperiments/3ddemo.html";
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestSharedDOMModel");
+    }
+
+    @Before
+    public void init() {
+        SharedDOMModel.clear();
+        setup();
+    }
+
+    @After
+    public void done() {
+        SharedDOMModel.clear();
+    }
+
+    private static void setup() {
+        Main.initLogging();
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().enableIncludeDom();
+    }
+
+    /**
+     * Runs the analysis and returns a description of the results.
+     */
+    private static String analyze() {
+        Options.get().getArguments().add(Paths.get(FILE));
+        AnalysisMonitor monitor = new AnalysisMonitor();
+        Analysis a = Main.init(Options.get(), monitor, null);
+        Main.run(a);
+        List<String> messages = monitor.getSortedMessages().stream().map(Message::toString).collect(Collectors.toList());
+        return "states: " + a.getSolver().getAnalysisLatticeElement().getNumberOfStates() + "\n" +
+                "call edges: " + a.getSolver().getAnalysisLatticeElement().getCallGraph().getSizeIgnoringContexts() + "\n" +
+                String.join("\n", messages);
+    }
+
+    @Test
+    public void reuse() {
+        String fresh = analyze();
+
+        setup();
+        Options.get().enableSharedDOMModel();
+        String recorded = analyze();
+        int builds = DOMBuilder.getNumberOfModelBuilds();
+
+        setup();
+        Options.get().enableSharedDOMModel();
+        String reused = analyze();
+
+        assertEquals(builds, DOMBuilder.getNumberOfModelBuilds()); // not built again
+        assertEquals(fresh, recorded);
+        assertEquals(fresh, reused);
+    }
+
+    @Test
+    public void rebuildForOtherOptions() {
+        Options.get().enableSharedDOMModel();
+        analyze();
+        int builds = DOMBuilder.getNumberOfModelBuilds();
+
+        setup();
+        Options.get().enableSharedDOMModel();
+        Options.get().enableUnevalizer();
+        analyze();
+
+        assertEquals(builds + 1, DOMBuilder.getNumberOfModelBuilds());
+    }
+}
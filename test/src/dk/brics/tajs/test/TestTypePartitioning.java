@@ -25,6 +25,12 @@ public class TestTypePartitioning {
         test("test-resources/src/type-partitioning/testSinglePredicateCallInsideConditional.js");
     }
 
+    @Test
+    public void testSinglePredicateCallInsideConditionalWithPartitionLimit() {
+        Options.get().setPartitionLimit(100);
+        test("test-resources/src/type-partitioning/testSinglePredicateCallInsideConditional.js");
+    }
+
     @Test(expected = AnalysisResultException.class)
     public void testSinglePredicateCallInsideConditional() {
         Options.get().enableNoTypePartitioning();
@@ -0,0 +1,99 @@
+package dk.brics.tajs.test;
+
+import dk.au.cs.casa.typescript.types.Type;
+import dk.brics.tajs.Main;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.typescript.TypeScriptDeclLoader;
+import dk.brics.tajs.util.PathAndURLUtils;
+import dk.brics.tajs.util.Strings;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the content hash check and the module type cache of {@link TypeScriptDeclLoader}.
+ */
+public class TestTypeScriptDeclLoader {
+
+    private static final Path MYAPP = Paths.get("test-resources/src/tsspecs/myapp");
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestTypeScriptDeclLoader");
+    }
+
+    @Before
+    public void init() {
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    /**
+     * Copies mylib.js, mylib.d.ts and mylib.d.ts.json to a fresh directory, with the .d.ts file newer than the .d.ts.json file.
+     */
+    private static Path copyLibrary() throws IOException {
+        Path dir = Files.createTempDirectory("tajs-tsspecs");
+        for (String name : new String[]{"mylib.js", "mylib.d.ts", "mylib.d.ts.json"})
+            Files.copy(MYAPP.resolve(name), dir.resolve(name));
+        Files.setLastModifiedTime(dir.resolve("mylib.d.ts.json"), FileTime.fromMillis(1000000000000L));
+        Files.setLastModifiedTime(dir.resolve("mylib.d.ts"), FileTime.fromMillis(2000000000000L));
+        return dir;
+    }
+
+    private static void writeHash(Path dir) throws IOException {
+        String dts = new String(Files.readAllBytes(dir.resolve("mylib.d.ts")), StandardCharsets.UTF_8);
+        Files.write(dir.resolve("mylib.d.ts.json.sha256"), Strings.sha256(dts).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void matchingHashNotConverted() throws IOException {
+        Path dir = copyLibrary();
+        writeHash(dir);
+        Path json = dir.resolve("mylib.d.ts.json");
+        byte[] before = Files.readAllBytes(json);
+        FileTime modified = Files.getLastModifiedTime(json);
+        // the .d.ts file is newer, so a timestamp check would convert it (which requires node and ts-spec-reader)
+        Type type = TypeScriptDeclLoader.loadTypeScriptDeclarationFile(PathAndURLUtils.toURL(dir.resolve("mylib.js")));
+        assertNotNull(type);
+        assertTrue(Arrays.equals(before, Files.readAllBytes(json)));
+        assertEquals(modified, Files.getLastModifiedTime(json));
+    }
+
+    @Test
+    public void moduleTypeReused() throws IOException {
+        Path dir = copyLibrary();
+        writeHash(dir);
+        URL lib = PathAndURLUtils.toURL(dir.resolve("mylib.js"));
+        Type first = TypeScriptDeclLoader.loadTypeScriptDeclarationFile(lib);
+        Main.reset(); // the module types survive resets
+        Options.get().enableTest();
+        Type second = TypeScriptDeclLoader.loadTypeScriptDeclarationFile(lib);
+        assertNotNull(first);
+        assertSame(first, second);
+    }
+
+    @Test
+    public void changedFileReloaded() throws IOException {
+        Path dir = copyLibrary();
+        writeHash(dir);
+        URL lib = PathAndURLUtils.toURL(dir.resolve("mylib.js"));
+        Type first = TypeScriptDeclLoader.loadTypeScriptDeclarationFile(lib);
+        Files.setLastModifiedTime(dir.resolve("mylib.d.ts.json"), FileTime.fromMillis(1500000000000L));
+        Type second = TypeScriptDeclLoader.loadTypeScriptDeclarationFile(lib);
+        assertNotNull(second);
+        assertNotSame(first, second);
+    }
+}
@@ -497,6 +497,72 @@ public class TestValue {
         assertEquals(Value.makeStrings(Stream.of("foo", "bar", "baz").collect(Collectors.toList())), v2.join(v1));
     }
 
+    @Test
+    public void testSignedZeroConstants() {
+        Value pos = Value.makeNum(0.0);
+        Value neg = Value.makeNum(-0.0);
+        assertTrue(!pos.equals(neg));
+        assertTrue(pos.isMaybeSingleNum() && neg.isMaybeSingleNum());
+        assertTrue(pos.isMaybeZero() && neg.isMaybeZero());
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(neg.getNum()));
+        assertEquals(Double.doubleToLongBits(0.0), Double.doubleToLongBits(pos.getNum()));
+        assertTrue(neg == neg.join(Value.makeNum(-0.0)));
+        assertTrue(neg == neg.joinNum(-0.0));
+        Value both = pos.join(neg);
+        assertTrue(!both.isMaybeSingleNum());
+        assertTrue(both.isMaybeZero() && both.isMaybeFuzzyNum());
+        assertEquals(both, neg.join(pos));
+        assertEquals(both, pos.joinNum(-0.0));
+    }
+
+    @Test
+    public void testNaNFlagAndConstant() {
+        Value nan = Value.makeNum(Double.NaN);
+        assertTrue(nan == Value.makeNumNaN());
+        assertTrue(nan.isNaN() && nan.isMaybeNaN());
+        assertTrue(!nan.isMaybeSingleNum() && !nan.isNotNum());
+        assertTrue(Double.isNaN(nan.getNum()));
+        assertEquals(nan, Value.makeNum(0.0 / 0.0));
+        assertEquals(nan, Value.makeNum(Double.longBitsToDouble(0x7ff8000000000001L))); // all NaN bit patterns are the NaN flag
+        Value one = Value.makeNum(1);
+        Value oneOrNaN = one.joinNumNaN();
+        assertTrue(oneOrNaN.isMaybeNaN() && !oneOrNaN.isNaN());
+        assertTrue(!oneOrNaN.isMaybeSingleNum() && oneOrNaN.isMaybeNumUIntPos());
+        assertEquals(oneOrNaN, one.joinNum(Double.NaN));
+        assertEquals(oneOrNaN, one.join(nan));
+        assertEquals(oneOrNaN, nan.join(one));
+        assertTrue(!Value.makeNone().joinNumNaN().isMaybeSingleNum());
+    }
+
+    @Test
+    public void testJoinOfConstantAndFuzzyNumber() {
+        Value uint = Value.makeAnyNumUInt();
+        assertEquals(uint, Value.makeNum(5).join(uint));
+        assertEquals(uint, uint.join(Value.makeNum(0)));
+        assertEquals(uint, uint.joinNum(7));
+        Value negative = Value.makeNum(-3).join(Value.makeAnyNumUIntPos());
+        assertTrue(!negative.isMaybeSingleNum() && negative.isMaybeFuzzyNum());
+        assertTrue(negative.isMaybeNumUIntPos() && negative.isMaybeNumIntNegative() && !negative.isMaybeNumOther() && !negative.isMaybeZero());
+        assertEquals(negative, Value.makeAnyNumUIntPos().join(Value.makeNum(-3)));
+        Value other = Value.makeNum(0.5).join(Value.makeNumInf());
+        assertTrue(!other.isMaybeSingleNum() && other.isMaybeInf() && other.isMaybeNumOther());
+        assertTrue(!other.isMaybeNaN() && !other.isMaybeZero());
+    }
+
+    @Test
+    public void testCanonicalNumberConstants() {
+        assertTrue(Value.makeNum(1.5) == Value.makeNum(1.5));
+        assertTrue(Value.makeNum(0.0) == Value.makeNum(0.0));
+        assertTrue(Value.makeNum(-0.0) == Value.makeNum(-0.0));
+        assertTrue(Value.makeNum(0.0) != Value.makeNum(-0.0));
+        assertTrue(Value.makeNum(0.1 + 0.2) != Value.makeNum(0.3)); // different bit patterns
+        assertTrue(Value.makeNum(0.1 + 0.2) == Value.makeNum(0.30000000000000004));
+        assertTrue(Value.makeNum(3).join(Value.makeNum(3)) == Value.makeNum(3));
+        assertTrue(Value.makeNum(Double.POSITIVE_INFINITY) == Value.makeNumInf());
+        assertEquals(Value.makeNum(Double.MIN_VALUE).hashCode(), Value.makeNum(Double.MIN_VALUE).hashCode());
+        assertTrue(!Value.makeNum(Double.MIN_VALUE).equals(Value.makeNum(0.0)));
+    }
+
     /*
      * Public non-static methods in Value that return a Value (except 'join'), should be overwritten in PartitionedValue
      */
@@ -0,0 +1,220 @@
+package dk.brics.tajs.test;
+
+import dk.brics.tajs.Main;
+import dk.brics.tajs.analysis.Solver;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.BasicBlock;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.lattice.CallEdge;
+import dk.brics.tajs.lattice.Context;
+import dk.brics.tajs.lattice.State;
+import dk.brics.tajs.monitoring.AnalysisMonitor;
+import dk.brics.tajs.monitoring.AnalysisPhase;
+import dk.brics.tajs.monitoring.CompositeMonitor;
+import dk.brics.tajs.monitoring.DefaultAnalysisMonitoring;
+import dk.brics.tajs.options.Options;
+import dk.brics.tajs.solver.BlockAndContext;
+import dk.brics.tajs.solver.CallGraph;
+import dk.brics.tajs.solver.IAnalysisLatticeElement;
+import dk.brics.tajs.solver.Message;
+import dk.brics.tajs.solver.WorkList;
+import dk.brics.tajs.solver.WorkListStrategies;
+import dk.brics.tajs.util.AnalysisException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the work list strategies (option -worklist-strategy).
+ */
+public class TestWorkListStrategies {
+
+    private static final List<String> STRATEGIES = Arrays.asList("default", "wto", "lifo", "lrv");
+
+    private static final String[] LOOPS = {
+            "function inc(x) { return x + 1; }",
+            "var o = {n: 0, s: ''};",
+            "for (var i = 0; i < 10; i++) {",
+            "  o.n = inc(o.n);",
+            "  var j = 0;",
+            "  while (j < i) { o.s += 'a'; j++; }",
+            "}",
+            "TAJS_assert(typeof o.n === 'number');",
+            "TAJS_assert(typeof o.s === 'string');"
+    };
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("dk.brics.tajs.test.TestWorkListStrategies");
+    }
+
+    @Before
+    public void init() {
+        Main.reset();
+        Options.get().enableTest();
+    }
+
+    /**
+     * Records the block entry states, the messages and the number of node transfers of an analysis run.
+     */
+    private static class ResultMonitor extends DefaultAnalysisMonitoring {
+
+        private final List<String> states = newList();
+
+        private int transfers;
+
+        private Solver.SolverInterface c;
+
+        @Override
+        public void setSolverInterface(Solver.SolverInterface c) {
+            this.c = c;
+        }
+
+        @Override
+        public void visitNodeTransferPre(AbstractNode n, State s) {
+            if (!s.getSolverInterface().isScanning())
+                transfers++;
+        }
+
+        @Override
+        public void visitPhasePost(AnalysisPhase phase) {
+            if (phase != AnalysisPhase.ANALYSIS)
+                return;
+            IAnalysisLatticeElement<State, Context, CallEdge> e = c.getAnalysisLatticeElement();
+            for (Function f : c.getFlowGraph().getFunctions())
+                for (BasicBlock b : f.getBlocks())
+                    for (Map.Entry<Context, State> me : e.getStates(b).entrySet())
+                        states.add(b.getIndex() + " " + me.getKey() + ": " + me.getValue());
+            Collections.sort(states);
+        }
+    }
+
+    /**
+     * Runs the analysis of {@link #LOOPS} with the given strategy and returns the block entry states and messages.
+     */
+    private static List<String> analyze(String strategy) {
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().setWorkListStrategy(strategy);
+        AnalysisMonitor monitor = new AnalysisMonitor();
+        ResultMonitor result = new ResultMonitor();
+        Misc.runSource(LOOPS, CompositeMonitor.make(monitor, result));
+        List<String> res = newList(result.states);
+        res.addAll(monitor.getSortedMessages().stream().map(Message::toString).collect(Collectors.toList()));
+        return res;
+    }
+
+    /**
+     * Runs the analysis of the given file with the given strategy and returns the block entry states, messages and transfers.
+     */
+    private static List<String> analyzeFile(String strategy, String file) {
+        Main.reset();
+        Options.get().enableTest();
+        Options.get().setWorkListStrategy(strategy);
+        AnalysisMonitor monitor = new AnalysisMonitor();
+        ResultMonitor result = new ResultMonitor();
+        Misc.run(file, CompositeMonitor.make(monitor, result));
+        List<String> res = newList(result.states);
+        res.addAll(monitor.getSortedMessages().stream().map(Message::toString).collect(Collectors.toList()));
+        res.add("transfers: " + result.transfers);
+        return res;
+    }
+
+    @Test
+    public void sameFixpoint() {
+        List<String> expected = analyze("default");
+        assertFalse(expected.isEmpty());
+        for (String strategy : STRATEGIES)
+            assertEquals(strategy, expected, analyze(strategy));
+    }
+
+    @Test
+    public void deterministic() {
+        for (String strategy : STRATEGIES)
+            assertEquals(strategy, analyzeFile(strategy, "test-resources/src/google/richards.js"), analyzeFile(strategy, "test-resources/src/google/richards.js"));
+    }
+
+    @Test(expected = AnalysisException.class)
+    public void unknownStrategy() {
+        WorkListStrategies.make("fifo");
+    }
+
+    /**
+     * Makes a work list with the entries of all blocks of the main function in the empty context.
+     */
+    private static WorkList<Context> makeWorkList(FlowGraph fg, String strategy, List<BlockAndContext<Context>> entries) {
+        CallGraph<State, Context, CallEdge> call_graph = new CallGraph<>();
+        Context c = Context.makeEmpty();
+        for (BasicBlock b : fg.getMain().getBlocks())
+            entries.add(new BlockAndContext<>(b, c));
+        call_graph.registerFunctionEntry(BlockAndContext.makeEntry(fg.getMain().getEntry(), c));
+        return new WorkList<>(call_graph, null, WorkListStrategies.make(strategy));
+    }
+
+    /**
+     * Removes all entries and returns them in order.
+     */
+    private static List<BlockAndContext<Context>> drain(WorkList<Context> worklist) {
+        List<BlockAndContext<Context>> res = newList();
+        while (!worklist.isEmpty())
+            res.add(worklist.removeNext());
+        return res;
+    }
+
+    @Test
+    public void pendingEntriesReAdded() {
+        FlowGraph fg = Misc.build(LOOPS);
+        for (String strategy : STRATEGIES) {
+            List<BlockAndContext<Context>> entries = newList();
+            WorkList<Context> worklist = makeWorkList(fg, strategy, entries);
+            for (BlockAndContext<Context> bc : entries)
+                assertTrue(worklist.add(bc));
+            for (BlockAndContext<Context> bc : entries)
+                assertFalse(strategy, worklist.add(bc)); // already pending
+            assertEquals(strategy, entries.size(), worklist.size());
+            BlockAndContext<Context> first = worklist.removeNext();
+            assertEquals(strategy, entries.size() - 1, worklist.size());
+            assertTrue(strategy, worklist.add(first)); // no longer pending
+            assertFalse(strategy, worklist.add(first));
+            List<BlockAndContext<Context>> drained = drain(worklist);
+            assertEquals(strategy, entries.size(), drained.size());
+            assertEquals(strategy, newSet(entries), newSet(drained));
+            assertTrue(strategy, worklist.isEmpty());
+            for (BlockAndContext<Context> bc : entries)
+                assertTrue(strategy, worklist.add(bc)); // all can be added again after draining
+            assertEquals(strategy, entries.size(), worklist.size());
+        }
+    }
+
+    @Test
+    public void deterministicOrder() {
+        FlowGraph fg = Misc.build(LOOPS);
+        for (String strategy : STRATEGIES) {
+            List<BlockAndContext<Context>> entries1 = newList();
+            WorkList<Context> worklist1 = makeWorkList(fg, strategy, entries1);
+            List<BlockAndContext<Context>> entries2 = newList();
+            WorkList<Context> worklist2 = makeWorkList(fg, strategy, entries2);
+            entries1.forEach(worklist1::add);
+            Collections.reverse(entries2);
+            entries2.forEach(worklist2::add);
+            if (!strategy.equals("lifo")) { // lifo depends on the insertion order by design
+                Set<BlockAndContext<Context>> all = newSet(entries1);
+                List<BlockAndContext<Context>> order = drain(worklist1);
+                assertEquals(strategy, all, newSet(order));
+                assertEquals(strategy, order, drain(worklist2));
+            }
+        }
+    }
+}
@@ -32,7 +32,10 @@ import org.kohsuke.args4j.CmdLineException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.lang.management.ThreadMXBean;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -48,108 +51,29 @@ import static dk.brics.tajs.util.Collections.newSet;
 
 public class Stats {
 
+    /**
+     * Runs the given benchmarks and writes the statistics to out/stats.
+     * If the system property stats.jobs is set, each benchmark runs in a separate JVM, see {@link StatsHarness}.
+     */
     public static void run(String outfile, int secondsTimeLimit, int nodeTransferLimit, Optional<OptionValues> initialOptions, String[][]... tests) throws IOException, CmdLineException {
-        Path statDir = Paths.get("out/stats");
-        Path f = statDir.resolve(outfile + ".jsonp");
-        Path statsFile = statDir.resolve("stats.html");
-        Path datafilesFile = statDir.resolve("datafiles.jsonp");
-        //noinspection ResultOfMethodCallIgnored
-        statDir.toFile().mkdirs();
-        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("stats.html")) {
-            if (is == null)
-                throw new IOException("stats.html not found");
-            Files.copy(is, statsFile, StandardCopyOption.REPLACE_EXISTING);
-        }
-        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("datafiles.jsonp")) {
-            if (is == null)
-                throw new IOException("datafiles.jsonp not found");
-            Files.copy(is, datafilesFile, StandardCopyOption.REPLACE_EXISTING);
+        if (Integer.getInteger("stats.jobs", 0) > 0) {
+            StatsHarness.run(outfile, secondsTimeLimit, nodeTransferLimit, initialOptions, tests);
+            return;
         }
+        Path f = prepareOutput(outfile);
         try (FileWriter fw = new FileWriter(f.toFile())) {
             Main.initLogging();
             JsonWriter w = new JsonWriter(fw);
-            String machine = System.getenv("CI_RUNNER_DESCRIPTION");
-            if (machine == null)
-                machine = System.getenv("COMPUTERNAME");
-            if (machine == null)
-                machine = System.getenv("HOSTNAME");
-            if (machine == null)
-                machine = "?";
             ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
             long cpustart = threadMXBean.getCurrentThreadCpuTime();
-            fw.write("timestamp = " + System.currentTimeMillis() + ";\n");
-            fw.write("machine = \"" + machine + "\";\n");
-            fw.write("defaultOptions = \"" + (initialOptions.isPresent() ? initialOptions.get() : "") + "\";\n");
-            fw.write("data = ");
+            writeHeader(fw, initialOptions);
             w.beginArray();
             int numberOfTests = Arrays.stream(tests).mapToInt(ts -> ts.length).sum();
             int currentTest = 0;
             for (String[][] testset : tests) {
                 for (String[] testArgs : testset) {
                     System.out.format("[%d/%d] %s\n", ++currentTest, numberOfTests, String.join(" ", testArgs));
-                    OptionValues options = initialOptions.map(OptionValues::clone).orElseGet(OptionValues::new);
-                    options.parse(testArgs);
-                    options.checkConsistency();
-                    options.enableNoMessages();
-                    options.setAnalysisTimeLimit(secondsTimeLimit);
-                    options.setAnalysisTransferLimit(nodeTransferLimit);
-                    options.enableAnalysisLimitationWarnOnly();
-                    if (System.getProperty("statsquiet", "false").equalsIgnoreCase("true"))
-                        options.enableQuiet();
-
-                    ProgressMonitor progressMonitor = new ProgressMonitor(false);
-                    SuspiciousnessMonitor suspiciousnessMonitor = new SuspiciousnessMonitor();
-                    TerminationMonitor terminationMonitor = new TerminationMonitor();
-                    PrecisionMonitor precisionMonitor = new PrecisionMonitor();
-                    Analysis a = null;
-                    Throwable throwable = null;
-                    try {
-                        a = Main.init(options, CompositeMonitor.make(new AnalysisMonitor(), progressMonitor, suspiciousnessMonitor, terminationMonitor, precisionMonitor), null);
-                        if (a == null)
-                            throw new AnalysisException("Error during initialization");
-                        Main.run(a);
-                    } catch (Throwable e) {
-                        if (terminationMonitor.getTerminatedEarlyMsg() == null)
-                            System.out.println("Error: " + e.getMessage());
-                        throwable = e;
-                    }
-                    w.beginObject();
-                    String name = testArgs[testArgs.length - 1];
-                    String exceptionMsg = throwable != null ? throwable.getMessage() : null;
-                    String terminatedEarlyMsg = terminationMonitor.getTerminatedEarlyMsg();
-                    String errorMsg = exceptionMsg != null ? exceptionMsg : terminatedEarlyMsg != null ? terminatedEarlyMsg : "";
-                    w.name("name").value(name.replace("test-resources/src", "").replace("benchmarks/tajs/src", ""));
-                    w.name("options").value(Arrays.stream(testArgs).filter(s -> !s.endsWith(".js") && !s.endsWith(".html")).collect(java.util.stream.Collectors.joining(" ")));
-                    if (errorMsg.isEmpty()) {
-                        w.name("error").value("");
-                    } else {
-                        w.name("error").value(categorizeErrorMsg(errorMsg) + ": " + (errorMsg.length() > 500 ? errorMsg.substring(0, 500) + "..." : errorMsg));
-                    }
-                    if (a != null) {
-                        long time = progressMonitor.getPreScanMonitor().getAnalysisTime();
-                        w.name("time").value(((double)time)/1000);
-                        w.name("node_transfers").value(progressMonitor.getPreScanMonitor().getNodeTransfers());
-                        w.name("visited_usercode_node").value(progressMonitor.getPreScanMonitor().getVisitedNonHostNodes().size());
-                        w.name("transfers_per_visited_node").value(!progressMonitor.getPreScanMonitor().getVisitedNonHostNodes().isEmpty() ? ((double) progressMonitor.getPreScanMonitor().getNodeTransfers()) / progressMonitor.getPreScanMonitor().getVisitedNonHostNodes().size() : -1);
-                        w.name("visited_div_total_nodes").value(a.getSolver().getFlowGraph().getNumberOfUserCodeNodes() != 0 ? ((double) progressMonitor.getPreScanMonitor().getVisitedNonHostNodes().size()) / a.getSolver().getFlowGraph().getNumberOfUserCodeNodes() : -1);
-                        w.name("total_usercode_nodes").value(a.getSolver().getFlowGraph().getNumberOfUserCodeNodes());
-                        w.name("abstract_states").value(a.getSolver().getAnalysisLatticeElement().getNumberOfStates());
-                        w.name("states_per_block").value(((double) a.getSolver().getAnalysisLatticeElement().getNumberOfStates()) / a.getSolver().getFlowGraph().getNumberOfBlocks());
-                        w.name("average_state_size").value(((double) progressMonitor.getPreScanMonitor().getStateSize()) / a.getSolver().getAnalysisLatticeElement().getNumberOfStates());
-                        w.name("average_node_transfer_time").value(progressMonitor.getPreScanMonitor().getNodeTransfers() != 0 ? ((double)time / progressMonitor.getPreScanMonitor().getNodeTransfers()) : -1);
-                        w.name("callgraph_edges").value(a.getSolver().getAnalysisLatticeElement().getCallGraph().getSizeIgnoringContexts());
-                        w.name("total_call_nodes").value(suspiciousnessMonitor.getScanMonitor().getNumberOfCallNodes());
-                        w.name("callnodes_to_nonfunction").value(suspiciousnessMonitor.getScanMonitor().getCallToNonFunction().size());
-                        w.name("callnodes_to_mixed_functions").value(suspiciousnessMonitor.getScanMonitor().getCallToMixedFunctions().size());
-                        w.name("callnodes_polymorphic").value(suspiciousnessMonitor.getScanMonitor().getCallPolymorphic().size());
-                        w.name("mixed_readwrites").value(suspiciousnessMonitor.getScanMonitor().getMixedReadOrWrite().size());
-                        w.name("average_types").value(precisionMonitor.getScanMonitor().getAverageNumberOfTypesAtReads());
-                        w.name("unique_type").value(precisionMonitor.getScanMonitor().getFractionUniqueTypesAtReads());
-                        w.name("unique_callee").value(precisionMonitor.getScanMonitor().getFractionUniqueCallees());
-                    }
-                    // TODO: average and max suspiciousness at function value at call, property name at dynamic-property-accesses, value at read-property, value at read-variable
-                    w.endObject();
-                    w.flush();
+                    runTest(testArgs, initialOptions, secondsTimeLimit, nodeTransferLimit, w);
                     Main.reset();
                     System.gc();
                 }
@@ -160,6 +84,136 @@ public class Stats {
         System.out.println("Output written to " + f + ", open stats.html?" + outfile + " in a browser to view the results");
     }
 
+    /**
+     * Creates the output directory with stats.html and returns the data file for the given output name.
+     */
+    static Path prepareOutput(String outfile) throws IOException {
+        Path statDir = Paths.get("out/stats");
+        Path f = statDir.resolve(outfile + ".jsonp");
+        Path statsFile = statDir.resolve("stats.html");
+        Path datafilesFile = statDir.resolve("datafiles.jsonp");
+        //noinspection ResultOfMethodCallIgnored
+        statDir.toFile().mkdirs();
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("stats.html")) {
+            if (is == null)
+                throw new IOException("stats.html not found");
+            Files.copy(is, statsFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("datafiles.jsonp")) {
+            if (is == null)
+                throw new IOException("datafiles.jsonp not found");
+            Files.copy(is, datafilesFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return f;
+    }
+
+    /**
+     * Writes the header of a data file, up to the data array.
+     */
+    static void writeHeader(Writer fw, Optional<OptionValues> initialOptions) throws IOException {
+        String machine = System.getenv("CI_RUNNER_DESCRIPTION");
+        if (machine == null)
+            machine = System.getenv("COMPUTERNAME");
+        if (machine == null)
+            machine = System.getenv("HOSTNAME");
+        if (machine == null)
+            machine = "?";
+        fw.write("timestamp = " + System.currentTimeMillis() + ";\n");
+        fw.write("machine = \"" + machine + "\";\n");
+        fw.write("defaultOptions = \"" + (initialOptions.isPresent() ? initialOptions.get() : "") + "\";\n");
+        fw.write("data = ");
+    }
+
+    /**
+     * Analyzes a single benchmark and writes its statistics as a JSON object.
+     */
+    static void runTest(String[] testArgs, Optional<OptionValues> initialOptions, int secondsTimeLimit, int nodeTransferLimit, JsonWriter w) throws IOException, CmdLineException {
+        OptionValues options = initialOptions.map(OptionValues::clone).orElseGet(OptionValues::new);
+        options.parse(testArgs);
+        options.checkConsistency();
+        options.enableNoMessages();
+        options.setAnalysisTimeLimit(secondsTimeLimit);
+        options.setAnalysisTransferLimit(nodeTransferLimit);
+        options.enableAnalysisLimitationWarnOnly();
+        if (System.getProperty("statsquiet", "false").equalsIgnoreCase("true"))
+            options.enableQuiet();
+
+        ProgressMonitor progressMonitor = new ProgressMonitor(false);
+        SuspiciousnessMonitor suspiciousnessMonitor = new SuspiciousnessMonitor();
+        TerminationMonitor terminationMonitor = new TerminationMonitor();
+        PrecisionMonitor precisionMonitor = new PrecisionMonitor();
+        Analysis a = null;
+        Throwable throwable = null;
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+        long gcstart = getGCTime();
+        long cpustart = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+        long wallstart = System.nanoTime();
+        try {
+            a = Main.init(options, CompositeMonitor.make(new AnalysisMonitor(), progressMonitor, suspiciousnessMonitor, terminationMonitor, precisionMonitor), null);
+            if (a == null)
+                throw new AnalysisException("Error during initialization");
+            Main.run(a);
+        } catch (Throwable e) {
+            if (terminationMonitor.getTerminatedEarlyMsg() == null)
+                System.out.println("Error: " + e.getMessage());
+            throwable = e;
+        }
+        long wall = System.nanoTime() - wallstart;
+        long cpu = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime() - cpustart;
+        long gc = getGCTime() - gcstart;
+        long peakHeap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        w.beginObject();
+        String name = testArgs[testArgs.length - 1];
+        String exceptionMsg = throwable != null ? throwable.getMessage() : null;
+        String terminatedEarlyMsg = terminationMonitor.getTerminatedEarlyMsg();
+        String errorMsg = exceptionMsg != null ? exceptionMsg : terminatedEarlyMsg != null ? terminatedEarlyMsg : "";
+        w.name("name").value(name.replace("test-resources/src", "").replace("benchmarks/tajs/src", ""));
+        w.name("options").value(Arrays.stream(testArgs).filter(s -> !s.endsWith(".js") && !s.endsWith(".html")).collect(java.util.stream.Collectors.joining(" ")));
+        if (errorMsg.isEmpty()) {
+            w.name("error").value("");
+        } else {
+            w.name("error").value(categorizeErrorMsg(errorMsg) + ": " + (errorMsg.length() > 500 ? errorMsg.substring(0, 500) + "..." : errorMsg));
+        }
+        w.name("wall_time").value(wall / 1e9);
+        w.name("cpu_time").value(cpu / 1e9);
+        w.name("gc_time").value(gc / 1e3);
+        w.name("peak_heap_mb").value(peakHeap / (1024.0 * 1024.0));
+        if (a != null) {
+            long time = progressMonitor.getPreScanMonitor().getAnalysisTime();
+            w.name("time").value(((double)time)/1000);
+            w.name("node_transfers").value(progressMonitor.getPreScanMonitor().getNodeTransfers());
+            w.name("visited_usercode_node").value(progressMonitor.getPreScanMonitor().getVisitedNonHostNodes().size());
+            w.name("transfers_per_visited_node").value(!progressMonitor.getPreScanMonitor().getVisitedNonHostNodes().isEmpty() ? ((double) progressMonitor.getPreScanMonitor().getNodeTransfers()) / progressMonitor.getPreScanMonitor().getVisitedNonHostNodes().size() : -1);
+            w.name("visited_div_total_nodes").value(a.getSolver().getFlowGraph().getNumberOfUserCodeNodes() != 0 ? ((double) progressMonitor.getPreScanMonitor().getVisitedNonHostNodes().size()) / a.getSolver().getFlowGraph().getNumberOfUserCodeNodes() : -1);
+            w.name("total_usercode_nodes").value(a.getSolver().getFlowGraph().getNumberOfUserCodeNodes());
+            w.name("abstract_states").value(a.getSolver().getAnalysisLatticeElement().getNumberOfStates());
+            w.name("states_per_block").value(((double) a.getSolver().getAnalysisLatticeElement().getNumberOfStates()) / a.getSolver().getFlowGraph().getNumberOfBlocks());
+            w.name("average_state_size").value(((double) progressMonitor.getPreScanMonitor().getStateSize()) / a.getSolver().getAnalysisLatticeElement().getNumberOfStates());
+            w.name("average_node_transfer_time").value(progressMonitor.getPreScanMonitor().getNodeTransfers() != 0 ? ((double)time / progressMonitor.getPreScanMonitor().getNodeTransfers()) : -1);
+            w.name("callgraph_edges").value(a.getSolver().getAnalysisLatticeElement().getCallGraph().getSizeIgnoringContexts());
+            w.name("total_call_nodes").value(suspiciousnessMonitor.getScanMonitor().getNumberOfCallNodes());
+            w.name("callnodes_to_nonfunction").value(suspiciousnessMonitor.getScanMonitor().getCallToNonFunction().size());
+            w.name("callnodes_to_mixed_functions").value(suspiciousnessMonitor.getScanMonitor().getCallToMixedFunctions().size());
+            w.name("callnodes_polymorphic").value(suspiciousnessMonitor.getScanMonitor().getCallPolymorphic().size());
+            w.name("mixed_readwrites").value(suspiciousnessMonitor.getScanMonitor().getMixedReadOrWrite().size());
+            w.name("average_types").value(precisionMonitor.getScanMonitor().getAverageNumberOfTypesAtReads());
+            w.name("unique_type").value(precisionMonitor.getScanMonitor().getFractionUniqueTypesAtReads());
+            w.name("unique_callee").value(precisionMonitor.getScanMonitor().getFractionUniqueCallees());
+        }
+        // TODO: average and max suspiciousness at function value at call, property name at dynamic-property-accesses, value at read-property, value at read-variable
+        w.endObject();
+        w.flush();
+    }
+
+    /**
+     * Returns the accumulated garbage collection time in milliseconds.
+     */
+    private static long getGCTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(gc -> Math.max(0, gc.getCollectionTime())).sum();
+    }
+
     private static String categorizeErrorMsg(String errorMsg) {
         if (errorMsg.contains("Likely significant loss of precision (mix of multiple native and non-native functions)")
                 || errorMsg.contains("Too imprecise calls to Function")
@@ -0,0 +1,29 @@
+package dk.brics.tajs.test.stats;
+
+import dk.brics.tajs.options.OptionValues;
+import org.kohsuke.args4j.CmdLineException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Compares peak heap usage and analysis time with and without <code>-compact-call-edges</code>.
+ * Produces the stats files <code>call-edges-plain</code> and <code>call-edges-compact</code>.
+ */
+public class StatsCompactCallEdges {
+
+    public static void main(String[] args) throws IOException, CmdLineException {
+        for (boolean compact : new boolean[]{false, true}) {
+            OptionValues defaultOptions = new OptionValues();
+            defaultOptions.getUnsoundness().setUseFixedRandom(true);
+            if (compact)
+                defaultOptions.enableCompactCallEdges();
+            Stats.run(compact ? "call-edges-compact" : "call-edges-plain", 60, 120000, Optional.of(defaultOptions),
+                    StatsStandard.testSunspider,
+                    StatsStandard.testGoogle,
+                    StatsStandard.test10K,
+                    StatsStandard.testChromeExperiments,
+                    StatsStandard.testJQueryLoad);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package dk.brics.tajs.test.stats;
+
+import dk.brics.tajs.options.OptionValues;
+import org.kohsuke.args4j.CmdLineException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Compares flow graph sizes, node transfers and analysis time with and without <code>-flowgraph-optimization</code>.
+ * Produces the stats files <code>flowgraph-plain</code> and <code>flowgraph-optimized</code>.
+ */
+public class StatsFlowGraphOptimization {
+
+    public static void main(String[] args) throws IOException, CmdLineException {
+        for (boolean optimize : new boolean[]{false, true}) {
+            OptionValues defaultOptions = new OptionValues();
+            defaultOptions.getUnsoundness().setUseFixedRandom(true);
+            if (optimize)
+                defaultOptions.enableFlowgraphOptimization();
+            Stats.run(optimize ? "flowgraph-optimized" : "flowgraph-plain", 60, 120000, Optional.of(defaultOptions),
+                    StatsStandard.testSunspider,
+                    StatsStandard.testGoogle,
+                    StatsStandard.test10K,
+                    StatsStandard.testChromeExperiments,
+                    StatsStandard.testJQueryLoad);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package dk.brics.tajs.test.stats;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import dk.brics.tajs.Main;
+import dk.brics.tajs.options.OptionValues;
+import org.kohsuke.args4j.CmdLineException;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static dk.brics.tajs.util.Collections.newList;
+import static dk.brics.tajs.util.Collections.newMap;
+
+/**
+ * Runs the benchmarks of {@link Stats} in separate JVMs in parallel, and compares the results with a baseline.
+ * <p>
+ * Enabled by setting the system property <tt>stats.jobs</tt> to the number of parallel JVMs. Other system properties:
+ * <ul>
+ * <li><tt>stats.warmup</tt>: number of unmeasured runs of each benchmark before each measured run (default 0),
+ * <li><tt>stats.repeat</tt>: number of measured runs of each benchmark, each in its own JVM (default 1),
+ * <li><tt>stats.baseline</tt>: results file (out/stats/NAME.json) of a previous run to compare with,
+ * <li><tt>stats.threshold</tt>: relative change that is reported, in percent (default 5).
+ * </ul>
+ * The warmup runs are done in the same JVM as the measured run that follows them, so the measured run benefits from
+ * the JIT-compiled code, the loaded classes and the caches that survive {@link Main#reset()} (for example the flow graphs
+ * of the host environment). Only the repetitions are isolated from each other in separate JVMs.
+ * <p>
+ * The data file for stats.html contains the median of the measured runs of each benchmark.
+ * Benchmarks are identified by name and options, and a benchmark that occurs more than once in the suites is recorded
+ * with a suffix <tt>#2</tt>, <tt>#3</tt>, ... in the order of the suites.
+ * All measurements are also written to out/stats/NAME.json, which can be used as a baseline.
+ * A change is reported if the medians differ by more than the threshold and by more than three times the
+ * median absolute deviation of the measurements, so that noisy measurements are not reported as regressions.
+ */
+public class StatsHarness {
+
+    private static final String RESULT_PREFIX = "STATS-RESULT ";
+
+    /**
+     * Measurements that are compared with the baseline.
+     */
+    private static final List<String> COMPARED = Arrays.asList("wall_time", "cpu_time", "gc_time", "peak_heap_mb", "node_transfers", "abstract_states");
+
+    /**
+     * Child process entry: <tt>seconds transfers warmup initial-options test-args...</tt>.
+     * Runs the warmup runs and then the measured run, all in this JVM.
+     * Prints the statistics of the measured run as the last line of output.
+     */
+    public static void main(String[] args) throws IOException, CmdLineException {
+        Main.initLogging();
+        int secondsTimeLimit = Integer.parseInt(args[0]);
+        int nodeTransferLimit = Integer.parseInt(args[1]);
+        int warmup = Integer.parseInt(args[2]);
+        Optional<OptionValues> initialOptions = parseOptions(args[3]);
+        String[] testArgs = Arrays.copyOfRange(args, 4, args.length);
+        for (int i = 0; i < warmup; i++) {
+            Stats.runTest(testArgs, initialOptions, secondsTimeLimit, nodeTransferLimit, new JsonWriter(new StringWriter()));
+            Main.reset();
+            System.gc();
+        }
+        StringWriter result = new StringWriter();
+        Stats.runTest(testArgs, initialOptions, secondsTimeLimit, nodeTransferLimit, new JsonWriter(result));
+        System.out.println();
+        System.out.println(RESULT_PREFIX + result);
+        System.out.flush();
+        System.exit(0);
+    }
+
+    /**
+     * Runs the benchmarks as configured by the system properties.
+     */
+    static void run(String outfile, int secondsTimeLimit, int nodeTransferLimit, Optional<OptionValues> initialOptions, String[][]... tests) throws IOException {
+        int jobs = Integer.getInteger("stats.jobs", 1);
+        int warmup = Integer.getInteger("stats.warmup", 0);
+        int repeat = Math.max(1, Integer.getInteger("stats.repeat", 1));
+        double threshold = Double.parseDouble(System.getProperty("stats.threshold", "5")) / 100;
+        String baseline = System.getProperty("stats.baseline");
+        String options = initialOptions.map(OptionValues::toString).orElse("");
+        if (!parseOptions(options).orElseGet(OptionValues::new).equals(initialOptions.orElseGet(OptionValues::new)))
+            throw new IllegalArgumentException("Initial options cannot be passed to a separate JVM: " + options);
+        List<String[]> benchmarks = Arrays.stream(tests).flatMap(Arrays::stream).collect(Collectors.toList());
+
+        // run all repetitions of all benchmarks in the pool
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        List<List<Future<JsonObject>>> futures = newList();
+        for (String[] testArgs : benchmarks) {
+            List<Future<JsonObject>> fs = newList();
+            for (int i = 0; i < repeat; i++)
+                fs.add(executor.submit(() -> fork(secondsTimeLimit, nodeTransferLimit, warmup, options, testArgs)));
+            futures.add(fs);
+        }
+        executor.shutdown();
+        Map<String, List<JsonObject>> samples = newMap();
+        List<JsonObject> medians = newList();
+        for (int i = 0; i < benchmarks.size(); i++) {
+            String[] testArgs = benchmarks.get(i);
+            List<JsonObject> runs = newList();
+            for (Future<JsonObject> f : futures.get(i)) {
+                try {
+                    runs.add(f.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    runs.add(makeErrorResult(testArgs, e.getCause() != null ? e.getCause().toString() : e.toString()));
+                }
+            }
+            System.out.format("[%d/%d] %s\n", i + 1, benchmarks.size(), String.join(" ", testArgs));
+            String key = getKey(runs.get(0));
+            for (int n = 2; samples.containsKey(key); n++)
+                key = getKey(runs.get(0)) + " #" + n;
+            if (!key.equals(getKey(runs.get(0))))
+                System.out.format("Duplicate benchmark %s recorded as %s\n", getKey(runs.get(0)), key);
+            samples.put(key, runs);
+            medians.add(medianRun(runs));
+        }
+
+        // write data file for stats.html and all measurements
+        Path f = Stats.prepareOutput(outfile);
+        Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+        try (FileWriter fw = new FileWriter(f.toFile())) {
+            Stats.writeHeader(fw, initialOptions);
+            JsonArray data = new JsonArray();
+            medians.forEach(data::add);
+            fw.write(gson.toJson(data));
+            fw.write(";\ncputime = " + (long) (medians.stream().mapToDouble(m -> getNumber(m, "cpu_time")).sum() * 1e9) + ";\n");
+        }
+        Path samplesFile = f.resolveSibling(outfile + ".json");
+        Files.write(samplesFile, gson.toJson(samples).getBytes(StandardCharsets.UTF_8));
+        System.out.format("Ran %d benchmarks x %d in %ds using %d JVMs\n", benchmarks.size(), repeat, (System.currentTimeMillis() - start) / 1000, jobs);
+        System.out.println("Output written to " + f + " and " + samplesFile + ", open stats.html?" + outfile + " in a browser to view the results");
+
+        if (baseline != null)
+            compare(Paths.get(baseline), samples, threshold, f.resolveSibling(outfile + ".diff.txt"));
+    }
+
+    /**
+     * Runs a benchmark in a separate JVM.
+     */
+    private static JsonObject fork(int secondsTimeLimit, int nodeTransferLimit, int warmup, String options, String[] testArgs) throws IOException, InterruptedException {
+        List<String> command = newList();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .filter(a -> a.startsWith("-X") || (a.startsWith("-D") && !a.startsWith("-Dstats.")))
+                .collect(Collectors.toList()));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StatsHarness.class.getName());
+        command.add(Integer.toString(secondsTimeLimit));
+        command.add(Integer.toString(nodeTransferLimit));
+        command.add(Integer.toString(warmup));
+        command.add(options);
+        command.addAll(Arrays.asList(testArgs));
+        Path output = Files.createTempFile("tajs-stats", ".txt");
+        try {
+            Process p = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(output.toFile()).start();
+            long timeout = (long) (secondsTimeLimit + 60) * (warmup + 1); // the analysis time limit does not include initialization
+            if (!p.waitFor(timeout, TimeUnit.SECONDS)) {
+                p.destroyForcibly().waitFor();
+                return makeErrorResult(testArgs, "[Scalability]: JVM killed after " + timeout + "s");
+            }
+            List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+            for (int i = lines.size() - 1; i >= 0; i--)
+                if (lines.get(i).startsWith(RESULT_PREFIX))
+                    return new JsonParser().parse(lines.get(i).substring(RESULT_PREFIX.length())).getAsJsonObject();
+            String tail = lines.subList(Math.max(0, lines.size() - 10), lines.size()).stream().collect(Collectors.joining("\n"));
+            return makeErrorResult(testArgs, "[Other]: JVM exited with " + p.exitValue() + ": " + tail);
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    /**
+     * Compares the measurements with the baseline and reports the changes.
+     */
+    private static void compare(Path baseline, Map<String, List<JsonObject>> samples, double threshold, Path diffFile) throws IOException {
+        JsonObject base = new JsonParser().parse(new String(Files.readAllBytes(baseline), StandardCharsets.UTF_8)).getAsJsonObject();
+        List<String> report = newList();
+        int regressions = 0, improvements = 0;
+        for (Map.Entry<String, List<JsonObject>> me : samples.entrySet()) {
+            JsonElement b = base.get(me.getKey());
+            if (b == null) {
+                report.add("NEW         " + me.getKey());
+                continue;
+            }
+            List<JsonObject> baseRuns = newList();
+            b.getAsJsonArray().forEach(e -> baseRuns.add(e.getAsJsonObject()));
+            for (String metric : COMPARED) {
+                List<Double> xs = getNumbers(baseRuns, metric);
+                List<Double> ys = getNumbers(me.getValue(), metric);
+                if (xs.isEmpty() || ys.isEmpty())
+                    continue;
+                double x = median(xs), y = median(ys);
+                double noise = 3 * Math.max(mad(xs), mad(ys));
+                double change = x != 0 ? (y - x) / x : (y != 0 ? Double.POSITIVE_INFINITY : 0);
+                if (Math.abs(change) > threshold && Math.abs(y - x) > noise) {
+                    boolean regression = y > x;
+                    if (regression)
+                        regressions++;
+                    else
+                        improvements++;
+                    report.add(String.format("%-11s %s %s: %.3f -> %.3f (%+.1f%%)", regression ? "REGRESSION" : "IMPROVEMENT", me.getKey(), metric, x, y, change * 100));
+                }
+            }
+        }
+        for (Map.Entry<String, JsonElement> me : base.entrySet())
+            if (!samples.containsKey(me.getKey()))
+                report.add("MISSING     " + me.getKey());
+        Collections.sort(report);
+        report.add(String.format("%d regressions, %d improvements compared to %s (threshold %.1f%%)", regressions, improvements, baseline, threshold * 100));
+        Files.write(diffFile, report, StandardCharsets.UTF_8);
+        report.forEach(System.out::println);
+    }
+
+    private static Optional<OptionValues> parseOptions(String options) {
+        if (options.isEmpty())
+            return Optional.empty();
+        OptionValues o = new OptionValues();
+        try {
+            o.parse(options.split(" "));
+        } catch (CmdLineException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return Optional.of(o);
+    }
+
+    private static JsonObject makeErrorResult(String[] testArgs, String error) {
+        JsonObject r = new JsonObject();
+        String name = testArgs[testArgs.length - 1];
+        r.addProperty("name", name.replace("test-resources/src", "").replace("benchmarks/tajs/src", ""));
+        r.addProperty("options", Arrays.stream(testArgs).filter(s -> !s.endsWith(".js") && !s.endsWith(".html")).collect(Collectors.joining(" ")));
+        r.addProperty("error", error);
+        return r;
+    }
+
+    private static String getKey(JsonObject run) {
+        return run.get("name").getAsString() + " " + run.get("options").getAsString();
+    }
+
+    /**
+     * Returns the first run with each numeric field replaced by the median of the runs.
+     */
+    private static JsonObject medianRun(List<JsonObject> runs) {
+        JsonObject first = runs.stream().filter(r -> r.get("error").getAsString().isEmpty()).findFirst().orElse(runs.get(0));
+        JsonObject m = new JsonParser().parse(first.toString()).getAsJsonObject();
+        for (Map.Entry<String, JsonElement> me : first.entrySet()) {
+            List<Double> xs = getNumbers(runs, me.getKey());
+            if (me.getValue().isJsonPrimitive() && me.getValue().getAsJsonPrimitive().isNumber() && !xs.isEmpty())
+                m.addProperty(me.getKey(), median(xs));
+        }
+        return m;
+    }
+
+    private static double getNumber(JsonObject run, String metric) {
+        JsonElement e = run.get(metric);
+        return e != null && e.isJsonPrimitive() && e.getAsJsonPrimitive().isNumber() ? e.getAsDouble() : 0;
+    }
+
+    private static List<Double> getNumbers(List<JsonObject> runs, String metric) {
+        return runs.stream()
+                .filter(r -> r.has(metric) && r.get("error").getAsString().isEmpty())
+                .map(r -> r.get(metric).getAsDouble())
+                .collect(Collectors.toList());
+    }
+
+    private static double median(List<Double> xs) {
+        List<Double> s = newList(xs);
+        Collections.sort(s);
+        int n = s.size();
+        return n % 2 == 1 ? s.get(n / 2) : (s.get(n / 2 - 1) + s.get(n / 2)) / 2;
+    }
+
+    /**
+     * Median absolute deviation.
+     */
+    private static double mad(List<Double> xs) {
+        double m = median(xs);
+        return median(xs.stream().map(x -> Math.abs(x - m)).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,31 @@
+package dk.brics.tajs.test.stats;
+
+import dk.brics.tajs.options.OptionValues;
+import org.kohsuke.args4j.CmdLineException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Compares node transfers and analysis time of the work list strategies.
+ * Produces one stats file per strategy, named <code>worklist-STRATEGY</code>.
+ */
+public class StatsWorkListStrategies {
+
+    private static final String[] strategies = {"default", "wto", "lifo", "lrv"};
+
+    public static void main(String[] args) throws IOException, CmdLineException {
+        String[] selected = args.length > 0 ? args : strategies;
+        for (String strategy : selected) {
+            OptionValues defaultOptions = new OptionValues();
+            defaultOptions.getUnsoundness().setUseFixedRandom(true);
+            defaultOptions.setWorkListStrategy(strategy);
+            Stats.run("worklist-" + strategy, 60, 120000, Optional.of(defaultOptions),
+                    StatsStandard.testSunspider,
+                    StatsStandard.testGoogle,
+                    StatsStandard.test10K,
+                    StatsStandard.testChromeExperiments,
+                    StatsStandard.testJQueryLoad);
+        }
+    }
+}